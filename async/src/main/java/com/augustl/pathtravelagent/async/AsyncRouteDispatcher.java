@@ -0,0 +1,116 @@
+package com.augustl.pathtravelagent.async;
+
+import com.augustl.pathtravelagent.DefaultRouteMatcher;
+import com.augustl.pathtravelagent.IRequest;
+import com.augustl.pathtravelagent.ResolvedRoute;
+import com.augustl.pathtravelagent.RouteTreeNode;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>Matches requests on the calling thread, and calls the handlers without blocking it.</p>
+ *
+ * <p>Matching is done inline, with DefaultRouteMatcher, since it is fast and never blocks. Synchronous handlers are
+ * then called on the executor, and handlers that implement IAsyncRouteHandler are called on the calling thread, since
+ * they return a future of their own.</p>
+ *
+ * <pre>
+ * {@code
+ *  AsyncRouteDispatcher<MyReq, MyRes> dispatcher = AsyncRouteDispatcher.withVirtualThreads();
+ *  dispatcher.dispatch(routeTreeNode, req).thenAccept(res -> ...);
+ * }
+ * </pre>
+ *
+ * @param <T_REQ> A request object, implementing IRequest.
+ * @param <T_RES> The return value for the handler. Can be any type you want, not used for anything by PathTravelAgent.
+ * @see com.augustl.pathtravelagent.DefaultRouteMatcher#resolve(RouteTreeNode, IRequest)
+ */
+public class AsyncRouteDispatcher<T_REQ extends IRequest, T_RES> {
+    private final DefaultRouteMatcher<T_REQ, T_RES> routeMatcher = new DefaultRouteMatcher<T_REQ, T_RES>();
+    private final Executor executor;
+
+    /**
+     * @param executor The executor to call synchronous handlers on.
+     */
+    public AsyncRouteDispatcher(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * <p>Creates a dispatcher that calls each synchronous handler on a virtual thread of its own.</p>
+     *
+     * <p>The executor is never closed, and lives for the life of the JVM. It does not keep any threads around, so this
+     * costs nothing once the handlers have returned. Pass an executor of your own to the constructor to be able to
+     * shut it down.</p>
+     *
+     * @throws UnsupportedOperationException When the JVM does not have virtual threads, i.e. before Java 21.
+     */
+    public static <T_REQ extends IRequest, T_RES> AsyncRouteDispatcher<T_REQ, T_RES> withVirtualThreads() {
+        return new AsyncRouteDispatcher<T_REQ, T_RES>(newVirtualThreadExecutor());
+    }
+
+    /**
+     * @return true if the JVM has virtual threads, and {@link #withVirtualThreads()} can be used.
+     */
+    public static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Looked up by reflection, so that the module still runs on Java 8.
+     */
+    private static Executor newVirtualThreadExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("Could not create a virtual thread executor", e);
+        } catch (InvocationTargetException e) {
+            throw new UnsupportedOperationException("Could not create a virtual thread executor", e.getCause());
+        }
+    }
+
+    /**
+     * @param rootNode The tree to match against
+     * @param req The request
+     * @return A future that completes with the value returned by the handler, or with null if nothing matched. If the
+     * handler throws an exception, the future completes exceptionally with it, not wrapped in a CompletionException.
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<T_RES> dispatch(RouteTreeNode<T_REQ, T_RES> rootNode, T_REQ req) {
+        ResolvedRoute<T_REQ, T_RES> resolved = this.routeMatcher.resolve(rootNode, req);
+        if (resolved == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (resolved.getHandler() instanceof IAsyncRouteHandler) {
+            try {
+                return ((IAsyncRouteHandler<T_REQ, T_RES>) resolved.getHandler()).callAsync(resolved.getRouteMatch());
+            } catch (RuntimeException e) {
+                CompletableFuture<T_RES> res = new CompletableFuture<T_RES>();
+                res.completeExceptionally(e);
+                return res;
+            }
+        }
+
+        // Not supplyAsync, which wraps the exception of the handler in a CompletionException.
+        final CompletableFuture<T_RES> res = new CompletableFuture<T_RES>();
+        this.executor.execute(() -> {
+            try {
+                res.complete(resolved.call());
+            } catch (Throwable e) {
+                res.completeExceptionally(e);
+            }
+        });
+        return res;
+    }
+}
@@ -0,0 +1,30 @@
+package com.augustl.pathtravelagent.async;
+
+import com.augustl.pathtravelagent.IRouteHandler;
+import com.augustl.pathtravelagent.IRequest;
+import com.augustl.pathtravelagent.RouteMatch;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>A handler that returns its value asynchronously. AsyncRouteDispatcher calls {@link #callAsync(RouteMatch)} on the
+ * thread that matched the request, so it should start the work and return without blocking.</p>
+ *
+ * <p>The handler is an IRouteHandler too, and can be added to a tree along with synchronous handlers. When it is
+ * called synchronously, for example by DefaultRouteMatcher, it waits for the value.</p>
+ *
+ * @param <T_REQ> A request object, implementing IRequest.
+ * @param <T_RES> The value the returned future completes with.
+ * @see com.augustl.pathtravelagent.async.AsyncRouteDispatcher
+ */
+public interface IAsyncRouteHandler<T_REQ extends IRequest, T_RES> extends IRouteHandler<T_REQ, T_RES> {
+    public CompletableFuture<T_RES> callAsync(RouteMatch<T_REQ> match);
+
+    /**
+     * Calls {@link #callAsync(RouteMatch)} and waits for the value.
+     */
+    @Override
+    default T_RES call(RouteMatch<T_REQ> match) {
+        return callAsync(match).join();
+    }
+}
@@ -0,0 +1,122 @@
+package com.augustl.pathtravelagent.async;
+
+import com.augustl.pathtravelagent.*;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class AsyncRouteDispatcherTest {
+    private RouteTreeNode<Req, String> createTree() {
+        return new RouteTreeBuilder<Req, String>()
+            .path("/sync", new RouteTreeBuilder<Req, String>()
+                .param("/:id", new RouteTreeBuilder<Req, String>()
+                    .handler(new IRouteHandler<Req, String>() {
+                        @Override
+                        public IRouteHandler<Req, String> merge(IRouteHandler<Req, String> other) {
+                            return other;
+                        }
+
+                        @Override
+                        public String call(RouteMatch<Req> match) {
+                            return "sync " + match.getStringRouteMatchResult("id") + " on " + Thread.currentThread().getName();
+                        }
+                    })))
+            .path("/async", new RouteTreeBuilder<Req, String>()
+                .handler(new IAsyncRouteHandler<Req, String>() {
+                    @Override
+                    public IRouteHandler<Req, String> merge(IRouteHandler<Req, String> other) {
+                        return other;
+                    }
+
+                    @Override
+                    public CompletableFuture<String> callAsync(RouteMatch<Req> match) {
+                        return CompletableFuture.completedFuture("async on " + Thread.currentThread().getName());
+                    }
+                }))
+            .path("/fails", new RouteTreeBuilder<Req, String>()
+                .handler(new IRouteHandler<Req, String>() {
+                    @Override
+                    public IRouteHandler<Req, String> merge(IRouteHandler<Req, String> other) {
+                        return other;
+                    }
+
+                    @Override
+                    public String call(RouteMatch<Req> match) {
+                        throw new IllegalStateException("Failed");
+                    }
+                }))
+            .build();
+    }
+
+    @Test
+    public void callsSyncHandlersOnExecutor() {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "handler-thread"));
+        try {
+            AsyncRouteDispatcher<Req, String> dispatcher = new AsyncRouteDispatcher<Req, String>(executor);
+            RouteTreeNode<Req, String> r = createTree();
+
+            assertEquals("sync 123 on handler-thread", dispatcher.dispatch(r, new Req("/sync/123")).join());
+            assertEquals("async on " + Thread.currentThread().getName(), dispatcher.dispatch(r, new Req("/async")).join());
+            assertNull(dispatcher.dispatch(r, new Req("/nothing")).join());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void completesExceptionallyWhenHandlerThrows() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AsyncRouteDispatcher<Req, String> dispatcher = new AsyncRouteDispatcher<Req, String>(executor);
+            CompletableFuture<String> res = dispatcher.dispatch(createTree(), new Req("/fails"));
+            assertEquals("java.lang.IllegalStateException: Failed", res.handle((value, e) -> e.toString()).join());
+            res.join();
+            fail("Expected the future to complete exceptionally");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void asyncHandlerCanBeCalledSynchronously() {
+        assertEquals(
+            "async on " + Thread.currentThread().getName(),
+            new DefaultRouteMatcher<Req, String>().match(createTree(), new Req("/async")));
+    }
+
+    @Test
+    public void dispatchesOnVirtualThreadsWhenAvailable() {
+        if (!AsyncRouteDispatcher.hasVirtualThreads()) {
+            try {
+                AsyncRouteDispatcher.<Req, String>withVirtualThreads();
+                fail("Expected virtual threads to be unsupported");
+            } catch (UnsupportedOperationException e) {
+                return;
+            }
+        }
+
+        AsyncRouteDispatcher<Req, String> dispatcher = AsyncRouteDispatcher.withVirtualThreads();
+        assertTrue(dispatcher.dispatch(createTree(), new Req("/sync/1")).join().startsWith("sync 1 on "));
+    }
+
+    private static class Req implements IRequest {
+        private final String path;
+
+        public Req(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public List<String> getPathSegments() {
+            return DefaultPathToPathSegments.parse(this.path);
+        }
+    }
+}
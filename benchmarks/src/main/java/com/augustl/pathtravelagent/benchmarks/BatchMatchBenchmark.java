@@ -0,0 +1,67 @@
+package com.augustl.pathtravelagent.benchmarks;
+
+import com.augustl.pathtravelagent.DefaultRouteMatcher;
+import com.augustl.pathtravelagent.RouteTreeNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures matching a batch of 1000 requests against a tree of 10000 routes, where the requests share path prefixes
+ * with each other.</p>
+ *
+ * <p>matchEach calls DefaultRouteMatcher#match for each request. matchAll uses DefaultRouteMatcher#matchAll, which
+ * walks the shared prefixes once.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchMatchBenchmark {
+    private static final int ROUTE_COUNT = 10000;
+    private static final int BATCH_SIZE = 1000;
+
+    private final DefaultRouteMatcher<BenchReq, Object> defaultRouteMatcher = new DefaultRouteMatcher<BenchReq, Object>();
+    private RouteTreeNode<BenchReq, Object> tree;
+    private List<BenchReq> reqs;
+
+    @Setup
+    public void setup() {
+        this.tree = RouteSets.tree(ROUTE_COUNT);
+        this.reqs = new ArrayList<BenchReq>(BATCH_SIZE);
+        Random rand = new Random(1);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            int route = rand.nextInt(30) * 3;
+            switch (rand.nextInt(3)) {
+                case 0:
+                    this.reqs.add(new BenchReq("/static" + route + "/list"));
+                    break;
+                case 1:
+                    this.reqs.add(new BenchReq("/param" + (route + 1) + "/" + rand.nextInt(100) + "/details"));
+                    break;
+                default:
+                    this.reqs.add(new BenchReq("/files" + (route + 2) + "/images/" + rand.nextInt(100) + ".jpg"));
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Object> matchEach() {
+        List<Object> res = new ArrayList<Object>(this.reqs.size());
+        for (BenchReq req : this.reqs) {
+            res.add(this.defaultRouteMatcher.match(this.tree, req));
+        }
+        return res;
+    }
+
+    @Benchmark
+    public List<Object> matchAll() {
+        return this.defaultRouteMatcher.matchAll(this.tree, this.reqs);
+    }
+}
@@ -0,0 +1,25 @@
+package com.augustl.pathtravelagent.benchmarks;
+
+import com.augustl.pathtravelagent.IRouteHandler;
+import com.augustl.pathtravelagent.RouteMatch;
+
+/**
+ * Returns a constant, so that the benchmarks measure the router and not the handler.
+ */
+public class BenchHandler implements IRouteHandler<BenchReq, Object> {
+    private final Object res;
+
+    public BenchHandler(Object res) {
+        this.res = res;
+    }
+
+    @Override
+    public IRouteHandler<BenchReq, Object> merge(IRouteHandler<BenchReq, Object> other) {
+        return other;
+    }
+
+    @Override
+    public Object call(RouteMatch<BenchReq> match) {
+        return this.res;
+    }
+}
@@ -0,0 +1,28 @@
+package com.augustl.pathtravelagent.benchmarks;
+
+import com.augustl.pathtravelagent.DefaultPathToPathSegments;
+import com.augustl.pathtravelagent.IRequest;
+
+import java.util.List;
+
+/**
+ * A request with the path segments parsed up front, so that the match benchmarks only measure matching.
+ */
+public class BenchReq implements IRequest {
+    private final String path;
+    private final List<String> pathSegments;
+
+    public BenchReq(String path) {
+        this.path = path;
+        this.pathSegments = DefaultPathToPathSegments.parse(path);
+    }
+
+    public String getPath() {
+        return this.path;
+    }
+
+    @Override
+    public List<String> getPathSegments() {
+        return this.pathSegments;
+    }
+}
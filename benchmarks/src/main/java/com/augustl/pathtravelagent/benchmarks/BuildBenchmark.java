@@ -0,0 +1,27 @@
+package com.augustl.pathtravelagent.benchmarks;
+
+import com.augustl.pathtravelagent.RouteTreeBuilder;
+import com.augustl.pathtravelagent.RouteTreeNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a route tree with RouteTreeBuilder, including setting up the builders.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BuildBenchmark {
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int routeCount;
+
+    @Benchmark
+    public RouteTreeNode<BenchReq, Object> build() {
+        RouteTreeBuilder<BenchReq, Object> builder = RouteSets.builder(this.routeCount);
+        return builder.build();
+    }
+}
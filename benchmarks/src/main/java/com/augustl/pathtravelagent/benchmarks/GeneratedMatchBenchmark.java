@@ -0,0 +1,75 @@
+package com.augustl.pathtravelagent.benchmarks;
+
+import com.augustl.pathtravelagent.DefaultRouteMatcher;
+import com.augustl.pathtravelagent.GeneratedRouteMatcher;
+import com.augustl.pathtravelagent.MatchContext;
+import com.augustl.pathtravelagent.RouteTreeNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures matching with a GeneratedRouteMatcher, next to DefaultRouteMatcher for the same tree, both with a reused
+ * MatchContext. Not part of MatchBenchmark, since generating a matcher for the largest route sets there takes too
+ * long for a benchmark setup.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GeneratedMatchBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int routeCount;
+
+    private final DefaultRouteMatcher<BenchReq, Object> defaultRouteMatcher = new DefaultRouteMatcher<BenchReq, Object>();
+    private RouteTreeNode<BenchReq, Object> tree;
+    private GeneratedRouteMatcher<BenchReq, Object> generatedRouteMatcher;
+    private MatchContext<BenchReq> ctx;
+    private BenchReq staticReq;
+    private BenchReq parametricReq;
+    private BenchReq wildcardReq;
+    private BenchReq missReq;
+
+    @Setup
+    public void setup() {
+        this.tree = RouteSets.tree(this.routeCount);
+        this.generatedRouteMatcher = GeneratedRouteMatcher.generate(this.tree);
+        this.ctx = new MatchContext<BenchReq>();
+        this.staticReq = new BenchReq(RouteSets.staticPath(this.routeCount));
+        this.parametricReq = new BenchReq(RouteSets.parametricPath(this.routeCount));
+        this.wildcardReq = new BenchReq(RouteSets.wildcardPath(this.routeCount));
+        this.missReq = new BenchReq(RouteSets.MISS_PATH);
+    }
+
+    @Benchmark
+    public Object matchStatic() {
+        return this.defaultRouteMatcher.match(this.tree, this.staticReq, this.ctx);
+    }
+
+    @Benchmark
+    public Object matchParametric() {
+        return this.defaultRouteMatcher.match(this.tree, this.parametricReq, this.ctx);
+    }
+
+    @Benchmark
+    public Object generatedStatic() {
+        return this.generatedRouteMatcher.match(this.staticReq, this.ctx);
+    }
+
+    @Benchmark
+    public Object generatedParametric() {
+        return this.generatedRouteMatcher.match(this.parametricReq, this.ctx);
+    }
+
+    @Benchmark
+    public Object generatedWildcard() {
+        return this.generatedRouteMatcher.match(this.wildcardReq, this.ctx);
+    }
+
+    @Benchmark
+    public Object generatedMiss() {
+        return this.generatedRouteMatcher.match(this.missReq, this.ctx);
+    }
+}
@@ -0,0 +1,145 @@
+package com.augustl.pathtravelagent.benchmarks;
+
+import com.augustl.pathtravelagent.CachingRouteMatcher;
+import com.augustl.pathtravelagent.CompiledRouteMatcher;
+import com.augustl.pathtravelagent.CompiledRouteTree;
+import com.augustl.pathtravelagent.DefaultRouteMatcher;
+import com.augustl.pathtravelagent.InstrumentedRouteMatcher;
+import com.augustl.pathtravelagent.MatchContext;
+import com.augustl.pathtravelagent.RouteTreeNode;
+import com.augustl.pathtravelagent.StaticPathIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures matching a request against route sets of different sizes, for static, parametric, wildcard and missing
+ * paths.</p>
+ *
+ * <p>The match* benchmarks use DefaultRouteMatcher with path segments that are parsed up front. The compiled*
+ * benchmarks use CompiledRouteMatcher on the raw path, with a reused MatchContext. The indexed* benchmarks use
+ * DefaultRouteMatcher with a StaticPathIndex in front of the tree. The cached* benchmarks use CachingRouteMatcher,
+ * where the path is always in the cache. The bytes* benchmarks use CompiledRouteMatcher on the raw path in UTF-8
+ * bytes. The instrumented* benchmarks use InstrumentedRouteMatcher, with the default latency sample interval.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MatchBenchmark {
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int routeCount;
+
+    private final DefaultRouteMatcher<BenchReq, Object> defaultRouteMatcher = new DefaultRouteMatcher<BenchReq, Object>();
+    private final CompiledRouteMatcher<BenchReq, Object> compiledRouteMatcher = new CompiledRouteMatcher<BenchReq, Object>();
+    private final CachingRouteMatcher<BenchReq, Object> cachingRouteMatcher = new CachingRouteMatcher<BenchReq, Object>(1000);
+    private final InstrumentedRouteMatcher<BenchReq, Object> instrumentedRouteMatcher = new InstrumentedRouteMatcher<BenchReq, Object>();
+    private RouteTreeNode<BenchReq, Object> tree;
+    private CompiledRouteTree<BenchReq, Object> compiledTree;
+    private StaticPathIndex<BenchReq, Object> staticPathIndex;
+    private MatchContext<BenchReq> ctx;
+    private BenchReq staticReq;
+    private BenchReq parametricReq;
+    private BenchReq wildcardReq;
+    private BenchReq missReq;
+    private ByteBuffer staticBytes;
+    private ByteBuffer parametricBytes;
+
+    @Setup
+    public void setup() {
+        this.tree = RouteSets.tree(this.routeCount);
+        this.compiledTree = this.tree.compile();
+        this.staticPathIndex = new StaticPathIndex<BenchReq, Object>(this.tree);
+        this.ctx = new MatchContext<BenchReq>(this.compiledTree.getSlotCount());
+        this.staticReq = new BenchReq(RouteSets.staticPath(this.routeCount));
+        this.parametricReq = new BenchReq(RouteSets.parametricPath(this.routeCount));
+        this.wildcardReq = new BenchReq(RouteSets.wildcardPath(this.routeCount));
+        this.missReq = new BenchReq(RouteSets.MISS_PATH);
+        this.staticBytes = ByteBuffer.wrap(this.staticReq.getPath().getBytes(Charset.forName("UTF-8")));
+        this.parametricBytes = ByteBuffer.wrap(this.parametricReq.getPath().getBytes(Charset.forName("UTF-8")));
+    }
+
+    @Benchmark
+    public Object matchStatic() {
+        return this.defaultRouteMatcher.match(this.tree, this.staticReq);
+    }
+
+    @Benchmark
+    public Object matchParametric() {
+        return this.defaultRouteMatcher.match(this.tree, this.parametricReq);
+    }
+
+    @Benchmark
+    public Object matchWildcard() {
+        return this.defaultRouteMatcher.match(this.tree, this.wildcardReq);
+    }
+
+    @Benchmark
+    public Object matchMiss() {
+        return this.defaultRouteMatcher.match(this.tree, this.missReq);
+    }
+
+    @Benchmark
+    public Object compiledStatic() {
+        return this.compiledRouteMatcher.match(this.compiledTree, this.staticReq, this.staticReq.getPath(), this.ctx);
+    }
+
+    @Benchmark
+    public Object compiledParametric() {
+        return this.compiledRouteMatcher.match(this.compiledTree, this.parametricReq, this.parametricReq.getPath(), this.ctx);
+    }
+
+    @Benchmark
+    public Object compiledWildcard() {
+        return this.compiledRouteMatcher.match(this.compiledTree, this.wildcardReq, this.wildcardReq.getPath(), this.ctx);
+    }
+
+    @Benchmark
+    public Object compiledMiss() {
+        return this.compiledRouteMatcher.match(this.compiledTree, this.missReq, this.missReq.getPath(), this.ctx);
+    }
+
+    @Benchmark
+    public Object indexedStatic() {
+        return this.defaultRouteMatcher.match(this.staticPathIndex, this.staticReq, this.ctx);
+    }
+
+    @Benchmark
+    public Object indexedParametric() {
+        return this.defaultRouteMatcher.match(this.staticPathIndex, this.parametricReq, this.ctx);
+    }
+
+    @Benchmark
+    public Object cachedStatic() {
+        return this.cachingRouteMatcher.match(this.tree, this.staticReq, this.ctx);
+    }
+
+    @Benchmark
+    public Object cachedParametric() {
+        return this.cachingRouteMatcher.match(this.tree, this.parametricReq, this.ctx);
+    }
+
+    @Benchmark
+    public Object bytesStatic() {
+        return this.compiledRouteMatcher.match(this.compiledTree, this.staticReq, this.staticBytes, this.ctx);
+    }
+
+    @Benchmark
+    public Object bytesParametric() {
+        return this.compiledRouteMatcher.match(this.compiledTree, this.parametricReq, this.parametricBytes, this.ctx);
+    }
+
+    @Benchmark
+    public Object instrumentedStatic() {
+        return this.instrumentedRouteMatcher.match(this.tree, this.staticReq, this.ctx);
+    }
+
+    @Benchmark
+    public Object instrumentedMiss() {
+        return this.instrumentedRouteMatcher.match(this.tree, this.missReq, this.ctx);
+    }
+}
@@ -0,0 +1,72 @@
+package com.augustl.pathtravelagent.benchmarks;
+
+import com.augustl.pathtravelagent.RouteTreeNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures {@link RouteTreeNode#merge(RouteTreeNode)}, {@link RouteTreeNode#mergeAll(java.util.Collection)} and
+ * {@link RouteTreeNode#without(RouteTreeNode)}.</p>
+ *
+ * <p>mergeOne merges a single route into a tree of the given size, like adding a route at runtime. foldAll builds the
+ * whole tree by merging one single route at a time, like building a tree at startup from SingleRouteBuilder. mergeAll
+ * builds the same tree in one call. removeOne removes a single route from the middle of the tree, like removing a route
+ * at runtime.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MergeBenchmark {
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int routeCount;
+
+    private RouteTreeNode<BenchReq, Object> tree;
+    private RouteTreeNode<BenchReq, Object> newRoute;
+    private RouteTreeNode<BenchReq, Object> existingRoute;
+    private List<RouteTreeNode<BenchReq, Object>> singleRoutes;
+
+    @Setup
+    public void setup() {
+        this.tree = RouteSets.tree(this.routeCount);
+        this.newRoute = RouteSets.singleRoutes(this.routeCount + 1).get(this.routeCount);
+        this.singleRoutes = RouteSets.singleRoutes(this.routeCount);
+        this.existingRoute = this.singleRoutes.get(this.routeCount / 2);
+    }
+
+    @Benchmark
+    public RouteTreeNode<BenchReq, Object> mergeOne() {
+        return this.tree.merge(this.newRoute);
+    }
+
+    @Benchmark
+    public RouteTreeNode<BenchReq, Object> removeOne() {
+        return this.tree.without(this.existingRoute);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public RouteTreeNode<BenchReq, Object> foldAll() {
+        RouteTreeNode<BenchReq, Object> res = new RouteTreeNode<BenchReq, Object>();
+        for (RouteTreeNode<BenchReq, Object> route : this.singleRoutes) {
+            res = res.merge(route);
+        }
+        return res;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public RouteTreeNode<BenchReq, Object> mergeAll() {
+        return RouteTreeNode.mergeAll(this.singleRoutes);
+    }
+}
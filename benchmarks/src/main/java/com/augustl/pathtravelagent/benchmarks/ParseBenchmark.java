@@ -0,0 +1,33 @@
+package com.augustl.pathtravelagent.benchmarks;
+
+import com.augustl.pathtravelagent.DefaultPathToPathSegments;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DefaultPathToPathSegments#parse(String)} and {@link DefaultPathToPathSegments#parseDecoded(String)}.
+ * Parsing does not depend on the size of the route set, only
+ * on the path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+    @Param({"/", "/projects", "/projects/123/todos/456", "/projects/123/todos/456?sort=asc&page=2", "/files/images/2014/summer/holiday/beach/sunset.jpg", "/files/%C3%B8l/summer%20holiday/caf%C3%A9.jpg"})
+    public String path;
+
+    @Benchmark
+    public List<String> parse() {
+        return DefaultPathToPathSegments.parse(this.path);
+    }
+
+    @Benchmark
+    public List<String> parseDecoded() {
+        return DefaultPathToPathSegments.parseDecoded(this.path);
+    }
+}
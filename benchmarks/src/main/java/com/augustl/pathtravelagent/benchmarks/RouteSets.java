@@ -0,0 +1,99 @@
+package com.augustl.pathtravelagent.benchmarks;
+
+import com.augustl.pathtravelagent.RouteTreeBuilder;
+import com.augustl.pathtravelagent.RouteTreeNode;
+import com.augustl.pathtravelagent.SingleRouteBuilder;
+import com.augustl.pathtravelagent.segment.NumberSegment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Generates route sets of a given size, with an even mix of three kinds of routes:</p>
+ *
+ * <ul>
+ *     <li>Static, <tt>/static{i}/list</tt></li>
+ *     <li>Parametric, <tt>/param{i}/:id/details</tt>, where id is a number</li>
+ *     <li>Wildcard, <tt>/files{i}/*</tt></li>
+ * </ul>
+ */
+public class RouteSets {
+    public static final String MISS_PATH = "/does-not-exist/at/all";
+
+    public static RouteTreeBuilder<BenchReq, Object> builder(int routeCount) {
+        RouteTreeBuilder<BenchReq, Object> root = new RouteTreeBuilder<BenchReq, Object>();
+        for (int i = 0; i < routeCount; i++) {
+            switch (i % 3) {
+                case 0:
+                    root.path("/static" + i, new RouteTreeBuilder<BenchReq, Object>()
+                        .path("/list", new RouteTreeBuilder<BenchReq, Object>()
+                            .handler(new BenchHandler(i))));
+                    break;
+                case 1:
+                    root.path("/param" + i, new RouteTreeBuilder<BenchReq, Object>()
+                        .param(new NumberSegment("id"), new RouteTreeBuilder<BenchReq, Object>()
+                            .path("/details", new RouteTreeBuilder<BenchReq, Object>()
+                                .handler(new BenchHandler(i)))));
+                    break;
+                default:
+                    root.path("/files" + i, new RouteTreeBuilder<BenchReq, Object>()
+                        .wildcard(new RouteTreeBuilder<BenchReq, Object>()
+                            .handler(new BenchHandler(i))));
+                    break;
+            }
+        }
+        return root;
+    }
+
+    public static RouteTreeNode<BenchReq, Object> tree(int routeCount) {
+        return builder(routeCount).build();
+    }
+
+    public static List<RouteTreeNode<BenchReq, Object>> singleRoutes(int routeCount) {
+        List<RouteTreeNode<BenchReq, Object>> res = new ArrayList<RouteTreeNode<BenchReq, Object>>(routeCount);
+        for (int i = 0; i < routeCount; i++) {
+            switch (i % 3) {
+                case 0:
+                    res.add(new SingleRouteBuilder<BenchReq, Object>()
+                        .path("static" + i)
+                        .path("list")
+                        .build(new BenchHandler(i)));
+                    break;
+                case 1:
+                    res.add(new SingleRouteBuilder<BenchReq, Object>()
+                        .path("param" + i)
+                        .param("id")
+                        .path("details")
+                        .build(new BenchHandler(i)));
+                    break;
+                default:
+                    res.add(new SingleRouteBuilder<BenchReq, Object>()
+                        .path("files" + i)
+                        .path("index")
+                        .build(new BenchHandler(i)));
+                    break;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return A path hitting a static route in the middle of the route set.
+     */
+    public static String staticPath(int routeCount) {
+        return "/static" + routeIndex(routeCount, 0) + "/list";
+    }
+
+    public static String parametricPath(int routeCount) {
+        return "/param" + routeIndex(routeCount, 1) + "/12345/details";
+    }
+
+    public static String wildcardPath(int routeCount) {
+        return "/files" + routeIndex(routeCount, 2) + "/images/2014/summer/beach.jpg";
+    }
+
+    private static int routeIndex(int routeCount, int kind) {
+        int middle = routeCount / 2;
+        return middle - (middle % 3) + kind;
+    }
+}
@@ -0,0 +1,63 @@
+package com.augustl.pathtravelagent;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * <p>A view of UTF-8 bytes as chars, one char per byte, for scanning a raw path in bytes with the same code as a raw
+ * path in chars. Indexes are the absolute indexes in the buffer.</p>
+ *
+ * <p>Bytes below 0x80 are the same char in UTF-8, so the view is exact for ASCII. Other bytes are only ever parts of
+ * multi-byte chars, and never equal to the chars the path is split on, such as '/' and '?'. Ranges that contain such
+ * bytes must be decoded, with {@link #decode(ByteBuffer, int, int)}, instead of read through the view.</p>
+ */
+final class ByteCharSequence implements CharSequence {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer bytes;
+
+    ByteCharSequence(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int length() {
+        return this.bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (this.bytes.get(index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return decode(this.bytes, start, end);
+    }
+
+    @Override
+    public String toString() {
+        return decode(this.bytes, 0, this.bytes.limit());
+    }
+
+    static boolean isAscii(ByteBuffer bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String decode(ByteBuffer bytes, int start, int end) {
+        if (bytes.hasArray()) {
+            return new String(bytes.array(), bytes.arrayOffset() + start, end - start, UTF_8);
+        }
+
+        byte[] res = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            res[i - start] = bytes.get(i);
+        }
+        return new String(res, UTF_8);
+    }
+}
@@ -0,0 +1,233 @@
+package com.augustl.pathtravelagent;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Wraps DefaultRouteMatcher with a cache of the results of walking the tree, for applications where a small set of
+ * paths gets most of the requests. For each list of path segments, the node the path leads to and the values of its
+ * parametric and wildcard segments are cached. The handler is called for every request, its return value is not
+ * cached.</p>
+ *
+ * <p>The cache holds at most the given number of paths, and evicts the least recently used paths first. It is split
+ * into segments by the hash code of the path segments, with a lock for each segment, so that threads matching
+ * different paths rarely wait for each other.</p>
+ *
+ * <p>Every entry belongs to the root node it was created for. When the matcher is called with another root node, for
+ * example after routes were added, the entries for the old root node are thrown away.</p>
+ *
+ * <p>Instances are thread safe, and intended to be shared.</p>
+ *
+ * @param <T_REQ> A request object, implementing IRequest.
+ * @param <T_RES> The return value for the handler. Can be any type you want, not used for anything by PathTravelAgent.
+ * @see com.augustl.pathtravelagent.DefaultRouteMatcher
+ */
+public class CachingRouteMatcher<T_REQ extends IRequest, T_RES> {
+    private static final int DEFAULT_SEGMENT_COUNT = 16;
+
+    private final DefaultRouteMatcher<T_REQ, T_RES> routeMatcher = new DefaultRouteMatcher<T_REQ, T_RES>();
+    private final Segment<T_REQ, T_RES>[] segments;
+    private final int segmentMask;
+
+    /**
+     * @param maxSize The maximum number of paths to cache.
+     */
+    public CachingRouteMatcher(int maxSize) {
+        this(maxSize, DEFAULT_SEGMENT_COUNT);
+    }
+
+    /**
+     * @param maxSize The maximum number of paths to cache.
+     * @param segmentCount The number of segments to split the cache into, rounded up to a power of two. Each segment
+     *                     holds at most its share of maxSize, and at least one path.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public CachingRouteMatcher(int maxSize, int segmentCount) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The max size must be at least 1, was " + maxSize);
+        }
+        if (segmentCount < 1) {
+            throw new IllegalArgumentException("The segment count must be at least 1, was " + segmentCount);
+        }
+
+        int actualSegmentCount = 1;
+        while (actualSegmentCount < segmentCount) {
+            actualSegmentCount *= 2;
+        }
+
+        int maxSegmentSize = Math.max(1, (maxSize + actualSegmentCount - 1) / actualSegmentCount);
+        this.segments = (Segment<T_REQ, T_RES>[]) new Segment[actualSegmentCount];
+        for (int i = 0; i < actualSegmentCount; i++) {
+            this.segments[i] = new Segment<T_REQ, T_RES>(maxSegmentSize);
+        }
+        this.segmentMask = actualSegmentCount - 1;
+    }
+
+    public T_RES match(final RouteTreeNode<T_REQ, T_RES> rootNode, T_REQ req) {
+        return match(rootNode, req, new MatchContext<T_REQ>());
+    }
+
+    /**
+     * Like {@link #match(RouteTreeNode, IRequest)}, but copies the cached values into the match result in the context
+     * instead of creating a new one.
+     */
+    public T_RES match(final RouteTreeNode<T_REQ, T_RES> rootNode, T_REQ req, MatchContext<T_REQ> ctx) {
+        List<String> pathSegments = req.getPathSegments();
+        Segment<T_REQ, T_RES> segment = getSegment(pathSegments);
+        RouteMatchResult routeMatchResult = ctx.begin(req);
+
+        CacheEntry<T_REQ, T_RES> entry = segment.get(rootNode, pathSegments);
+        if (entry == null) {
+            RouteMatchResult values = new RouteMatchResult();
+            RouteTreeNode<T_REQ, T_RES> targetNode = this.routeMatcher.findTargetNode(rootNode, pathSegments, values);
+            values.materialize();
+            entry = new CacheEntry<T_REQ, T_RES>(targetNode, values);
+            segment.put(rootNode, new ArrayList<String>(pathSegments), entry);
+        }
+
+        if (entry.targetNode == null) {
+            return null;
+        }
+
+        if (entry.targetNode.getHandler() == null) {
+            return null;
+        }
+
+        routeMatchResult.copyFrom(entry.values);
+        return entry.targetNode.getHandler().call(ctx.getRouteMatch());
+    }
+
+    /**
+     * Removes all cached paths. The counters are not reset.
+     */
+    public void clear() {
+        for (Segment<T_REQ, T_RES> segment : this.segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return The number of cached paths.
+     */
+    public int size() {
+        int res = 0;
+        for (Segment<T_REQ, T_RES> segment : this.segments) {
+            res += segment.size();
+        }
+        return res;
+    }
+
+    /**
+     * @return The number of matches that used a cached path.
+     */
+    public long getHitCount() {
+        long res = 0;
+        for (Segment<T_REQ, T_RES> segment : this.segments) {
+            res += segment.getHitCount();
+        }
+        return res;
+    }
+
+    /**
+     * @return The number of matches that walked the tree.
+     */
+    public long getMissCount() {
+        long res = 0;
+        for (Segment<T_REQ, T_RES> segment : this.segments) {
+            res += segment.getMissCount();
+        }
+        return res;
+    }
+
+    /**
+     * @return The number of cached paths that were removed to make room for new paths. Paths removed because the
+     * root node changed, or by {@link #clear()}, are not counted.
+     */
+    public long getEvictionCount() {
+        long res = 0;
+        for (Segment<T_REQ, T_RES> segment : this.segments) {
+            res += segment.getEvictionCount();
+        }
+        return res;
+    }
+
+    private Segment<T_REQ, T_RES> getSegment(List<String> pathSegments) {
+        int hash = pathSegments.hashCode();
+        return this.segments[(hash ^ (hash >>> 16)) & this.segmentMask];
+    }
+
+    private static class CacheEntry<T_REQ extends IRequest, T_RES> {
+        private final RouteTreeNode<T_REQ, T_RES> targetNode;
+        private final RouteMatchResult values;
+
+        public CacheEntry(RouteTreeNode<T_REQ, T_RES> targetNode, RouteMatchResult values) {
+            this.targetNode = targetNode;
+            this.values = values;
+        }
+    }
+
+    private static class Segment<T_REQ extends IRequest, T_RES> {
+        private final LinkedHashMap<List<String>, CacheEntry<T_REQ, T_RES>> entries;
+        private RouteTreeNode<T_REQ, T_RES> rootNode;
+        private long hitCount = 0;
+        private long missCount = 0;
+        private long evictionCount = 0;
+
+        public Segment(final int maxSize) {
+            this.entries = new LinkedHashMap<List<String>, CacheEntry<T_REQ, T_RES>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<String>, CacheEntry<T_REQ, T_RES>> eldest) {
+                    if (size() > maxSize) {
+                        evictionCount++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        public synchronized CacheEntry<T_REQ, T_RES> get(RouteTreeNode<T_REQ, T_RES> rootNode, List<String> pathSegments) {
+            if (this.rootNode != rootNode) {
+                this.entries.clear();
+                this.rootNode = rootNode;
+            }
+
+            CacheEntry<T_REQ, T_RES> res = this.entries.get(pathSegments);
+            if (res == null) {
+                this.missCount++;
+            } else {
+                this.hitCount++;
+            }
+            return res;
+        }
+
+        public synchronized void put(RouteTreeNode<T_REQ, T_RES> rootNode, List<String> pathSegments, CacheEntry<T_REQ, T_RES> entry) {
+            // Another thread might have started using a new root node since the entry was looked up.
+            if (this.rootNode == rootNode) {
+                this.entries.put(pathSegments, entry);
+            }
+        }
+
+        public synchronized void clear() {
+            this.entries.clear();
+        }
+
+        public synchronized int size() {
+            return this.entries.size();
+        }
+
+        public synchronized long getHitCount() {
+            return this.hitCount;
+        }
+
+        public synchronized long getMissCount() {
+            return this.missCount;
+        }
+
+        public synchronized long getEvictionCount() {
+            return this.evictionCount;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.augustl.pathtravelagent;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * <p>Matches requests against a CompiledRouteTree. Gives the same results as DefaultRouteMatcher does for the
+ * RouteTreeNode the tree was compiled from.</p>
+ *
+ * <p>There are two ways of matching. Either with the path segments of the request, from
+ * {@link IRequest#getPathSegments()}, or with the raw path, such as <tt>"/projects/123?test"</tt>. When matching the raw
+ * path, it is scanned in place, and no List of path segments is created. Values for parametric segments are only
+ * turned into Strings when a handler asks for them, if the segment implements IRangeParametricSegment.</p>
+ *
+ * <p>Pass in a {@link MatchContext} to reuse the match result between requests. Matching a raw path with a reused
+ * context does not allocate, as long as the parametric segments implement IRangeParametricSegment.</p>
+ *
+ * <p>A raw path can also be matched as UTF-8 bytes, for example straight from the ByteBuffer a NIO server read the
+ * request line into. The bytes are not decoded, except for the path segments with non-ASCII chars that are used as
+ * values for parametric segments or wildcards.</p>
+ *
+ * @param <T_REQ> A request object, implementing IRequest.
+ * @param <T_RES> The return value for the handler. Can be any type you want, not used for anything by PathTravelAgent.
+ * @see com.augustl.pathtravelagent.RouteTreeNode#compile()
+ * @see com.augustl.pathtravelagent.DefaultRouteMatcher
+ */
+public class CompiledRouteMatcher<T_REQ extends IRequest, T_RES> {
+    public T_RES match(final CompiledRouteTree<T_REQ, T_RES> tree, T_REQ req) {
+        return match(tree, req, new MatchContext<T_REQ>(tree.getSlotCount()));
+    }
+
+    public T_RES match(final CompiledRouteTree<T_REQ, T_RES> tree, T_REQ req, MatchContext<T_REQ> ctx) {
+        List<String> pathSegments = req.getPathSegments();
+        int targetNode = CompiledRouteTree.ROOT_NODE;
+        RouteMatchResult routeMatchResult = ctx.begin(req);
+
+        int i;
+        for (i = 0; i < pathSegments.size(); i++) {
+            String pathSegment = pathSegments.get(i);
+
+            int edge = tree.getPathSegmentEdge(targetNode, pathSegment);
+            if (edge != CompiledRouteTree.NO_EDGE) {
+                int edgePathSegmentCount = tree.getEdgePathSegmentCount(edge);
+                for (int j = 1; j < edgePathSegmentCount; j++) {
+                    i++;
+                    if (i == pathSegments.size()) {
+                        return null;
+                    }
+                    String chainPathSegment = pathSegments.get(i);
+                    if (!tree.edgePathSegmentEquals(edge, j, chainPathSegment, 0, chainPathSegment.length())) {
+                        return null;
+                    }
+                }
+                targetNode = tree.getEdgeTarget(edge);
+                continue;
+            }
+
+            if (tree.hasParametricChild(targetNode)) {
+                if (!routeMatchResult.addParametricSegment(tree.getParametricChildSegment(targetNode), tree.getParametricChildSlot(targetNode), pathSegment)) {
+                    return null;
+                }
+                targetNode = tree.getParametricChild(targetNode);
+                continue;
+            }
+
+            if (tree.hasWildcardChild(targetNode)) {
+                for (; i < pathSegments.size(); i++) {
+                    routeMatchResult.addToWildcardMatches(pathSegments.get(i));
+                }
+                targetNode = tree.getWildcardChild(targetNode);
+                break;
+            }
+
+            return null;
+        }
+
+        IRouteHandler<T_REQ, T_RES> handler = tree.getHandler(targetNode);
+        if (handler == null) {
+            return null;
+        }
+
+        return handler.call(ctx.getRouteMatch());
+    }
+
+    /**
+     * Matches the raw path, with the same result as matching the path segments from
+     * {@link DefaultPathToPathSegments#parse(String)}. The request is only passed on to the handler, its path segments
+     * are not used.
+     *
+     * @param tree The tree to match against
+     * @param req The request, passed to the handler
+     * @param path The raw path. Must not change until the handler has returned.
+     * @return The value returned by the handler, or null if nothing matched.
+     */
+    public T_RES match(final CompiledRouteTree<T_REQ, T_RES> tree, T_REQ req, CharSequence path) {
+        return match(tree, req, path, 0, path.length(), new MatchContext<T_REQ>(tree.getSlotCount()));
+    }
+
+    public T_RES match(final CompiledRouteTree<T_REQ, T_RES> tree, T_REQ req, CharSequence path, MatchContext<T_REQ> ctx) {
+        return match(tree, req, path, 0, path.length(), ctx);
+    }
+
+    /**
+     * Like {@link #match(CompiledRouteTree, IRequest, CharSequence)}, for the raw path in a range of the chars in path.
+     */
+    public T_RES match(final CompiledRouteTree<T_REQ, T_RES> tree, T_REQ req, CharSequence path, int start, int end) {
+        return match(tree, req, path, start, end, new MatchContext<T_REQ>(tree.getSlotCount()));
+    }
+
+    public T_RES match(final CompiledRouteTree<T_REQ, T_RES> tree, T_REQ req, CharSequence path, int start, int end, MatchContext<T_REQ> ctx) {
+        int pathEnd = DefaultPathToPathSegments.findPathEnd(path, start, end);
+        int segmentStart = DefaultPathToPathSegments.findFirstSegmentStart(path, start, pathEnd);
+        int targetNode = CompiledRouteTree.ROOT_NODE;
+        RouteMatchResult routeMatchResult = ctx.begin(req);
+
+        while (segmentStart < pathEnd) {
+            int segmentEnd = DefaultPathToPathSegments.findSegmentEnd(path, segmentStart, pathEnd);
+
+            int edge = tree.getPathSegmentEdge(targetNode, path, segmentStart, segmentEnd);
+            if (edge != CompiledRouteTree.NO_EDGE) {
+                int edgePathSegmentCount = tree.getEdgePathSegmentCount(edge);
+                for (int j = 1; j < edgePathSegmentCount; j++) {
+                    segmentStart = segmentEnd + 1;
+                    if (segmentStart >= pathEnd) {
+                        return null;
+                    }
+                    segmentEnd = DefaultPathToPathSegments.findSegmentEnd(path, segmentStart, pathEnd);
+                    if (!tree.edgePathSegmentEquals(edge, j, path, segmentStart, segmentEnd)) {
+                        return null;
+                    }
+                }
+                targetNode = tree.getEdgeTarget(edge);
+                segmentStart = segmentEnd + 1;
+                continue;
+            }
+
+            if (tree.hasParametricChild(targetNode)) {
+                if (!routeMatchResult.addParametricSegment(tree.getParametricChildSegment(targetNode), tree.getParametricChildSlot(targetNode), path, segmentStart, segmentEnd)) {
+                    return null;
+                }
+                targetNode = tree.getParametricChild(targetNode);
+                segmentStart = segmentEnd + 1;
+                continue;
+            }
+
+            if (tree.hasWildcardChild(targetNode)) {
+                routeMatchResult.addToWildcardMatches(path, segmentStart, pathEnd);
+                targetNode = tree.getWildcardChild(targetNode);
+                break;
+            }
+
+            return null;
+        }
+
+        IRouteHandler<T_REQ, T_RES> handler = tree.getHandler(targetNode);
+        if (handler == null) {
+            return null;
+        }
+
+        return handler.call(ctx.getRouteMatch());
+    }
+
+    /**
+     * Matches the raw path in UTF-8 bytes between the position and the limit of the buffer, with the same result as
+     * matching the decoded path. Does not change the position or limit of the buffer.
+     *
+     * @param tree The tree to match against
+     * @param req The request, passed to the handler
+     * @param path The raw path. Must not change until the handler has returned.
+     * @return The value returned by the handler, or null if nothing matched.
+     */
+    public T_RES match(final CompiledRouteTree<T_REQ, T_RES> tree, T_REQ req, ByteBuffer path) {
+        return match(tree, req, path, new MatchContext<T_REQ>(tree.getSlotCount()));
+    }
+
+    /**
+     * Like {@link #match(CompiledRouteTree, IRequest, ByteBuffer)}, for the raw path in a range of a byte array.
+     */
+    public T_RES match(final CompiledRouteTree<T_REQ, T_RES> tree, T_REQ req, byte[] path, int offset, int length) {
+        return match(tree, req, ByteBuffer.wrap(path, offset, length), new MatchContext<T_REQ>(tree.getSlotCount()));
+    }
+
+    public T_RES match(final CompiledRouteTree<T_REQ, T_RES> tree, T_REQ req, byte[] path, int offset, int length, MatchContext<T_REQ> ctx) {
+        return match(tree, req, ByteBuffer.wrap(path, offset, length), ctx);
+    }
+
+    public T_RES match(final CompiledRouteTree<T_REQ, T_RES> tree, T_REQ req, ByteBuffer path, MatchContext<T_REQ> ctx) {
+        ByteCharSequence chars = new ByteCharSequence(path);
+        int pathEnd = DefaultPathToPathSegments.findPathEnd(chars, path.position(), path.limit());
+        int segmentStart = DefaultPathToPathSegments.findFirstSegmentStart(chars, path.position(), pathEnd);
+        int targetNode = CompiledRouteTree.ROOT_NODE;
+        RouteMatchResult routeMatchResult = ctx.begin(req);
+
+        while (segmentStart < pathEnd) {
+            int segmentEnd = DefaultPathToPathSegments.findSegmentEnd(chars, segmentStart, pathEnd);
+
+            int edge = tree.getPathSegmentEdge(targetNode, path, segmentStart, segmentEnd);
+            if (edge != CompiledRouteTree.NO_EDGE) {
+                int edgePathSegmentCount = tree.getEdgePathSegmentCount(edge);
+                for (int j = 1; j < edgePathSegmentCount; j++) {
+                    segmentStart = segmentEnd + 1;
+                    if (segmentStart >= pathEnd) {
+                        return null;
+                    }
+                    segmentEnd = DefaultPathToPathSegments.findSegmentEnd(chars, segmentStart, pathEnd);
+                    if (!tree.edgePathSegmentEquals(edge, j, path, segmentStart, segmentEnd)) {
+                        return null;
+                    }
+                }
+                targetNode = tree.getEdgeTarget(edge);
+                segmentStart = segmentEnd + 1;
+                continue;
+            }
+
+            if (tree.hasParametricChild(targetNode)) {
+                boolean added = ByteCharSequence.isAscii(path, segmentStart, segmentEnd)
+                    ? routeMatchResult.addParametricSegment(tree.getParametricChildSegment(targetNode), tree.getParametricChildSlot(targetNode), chars, segmentStart, segmentEnd)
+                    : routeMatchResult.addParametricSegment(tree.getParametricChildSegment(targetNode), tree.getParametricChildSlot(targetNode), ByteCharSequence.decode(path, segmentStart, segmentEnd));
+                if (!added) {
+                    return null;
+                }
+                targetNode = tree.getParametricChild(targetNode);
+                segmentStart = segmentEnd + 1;
+                continue;
+            }
+
+            if (tree.hasWildcardChild(targetNode)) {
+                if (ByteCharSequence.isAscii(path, segmentStart, pathEnd)) {
+                    routeMatchResult.addToWildcardMatches(chars, segmentStart, pathEnd);
+                } else {
+                    String rest = ByteCharSequence.decode(path, segmentStart, pathEnd);
+                    routeMatchResult.addToWildcardMatches(rest, 0, rest.length());
+                }
+                targetNode = tree.getWildcardChild(targetNode);
+                break;
+            }
+
+            return null;
+        }
+
+        IRouteHandler<T_REQ, T_RES> handler = tree.getHandler(targetNode);
+        if (handler == null) {
+            return null;
+        }
+
+        return handler.call(ctx.getRouteMatch());
+    }
+}
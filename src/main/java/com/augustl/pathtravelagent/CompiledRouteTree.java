@@ -0,0 +1,1001 @@
+package com.augustl.pathtravelagent;
+
+import com.augustl.pathtravelagent.segment.IParametricSegment;
+import com.augustl.pathtravelagent.segment.DateSegment;
+import com.augustl.pathtravelagent.segment.HexSegment;
+import com.augustl.pathtravelagent.segment.LongSegment;
+import com.augustl.pathtravelagent.segment.NumberSegment;
+import com.augustl.pathtravelagent.segment.StringSegment;
+import com.augustl.pathtravelagent.segment.UuidSegment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * <p>A RouteTreeNode flattened into dense, int-indexed tables. Create one with {@link RouteTreeNode#compile()} and
+ * match with {@link CompiledRouteMatcher}.</p>
+ *
+ * <p>Every node in the tree gets an id, with the root at id 0. Nodes are numbered breadth first, so the children of a
+ * node are stored next to each other. The static children of a node are kept in a slice of parallel tables, sorted by
+ * the hash code of the path segment, so that a lookup is a binary search over the hash codes followed by a single
+ * comparison of path segments. Parametric and wildcard children are plain int references to other node ids.</p>
+ *
+ * <p>Chains of nodes that only lead on to a single static child, such as the nodes for <tt>api</tt>, <tt>v3</tt> and
+ * <tt>internal</tt> in <tt>/api/v3/internal/admin</tt> when there are no other routes below them, are collapsed into a
+ * single edge that covers several path segments. Such nodes can never match on their own, since a path that ends at
+ * them or continues with another path segment does not match anything. The compiled tree therefore only has nodes for
+ * the points in the tree where a decision is made.</p>
+ *
+ * <p>The path segments are stored encoded as UTF-8, in a single ByteBuffer, so that a raw path in bytes can be matched
+ * without decoding it. A tree can be written in a compact binary format with {@link #writeTo(OutputStream, Map)}, and
+ * loaded at startup with {@link #map(File, List)}, without building or compiling a RouteTreeNode. Only the handlers are
+ * bound when loading, by id. The int tables are copied to the heap in bulk when loading, and the path segments are
+ * read straight from the memory-mapped file.</p>
+ *
+ * <p>Like RouteTreeNode, an instance is immutable. Compiling is a one time cost, the compiled tree does not change
+ * when the RouteTreeNode it was compiled from is merged with other trees.</p>
+ *
+ * @param <T_REQ> A request object, implementing IRequest.
+ * @param <T_RES> The return value for the handler. Can be any type you want, not used for anything by PathTravelAgent.
+ * @see com.augustl.pathtravelagent.RouteTreeNode#compile()
+ * @see com.augustl.pathtravelagent.CompiledRouteMatcher
+ */
+public class CompiledRouteTree<T_REQ extends IRequest, T_RES> {
+    public static final int ROOT_NODE = 0;
+    public static final int NO_NODE = -1;
+    public static final int NO_EDGE = -1;
+
+    private static final int MAGIC = 0x50544154;
+    private static final int VERSION = 1;
+
+    private static final int STRING_SEGMENT = 1;
+    private static final int NUMBER_SEGMENT = 2;
+    private static final int LONG_SEGMENT = 3;
+    private static final int UUID_SEGMENT = 4;
+    private static final int HEX_SEGMENT = 5;
+    private static final int DATE_SEGMENT = 6;
+
+    private final IRouteHandler<T_REQ, T_RES>[] handlers;
+    private final IParametricSegment[] parametricSegments;
+    private final int slotCount;
+    private final int[] handlerIds;
+    private final int[] childOffsets;
+    private final int[] parametricSegmentIds;
+    private final int[] parametricSlots;
+    private final int[] parametricTargets;
+    private final int[] wildcardTargets;
+    private final int[] childHashes;
+    private final int[] childTargets;
+    private final int[] childChainOffsets;
+    private final int[] segmentOffsets;
+    private final ByteBuffer segmentBytes;
+
+    CompiledRouteTree(RouteTreeNode<T_REQ, T_RES> rootNode) {
+        this(new Flattener<T_REQ, T_RES>(rootNode));
+    }
+
+    private CompiledRouteTree(Flattener<T_REQ, T_RES> flattener) {
+        this.handlers = flattener.handlers;
+        this.parametricSegments = flattener.parametricSegments;
+        this.slotCount = flattener.slotCount;
+        this.handlerIds = flattener.handlerIds;
+        this.childOffsets = flattener.childOffsets;
+        this.parametricSegmentIds = flattener.parametricSegmentIds;
+        this.parametricSlots = flattener.parametricSlots;
+        this.parametricTargets = flattener.parametricTargets;
+        this.wildcardTargets = flattener.wildcardTargets;
+        this.childHashes = flattener.childHashes;
+        this.childTargets = flattener.childTargets;
+        this.childChainOffsets = flattener.childChainOffsets;
+        this.segmentOffsets = flattener.segmentOffsets;
+        this.segmentBytes = flattener.segmentBytes;
+    }
+
+    private CompiledRouteTree(ByteBuffer data, Layout layout, IRouteHandler<T_REQ, T_RES>[] handlers, IParametricSegment[] parametricSegments) {
+        this.handlers = handlers;
+        this.parametricSegments = parametricSegments;
+        this.slotCount = layout.slotCount;
+        this.handlerIds = readInts(data, layout.handlerIds, layout.nodeCount);
+        this.childOffsets = readInts(data, layout.childOffsets, layout.nodeCount + 1);
+        this.parametricSegmentIds = readInts(data, layout.parametricSegmentIds, layout.nodeCount);
+        this.parametricSlots = readInts(data, layout.parametricSlots, layout.nodeCount);
+        this.parametricTargets = readInts(data, layout.parametricTargets, layout.nodeCount);
+        this.wildcardTargets = readInts(data, layout.wildcardTargets, layout.nodeCount);
+        this.childHashes = readInts(data, layout.childHashes, layout.edgeCount);
+        this.childTargets = readInts(data, layout.childTargets, layout.edgeCount);
+        this.childChainOffsets = readInts(data, layout.childChainOffsets, layout.edgeCount + 1);
+        this.segmentOffsets = readInts(data, layout.segmentOffsets, layout.getSegmentCount() + 1);
+
+        ByteBuffer segmentBytes = data.duplicate();
+        segmentBytes.position(layout.bytes);
+        segmentBytes.limit(layout.bytes + layout.byteCount);
+        this.segmentBytes = segmentBytes.slice();
+    }
+
+    private static int[] readInts(ByteBuffer data, int offset, int length) {
+        int[] res = new int[length];
+        ByteBuffer source = data.duplicate();
+        source.position(offset);
+        source.asIntBuffer().get(res);
+        return res;
+    }
+
+    /**
+     * <p>Loads a tree written by {@link #writeTo(OutputStream, Map)}. The tree is read from the buffer, from its
+     * position, for as long as it is in use, so the buffer must not change.</p>
+     *
+     * @param data The written tree, typically a memory-mapped file.
+     * @param handlers The handlers, by the ids they were written with.
+     * @return The loaded (immutable) tree
+     * @throws IllegalArgumentException If the buffer does not contain a tree, the tree is corrupt, or a handler id has
+     * no handler.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <T_REQ extends IRequest, T_RES> CompiledRouteTree<T_REQ, T_RES> load(ByteBuffer data, List<? extends IRouteHandler<T_REQ, T_RES>> handlers) {
+        ByteBuffer slice = data.slice();
+        Layout layout = Layout.read(slice);
+
+        IRouteHandler<T_REQ, T_RES>[] boundHandlers = (IRouteHandler<T_REQ, T_RES>[]) new IRouteHandler[layout.handlerCount];
+        for (int i = 0; i < boundHandlers.length; i++) {
+            int handlerId = slice.getInt(layout.handlerTable + i * 4);
+            if (handlerId < 0 || handlerId >= handlers.size() || handlers.get(handlerId) == null) {
+                throw new IllegalArgumentException("No handler for the handler id " + handlerId);
+            }
+            boundHandlers[i] = handlers.get(handlerId);
+        }
+
+        IParametricSegment[] parametricSegments = new IParametricSegment[layout.parametricSegmentCount];
+        for (int i = 0; i < parametricSegments.length; i++) {
+            int nameSegment = layout.getSegmentCount() - layout.parametricSegmentCount + i;
+            int nameStart = slice.getInt(layout.segmentOffsets + nameSegment * 4);
+            int nameEnd = slice.getInt(layout.segmentOffsets + (nameSegment + 1) * 4);
+            if (nameStart < 0 || nameStart > nameEnd || nameEnd > layout.byteCount) {
+                throw corrupt("the name of parametric segment " + i + " is out of bounds");
+            }
+            String paramName = ByteCharSequence.decode(slice, layout.bytes + nameStart, layout.bytes + nameEnd);
+            long min = slice.getLong(layout.parametricMins + i * 8);
+            long max = slice.getLong(layout.parametricMaxes + i * 8);
+
+            int kind = slice.getInt(layout.parametricKinds + i * 4);
+            if (kind == STRING_SEGMENT) {
+                parametricSegments[i] = new StringSegment(paramName);
+            } else if (kind == NUMBER_SEGMENT) {
+                parametricSegments[i] = new NumberSegment(paramName, (int) min, (int) max);
+            } else if (kind == LONG_SEGMENT) {
+                parametricSegments[i] = new LongSegment(paramName, min, max);
+            } else if (kind == UUID_SEGMENT) {
+                parametricSegments[i] = new UuidSegment(paramName);
+            } else if (kind == HEX_SEGMENT) {
+                parametricSegments[i] = new HexSegment(paramName);
+            } else if (kind == DATE_SEGMENT) {
+                parametricSegments[i] = new DateSegment(paramName);
+            } else {
+                throw new IllegalArgumentException("Unknown kind of parametric segment " + kind + " for " + paramName);
+            }
+        }
+
+        CompiledRouteTree<T_REQ, T_RES> res = new CompiledRouteTree<T_REQ, T_RES>(slice, layout, boundHandlers, parametricSegments);
+        res.validate(layout);
+        return res;
+    }
+
+    /**
+     * Checks that every offset, target, slot and id in the tables is in bounds, so that a corrupt tree is rejected
+     * when it is loaded, and not when a request is matched against it.
+     */
+    private void validate(Layout layout) {
+        int nodeCount = layout.nodeCount;
+        if (nodeCount == 0) {
+            throw corrupt("it has no root node");
+        }
+        if (this.slotCount > nodeCount) {
+            throw corrupt("it has " + this.slotCount + " slots for " + nodeCount + " nodes");
+        }
+        validateOffsets("child offsets", this.childOffsets, layout.edgeCount);
+        validateOffsets("chain offsets", this.childChainOffsets, layout.chainCount);
+        validateOffsets("path segment offsets", this.segmentOffsets, layout.byteCount);
+
+        for (int node = 0; node < nodeCount; node++) {
+            validateId("handler", node, this.handlerIds[node], this.handlers.length);
+            validateId("wildcard child", node, this.wildcardTargets[node], nodeCount);
+            if (this.parametricTargets[node] == NO_NODE) {
+                if (this.parametricSegmentIds[node] != -1 || this.parametricSlots[node] != -1) {
+                    throw corrupt("node " + node + " has a parametric segment without a parametric child");
+                }
+            } else {
+                validateId("parametric child", node, this.parametricTargets[node], nodeCount);
+                validateId("parametric segment", node, this.parametricSegmentIds[node], this.parametricSegments.length);
+                if (this.parametricSlots[node] < 0 || this.parametricSlots[node] >= this.slotCount) {
+                    throw corrupt("node " + node + " has the slot " + this.parametricSlots[node] + " of " + this.slotCount);
+                }
+            }
+        }
+
+        for (int edge = 0; edge < layout.edgeCount; edge++) {
+            if (this.childTargets[edge] < 0 || this.childTargets[edge] >= nodeCount) {
+                throw corrupt("edge " + edge + " leads to the node " + this.childTargets[edge] + " of " + nodeCount);
+            }
+        }
+    }
+
+    /**
+     * @param id The id to check, in a table where -1 is no id.
+     */
+    private static void validateId(String name, int node, int id, int count) {
+        if (id < -1 || id >= count) {
+            throw corrupt("node " + node + " has the " + name + " " + id + " of " + count);
+        }
+    }
+
+    /**
+     * Checks that the offsets go from 0 to <tt>end</tt>, and never backwards.
+     */
+    private static void validateOffsets(String name, int[] offsets, int end) {
+        int previous = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            if (offsets[i] < previous || offsets[i] > end) {
+                throw corrupt("the " + name + " are out of order at " + i);
+            }
+            previous = offsets[i];
+        }
+        if (offsets[0] != 0 || previous != end) {
+            throw corrupt("the " + name + " do not go from 0 to " + end);
+        }
+    }
+
+    private static IllegalArgumentException corrupt(String reason) {
+        return new IllegalArgumentException("The compiled route tree is corrupt, " + reason);
+    }
+
+    /**
+     * Memory-maps a file written by {@link #writeTo(OutputStream, Map)}, and loads the tree from it. The file is read
+     * as requests are matched, and must not change while the tree is in use.
+     *
+     * @see #load(ByteBuffer, List)
+     */
+    public static <T_REQ extends IRequest, T_RES> CompiledRouteTree<T_REQ, T_RES> map(File file, List<? extends IRouteHandler<T_REQ, T_RES>> handlers) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), handlers);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * <p>Writes the tree in a compact binary format, for loading with {@link #load(ByteBuffer, List)} or
+     * {@link #map(File, List)}. Handlers can not be written, so each handler is written as an id, to bind to a handler
+     * when loading.</p>
+     *
+     * <p>Only StringSegment, NumberSegment, LongSegment, UuidSegment, HexSegment and DateSegment can be written, since
+     * the other parametric segments can not be created when loading.</p>
+     *
+     * @param out The stream to write to. Not closed.
+     * @param handlerIds The id of each handler in {@link #getHandlers()}. Ids are 0 or larger, and used as indexes in
+     *                   the list of handlers passed to load.
+     * @throws IllegalArgumentException If a handler has no id, or a parametric segment can not be written.
+     */
+    public void writeTo(OutputStream out, Map<IRouteHandler<T_REQ, T_RES>, Integer> handlerIds) throws IOException {
+        int edgeCount = this.childHashes.length;
+        int chainCount = this.childChainOffsets[edgeCount];
+        Layout layout = new Layout(this.handlerIds.length, edgeCount, chainCount, this.parametricSegments.length, this.handlers.length, this.slotCount, this.segmentBytes.capacity());
+        ByteBuffer res = ByteBuffer.allocate(layout.size);
+        layout.writeHeader(res);
+        putInts(res, layout.handlerIds, this.handlerIds);
+        putInts(res, layout.childOffsets, this.childOffsets);
+        putInts(res, layout.parametricSegmentIds, this.parametricSegmentIds);
+        putInts(res, layout.parametricSlots, this.parametricSlots);
+        putInts(res, layout.parametricTargets, this.parametricTargets);
+        putInts(res, layout.wildcardTargets, this.wildcardTargets);
+        putInts(res, layout.childHashes, this.childHashes);
+        putInts(res, layout.childTargets, this.childTargets);
+        putInts(res, layout.childChainOffsets, this.childChainOffsets);
+        putInts(res, layout.segmentOffsets, this.segmentOffsets);
+
+        for (int i = 0; i < this.parametricSegments.length; i++) {
+            IParametricSegment parametricSegment = this.parametricSegments[i];
+            if (parametricSegment.getClass() == StringSegment.class) {
+                res.putInt(layout.parametricKinds + i * 4, STRING_SEGMENT);
+            } else if (parametricSegment.getClass() == NumberSegment.class) {
+                res.putInt(layout.parametricKinds + i * 4, NUMBER_SEGMENT);
+                res.putLong(layout.parametricMins + i * 8, ((NumberSegment) parametricSegment).getMin());
+                res.putLong(layout.parametricMaxes + i * 8, ((NumberSegment) parametricSegment).getMax());
+            } else if (parametricSegment.getClass() == LongSegment.class) {
+                res.putInt(layout.parametricKinds + i * 4, LONG_SEGMENT);
+                res.putLong(layout.parametricMins + i * 8, ((LongSegment) parametricSegment).getMin());
+                res.putLong(layout.parametricMaxes + i * 8, ((LongSegment) parametricSegment).getMax());
+            } else if (parametricSegment.getClass() == UuidSegment.class) {
+                res.putInt(layout.parametricKinds + i * 4, UUID_SEGMENT);
+            } else if (parametricSegment.getClass() == HexSegment.class) {
+                res.putInt(layout.parametricKinds + i * 4, HEX_SEGMENT);
+            } else if (parametricSegment.getClass() == DateSegment.class) {
+                res.putInt(layout.parametricKinds + i * 4, DATE_SEGMENT);
+            } else {
+                throw new IllegalArgumentException("Cannot write the parametric segment " + parametricSegment.getParamName()
+                    + " of type " + parametricSegment.getClass().getName()
+                    + ", only StringSegment, NumberSegment, LongSegment, UuidSegment, HexSegment and DateSegment can be written");
+            }
+        }
+
+        for (int i = 0; i < this.handlers.length; i++) {
+            Integer handlerId = handlerIds.get(this.handlers[i]);
+            if (handlerId == null || handlerId < 0) {
+                throw new IllegalArgumentException("No handler id for the handler " + this.handlers[i]);
+            }
+            res.putInt(layout.handlerTable + i * 4, handlerId);
+        }
+
+        ByteBuffer segmentBytes = this.segmentBytes.duplicate();
+        segmentBytes.clear();
+        res.position(layout.bytes);
+        res.put(segmentBytes);
+
+        out.write(res.array());
+    }
+
+    private static void putInts(ByteBuffer data, int offset, int[] values) {
+        for (int i = 0; i < values.length; i++) {
+            data.putInt(offset + i * 4, values[i]);
+        }
+    }
+
+    /**
+     * @return The distinct handlers in the tree.
+     */
+    public List<IRouteHandler<T_REQ, T_RES>> getHandlers() {
+        return Collections.unmodifiableList(Arrays.asList(this.handlers.clone()));
+    }
+
+    /**
+     * Skips past nodes that only lead on to a single static child.
+     *
+     * @param node The node at the end of a static edge
+     * @param chain Gets the path segments of the skipped edges added to it
+     * @return The first node that is not skipped.
+     */
+    private static <T_REQ extends IRequest, T_RES> RouteTreeNode<T_REQ, T_RES> followChain(RouteTreeNode<T_REQ, T_RES> node, List<String> chain) {
+        while (node.getHandler() == null
+            && !node.hasParametricChild()
+            && !node.hasWildcardChild()
+            && node.getPathSegmentChildNodes().size() == 1) {
+            Map.Entry<String, RouteTreeNode<T_REQ, T_RES>> child = node.getPathSegmentChildNodes().entrySet().iterator().next();
+            chain.add(child.getKey());
+            node = child.getValue();
+        }
+        return node;
+    }
+
+    /**
+     * @return The number of nodes in the compiled tree.
+     */
+    public int getNodeCount() {
+        return this.handlerIds.length;
+    }
+
+    /**
+     * @return The most parametric segments in a single route, i.e. the number of slots a RouteMatchResult needs.
+     * @see MatchContext#MatchContext(int)
+     */
+    public int getSlotCount() {
+        return this.slotCount;
+    }
+
+    /**
+     * Looks up the static edge from a node that starts with the path segment. Static children take precedence over
+     * parametric and wildcard children, just like in RouteTreeNode.
+     *
+     * @param node The id of the node to look in
+     * @param pathSegment The path segment to look for
+     * @return The id of the edge, or NO_EDGE when the node has no static child for the path segment.
+     */
+    public int getPathSegmentEdge(int node, String pathSegment) {
+        int hash = pathSegment.hashCode();
+        int edge = findFirstEdgeWithHash(node, hash);
+        if (edge == NO_EDGE) {
+            return NO_EDGE;
+        }
+
+        int end = this.childOffsets[node + 1];
+        for (; edge < end && this.childHashes[edge] == hash; edge++) {
+            if (segmentEquals(edge, pathSegment, 0, pathSegment.length())) {
+                return edge;
+            }
+        }
+
+        return NO_EDGE;
+    }
+
+    /**
+     * Like {@link #getPathSegmentEdge(int, String)}, but looks up the path segment from a range of a raw path, in
+     * place.
+     *
+     * @param node The id of the node to look in
+     * @param source The raw path
+     * @param start The index of the first char of the path segment in source
+     * @param end The index after the last char of the path segment in source
+     * @return The id of the edge, or NO_EDGE when the node has no static child for the path segment.
+     */
+    public int getPathSegmentEdge(int node, CharSequence source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        int edge = findFirstEdgeWithHash(node, hash);
+        if (edge == NO_EDGE) {
+            return NO_EDGE;
+        }
+
+        int edgesEnd = this.childOffsets[node + 1];
+        for (; edge < edgesEnd && this.childHashes[edge] == hash; edge++) {
+            if (segmentEquals(edge, source, start, end)) {
+                return edge;
+            }
+        }
+
+        return NO_EDGE;
+    }
+
+    /**
+     * Like {@link #getPathSegmentEdge(int, String)}, but looks up the path segment from a range of a raw path in UTF-8
+     * bytes, without decoding it unless it has non-ASCII chars.
+     *
+     * @param node The id of the node to look in
+     * @param source The raw path
+     * @param start The absolute index of the first byte of the path segment in source
+     * @param end The absolute index after the last byte of the path segment in source
+     * @return The id of the edge, or NO_EDGE when the node has no static child for the path segment.
+     */
+    public int getPathSegmentEdge(int node, ByteBuffer source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            byte b = source.get(i);
+            if (b < 0) {
+                hash = ByteCharSequence.decode(source, start, end).hashCode();
+                break;
+            }
+            hash = 31 * hash + b;
+        }
+
+        int edge = findFirstEdgeWithHash(node, hash);
+        if (edge == NO_EDGE) {
+            return NO_EDGE;
+        }
+
+        int edgesEnd = this.childOffsets[node + 1];
+        for (; edge < edgesEnd && this.childHashes[edge] == hash; edge++) {
+            if (segmentBytesEqual(edge, source, start, end)) {
+                return edge;
+            }
+        }
+
+        return NO_EDGE;
+    }
+
+    /**
+     * @param edge The id of the edge
+     * @return The number of path segments the edge covers. 1 unless the edge is a collapsed chain of nodes.
+     */
+    public int getEdgePathSegmentCount(int edge) {
+        return 1 + this.childChainOffsets[edge + 1] - this.childChainOffsets[edge];
+    }
+
+    /**
+     * @param edge The id of the edge
+     * @param index The index of the path segment on the edge, 0 being the one the edge was looked up by.
+     * @return The path segment, decoded from UTF-8.
+     */
+    public String getEdgePathSegment(int edge, int index) {
+        int segment = getEdgeSegment(edge, index);
+        return ByteCharSequence.decode(this.segmentBytes, getSegmentStart(segment), getSegmentStart(segment + 1));
+    }
+
+    /**
+     * Like {@link #getEdgePathSegment(int, int)}, but compares the path segment to a range of a raw path, in place.
+     */
+    public boolean edgePathSegmentEquals(int edge, int index, CharSequence source, int start, int end) {
+        return segmentEquals(getEdgeSegment(edge, index), source, start, end);
+    }
+
+    /**
+     * Like {@link #getEdgePathSegment(int, int)}, but compares the path segment to a range of a raw path in UTF-8
+     * bytes, in place.
+     */
+    public boolean edgePathSegmentEquals(int edge, int index, ByteBuffer source, int start, int end) {
+        return segmentBytesEqual(getEdgeSegment(edge, index), source, start, end);
+    }
+
+    /**
+     * @param edge The id of the edge
+     * @return The id of the node at the end of the edge, reached when all its path segments match.
+     */
+    public int getEdgeTarget(int edge) {
+        return this.childTargets[edge];
+    }
+
+    /**
+     * The first path segment of every edge has the id of the edge. The rest of the path segments of collapsed chains
+     * come after them.
+     */
+    private int getEdgeSegment(int edge, int index) {
+        if (index == 0) {
+            return edge;
+        }
+        return this.childHashes.length + this.childChainOffsets[edge] + index - 1;
+    }
+
+    private int getSegmentStart(int segment) {
+        return this.segmentOffsets[segment];
+    }
+
+    /**
+     * Compares chars to the UTF-8 bytes one by one, as long as they are ASCII, and decodes the path segment otherwise.
+     */
+    private boolean segmentEquals(int segment, CharSequence source, int start, int end) {
+        int segmentStart = getSegmentStart(segment);
+        int length = getSegmentStart(segment + 1) - segmentStart;
+
+        if (length == end - start) {
+            for (int i = 0; i < length; i++) {
+                char c = source.charAt(start + i);
+                if (c >= 0x80) {
+                    return decodedSegmentEquals(segment, source, start, end);
+                }
+                if (c != this.segmentBytes.get(segmentStart + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        for (int i = start; i < end; i++) {
+            if (source.charAt(i) >= 0x80) {
+                return decodedSegmentEquals(segment, source, start, end);
+            }
+        }
+        return false;
+    }
+
+    private boolean decodedSegmentEquals(int segment, CharSequence source, int start, int end) {
+        String pathSegment = ByteCharSequence.decode(this.segmentBytes, getSegmentStart(segment), getSegmentStart(segment + 1));
+        if (pathSegment.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < pathSegment.length(); i++) {
+            if (pathSegment.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean segmentBytesEqual(int segment, ByteBuffer source, int start, int end) {
+        int segmentStart = getSegmentStart(segment);
+        int length = getSegmentStart(segment + 1) - segmentStart;
+        if (length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (this.segmentBytes.get(segmentStart + i) != source.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int findFirstEdgeWithHash(int node, int hash) {
+        int low = this.childOffsets[node];
+        int high = this.childOffsets[node + 1] - 1;
+        int res = NO_EDGE;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midHash = this.childHashes[mid];
+            if (midHash < hash) {
+                low = mid + 1;
+            } else {
+                if (midHash == hash) {
+                    res = mid;
+                }
+                high = mid - 1;
+            }
+        }
+        return res;
+    }
+
+    public boolean hasParametricChild(int node) {
+        return this.parametricTargets[node] != NO_NODE;
+    }
+
+    public IParametricSegment getParametricChildSegment(int node) {
+        int parametricSegmentId = this.parametricSegmentIds[node];
+        if (parametricSegmentId < 0) {
+            return null;
+        }
+        return this.parametricSegments[parametricSegmentId];
+    }
+
+    /**
+     * The slot in RouteMatchResult that the value of the parametric child is stored in. The slot is the number of
+     * parametric segments between the root and the node.
+     */
+    public int getParametricChildSlot(int node) {
+        return this.parametricSlots[node];
+    }
+
+    public int getParametricChild(int node) {
+        return this.parametricTargets[node];
+    }
+
+    public boolean hasWildcardChild(int node) {
+        return this.wildcardTargets[node] != NO_NODE;
+    }
+
+    public int getWildcardChild(int node) {
+        return this.wildcardTargets[node];
+    }
+
+    /**
+     * @param node The id of the node
+     * @return The handler associated with the node, or null.
+     * @see RouteTreeNode#getHandler()
+     */
+    public IRouteHandler<T_REQ, T_RES> getHandler(int node) {
+        int handlerId = this.handlerIds[node];
+        if (handlerId < 0) {
+            return null;
+        }
+        return this.handlers[handlerId];
+    }
+
+    /**
+     * <p>Where each table starts in the buffer. The buffer starts with a header of counts, followed by the tables, in
+     * the order of the fields below. Ints and longs are big-endian.</p>
+     *
+     * <p>The path segments of the edges, the rest of the path segments of collapsed chains, and the names of the
+     * parametric segments are stored as UTF-8 at the end, with a table of where each one starts.</p>
+     */
+    private static final class Layout {
+        private static final int HEADER_SIZE = 9 * 4;
+
+        private final int nodeCount;
+        private final int edgeCount;
+        private final int chainCount;
+        private final int parametricSegmentCount;
+        private final int handlerCount;
+        private final int slotCount;
+        private final int byteCount;
+
+        private final int handlerIds;
+        private final int childOffsets;
+        private final int parametricSegmentIds;
+        private final int parametricSlots;
+        private final int parametricTargets;
+        private final int wildcardTargets;
+        private final int childHashes;
+        private final int childTargets;
+        private final int childChainOffsets;
+        private final int segmentOffsets;
+        private final int parametricKinds;
+        private final int parametricMins;
+        private final int parametricMaxes;
+        private final int handlerTable;
+        private final int bytes;
+        private final int size;
+
+        Layout(int nodeCount, int edgeCount, int chainCount, int parametricSegmentCount, int handlerCount, int slotCount, int byteCount) {
+            this.nodeCount = nodeCount;
+            this.edgeCount = edgeCount;
+            this.chainCount = chainCount;
+            this.parametricSegmentCount = parametricSegmentCount;
+            this.handlerCount = handlerCount;
+            this.slotCount = slotCount;
+            this.byteCount = byteCount;
+
+            long offset = HEADER_SIZE;
+            this.handlerIds = (int) offset;
+            offset += 4L * nodeCount;
+            this.childOffsets = (int) offset;
+            offset += 4L * (nodeCount + 1L);
+            this.parametricSegmentIds = (int) offset;
+            offset += 4L * nodeCount;
+            this.parametricSlots = (int) offset;
+            offset += 4L * nodeCount;
+            this.parametricTargets = (int) offset;
+            offset += 4L * nodeCount;
+            this.wildcardTargets = (int) offset;
+            offset += 4L * nodeCount;
+            this.childHashes = (int) offset;
+            offset += 4L * edgeCount;
+            this.childTargets = (int) offset;
+            offset += 4L * edgeCount;
+            this.childChainOffsets = (int) offset;
+            offset += 4L * (edgeCount + 1L);
+            this.segmentOffsets = (int) offset;
+            offset += 4L * ((long) edgeCount + chainCount + parametricSegmentCount + 1);
+            this.parametricKinds = (int) offset;
+            offset += 4L * parametricSegmentCount;
+            this.parametricMins = (int) offset;
+            offset += 8L * parametricSegmentCount;
+            this.parametricMaxes = (int) offset;
+            offset += 8L * parametricSegmentCount;
+            this.handlerTable = (int) offset;
+            offset += 4L * handlerCount;
+            this.bytes = (int) offset;
+            offset += byteCount;
+
+            if (offset > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("The tree is too large to compile, " + offset + " bytes");
+            }
+            this.size = (int) offset;
+        }
+
+        int getSegmentCount() {
+            return this.edgeCount + this.chainCount + this.parametricSegmentCount;
+        }
+
+        void writeHeader(ByteBuffer data) {
+            data.putInt(0, MAGIC);
+            data.putInt(4, VERSION);
+            data.putInt(8, this.nodeCount);
+            data.putInt(12, this.edgeCount);
+            data.putInt(16, this.chainCount);
+            data.putInt(20, this.parametricSegmentCount);
+            data.putInt(24, this.handlerCount);
+            data.putInt(28, this.slotCount);
+            data.putInt(32, this.byteCount);
+        }
+
+        static Layout read(ByteBuffer data) {
+            if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+                throw new IllegalArgumentException("Not a compiled route tree");
+            }
+            if (data.getInt(4) != VERSION) {
+                throw new IllegalArgumentException("Unsupported version " + data.getInt(4) + " of compiled route tree, expected " + VERSION);
+            }
+
+            for (int i = 8; i < HEADER_SIZE; i += 4) {
+                if (data.getInt(i) < 0) {
+                    throw new IllegalArgumentException("Not a compiled route tree");
+                }
+            }
+
+            Layout res = new Layout(data.getInt(8), data.getInt(12), data.getInt(16), data.getInt(20), data.getInt(24), data.getInt(28), data.getInt(32));
+            if (res.size > data.capacity()) {
+                throw new IllegalArgumentException("The compiled route tree is truncated, expected " + res.size + " bytes, got " + data.capacity());
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Numbers the nodes of a RouteTreeNode, and builds the tables, with the path segments in a heap buffer.
+     */
+    private static final class Flattener<T_REQ extends IRequest, T_RES> {
+        private final IRouteHandler<T_REQ, T_RES>[] handlers;
+        private final IParametricSegment[] parametricSegments;
+        private final int slotCount;
+        private final int[] handlerIds;
+        private final int[] childOffsets;
+        private final int[] parametricSegmentIds;
+        private final int[] parametricSlots;
+        private final int[] parametricTargets;
+        private final int[] wildcardTargets;
+        private final int[] childHashes;
+        private final int[] childTargets;
+        private final int[] childChainOffsets;
+        private final int[] segmentOffsets;
+        private final ByteBuffer segmentBytes;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Flattener(RouteTreeNode<T_REQ, T_RES> rootNode) {
+            NodeIds<T_REQ, T_RES> nodeIds = new NodeIds<T_REQ, T_RES>();
+            List<String> chain = new ArrayList<String>();
+            int edgeCount = 0;
+            int chainCount = 0;
+
+            nodeIds.getNodeId(rootNode, 0);
+            for (int i = 0; i < nodeIds.size(); i++) {
+                RouteTreeNode<T_REQ, T_RES> node = nodeIds.getNode(i);
+                int depth = nodeIds.getParametricDepth(i);
+                for (RouteTreeNode<T_REQ, T_RES> child : node.getPathSegmentChildNodes().values()) {
+                    edgeCount++;
+                    chain.clear();
+                    nodeIds.getNodeId(followChain(child, chain), depth);
+                    chainCount += chain.size();
+                }
+                if (node.hasParametricChild()) {
+                    nodeIds.getNodeId(node.getParametricChildNode(), depth + 1);
+                }
+                if (node.hasWildcardChild()) {
+                    nodeIds.getNodeId(node.getWildcardChildNode(), depth);
+                }
+            }
+
+            int nodeCount = nodeIds.size();
+            int[] handlerIds = new int[nodeCount];
+            int[] childOffsets = new int[nodeCount + 1];
+            int[] parametricSegmentIds = new int[nodeCount];
+            int[] parametricSlots = new int[nodeCount];
+            int[] parametricTargets = new int[nodeCount];
+            int[] wildcardTargets = new int[nodeCount];
+            int[] childHashes = new int[edgeCount];
+            int[] childTargets = new int[edgeCount];
+            int[] childChainOffsets = new int[edgeCount + 1];
+            List<byte[]> segments = new ArrayList<byte[]>(edgeCount + chainCount);
+            List<byte[]> chainSegments = new ArrayList<byte[]>(chainCount);
+            Ids<IRouteHandler<T_REQ, T_RES>> handlers = new Ids<IRouteHandler<T_REQ, T_RES>>();
+            Ids<IParametricSegment> parametricSegments = new Ids<IParametricSegment>();
+
+            int edge = 0;
+            int slotCount = 0;
+            for (int i = 0; i < nodeCount; i++) {
+                RouteTreeNode<T_REQ, T_RES> node = nodeIds.getNode(i);
+                int depth = nodeIds.getParametricDepth(i);
+                handlerIds[i] = node.getHandler() == null ? -1 : handlers.getId(node.getHandler());
+
+                childOffsets[i] = edge;
+                List<String> pathSegments = new ArrayList<String>(node.getPathSegmentChildNodes().keySet());
+                Collections.sort(pathSegments, HASH_CODE_ORDER);
+                for (String pathSegment : pathSegments) {
+                    childHashes[edge] = pathSegment.hashCode();
+                    segments.add(pathSegment.getBytes(ByteCharSequence.UTF_8));
+                    chain.clear();
+                    childTargets[edge] = nodeIds.getNodeId(followChain(node.getPathSegmentChildNode(pathSegment), chain), depth);
+                    childChainOffsets[edge] = chainSegments.size();
+                    for (String chainPathSegment : chain) {
+                        chainSegments.add(chainPathSegment.getBytes(ByteCharSequence.UTF_8));
+                    }
+                    edge++;
+                }
+
+                if (node.hasParametricChild()) {
+                    parametricSegmentIds[i] = parametricSegments.getId(node.getParametricChildSegment());
+                    parametricSlots[i] = depth;
+                    parametricTargets[i] = nodeIds.getNodeId(node.getParametricChildNode(), depth + 1);
+                    slotCount = Math.max(slotCount, depth + 1);
+                } else {
+                    parametricSegmentIds[i] = -1;
+                    parametricSlots[i] = -1;
+                    parametricTargets[i] = NO_NODE;
+                }
+
+                wildcardTargets[i] = node.hasWildcardChild() ? nodeIds.getNodeId(node.getWildcardChildNode(), depth) : NO_NODE;
+            }
+            childOffsets[nodeCount] = edge;
+            childChainOffsets[edgeCount] = chainSegments.size();
+
+            segments.addAll(chainSegments);
+            for (IParametricSegment parametricSegment : parametricSegments.getValues()) {
+                segments.add(parametricSegment.getParamName().getBytes(ByteCharSequence.UTF_8));
+            }
+            int byteCount = 0;
+            for (byte[] segment : segments) {
+                byteCount += segment.length;
+            }
+
+            int[] segmentOffsets = new int[segments.size() + 1];
+            ByteBuffer segmentBytes = ByteBuffer.allocate(byteCount);
+            for (int i = 0; i < segments.size(); i++) {
+                segmentOffsets[i] = segmentBytes.position();
+                segmentBytes.put(segments.get(i));
+            }
+            segmentOffsets[segments.size()] = segmentBytes.position();
+            segmentBytes.clear();
+
+            this.handlers = handlers.getValues().toArray((IRouteHandler<T_REQ, T_RES>[]) new IRouteHandler[handlers.size()]);
+            this.parametricSegments = parametricSegments.getValues().toArray(new IParametricSegment[parametricSegments.size()]);
+            this.slotCount = slotCount;
+            this.handlerIds = handlerIds;
+            this.childOffsets = childOffsets;
+            this.parametricSegmentIds = parametricSegmentIds;
+            this.parametricSlots = parametricSlots;
+            this.parametricTargets = parametricTargets;
+            this.wildcardTargets = wildcardTargets;
+            this.childHashes = childHashes;
+            this.childTargets = childTargets;
+            this.childChainOffsets = childChainOffsets;
+            this.segmentOffsets = segmentOffsets;
+            this.segmentBytes = segmentBytes;
+        }
+    }
+
+    /**
+     * Numbers distinct objects, by identity, in the order they are first seen.
+     */
+    static class Ids<T> {
+        private final List<T> values = new ArrayList<T>();
+        private final IdentityHashMap<T, Integer> ids = new IdentityHashMap<T, Integer>();
+
+        public int getId(T value) {
+            Integer id = this.ids.get(value);
+            if (id == null) {
+                id = this.values.size();
+                this.values.add(value);
+                this.ids.put(value, id);
+            }
+            return id;
+        }
+
+        public int size() {
+            return this.values.size();
+        }
+
+        public List<T> getValues() {
+            return this.values;
+        }
+    }
+
+    /**
+     * Numbers the nodes in the order they are first seen. A node that appears in more than one place in the tree gets
+     * a single id, unless the places have a different number of parametric segments above them, since that gives the
+     * parametric values different slots.
+     */
+    static class NodeIds<T_REQ extends IRequest, T_RES> {
+        private final List<RouteTreeNode<T_REQ, T_RES>> nodes = new ArrayList<RouteTreeNode<T_REQ, T_RES>>();
+        private final List<Integer> parametricDepths = new ArrayList<Integer>();
+        private final HashMap<NodeAtDepth, Integer> nodeIds = new HashMap<NodeAtDepth, Integer>();
+
+        public int getNodeId(RouteTreeNode<T_REQ, T_RES> node, int parametricDepth) {
+            NodeAtDepth key = new NodeAtDepth(node, parametricDepth);
+            Integer nodeId = this.nodeIds.get(key);
+            if (nodeId == null) {
+                nodeId = this.nodes.size();
+                this.nodes.add(node);
+                this.parametricDepths.add(parametricDepth);
+                this.nodeIds.put(key, nodeId);
+            }
+            return nodeId;
+        }
+
+        public int size() {
+            return this.nodes.size();
+        }
+
+        public RouteTreeNode<T_REQ, T_RES> getNode(int nodeId) {
+            return this.nodes.get(nodeId);
+        }
+
+        public int getParametricDepth(int nodeId) {
+            return this.parametricDepths.get(nodeId);
+        }
+    }
+
+    private static class NodeAtDepth {
+        private final RouteTreeNode<?, ?> node;
+        private final int parametricDepth;
+
+        public NodeAtDepth(RouteTreeNode<?, ?> node, int parametricDepth) {
+            this.node = node;
+            this.parametricDepth = parametricDepth;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof NodeAtDepth) {
+                NodeAtDepth other = (NodeAtDepth) obj;
+                return other.node == this.node && other.parametricDepth == this.parametricDepth;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(this.node) + this.parametricDepth;
+        }
+    }
+
+    static final Comparator<String> HASH_CODE_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            int hashA = a.hashCode();
+            int hashB = b.hashCode();
+            return hashA < hashB ? -1 : (hashA == hashB ? 0 : 1);
+        }
+    };
+}
@@ -1,30 +1,145 @@
 package com.augustl.pathtravelagent;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
  * <p>Default implementation of path to path segments, i.e. <tt>"/projects/123?test"</tt> to <tt>["project", "123"]</tt>.</p>
+ *
+ * @see com.augustl.pathtravelagent.RequestTarget
  */
 public class DefaultPathToPathSegments {
     private static final List<String> EMPTY_PATH_SEGMENTS = new ArrayList<String>();
 
     public static List<String> parse(String path) {
-        String[] pathSegmentsAry = extractPath(path).split("/");
-        if (pathSegmentsAry.length == 0) {
+        return parse(path, findQueryStart(path));
+    }
+
+    /**
+     * Splits the path up to <tt>end</tt> into path segments, in a single pass, without regexps.
+     */
+    static List<String> parse(String path, int end) {
+        int pathEnd = findPathEnd(path, 0, end);
+        int segmentStart = findFirstSegmentStart(path, 0, pathEnd);
+        if (segmentStart == pathEnd) {
+            return EMPTY_PATH_SEGMENTS;
+        }
+
+        List<String> res = new ArrayList<String>();
+        while (true) {
+            int segmentEnd = findSegmentEnd(path, segmentStart, pathEnd);
+            res.add(path.substring(segmentStart, segmentEnd));
+            if (segmentEnd == pathEnd) {
+                return res;
+            }
+            segmentStart = segmentEnd + 1;
+        }
+    }
+
+    /**
+     * <p>Like {@link #parse(String)}, but also decodes <tt>%XX</tt> escapes in the path segments, as UTF-8, in the same
+     * pass. So <tt>"/files/a%20b%2Fc"</tt> becomes <tt>["files", "a b/c"]</tt>. An escaped slash is part of
+     * the path segment, and does not split it. A + is not decoded, as it is only a space in query strings.</p>
+     *
+     * <p>Path segments without escapes are not copied, they are substrings of the path, like with
+     * {@link #parse(String)}.</p>
+     *
+     * @return The decoded path segments, or null if an escape is malformed or the escaped bytes are not valid UTF-8.
+     */
+    public static List<String> parseDecoded(String path) {
+        return parseDecoded(path, findQueryStart(path));
+    }
+
+    static List<String> parseDecoded(String path, int end) {
+        int pathEnd = findPathEnd(path, 0, end);
+        int segmentStart = findFirstSegmentStart(path, 0, pathEnd);
+        if (segmentStart == pathEnd) {
             return EMPTY_PATH_SEGMENTS;
-        } else {
-            return Arrays.asList(pathSegmentsAry).subList(1, pathSegmentsAry.length);
+        }
+
+        List<String> res = new ArrayList<String>();
+        char[] decoded = null;
+        int i = segmentStart;
+        while (true) {
+            char c = 0;
+            while (i < pathEnd && (c = path.charAt(i)) != '/' && c != '%') {
+                i++;
+            }
+
+            if (i == pathEnd || c == '/') {
+                res.add(path.substring(segmentStart, i));
+            } else {
+                // Large enough for the rest of the path segments as well, since decoding never makes them longer.
+                if (decoded == null) {
+                    decoded = new char[pathEnd - segmentStart];
+                }
+                path.getChars(segmentStart, i, decoded, 0);
+                int length = i - segmentStart;
+                while (i < pathEnd && (c = path.charAt(i)) != '/') {
+                    if (c == '%') {
+                        int codePoint = PercentDecoder.decodeCodePoint(path, i, pathEnd);
+                        if (codePoint < 0) {
+                            return null;
+                        }
+                        length = PercentDecoder.appendCodePoint(decoded, length, codePoint);
+                        i += PercentDecoder.getEscapedLength(codePoint);
+                    } else {
+                        decoded[length++] = c;
+                        i++;
+                    }
+                }
+                res.add(new String(decoded, 0, length));
+            }
+
+            if (i == pathEnd) {
+                return res;
+            }
+            i++;
+            segmentStart = i;
         }
     }
 
     public static String extractPath(String path) {
-        String[] aroundQueryParams = path.split("\\?", 2);
-        if (aroundQueryParams.length == 0) {
-            return path;
-        } else {
-            return aroundQueryParams[0];
+        return path.substring(0, findQueryStart(path));
+    }
+
+    /**
+     * @return The index of the ? that starts the query string, or the length of the path if there is none.
+     */
+    static int findQueryStart(String path) {
+        int queryStart = path.indexOf('?');
+        return queryStart == -1 ? path.length() : queryStart;
+    }
+
+    /**
+     * Finds where the path segments of a raw path end, i.e. before the query string and any trailing slashes. Used
+     * for scanning a path in place, with the same result as {@link #parse(String)}.
+     */
+    static int findPathEnd(CharSequence path, int start, int end) {
+        int pathEnd = start;
+        while (pathEnd < end && path.charAt(pathEnd) != '?') {
+            pathEnd++;
+        }
+        while (pathEnd > start && path.charAt(pathEnd - 1) == '/') {
+            pathEnd--;
+        }
+        return pathEnd;
+    }
+
+    /**
+     * Like {@link #parse(String)}, everything up to and including the first slash is skipped. Returns pathEnd when
+     * the path has no segments.
+     */
+    static int findFirstSegmentStart(CharSequence path, int start, int pathEnd) {
+        int slash = findSegmentEnd(path, start, pathEnd);
+        return slash == pathEnd ? pathEnd : slash + 1;
+    }
+
+    static int findSegmentEnd(CharSequence path, int segmentStart, int pathEnd) {
+        int i = segmentStart;
+        while (i < pathEnd && path.charAt(i) != '/') {
+            i++;
         }
+        return i;
     }
 }
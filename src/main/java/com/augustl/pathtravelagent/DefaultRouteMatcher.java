@@ -1,6 +1,10 @@
 package com.augustl.pathtravelagent;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * <p>The default implementation of taking a RouteTreeNode and a request and returning a response.</p>
@@ -10,21 +14,120 @@ import java.util.List;
  */
 public class DefaultRouteMatcher<T_REQ extends IRequest, T_RES> {
     public T_RES match(final RouteTreeNode<T_REQ, T_RES> rootNode, T_REQ req) {
-        List<String> pathSegments = req.getPathSegments();
-        RouteTreeNode<T_REQ, T_RES> targetNode = rootNode;
+        return match(rootNode, req, new MatchContext<T_REQ>());
+    }
+
+    /**
+     * Like {@link #match(RouteTreeNode, IRequest)}, but reuses the match result in the context instead of creating a
+     * new one.
+     */
+    public T_RES match(final RouteTreeNode<T_REQ, T_RES> rootNode, T_REQ req, MatchContext<T_REQ> ctx) {
+        RouteTreeNode<T_REQ, T_RES> targetNode = findTargetNode(rootNode, req.getPathSegments(), ctx.begin(req));
+        if (targetNode == null) {
+            return null;
+        }
+
+        if (targetNode.getHandler() == null) {
+            return null;
+        }
+
+        return targetNode.getHandler().call(ctx.getRouteMatch());
+    }
+
+    /**
+     * Matches the request like {@link #match(RouteTreeNode, IRequest)} does, but does not call the handler.
+     *
+     * @return The handler and the value to call it with, or null if nothing matched.
+     */
+    public ResolvedRoute<T_REQ, T_RES> resolve(final RouteTreeNode<T_REQ, T_RES> rootNode, T_REQ req) {
+        RouteMatchResult routeMatchResult = new RouteMatchResult();
+        RouteTreeNode<T_REQ, T_RES> targetNode = findTargetNode(rootNode, req.getPathSegments(), routeMatchResult);
+        if (targetNode == null) {
+            return null;
+        }
+
+        if (targetNode.getHandler() == null) {
+            return null;
+        }
+
+        return new ResolvedRoute<T_REQ, T_RES>(targetNode.getHandler(), new RouteMatch<T_REQ>(req, routeMatchResult));
+    }
+
+    /**
+     * Like {@link #match(RouteTreeNode, IRequest)}, but calls the handler for the HTTP method of the request.
+     *
+     * @return The value returned by the handler, or null if nothing matched or the route has no handler for the
+     * method. Use {@link #resolve(RouteTreeNode, IRequest, HttpMethod)} to tell these apart.
+     * @see RouteTreeNode#getHandler(HttpMethod)
+     */
+    public T_RES match(final RouteTreeNode<T_REQ, T_RES> rootNode, T_REQ req, HttpMethod method) {
+        return match(rootNode, req, method, new MatchContext<T_REQ>());
+    }
+
+    public T_RES match(final RouteTreeNode<T_REQ, T_RES> rootNode, T_REQ req, HttpMethod method, MatchContext<T_REQ> ctx) {
+        RouteTreeNode<T_REQ, T_RES> targetNode = findTargetNode(rootNode, req.getPathSegments(), ctx.begin(req));
+        if (targetNode == null) {
+            return null;
+        }
+
+        IRouteHandler<T_REQ, T_RES> handler = targetNode.getHandler(method);
+        if (handler == null) {
+            return null;
+        }
+
+        return handler.call(ctx.getRouteMatch());
+    }
+
+    /**
+     * <p>Matches the request like {@link #match(RouteTreeNode, IRequest, HttpMethod)} does, but does not call the
+     * handler.</p>
+     *
+     * <p>When the route has handlers, but none for the method, the route is returned without a handler, so that 405
+     * Method Not Allowed and OPTIONS can be answered from {@link ResolvedRoute#getAllowHeader()}.</p>
+     *
+     * @param method The HTTP method of the request, or null for a method that is not known, which only uses the handler
+     *               for all methods.
+     * @return The handler and the value to call it with, the route without a handler, or null if nothing matched.
+     */
+    public ResolvedRoute<T_REQ, T_RES> resolve(final RouteTreeNode<T_REQ, T_RES> rootNode, T_REQ req, HttpMethod method) {
         RouteMatchResult routeMatchResult = new RouteMatchResult();
+        RouteTreeNode<T_REQ, T_RES> targetNode = findTargetNode(rootNode, req.getPathSegments(), routeMatchResult);
+        if (targetNode == null) {
+            return null;
+        }
+
+        if (!targetNode.hasHandlers()) {
+            return null;
+        }
+
+        return new ResolvedRoute<T_REQ, T_RES>(
+            targetNode.getHandler(method),
+            new RouteMatch<T_REQ>(req, routeMatchResult),
+            targetNode.getAllowedMethods(),
+            targetNode.getAllowHeader());
+    }
+
+    /**
+     * Walks the tree, adding the values of parametric and wildcard segments to the match result along the way.
+     *
+     * @return The node the path segments lead to, or null if there is no such node. The node might not have a handler.
+     */
+    RouteTreeNode<T_REQ, T_RES> findTargetNode(final RouteTreeNode<T_REQ, T_RES> rootNode, List<String> pathSegments, RouteMatchResult routeMatchResult) {
+        RouteTreeNode<T_REQ, T_RES> targetNode = rootNode;
+        int slot = 0;
 
         int i;
         for (i = 0; i < pathSegments.size(); i++) {
             String pathSegment = pathSegments.get(i);
 
-            if (targetNode.containsPathSegmentChildNodes(pathSegment)) {
-                targetNode = targetNode.getPathSegmentChildNode(pathSegment);
+            RouteTreeNode<T_REQ, T_RES> childNode = targetNode.findPathSegmentChildNode(pathSegment);
+            if (childNode != null) {
+                targetNode = childNode;
                 continue;
             }
 
             if (targetNode.hasParametricChild()) {
-                if (!routeMatchResult.addParametricSegment(targetNode.getParametricChildSegment(), pathSegment)) {
+                if (!routeMatchResult.addParametricSegment(targetNode.getParametricChildSegment(), slot++, pathSegment)) {
                     return null;
                 }
                 targetNode = targetNode.getParametricChildNode();
@@ -43,14 +146,201 @@ public class DefaultRouteMatcher<T_REQ extends IRequest, T_RES> {
             return null;
         }
 
-        if (targetNode == null) {
-            return null;
+        return targetNode;
+    }
+
+    /**
+     * Looks up the request in the index of static routes first, and walks the tree the index was built from if it is
+     * not there. Gives the same result as matching the tree directly.
+     *
+     * @see StaticPathIndex
+     */
+    public T_RES match(final StaticPathIndex<T_REQ, T_RES> index, T_REQ req) {
+        return match(index, req, new MatchContext<T_REQ>());
+    }
+
+    public T_RES match(final StaticPathIndex<T_REQ, T_RES> index, T_REQ req, MatchContext<T_REQ> ctx) {
+        IRouteHandler<T_REQ, T_RES> handler = index.getHandler(req.getPathSegments());
+        if (handler == null) {
+            return match(index.getRootNode(), req, ctx);
         }
 
-        if (targetNode.getHandler() == null) {
-            return null;
+        ctx.begin(req);
+        return handler.call(ctx.getRouteMatch());
+    }
+
+    /**
+     * <p>Matches many requests at once, with the same results as calling {@link #match(RouteTreeNode, IRequest)} for
+     * each of them, in order.</p>
+     *
+     * <p>The requests are sorted by their path segments, so that requests that start with the same path segments
+     * come after each other. The part of the tree for the path segments a request shares with the request before it is
+     * only walked once, for the first of them. The handlers are still called once per request, with a match result of
+     * their own.</p>
+     *
+     * @param rootNode The tree to match against
+     * @param reqs The requests to match
+     * @return The value returned by the handler for each request, or null if nothing matched, in the same order as the
+     * requests.
+     */
+    public List<T_RES> matchAll(final RouteTreeNode<T_REQ, T_RES> rootNode, List<T_REQ> reqs) {
+        final List<List<String>> pathSegments = new ArrayList<List<String>>(reqs.size());
+        Integer[] order = new Integer[reqs.size()];
+        int maxPathSegmentCount = 0;
+        for (int i = 0; i < reqs.size(); i++) {
+            List<String> reqPathSegments = reqs.get(i).getPathSegments();
+            pathSegments.add(reqPathSegments);
+            order[i] = i;
+            maxPathSegmentCount = Math.max(maxPathSegmentCount, reqPathSegments.size());
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return comparePathSegments(pathSegments.get(a), pathSegments.get(b));
+            }
+        });
+
+        List<T_RES> res = new ArrayList<T_RES>(Collections.<T_RES>nCopies(reqs.size(), null));
+        PrefixWalk<T_REQ, T_RES> walk = new PrefixWalk<T_REQ, T_RES>(rootNode, maxPathSegmentCount);
+        for (Integer i : order) {
+            RouteTreeNode<T_REQ, T_RES> targetNode = walk.walk(pathSegments.get(i));
+            if (targetNode == null || targetNode.getHandler() == null) {
+                continue;
+            }
+
+            RouteMatchResult routeMatchResult = new RouteMatchResult();
+            routeMatchResult.copyFrom(walk.getRouteMatchResult());
+            res.set(i, targetNode.getHandler().call(new RouteMatch<T_REQ>(reqs.get(i), routeMatchResult)));
+        }
+        return res;
+    }
+
+    /**
+     * Like {@link #matchAll(RouteTreeNode, List)}, but splits the requests into batches that are matched in parallel,
+     * on the executor. Each batch is sorted and walked on its own.
+     *
+     * @param rootNode The tree to match against
+     * @param reqs The requests to match
+     * @param executor The executor to match the batches on, for example a ForkJoinPool
+     * @param batchSize The number of requests in each batch. When there are no more requests than this, they are all
+     *                  matched on the calling thread.
+     * @return The value returned by the handler for each request, or null if nothing matched, in the same order as the
+     * requests.
+     * @throws IllegalStateException When interrupted while waiting for the batches to complete.
+     */
+    public List<T_RES> matchAll(final RouteTreeNode<T_REQ, T_RES> rootNode, List<T_REQ> reqs, ExecutorService executor, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1, was " + batchSize);
+        }
+        if (reqs.size() <= batchSize) {
+            return matchAll(rootNode, reqs);
+        }
+
+        List<Future<List<T_RES>>> batches = new ArrayList<Future<List<T_RES>>>();
+        for (int start = 0; start < reqs.size(); start += batchSize) {
+            final List<T_REQ> batch = reqs.subList(start, Math.min(start + batchSize, reqs.size()));
+            batches.add(executor.submit(new Callable<List<T_RES>>() {
+                @Override
+                public List<T_RES> call() {
+                    return matchAll(rootNode, batch);
+                }
+            }));
+        }
+
+        List<T_RES> res = new ArrayList<T_RES>(reqs.size());
+        try {
+            for (Future<List<T_RES>> batch : batches) {
+                res.addAll(batch.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while matching requests", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return res;
+    }
+
+    private static int comparePathSegments(List<String> a, List<String> b) {
+        int length = Math.min(a.size(), b.size());
+        for (int i = 0; i < length; i++) {
+            int res = a.get(i).compareTo(b.get(i));
+            if (res != 0) {
+                return res;
+            }
+        }
+        return a.size() - b.size();
+    }
+
+    /**
+     * Walks the tree for one path after the other, starting each walk from where the previous path left off.
+     * Remembers the node and the number of parametric values for every path segment of the previous path that did not
+     * end the walk, so that the next path can start from the last path segment the paths have in common.
+     */
+    private static class PrefixWalk<T_REQ extends IRequest, T_RES> {
+        private final RouteMatchResult routeMatchResult = new RouteMatchResult();
+        private final List<RouteTreeNode<T_REQ, T_RES>> nodes;
+        private final int[] slots;
+        private List<String> pathSegments = Collections.emptyList();
+        private int depth = 0;
+
+        public PrefixWalk(RouteTreeNode<T_REQ, T_RES> rootNode, int maxPathSegmentCount) {
+            this.nodes = new ArrayList<RouteTreeNode<T_REQ, T_RES>>(Collections.<RouteTreeNode<T_REQ, T_RES>>nCopies(maxPathSegmentCount + 1, null));
+            this.nodes.set(0, rootNode);
+            this.slots = new int[maxPathSegmentCount + 1];
         }
 
-        return targetNode.getHandler().call(new RouteMatch<T_REQ>(req, routeMatchResult));
+        public RouteMatchResult getRouteMatchResult() {
+            return this.routeMatchResult;
+        }
+
+        /**
+         * @return The node the path segments lead to, or null. Like DefaultRouteMatcher#findTargetNode, with the values
+         * in getRouteMatchResult().
+         */
+        public RouteTreeNode<T_REQ, T_RES> walk(List<String> pathSegments) {
+            int i = 0;
+            while (i < this.depth && i < pathSegments.size() && pathSegments.get(i).equals(this.pathSegments.get(i))) {
+                i++;
+            }
+            this.pathSegments = pathSegments;
+            this.depth = i;
+            this.routeMatchResult.truncate(this.slots[i]);
+
+            RouteTreeNode<T_REQ, T_RES> targetNode = this.nodes.get(i);
+            int slot = this.slots[i];
+            for (; i < pathSegments.size(); i++) {
+                String pathSegment = pathSegments.get(i);
+
+                RouteTreeNode<T_REQ, T_RES> childNode = targetNode.findPathSegmentChildNode(pathSegment);
+                if (childNode != null) {
+                    targetNode = childNode;
+                } else if (targetNode.hasParametricChild()) {
+                    if (!this.routeMatchResult.addParametricSegment(targetNode.getParametricChildSegment(), slot++, pathSegment)) {
+                        return null;
+                    }
+                    targetNode = targetNode.getParametricChildNode();
+                } else if (targetNode.hasWildcardChild()) {
+                    for (; i < pathSegments.size(); i++) {
+                        this.routeMatchResult.addToWildcardMatches(pathSegments.get(i));
+                    }
+                    return targetNode.getWildcardChildNode();
+                } else {
+                    return null;
+                }
+
+                this.depth = i + 1;
+                this.nodes.set(this.depth, targetNode);
+                this.slots[this.depth] = slot;
+            }
+
+            return targetNode;
+        }
     }
 }
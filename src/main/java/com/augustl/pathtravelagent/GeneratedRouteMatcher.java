@@ -0,0 +1,84 @@
+package com.augustl.pathtravelagent;
+
+import com.augustl.pathtravelagent.segment.IParametricSegment;
+
+import java.util.List;
+
+/**
+ * <p>A matcher for a single route tree, generated as Java source and compiled at runtime. Matches exactly like
+ * {@link DefaultRouteMatcher} does for the tree it was generated from.</p>
+ *
+ * <p>Every node in the tree becomes a static method. The static children of a node become a switch on the hash code
+ * of the path segment, parametric segments are checked with the segment in a static final field, and handlers are
+ * called through static final fields. The JIT treats static final fields as constants, so it can inline the segments
+ * and handlers into the code that matches the routes leading to them.</p>
+ *
+ * <pre>
+ * {@code
+ *  GeneratedRouteMatcher<MyReq, MyRes> matcher = GeneratedRouteMatcher.generate(routeTreeNode);
+ *  MyRes res = matcher.match(req);
+ * }
+ * </pre>
+ *
+ * <p>Generating takes a while, since it runs the Java compiler, so it is meant for large route sets that do not
+ * change. A tree that changes has to be generated again. It needs a JDK, and PathTravelAgent on the class path of the
+ * JVM, or in a jar or directory the compiler can read.</p>
+ *
+ * @param <T_REQ> A request object, implementing IRequest.
+ * @param <T_RES> The return value for the handler. Can be any type you want, not used for anything by PathTravelAgent.
+ * @see com.augustl.pathtravelagent.CompiledRouteMatcher
+ */
+public abstract class GeneratedRouteMatcher<T_REQ extends IRequest, T_RES> {
+    protected GeneratedRouteMatcher() {
+    }
+
+    /**
+     * Generates and compiles a matcher for the tree.
+     *
+     * @param rootNode The (immutable) tree to match against.
+     * @return The generated matcher. Thread safe.
+     * @throws UnsupportedOperationException If the JVM has no Java compiler, i.e. it is not a JDK.
+     * @throws IllegalStateException If the generated matcher does not compile.
+     */
+    public static <T_REQ extends IRequest, T_RES> GeneratedRouteMatcher<T_REQ, T_RES> generate(RouteTreeNode<T_REQ, T_RES> rootNode) {
+        return new RouteMatcherGenerator<T_REQ, T_RES>(rootNode).generate();
+    }
+
+    public T_RES match(T_REQ req) {
+        return match(req, new MatchContext<T_REQ>());
+    }
+
+    /**
+     * Like {@link #match(IRequest)}, but reuses the match result in the context instead of creating a new one.
+     */
+    public T_RES match(T_REQ req, MatchContext<T_REQ> ctx) {
+        RouteMatchResult routeMatchResult = ctx.begin(req);
+        return match(req.getPathSegments(), routeMatchResult, ctx.getRouteMatch());
+    }
+
+    /**
+     * Implemented by the generated code.
+     */
+    protected abstract T_RES match(List<String> pathSegments, RouteMatchResult routeMatchResult, RouteMatch<T_REQ> routeMatch);
+
+    /**
+     * Used by the generated code to get the handlers, when its classes are initialized.
+     */
+    protected static IRouteHandler<?, ?> getHandler(Class<?> generatedClass, int handlerId) {
+        return getClassLoader(generatedClass).getHandler(handlerId);
+    }
+
+    /**
+     * Used by the generated code to get the parametric segments, when its classes are initialized.
+     */
+    protected static IParametricSegment getParametricSegment(Class<?> generatedClass, int parametricSegmentId) {
+        return getClassLoader(generatedClass).getParametricSegment(parametricSegmentId);
+    }
+
+    private static RouteMatcherGenerator.GeneratedClassLoader getClassLoader(Class<?> generatedClass) {
+        if (!(generatedClass.getClassLoader() instanceof RouteMatcherGenerator.GeneratedClassLoader)) {
+            throw new IllegalArgumentException("Not a generated class: " + generatedClass.getName());
+        }
+        return (RouteMatcherGenerator.GeneratedClassLoader) generatedClass.getClassLoader();
+    }
+}
@@ -0,0 +1,37 @@
+package com.augustl.pathtravelagent;
+
+/**
+ * <p>The HTTP methods a route can have handlers for, with {@link RouteTreeBuilder#handler(HttpMethod, IRouteHandler)}.
+ * The ordinal is used as the index into the handlers of a node.</p>
+ *
+ * @see com.augustl.pathtravelagent.RouteTreeNode#getHandler(HttpMethod)
+ */
+public enum HttpMethod {
+    GET, HEAD, POST, PUT, DELETE, PATCH, OPTIONS, TRACE, CONNECT;
+
+    private static final HttpMethod[] METHODS = values();
+
+    /**
+     * Like {@link #valueOf(String)}, but returns null instead of throwing for names that are not HTTP methods, such as
+     * an unknown method in a request. Case sensitive, as HTTP methods are.
+     *
+     * @param name The name of the method, such as "GET".
+     * @return The method, or null.
+     */
+    public static HttpMethod parse(String name) {
+        for (HttpMethod method : METHODS) {
+            if (method.name().equals(name)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    static HttpMethod get(int ordinal) {
+        return METHODS[ordinal];
+    }
+
+    static int count() {
+        return METHODS.length;
+    }
+}
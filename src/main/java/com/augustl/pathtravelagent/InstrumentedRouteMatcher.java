@@ -0,0 +1,474 @@
+package com.augustl.pathtravelagent;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Wraps DefaultRouteMatcher with counters for which routes are matched, where requests that match nothing stop
+ * matching, and how long matching and handlers take. Read the counters with {@link #getSnapshot()}.</p>
+ *
+ * <p>Routes are counted by their template, such as <tt>/projects/:projectId/todos</tt>, with <tt>*</tt> for wildcards.
+ * A request that does not match a route is counted as a miss at the number of path segments that matched before
+ * matching failed, so that <tt>/projects/abc</tt> with a numeric :projectId is a miss at depth 1.</p>
+ *
+ * <p>The counters are split into stripes, one for each of a few groups of threads, so that threads matching the same
+ * route do not update the same counter. To keep the cost of reading the clock down, only every n-th request is timed,
+ * given by the latency sample interval. When disabled, the matcher calls DefaultRouteMatcher and counts nothing.</p>
+ *
+ * <p>The templates are found by walking the tree the first time the matcher is called with a root node. Requests are
+ * matched against a copy of the tree with a template for each route, so that a node that is shared by many routes,
+ * such as in a canonical tree, is counted under the template of the route that was matched. When called
+ * with another root node, for example after routes were added, the counts for the old root node are kept, by
+ * template. Use one matcher for each tree that is in use at the same time.</p>
+ *
+ * <p>Instances are thread safe, and intended to be shared.</p>
+ *
+ * @param <T_REQ> A request object, implementing IRequest.
+ * @param <T_RES> The return value for the handler. Can be any type you want, not used for anything by PathTravelAgent.
+ * @see com.augustl.pathtravelagent.DefaultRouteMatcher
+ */
+public class InstrumentedRouteMatcher<T_REQ extends IRequest, T_RES> {
+    /**
+     * Misses deeper than this are counted at this depth.
+     */
+    public static final int MAX_MISS_DEPTH = 31;
+    private static final int DEFAULT_LATENCY_SAMPLE_INTERVAL = 16;
+    private static final int MAX_STRIPE_COUNT = 8;
+    // Counters of different stripes are at least this many longs apart, the size of a cache line.
+    private static final int PADDING = 8;
+    private static final int MISS_STRIDE = MAX_MISS_DEPTH + 1;
+    private static final int NO_ROUTE = -1;
+
+    private final DefaultRouteMatcher<T_REQ, T_RES> routeMatcher = new DefaultRouteMatcher<T_REQ, T_RES>();
+    private final int stripeCount;
+    private final int stripeMask;
+    private final int latencySampleMask;
+    private final AtomicLongArray requestCounts;
+    private final AtomicLongArray missCounts;
+    private final AtomicLongArray matchLatencies;
+    private final AtomicLongArray handlerLatencies;
+    private final Map<String, Long> retiredHitCounts = new HashMap<String, Long>();
+    private volatile Routes<T_REQ, T_RES> routes;
+    private volatile boolean enabled = true;
+
+    public InstrumentedRouteMatcher() {
+        this(DEFAULT_LATENCY_SAMPLE_INTERVAL);
+    }
+
+    /**
+     * @param latencySampleInterval Time every n-th request, rounded up to a power of two. 1 times every request.
+     */
+    public InstrumentedRouteMatcher(int latencySampleInterval) {
+        if (latencySampleInterval < 1) {
+            throw new IllegalArgumentException("The latency sample interval must be at least 1, was " + latencySampleInterval);
+        }
+
+        this.latencySampleMask = nextPowerOfTwo(latencySampleInterval) - 1;
+        this.stripeCount = nextPowerOfTwo(Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPE_COUNT));
+        this.stripeMask = this.stripeCount - 1;
+        this.requestCounts = new AtomicLongArray(this.stripeCount * PADDING);
+        this.missCounts = new AtomicLongArray(this.stripeCount * MISS_STRIDE);
+        this.matchLatencies = new AtomicLongArray(this.stripeCount * Histogram.BUCKET_COUNT);
+        this.handlerLatencies = new AtomicLongArray(this.stripeCount * Histogram.BUCKET_COUNT);
+    }
+
+    private static int nextPowerOfTwo(int n) {
+        int res = 1;
+        while (res < n) {
+            res *= 2;
+        }
+        return res;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * @param enabled false to stop counting. The counts so far are kept.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public T_RES match(final RouteTreeNode<T_REQ, T_RES> rootNode, T_REQ req) {
+        return match(rootNode, req, new MatchContext<T_REQ>());
+    }
+
+    /**
+     * Like {@link #match(RouteTreeNode, IRequest)}, but reuses the match result in the context instead of creating a
+     * new one.
+     */
+    public T_RES match(final RouteTreeNode<T_REQ, T_RES> rootNode, T_REQ req, MatchContext<T_REQ> ctx) {
+        if (!this.enabled) {
+            return this.routeMatcher.match(rootNode, req, ctx);
+        }
+
+        Routes<T_REQ, T_RES> routes = getRoutes(rootNode);
+        int stripe = getStripe();
+        boolean timed = (this.requestCounts.incrementAndGet(stripe * PADDING) & this.latencySampleMask) == 0;
+        long start = timed ? System.nanoTime() : 0;
+
+        List<String> pathSegments = req.getPathSegments();
+        RouteMatchResult routeMatchResult = ctx.begin(req);
+        Route<T_REQ, T_RES> route = findRoute(routes.root, pathSegments, routeMatchResult);
+        if (timed) {
+            long now = System.nanoTime();
+            record(this.matchLatencies, stripe, now - start);
+            start = now;
+        }
+
+        if (route == null || route.index == NO_ROUTE) {
+            int depth = Math.min(route == null ? routeMatchResult.getMissDepth() : pathSegments.size(), MAX_MISS_DEPTH);
+            this.missCounts.incrementAndGet(stripe * MISS_STRIDE + depth);
+            return null;
+        }
+
+        routes.recordHit(route, stripe);
+        RouteTreeNode<T_REQ, T_RES> targetNode = route.node;
+
+        if (!timed) {
+            return targetNode.getHandler().call(ctx.getRouteMatch());
+        }
+
+        try {
+            return targetNode.getHandler().call(ctx.getRouteMatch());
+        } finally {
+            record(this.handlerLatencies, stripe, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Like DefaultRouteMatcher#findTargetNode, but walks the copy of the tree with the templates.
+     *
+     * @return The route the path segments lead to, or null if there is no such route. When null, the number of path
+     * segments that matched is set as the miss depth of the match result.
+     */
+    private static <T_REQ extends IRequest, T_RES> Route<T_REQ, T_RES> findRoute(Route<T_REQ, T_RES> root, List<String> pathSegments, RouteMatchResult routeMatchResult) {
+        Route<T_REQ, T_RES> route = root;
+        int slot = 0;
+
+        for (int i = 0; i < pathSegments.size(); i++) {
+            String pathSegment = pathSegments.get(i);
+
+            Route<T_REQ, T_RES> child = route.pathSegmentChildren.find(pathSegment);
+            if (child != null) {
+                route = child;
+                continue;
+            }
+
+            if (route.parametricChild != null) {
+                if (!routeMatchResult.addParametricSegment(route.node.getParametricChildSegment(), slot++, pathSegment)) {
+                    routeMatchResult.setMissDepth(i);
+                    return null;
+                }
+                route = route.parametricChild;
+                continue;
+            }
+
+            if (route.wildcardChild != null) {
+                for (; i < pathSegments.size(); i++) {
+                    routeMatchResult.addToWildcardMatches(pathSegments.get(i));
+                }
+                return route.wildcardChild;
+            }
+
+            routeMatchResult.setMissDepth(i);
+            return null;
+        }
+
+        return route;
+    }
+
+    private int getStripe() {
+        int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+        return (h >>> 16) & this.stripeMask;
+    }
+
+    private static void record(AtomicLongArray latencies, int stripe, long nanos) {
+        latencies.incrementAndGet(stripe * Histogram.BUCKET_COUNT + Histogram.getBucket(nanos));
+    }
+
+    private Routes<T_REQ, T_RES> getRoutes(RouteTreeNode<T_REQ, T_RES> rootNode) {
+        Routes<T_REQ, T_RES> res = this.routes;
+        if (res != null && res.rootNode == rootNode) {
+            return res;
+        }
+        return switchRoutes(rootNode);
+    }
+
+    private synchronized Routes<T_REQ, T_RES> switchRoutes(RouteTreeNode<T_REQ, T_RES> rootNode) {
+        Routes<T_REQ, T_RES> res = this.routes;
+        if (res != null && res.rootNode == rootNode) {
+            return res;
+        }
+
+        // Hits by threads still using the old routes after this point are not counted.
+        if (res != null) {
+            res.addHitCountsTo(this.retiredHitCounts);
+        }
+
+        res = new Routes<T_REQ, T_RES>(rootNode, this.stripeCount);
+        this.routes = res;
+        return res;
+    }
+
+    /**
+     * @return A copy of all the counts so far.
+     */
+    public synchronized Snapshot getSnapshot() {
+        Map<String, Long> hitCounts = new TreeMap<String, Long>(this.retiredHitCounts);
+        if (this.routes != null) {
+            this.routes.addHitCountsTo(hitCounts);
+        }
+
+        long requestCount = 0;
+        for (int stripe = 0; stripe < this.stripeCount; stripe++) {
+            requestCount += this.requestCounts.get(stripe * PADDING);
+        }
+
+        return new Snapshot(
+            requestCount,
+            hitCounts,
+            sumStripes(this.missCounts, MISS_STRIDE),
+            new Histogram(sumStripes(this.matchLatencies, Histogram.BUCKET_COUNT), this.latencySampleMask + 1),
+            new Histogram(sumStripes(this.handlerLatencies, Histogram.BUCKET_COUNT), this.latencySampleMask + 1));
+    }
+
+    private long[] sumStripes(AtomicLongArray counts, int stride) {
+        long[] res = new long[stride];
+        for (int stripe = 0; stripe < this.stripeCount; stripe++) {
+            for (int i = 0; i < stride; i++) {
+                res[i] += counts.get(stripe * stride + i);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * The routes of a root node, and their hit counts.
+     */
+    private static final class Routes<T_REQ extends IRequest, T_RES> {
+        private final RouteTreeNode<T_REQ, T_RES> rootNode;
+        private final List<String> templates = new ArrayList<String>();
+        private final Route<T_REQ, T_RES> root;
+        private final int stripeCount;
+        private final int stride;
+        private final AtomicLongArray hitCounts;
+
+        Routes(RouteTreeNode<T_REQ, T_RES> rootNode, int stripeCount) {
+            this.rootNode = rootNode;
+            this.stripeCount = stripeCount;
+            this.root = addRoutes(rootNode, "");
+            this.stride = (this.templates.size() + PADDING - 1) / PADDING * PADDING;
+            this.hitCounts = new AtomicLongArray(Math.max(1, this.stride * stripeCount));
+        }
+
+        private Route<T_REQ, T_RES> addRoutes(RouteTreeNode<T_REQ, T_RES> node, String template) {
+            int index = NO_ROUTE;
+            if (node.getHandler() != null) {
+                index = this.templates.size();
+                this.templates.add(template.length() == 0 ? "/" : template);
+            }
+
+            HashMap<String, Route<T_REQ, T_RES>> pathSegmentChildren = new HashMap<String, Route<T_REQ, T_RES>>();
+            for (Map.Entry<String, RouteTreeNode<T_REQ, T_RES>> child : node.getPathSegmentChildNodes().entrySet()) {
+                pathSegmentChildren.put(child.getKey(), addRoutes(child.getValue(), template + "/" + child.getKey()));
+            }
+            Route<T_REQ, T_RES> parametricChild = null;
+            if (node.hasParametricChild()) {
+                parametricChild = addRoutes(node.getParametricChildNode(), template + "/:" + node.getParametricChildSegment().getParamName());
+            }
+            Route<T_REQ, T_RES> wildcardChild = null;
+            if (node.hasWildcardChild()) {
+                wildcardChild = addRoutes(node.getWildcardChildNode(), template + "/*");
+            }
+
+            return new Route<T_REQ, T_RES>(node, index, PathSegmentChildNodes.copyOf(pathSegmentChildren), parametricChild, wildcardChild);
+        }
+
+        void recordHit(Route<T_REQ, T_RES> route, int stripe) {
+            this.hitCounts.incrementAndGet(stripe * this.stride + route.index);
+        }
+
+        void addHitCountsTo(Map<String, Long> res) {
+            for (int i = 0; i < this.templates.size(); i++) {
+                long hitCount = 0;
+                for (int stripe = 0; stripe < this.stripeCount; stripe++) {
+                    hitCount += this.hitCounts.get(stripe * this.stride + i);
+                }
+
+                Long previous = res.get(this.templates.get(i));
+                res.put(this.templates.get(i), previous == null ? hitCount : previous + hitCount);
+            }
+        }
+    }
+
+    /**
+     * A node of the tree, at the end of one route template. A node that is shared by many routes has one Route for
+     * each of them.
+     */
+    private static final class Route<T_REQ extends IRequest, T_RES> {
+        private final RouteTreeNode<T_REQ, T_RES> node;
+        private final int index;
+        private final PathSegmentChildNodes<Route<T_REQ, T_RES>> pathSegmentChildren;
+        private final Route<T_REQ, T_RES> parametricChild;
+        private final Route<T_REQ, T_RES> wildcardChild;
+
+        Route(RouteTreeNode<T_REQ, T_RES> node, int index, PathSegmentChildNodes<Route<T_REQ, T_RES>> pathSegmentChildren, Route<T_REQ, T_RES> parametricChild, Route<T_REQ, T_RES> wildcardChild) {
+            this.node = node;
+            this.index = index;
+            this.pathSegmentChildren = pathSegmentChildren;
+            this.parametricChild = parametricChild;
+            this.wildcardChild = wildcardChild;
+        }
+    }
+
+    /**
+     * <p>The counts of an InstrumentedRouteMatcher at one point in time. An immutable value.</p>
+     */
+    public static final class Snapshot {
+        private final long requestCount;
+        private final Map<String, Long> hitCounts;
+        private final long[] missCounts;
+        private final Histogram matchLatency;
+        private final Histogram handlerLatency;
+
+        Snapshot(long requestCount, Map<String, Long> hitCounts, long[] missCounts, Histogram matchLatency, Histogram handlerLatency) {
+            this.requestCount = requestCount;
+            this.hitCounts = Collections.unmodifiableMap(hitCounts);
+            this.missCounts = missCounts;
+            this.matchLatency = matchLatency;
+            this.handlerLatency = handlerLatency;
+        }
+
+        /**
+         * @return The number of requests matched while enabled, hits and misses.
+         */
+        public long getRequestCount() {
+            return this.requestCount;
+        }
+
+        /**
+         * @return The number of hits for every route, by template, sorted by template. Routes with no hits are
+         * included.
+         */
+        public Map<String, Long> getHitCounts() {
+            return this.hitCounts;
+        }
+
+        /**
+         * @return The number of requests that did not match a route.
+         */
+        public long getMissCount() {
+            long res = 0;
+            for (long missCount : this.missCounts) {
+                res += missCount;
+            }
+            return res;
+        }
+
+        /**
+         * @param depth The number of path segments that matched, at most
+         *              {@link InstrumentedRouteMatcher#MAX_MISS_DEPTH}.
+         * @return The number of requests that stopped matching at that depth.
+         */
+        public long getMissCount(int depth) {
+            if (depth < 0 || depth > MAX_MISS_DEPTH) {
+                throw new IllegalArgumentException("The depth must be between 0 and " + MAX_MISS_DEPTH + ", was " + depth);
+            }
+            return this.missCounts[depth];
+        }
+
+        /**
+         * @return Time spent walking the tree, for hits and misses.
+         */
+        public Histogram getMatchLatency() {
+            return this.matchLatency;
+        }
+
+        /**
+         * @return Time spent in handlers.
+         */
+        public Histogram getHandlerLatency() {
+            return this.handlerLatency;
+        }
+    }
+
+    /**
+     * <p>Durations in nanoseconds, counted in buckets by powers of two. Bucket 0 counts durations of 0, and bucket
+     * <tt>i</tt> counts durations from <tt>2^(i-1)</tt> up to <tt>2^i - 1</tt>. An immutable value.</p>
+     */
+    public static final class Histogram {
+        public static final int BUCKET_COUNT = 64;
+
+        private final long[] bucketCounts;
+        private final int sampleInterval;
+
+        Histogram(long[] bucketCounts, int sampleInterval) {
+            this.bucketCounts = bucketCounts;
+            this.sampleInterval = sampleInterval;
+        }
+
+        static int getBucket(long nanos) {
+            if (nanos <= 0) {
+                return 0;
+            }
+            return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(nanos));
+        }
+
+        /**
+         * @return The largest duration counted in the bucket, in nanoseconds.
+         */
+        public static long getBucketUpperBound(int bucket) {
+            if (bucket >= BUCKET_COUNT - 1) {
+                return Long.MAX_VALUE;
+            }
+            return (1L << bucket) - 1;
+        }
+
+        public long getBucketCount(int bucket) {
+            return this.bucketCounts[bucket];
+        }
+
+        /**
+         * @return The number of timed requests. Only every {@link #getSampleInterval()}-th request is timed.
+         */
+        public long getCount() {
+            long res = 0;
+            for (long bucketCount : this.bucketCounts) {
+                res += bucketCount;
+            }
+            return res;
+        }
+
+        public int getSampleInterval() {
+            return this.sampleInterval;
+        }
+
+        /**
+         * @param percentile Between 0 and 100
+         * @return The upper bound of the bucket the percentile is in, in nanoseconds, or 0 if nothing was timed.
+         */
+        public long getPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("The percentile must be between 0 and 100, was " + percentile);
+            }
+
+            long count = getCount();
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                seen += this.bucketCounts[bucket];
+                if (seen >= rank) {
+                    return getBucketUpperBound(bucket);
+                }
+            }
+            return getBucketUpperBound(BUCKET_COUNT - 1);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.augustl.pathtravelagent;
+
+/**
+ * <p>Holds the objects used when matching a single request, so that they can be reused for the next request. Matching
+ * with a context does not allocate a new RouteMatchResult or RouteMatch.</p>
+ *
+ * <p>A context is not thread safe, and can only be used for one match at a time. Keep one per thread, for example in a
+ * ThreadLocal. Handlers must not hold on to the RouteMatch they are called with after they have returned, as it is
+ * reset by the next match.</p>
+ *
+ * @param <T_REQ> A request object, implementing IRequest.
+ * @see com.augustl.pathtravelagent.DefaultRouteMatcher#match(RouteTreeNode, IRequest, MatchContext)
+ * @see com.augustl.pathtravelagent.CompiledRouteMatcher#match(CompiledRouteTree, IRequest, MatchContext)
+ */
+public class MatchContext<T_REQ extends IRequest> {
+    private final RouteMatchResult routeMatchResult;
+    private final RouteMatch<T_REQ> routeMatch;
+
+    public MatchContext() {
+        this(new RouteMatchResult());
+    }
+
+    /**
+     * @param slotCount The number of slots for parametric values to make room for up front.
+     * @see CompiledRouteTree#getSlotCount()
+     */
+    public MatchContext(int slotCount) {
+        this(new RouteMatchResult(slotCount));
+    }
+
+    private MatchContext(RouteMatchResult routeMatchResult) {
+        this.routeMatchResult = routeMatchResult;
+        this.routeMatch = new RouteMatch<T_REQ>(null, routeMatchResult);
+    }
+
+    /**
+     * Resets the context for matching a new request.
+     *
+     * @return The (empty) match result to fill in while matching.
+     */
+    RouteMatchResult begin(T_REQ req) {
+        this.routeMatchResult.reset();
+        this.routeMatch.setRequest(req);
+        return this.routeMatchResult;
+    }
+
+    RouteMatch<T_REQ> getRouteMatch() {
+        return this.routeMatch;
+    }
+}
@@ -0,0 +1,70 @@
+package com.augustl.pathtravelagent;
+
+import java.util.UUID;
+
+/**
+ * <p>A typed key for reading the value of a parametric segment from a RouteMatch, without a lookup by name in a hash
+ * map.</p>
+ *
+ * <p>The key remembers the slot the value was found in. A handler is invoked for one specific route, where the slot
+ * for a given param is always the same, so after the first lookup, reading a value is a single array access and a
+ * comparison of the param name. Create the keys once, for example as static fields, and share them between
+ * threads.</p>
+ *
+ * <pre>
+ * {@code
+ *  static final ParamKey<Integer> PROJECT_ID = ParamKey.integerKey("projectId");
+ *
+ *  public MyRes call(RouteMatch<MyReq> match) {
+ *      Integer projectId = match.getIntegerRouteMatchResult(PROJECT_ID);
+ *  }
+ * }
+ * </pre>
+ *
+ * @param <T> The type of the value, Integer, Long, String or UUID.
+ * @see com.augustl.pathtravelagent.RouteMatch
+ */
+public final class ParamKey<T> {
+    private final String paramName;
+    private int slotHint = 0;
+
+    private ParamKey(String paramName) {
+        this.paramName = paramName;
+    }
+
+    public static ParamKey<Integer> integerKey(String paramName) {
+        return new ParamKey<Integer>(paramName);
+    }
+
+    public static ParamKey<Long> longKey(String paramName) {
+        return new ParamKey<Long>(paramName);
+    }
+
+    public static ParamKey<String> stringKey(String paramName) {
+        return new ParamKey<String>(paramName);
+    }
+
+    public static ParamKey<UUID> uuidKey(String paramName) {
+        return new ParamKey<UUID>(paramName);
+    }
+
+    public String getParamName() {
+        return this.paramName;
+    }
+
+    /**
+     * Written without synchronization. A stale value read by another thread only costs a lookup by name.
+     */
+    int getSlotHint() {
+        return this.slotHint;
+    }
+
+    void setSlotHint(int slotHint) {
+        this.slotHint = slotHint;
+    }
+
+    @Override
+    public String toString() {
+        return "ParamKey<" + this.paramName + ">";
+    }
+}
@@ -0,0 +1,293 @@
+package com.augustl.pathtravelagent;
+
+import java.util.*;
+
+/**
+ * <p>The path segment children of a RouteTreeNode. An immutable map from path segments, stored in the most compact way
+ * for the number of children. Most nodes have no path segment children or only one, and a HashMap, with its table of 16
+ * slots and an entry object for each child, takes several times the memory of the node itself.</p>
+ *
+ * <ul>
+ *     <li>Nodes without children share a single empty instance.</li>
+ *     <li>A single child is stored in two fields.</li>
+ *     <li>Up to {@link #MAX_ARRAY_SIZE} children are stored in arrays sorted by the hash code of the path segment, which
+ *     String caches. A lookup compares hash codes, and only calls equals for a path segment with the same hash code.
+ *     The arrays are searched from the start when they are short, and with a binary search when they are longer.</li>
+ *     <li>More children are stored in a HashMap, and looked up in a perfect hash table, built on the first lookup.</li>
+ * </ul>
+ *
+ * @param <V> The type of the child nodes.
+ * @see com.augustl.pathtravelagent.PerfectHashTable
+ */
+abstract class PathSegmentChildNodes<V> extends AbstractMap<String, V> {
+    static final int MAX_ARRAY_SIZE = 16;
+    private static final int MAX_LINEAR_SEARCH_SIZE = 8;
+
+    private static final PathSegmentChildNodes<Object> EMPTY = new Empty<Object>();
+
+    @SuppressWarnings("unchecked")
+    static <V> PathSegmentChildNodes<V> empty() {
+        return (PathSegmentChildNodes<V>) EMPTY;
+    }
+
+    /**
+     * @param map The children. Not changed, and not used after copying.
+     */
+    static <V> PathSegmentChildNodes<V> copyOf(Map<String, V> map) {
+        if (map instanceof PathSegmentChildNodes) {
+            return (PathSegmentChildNodes<V>) map;
+        }
+
+        if (map.isEmpty()) {
+            return empty();
+        } else if (map.size() == 1) {
+            Map.Entry<String, V> entry = map.entrySet().iterator().next();
+            return new Single<V>(entry.getKey(), entry.getValue());
+        } else if (map.size() <= MAX_ARRAY_SIZE) {
+            return new Sorted<V>(map);
+        } else {
+            return new Hashed<V>(map);
+        }
+    }
+
+    /**
+     * Like {@link #get(Object)}, but faster, and only for path segments.
+     *
+     * @return The child for the path segment, or null.
+     */
+    abstract V find(String pathSegment);
+
+    @Override
+    public V get(Object key) {
+        return key instanceof String ? find((String) key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return The estimated number of bytes used by this instance, not counting the path segments and children.
+     * @see com.augustl.pathtravelagent.RouteTreeCanonicalizer
+     */
+    abstract long getEstimatedSize();
+
+    /**
+     * @return The estimated number of bytes used by an object with the given size of its fields, on a 64-bit JVM with
+     * compressed references, where objects have a 12 byte header and take a multiple of 8 bytes.
+     */
+    static long estimateObjectSize(int fieldBytes) {
+        return (12 + fieldBytes + 7) / 8 * 8;
+    }
+
+    /**
+     * @return The estimated number of bytes used by an array, which has a 16 byte header.
+     */
+    static long estimateArraySize(int length, int elementBytes) {
+        return (16 + (long) length * elementBytes + 7) / 8 * 8;
+    }
+
+    private static final class Empty<V> extends PathSegmentChildNodes<V> {
+        @Override
+        V find(String pathSegment) {
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        long getEstimatedSize() {
+            // Shared by all the nodes.
+            return 0;
+        }
+
+        @Override
+        public Set<Map.Entry<String, V>> entrySet() {
+            return Collections.emptySet();
+        }
+    }
+
+    private static final class Single<V> extends PathSegmentChildNodes<V> {
+        private final String pathSegment;
+        private final V child;
+
+        private Single(String pathSegment, V child) {
+            this.pathSegment = pathSegment;
+            this.child = child;
+        }
+
+        @Override
+        V find(String pathSegment) {
+            return this.pathSegment.equals(pathSegment) ? this.child : null;
+        }
+
+        @Override
+        public int size() {
+            return 1;
+        }
+
+        @Override
+        long getEstimatedSize() {
+            return estimateObjectSize(8);
+        }
+
+        @Override
+        public Set<Map.Entry<String, V>> entrySet() {
+            return Collections.<Map.Entry<String, V>>singleton(new SimpleImmutableEntry<String, V>(this.pathSegment, this.child));
+        }
+    }
+
+    private static final class Sorted<V> extends PathSegmentChildNodes<V> {
+        private final int[] hashes;
+        private final String[] pathSegments;
+        private final Object[] children;
+
+        private Sorted(Map<String, V> map) {
+            String[] pathSegments = map.keySet().toArray(new String[map.size()]);
+            Arrays.sort(pathSegments, CompiledRouteTree.HASH_CODE_ORDER);
+
+            this.hashes = new int[pathSegments.length];
+            this.pathSegments = pathSegments;
+            this.children = new Object[pathSegments.length];
+            for (int i = 0; i < pathSegments.length; i++) {
+                this.hashes[i] = pathSegments[i].hashCode();
+                this.children[i] = map.get(pathSegments[i]);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        V find(String pathSegment) {
+            int hash = pathSegment.hashCode();
+            for (int i = findFirst(hash); i < this.hashes.length && this.hashes[i] == hash; i++) {
+                if (this.pathSegments[i].equals(pathSegment)) {
+                    return (V) this.children[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return The index of the first hash code that is the same as or larger than <tt>hash</tt>.
+         */
+        private int findFirst(int hash) {
+            if (this.hashes.length <= MAX_LINEAR_SEARCH_SIZE) {
+                int i = 0;
+                while (i < this.hashes.length && this.hashes[i] < hash) {
+                    i++;
+                }
+                return i;
+            }
+
+            int low = 0;
+            int high = this.hashes.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (this.hashes[mid] < hash) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        @Override
+        public int size() {
+            return this.pathSegments.length;
+        }
+
+        @Override
+        long getEstimatedSize() {
+            return estimateObjectSize(12)
+                + estimateArraySize(this.hashes.length, 4)
+                + estimateArraySize(this.pathSegments.length, 4)
+                + estimateArraySize(this.children.length, 4);
+        }
+
+        @Override
+        public Set<Map.Entry<String, V>> entrySet() {
+            return new AbstractSet<Map.Entry<String, V>>() {
+                @Override
+                public Iterator<Map.Entry<String, V>> iterator() {
+                    return new Iterator<Map.Entry<String, V>>() {
+                        private int i = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return this.i < pathSegments.length;
+                        }
+
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public Map.Entry<String, V> next() {
+                            if (this.i == pathSegments.length) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<String, V> res = new SimpleImmutableEntry<String, V>(pathSegments[this.i], (V) children[this.i]);
+                            this.i++;
+                            return res;
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return pathSegments.length;
+                }
+            };
+        }
+    }
+
+    private static final class Hashed<V> extends PathSegmentChildNodes<V> {
+        private final Map<String, V> map;
+        private PerfectHashTable<V> table;
+
+        private Hashed(Map<String, V> map) {
+            HashMap<String, V> copy = new HashMap<String, V>(map.size() * 4 / 3 + 1);
+            copy.putAll(map);
+            this.map = Collections.unmodifiableMap(copy);
+        }
+
+        @Override
+        V find(String pathSegment) {
+            // Not synchronized, since the table is immutable. Threads that race only build the table more than once.
+            PerfectHashTable<V> table = this.table;
+            if (table == null) {
+                table = PerfectHashTable.build(this.map);
+                this.table = table;
+            }
+            return table.get(pathSegment);
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        long getEstimatedSize() {
+            // The HashMap, its table and entries, and the unmodifiable wrapper. Not counting the perfect hash table.
+            int tableLength = Integer.highestOneBit(this.map.size() * 4 / 3) << 1;
+            return estimateObjectSize(8)
+                + estimateObjectSize(16)
+                + estimateObjectSize(36)
+                + estimateArraySize(tableLength, 4)
+                + this.map.size() * estimateObjectSize(16);
+        }
+
+        @Override
+        public Set<Map.Entry<String, V>> entrySet() {
+            return this.map.entrySet();
+        }
+    }
+}
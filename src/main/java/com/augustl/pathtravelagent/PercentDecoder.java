@@ -0,0 +1,152 @@
+package com.augustl.pathtravelagent;
+
+/**
+ * <p>Decodes <tt>%XX</tt> escapes in parts of URLs, as UTF-8, without exceptions for malformed input.</p>
+ */
+final class PercentDecoder {
+    private PercentDecoder() {
+    }
+
+    /**
+     * @param plusAsSpace True to decode + as a space, like in query strings.
+     * @return The decoded string, the substring itself when there is nothing to decode, or null when an escape is
+     * malformed or the escaped bytes are not valid UTF-8.
+     */
+    static String decode(String str, int start, int end, boolean plusAsSpace) {
+        int i = start;
+        while (i < end && !isEncoded(str.charAt(i), plusAsSpace)) {
+            i++;
+        }
+        if (i == end) {
+            return str.substring(start, end);
+        }
+
+        // Never longer than the input, since an escaped char takes at least 3 chars, and 4 bytes of UTF-8 take 12.
+        char[] res = new char[end - start];
+        str.getChars(start, i, res, 0);
+        int length = i - start;
+        while (i < end) {
+            char c = str.charAt(i);
+            if (c == '+' && plusAsSpace) {
+                res[length++] = ' ';
+                i++;
+            } else if (c != '%') {
+                res[length++] = c;
+                i++;
+            } else {
+                int codePoint = decodeCodePoint(str, i, end);
+                if (codePoint < 0) {
+                    return null;
+                }
+                length = appendCodePoint(res, length, codePoint);
+                i += getEscapedLength(codePoint);
+            }
+        }
+        return new String(res, 0, length);
+    }
+
+    static boolean isEncoded(char c, boolean plusAsSpace) {
+        return c == '%' || (c == '+' && plusAsSpace);
+    }
+
+    /**
+     * @return The length of res after appending the code point, as one or two chars.
+     */
+    static int appendCodePoint(char[] res, int length, int codePoint) {
+        if (codePoint < 0x10000) {
+            res[length] = (char) codePoint;
+            return length + 1;
+        }
+        res[length] = (char) (((codePoint - 0x10000) >>> 10) + 0xD800);
+        res[length + 1] = (char) ((codePoint & 0x3FF) + 0xDC00);
+        return length + 2;
+    }
+
+    /**
+     * @return The code point of the escaped UTF-8 sequence that starts with the % at <tt>i</tt>, or -1 if it is
+     * malformed, overlong, a surrogate or out of range.
+     */
+    static int decodeCodePoint(String str, int i, int end) {
+        int b = decodeByte(str, i, end);
+        if (b < 0x80) {
+            return b;
+        }
+
+        int length;
+        int codePoint;
+        int min;
+        if (b >= 0xC2 && b <= 0xDF) {
+            length = 2;
+            codePoint = b & 0x1F;
+            min = 0x80;
+        } else if (b >= 0xE0 && b <= 0xEF) {
+            length = 3;
+            codePoint = b & 0x0F;
+            min = 0x800;
+        } else if (b >= 0xF0 && b <= 0xF4) {
+            length = 4;
+            codePoint = b & 0x07;
+            min = 0x10000;
+        } else {
+            return -1;
+        }
+
+        for (int j = 1; j < length; j++) {
+            int continuation = decodeByte(str, i + j * 3, end);
+            if ((continuation & 0xC0) != 0x80) {
+                return -1;
+            }
+            codePoint = codePoint << 6 | continuation & 0x3F;
+        }
+
+        if (codePoint < min || codePoint > 0x10FFFF || (codePoint >= 0xD800 && codePoint <= 0xDFFF)) {
+            return -1;
+        }
+        return codePoint;
+    }
+
+    /**
+     * @return The byte, or -1 if there is no valid <tt>%XX</tt> at <tt>i</tt>.
+     */
+    private static int decodeByte(String str, int i, int end) {
+        if (i + 2 >= end || str.charAt(i) != '%') {
+            return -1;
+        }
+        int high = hexValue(str.charAt(i + 1));
+        int low = hexValue(str.charAt(i + 2));
+        if (high < 0 || low < 0) {
+            return -1;
+        }
+        return high << 4 | low;
+    }
+
+    /**
+     * Unlike Character.digit, only allows ASCII digits and letters.
+     */
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * @return The number of chars the escaped UTF-8 sequence for the code point takes.
+     */
+    static int getEscapedLength(int codePoint) {
+        if (codePoint < 0x80) {
+            return 3;
+        } else if (codePoint < 0x800) {
+            return 6;
+        } else if (codePoint < 0x10000) {
+            return 9;
+        } else {
+            return 12;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.augustl.pathtravelagent;
+
+import java.util.*;
+
+/**
+ * <p>An immutable map from Strings, where every key has a slot of its own. Looking up a key takes the hash code of the
+ * key, which String caches, and at most one call to equals.</p>
+ *
+ * <p>Built with "hash and displace". The keys are spread over buckets, and each bucket gets a displacement, chosen
+ * when the table is built, that moves all the keys in the bucket to free slots. Looking up a key finds its bucket,
+ * and uses the displacement of the bucket to find its slot.</p>
+ *
+ * <p>When two keys have the same hash code, no displacement can separate them. The table then falls back to looking
+ * up the keys in a HashMap.</p>
+ *
+ * @param <V> The type of the values.
+ */
+final class PerfectHashTable<V> {
+    private static final int MAX_DISPLACEMENT = 1 << 16;
+
+    private final int[] displacements;
+    private final String[] keys;
+    private final Object[] values;
+    private final int bucketMask;
+    private final int slotMask;
+    private final Map<String, V> fallback;
+
+    private PerfectHashTable(int[] displacements, String[] keys, Object[] values, Map<String, V> fallback) {
+        this.displacements = displacements;
+        this.keys = keys;
+        this.values = values;
+        this.bucketMask = displacements.length - 1;
+        this.slotMask = keys.length - 1;
+        this.fallback = fallback;
+    }
+
+    /**
+     * @param map The keys and values of the table. Not changed, and not used by the table after building it.
+     */
+    static <V> PerfectHashTable<V> build(Map<String, V> map) {
+        String[] mapKeys = map.keySet().toArray(new String[map.size()]);
+        if (hasSameHashCodes(mapKeys)) {
+            return new PerfectHashTable<V>(new int[1], new String[1], new Object[1], new HashMap<String, V>(map));
+        }
+
+        int slotCount = 2;
+        while (slotCount < mapKeys.length * 2) {
+            slotCount *= 2;
+        }
+        int bucketCount = Math.max(1, slotCount / 4);
+
+        while (true) {
+            PerfectHashTable<V> res = tryBuild(map, mapKeys, bucketCount, slotCount);
+            if (res != null) {
+                return res;
+            }
+            slotCount *= 2;
+        }
+    }
+
+    private static <V> PerfectHashTable<V> tryBuild(Map<String, V> map, String[] mapKeys, int bucketCount, int slotCount) {
+        List<List<String>> buckets = new ArrayList<List<String>>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<String>(4));
+        }
+        for (String key : mapKeys) {
+            buckets.get(bucket(key.hashCode(), bucketCount - 1)).add(key);
+        }
+
+        // Place the largest buckets first, while there are many free slots.
+        Integer[] bucketOrder = new Integer[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            bucketOrder[i] = i;
+        }
+        final List<List<String>> theBuckets = buckets;
+        Arrays.sort(bucketOrder, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return theBuckets.get(b).size() - theBuckets.get(a).size();
+            }
+        });
+
+        int[] displacements = new int[bucketCount];
+        String[] keys = new String[slotCount];
+        Object[] values = new Object[slotCount];
+        int[] bucketSlots = new int[mapKeys.length];
+        for (Integer bucket : bucketOrder) {
+            List<String> bucketKeys = buckets.get(bucket);
+            if (bucketKeys.isEmpty()) {
+                break;
+            }
+
+            int displacement = findDisplacement(bucketKeys, keys, bucketSlots);
+            if (displacement == -1) {
+                return null;
+            }
+            displacements[bucket] = displacement;
+            for (String key : bucketKeys) {
+                int slot = slot(key.hashCode(), displacement, slotCount - 1);
+                keys[slot] = key;
+                values[slot] = map.get(key);
+            }
+        }
+
+        return new PerfectHashTable<V>(displacements, keys, values, null);
+    }
+
+    private static int findDisplacement(List<String> bucketKeys, String[] keys, int[] bucketSlots) {
+        for (int displacement = 0; displacement < MAX_DISPLACEMENT; displacement++) {
+            if (fits(bucketKeys, displacement, keys, bucketSlots)) {
+                return displacement;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean fits(List<String> bucketKeys, int displacement, String[] keys, int[] bucketSlots) {
+        for (int i = 0; i < bucketKeys.size(); i++) {
+            int slot = slot(bucketKeys.get(i).hashCode(), displacement, keys.length - 1);
+            if (keys[slot] != null) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (bucketSlots[j] == slot) {
+                    return false;
+                }
+            }
+            bucketSlots[i] = slot;
+        }
+        return true;
+    }
+
+    private static boolean hasSameHashCodes(String[] mapKeys) {
+        int[] hashes = new int[mapKeys.length];
+        for (int i = 0; i < mapKeys.length; i++) {
+            hashes[i] = mapKeys[i].hashCode();
+        }
+        Arrays.sort(hashes);
+        for (int i = 1; i < hashes.length; i++) {
+            if (hashes[i] == hashes[i - 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The value for the key, or null if the key is not in the table.
+     */
+    @SuppressWarnings("unchecked")
+    V get(String key) {
+        if (this.fallback != null) {
+            return this.fallback.get(key);
+        }
+
+        int hash = key.hashCode();
+        int slot = slot(hash, this.displacements[bucket(hash, this.bucketMask)], this.slotMask);
+        String candidate = this.keys[slot];
+        if (candidate != null && candidate.equals(key)) {
+            return (V) this.values[slot];
+        }
+        return null;
+    }
+
+    private static int bucket(int hash, int bucketMask) {
+        return mix(hash) & bucketMask;
+    }
+
+    private static int slot(int hash, int displacement, int slotMask) {
+        return mix(hash ^ ((displacement + 1) * 0x9E3779B9)) & slotMask;
+    }
+
+    /**
+     * The finalization step of MurmurHash3, so that every bit of the hash affects the low bits used for masking.
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
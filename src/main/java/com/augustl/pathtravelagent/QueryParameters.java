@@ -0,0 +1,145 @@
+package com.augustl.pathtravelagent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>The parameters in the query string of a request target, such as <tt>a=1&amp;b=2</tt>. Get one with
+ * {@link RequestTarget#getQueryParameters()}.</p>
+ *
+ * <p>The query string is not parsed up front. Every lookup scans the query string in the original request target, and
+ * only the values that are returned are decoded into new strings. Keys are compared in place, and only decoded when
+ * they contain escapes. This is fast for the handful of parameters a handler typically reads. To read all of them,
+ * get the names with {@link #getNames()}.</p>
+ *
+ * <p>Parameters are separated by <tt>&amp;</tt>, and <tt>+</tt> and <tt>%XX</tt> escapes are decoded as UTF-8. A
+ * parameter without <tt>=</tt> has the empty string as value. A key or value with malformed escapes is used as it is,
+ * without decoding it.</p>
+ *
+ * <p>Immutable, and thread safe.</p>
+ *
+ * @see com.augustl.pathtravelagent.RequestTarget
+ */
+public final class QueryParameters {
+    private final String target;
+    private final int start;
+    private final int end;
+
+    QueryParameters(String target, int start, int end) {
+        this.target = target;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return The (decoded) value of the first parameter with the name, or null if there is none.
+     */
+    public String get(String name) {
+        for (int pairStart = this.start, pairEnd; pairStart < this.end; pairStart = pairEnd + 1) {
+            pairEnd = findPairEnd(pairStart);
+            int keyEnd = findKeyEnd(pairStart, pairEnd);
+            if (pairEnd > pairStart && keyEquals(name, pairStart, keyEnd)) {
+                return getValue(keyEnd, pairEnd);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The (decoded) values of all the parameters with the name, in order. Empty if there are none.
+     */
+    public List<String> getAll(String name) {
+        List<String> res = null;
+        for (int pairStart = this.start, pairEnd; pairStart < this.end; pairStart = pairEnd + 1) {
+            pairEnd = findPairEnd(pairStart);
+            int keyEnd = findKeyEnd(pairStart, pairEnd);
+            if (pairEnd > pairStart && keyEquals(name, pairStart, keyEnd)) {
+                if (res == null) {
+                    res = new ArrayList<String>(2);
+                }
+                res.add(getValue(keyEnd, pairEnd));
+            }
+        }
+        return res == null ? Collections.<String>emptyList() : res;
+    }
+
+    public boolean contains(String name) {
+        for (int pairStart = this.start, pairEnd; pairStart < this.end; pairStart = pairEnd + 1) {
+            pairEnd = findPairEnd(pairStart);
+            if (pairEnd > pairStart && keyEquals(name, pairStart, findKeyEnd(pairStart, pairEnd))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The (decoded) names of all the parameters, in the order they first appear. Decodes every key, unlike the
+     * lookups.
+     */
+    public Set<String> getNames() {
+        Set<String> res = new LinkedHashSet<String>();
+        for (int pairStart = this.start, pairEnd; pairStart < this.end; pairStart = pairEnd + 1) {
+            pairEnd = findPairEnd(pairStart);
+            if (pairEnd > pairStart) {
+                res.add(decode(pairStart, findKeyEnd(pairStart, pairEnd)));
+            }
+        }
+        return res;
+    }
+
+    public boolean isEmpty() {
+        return this.start >= this.end;
+    }
+
+    /**
+     * @return The query string, as it is in the request target.
+     */
+    @Override
+    public String toString() {
+        return this.target.substring(this.start, this.end);
+    }
+
+    private int findPairEnd(int pairStart) {
+        int i = pairStart;
+        while (i < this.end && this.target.charAt(i) != '&') {
+            i++;
+        }
+        return i;
+    }
+
+    private int findKeyEnd(int pairStart, int pairEnd) {
+        int i = pairStart;
+        while (i < pairEnd && this.target.charAt(i) != '=') {
+            i++;
+        }
+        return i;
+    }
+
+    private boolean keyEquals(String name, int keyStart, int keyEnd) {
+        for (int i = keyStart; i < keyEnd; i++) {
+            if (PercentDecoder.isEncoded(this.target.charAt(i), true)) {
+                return name.equals(decode(keyStart, keyEnd));
+            }
+        }
+        return keyEnd - keyStart == name.length() && this.target.regionMatches(keyStart, name, 0, name.length());
+    }
+
+    /**
+     * @param keyEnd The index of the = before the value, or pairEnd when there is none.
+     */
+    private String getValue(int keyEnd, int pairEnd) {
+        if (keyEnd == pairEnd) {
+            return "";
+        }
+        return decode(keyEnd + 1, pairEnd);
+    }
+
+    private String decode(int start, int end) {
+        String res = PercentDecoder.decode(this.target, start, end, true);
+        return res == null ? this.target.substring(start, end) : res;
+    }
+}
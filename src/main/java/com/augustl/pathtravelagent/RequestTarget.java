@@ -0,0 +1,105 @@
+package com.augustl.pathtravelagent;
+
+import java.util.List;
+
+/**
+ * <p>A request target, such as <tt>"/projects/123?sort=name"</tt>, split into path segments and a query string in a
+ * single pass. Use it to implement IRequest, instead of parsing the path with {@link DefaultPathToPathSegments} and
+ * the query string with something else.</p>
+ *
+ * <pre>
+ * {@code
+ *  class MyReq implements IRequest {
+ *      private final RequestTarget target;
+ *
+ *      public MyReq(String uri) {
+ *          this.target = RequestTarget.parse(uri);
+ *      }
+ *
+ *      public List<String> getPathSegments() {
+ *          return this.target.getPathSegments();
+ *      }
+ *
+ *      public String getQueryParameter(String name) {
+ *          return this.target.getQueryParameters().get(name);
+ *      }
+ *  }
+ * }
+ * </pre>
+ *
+ * <p>The path segments are the same as {@link DefaultPathToPathSegments#parse(String)} returns. The query parameters
+ * are not parsed until they are read, see {@link QueryParameters}.</p>
+ *
+ * @see com.augustl.pathtravelagent.QueryParameters
+ */
+public final class RequestTarget {
+    private final String target;
+    private final List<String> pathSegments;
+    private final int queryStart;
+    private QueryParameters queryParameters;
+
+    private RequestTarget(String target, List<String> pathSegments, int queryStart) {
+        this.target = target;
+        this.pathSegments = pathSegments;
+        this.queryStart = queryStart;
+    }
+
+    public static RequestTarget parse(String target) {
+        int queryStart = DefaultPathToPathSegments.findQueryStart(target);
+        return new RequestTarget(target, DefaultPathToPathSegments.parse(target, queryStart), queryStart);
+    }
+
+    /**
+     * Like {@link #parse(String)}, but decodes the path segments with
+     * {@link DefaultPathToPathSegments#parseDecoded(String)}.
+     *
+     * @return The request target, or null if the path has a malformed escape.
+     */
+    public static RequestTarget parseDecoded(String target) {
+        int queryStart = DefaultPathToPathSegments.findQueryStart(target);
+        List<String> pathSegments = DefaultPathToPathSegments.parseDecoded(target, queryStart);
+        if (pathSegments == null) {
+            return null;
+        }
+        return new RequestTarget(target, pathSegments, queryStart);
+    }
+
+    public List<String> getPathSegments() {
+        return this.pathSegments;
+    }
+
+    /**
+     * @return The request target up to the query string, not decoded.
+     */
+    public String getPath() {
+        return this.target.substring(0, this.queryStart);
+    }
+
+    /**
+     * @return The query string, without the ?, or null if there is no ?.
+     */
+    public String getQuery() {
+        if (this.queryStart == this.target.length()) {
+            return null;
+        }
+        return this.target.substring(this.queryStart + 1);
+    }
+
+    /**
+     * @return The query parameters. Empty if there is no query string.
+     */
+    public QueryParameters getQueryParameters() {
+        // Not synchronized, since QueryParameters is immutable. Threads that race only create more than one.
+        QueryParameters res = this.queryParameters;
+        if (res == null) {
+            res = new QueryParameters(this.target, Math.min(this.queryStart + 1, this.target.length()), this.target.length());
+            this.queryParameters = res;
+        }
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        return this.target;
+    }
+}
@@ -0,0 +1,92 @@
+package com.augustl.pathtravelagent;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * <p>The result of matching a request, without calling the handler. Returned by
+ * {@link DefaultRouteMatcher#resolve(RouteTreeNode, IRequest)}.</p>
+ *
+ * <p>Separates matching, which is fast and does not block, from calling the handler, which might. The handler can be
+ * called later, on another thread, with {@link #call()}.</p>
+ *
+ * @param <T_REQ> A request object, implementing IRequest.
+ * @param <T_RES> The return value for the handler. Can be any type you want, not used for anything by PathTravelAgent.
+ */
+public class ResolvedRoute<T_REQ extends IRequest, T_RES> {
+    private final IRouteHandler<T_REQ, T_RES> handler;
+    private final RouteMatch<T_REQ> routeMatch;
+    private final Set<HttpMethod> allowedMethods;
+    private final String allowHeader;
+
+    public ResolvedRoute(IRouteHandler<T_REQ, T_RES> handler, RouteMatch<T_REQ> routeMatch) {
+        this(handler, routeMatch, Collections.<HttpMethod>emptySet(), null);
+    }
+
+    /**
+     * @param handler The handler for the method of the request, or null if there is none.
+     * @param allowedMethods The methods the matched route allows.
+     * @param allowHeader The allowed methods, as the value of an HTTP Allow header.
+     */
+    public ResolvedRoute(IRouteHandler<T_REQ, T_RES> handler, RouteMatch<T_REQ> routeMatch, Set<HttpMethod> allowedMethods, String allowHeader) {
+        this.handler = handler;
+        this.routeMatch = routeMatch;
+        this.allowedMethods = allowedMethods;
+        this.allowHeader = allowHeader;
+    }
+
+    /**
+     * @return The handler of the route the request matched. Null when resolving with an HTTP method the route has no
+     * handler for, see {@link #hasHandler()}.
+     */
+    public IRouteHandler<T_REQ, T_RES> getHandler() {
+        return this.handler;
+    }
+
+    /**
+     * <p>False when the request was resolved with
+     * {@link DefaultRouteMatcher#resolve(RouteTreeNode, IRequest, HttpMethod)}, and the route the request matched has
+     * no handler for the method. The response can then be made without calling any handler. For an OPTIONS request,
+     * respond with {@link #getAllowHeader()} as the Allow header. For any other method, respond with 405 Method Not
+     * Allowed and the same Allow header.</p>
+     */
+    public boolean hasHandler() {
+        return this.handler != null;
+    }
+
+    /**
+     * @return The methods the matched route allows. Empty when resolved without an HTTP method.
+     * @see RouteTreeNode#getAllowedMethods()
+     */
+    public Set<HttpMethod> getAllowedMethods() {
+        return this.allowedMethods;
+    }
+
+    /**
+     * @return The value for an HTTP Allow header, or null when resolved without an HTTP method.
+     * @see RouteTreeNode#getAllowHeader()
+     */
+    public String getAllowHeader() {
+        return this.allowHeader;
+    }
+
+    /**
+     * @return The value to call the handler with.
+     */
+    public RouteMatch<T_REQ> getRouteMatch() {
+        return this.routeMatch;
+    }
+
+    /**
+     * Calls the handler, on the current thread.
+     *
+     * @return The value returned by the handler.
+     * @throws IllegalStateException When there is no handler.
+     */
+    public T_RES call() {
+        if (this.handler == null) {
+            throw new IllegalStateException("No handler for the request, the allowed methods are " + this.allowHeader);
+        }
+        return this.handler.call(this.routeMatch);
+    }
+}
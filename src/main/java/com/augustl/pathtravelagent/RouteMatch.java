@@ -1,6 +1,7 @@
 package com.augustl.pathtravelagent;
 
 import java.util.List;
+import java.util.UUID;
 
 /**
  * <p>The value passed to handlers when they match a path. Contains information obtained from the URL.</p>
@@ -11,10 +12,12 @@ import java.util.List;
  *
  * <p>The various route builders defaults to strings when no type has been specified.</p>
  *
+ * <p>Instead of the param name, a {@link ParamKey} can be used, which avoids looking up the value by name.</p>
+ *
  * @param <T_REQ> A request object, implementing IRequest. Used to access the raw request object used for matching.
  */
 public class RouteMatch<T_REQ extends IRequest> {
-    private final T_REQ req;
+    private T_REQ req;
     private final RouteMatchResult routeMatchResult;
 
     public RouteMatch(T_REQ req, RouteMatchResult routeMatchResult) {
@@ -22,6 +25,13 @@ public class RouteMatch<T_REQ extends IRequest> {
         this.routeMatchResult = routeMatchResult;
     }
 
+    /**
+     * Used by MatchContext, to reuse the instance for the next request.
+     */
+    void setRequest(T_REQ req) {
+        this.req = req;
+    }
+
     /**
      * @return The raw request object
      */
@@ -37,6 +47,24 @@ public class RouteMatch<T_REQ extends IRequest> {
         return this.routeMatchResult.getIntegerMatch(paramName);
     }
 
+    /**
+     * @param paramName The name used when defining the route
+     * @return The int value associated with the paramName, without boxing
+     * @throws IllegalArgumentException When there is no integer value for the paramName.
+     */
+    public int getIntRouteMatchResult(String paramName) {
+        return this.routeMatchResult.getIntMatch(paramName);
+    }
+
+    /**
+     * @param paramName The name used when defining the route
+     * @return The long (or int) value associated with the paramName, without boxing
+     * @throws IllegalArgumentException When there is no long or integer value for the paramName.
+     */
+    public long getLongRouteMatchResult(String paramName) {
+        return this.routeMatchResult.getLongMatch(paramName);
+    }
+
     /**
      * @param paramName The name used when defining the route
      * @return The string value associated with the paramName
@@ -45,6 +73,68 @@ public class RouteMatch<T_REQ extends IRequest> {
         return this.routeMatchResult.getStringMatch(paramName);
     }
 
+    /**
+     * @param paramName The name used when defining the route
+     * @return The UUID value associated with the paramName, created when it is read
+     * @see com.augustl.pathtravelagent.segment.UuidSegment
+     */
+    public UUID getUuidRouteMatchResult(String paramName) {
+        return this.routeMatchResult.getUuidMatch(paramName);
+    }
+
+    /**
+     * @param paramName The name used when defining the route
+     * @return The date value associated with the paramName, as the number of days since 1970-01-01. Convert it with
+     * <tt>LocalDate.ofEpochDay</tt>.
+     * @throws IllegalArgumentException When there is no date value for the paramName.
+     * @see com.augustl.pathtravelagent.segment.DateSegment
+     */
+    public int getEpochDayRouteMatchResult(String paramName) {
+        return this.routeMatchResult.getEpochDayMatch(paramName);
+    }
+
+    /**
+     * @param key The key for the param, created with {@link ParamKey#integerKey(String)}
+     * @return The integer value associated with the key
+     */
+    public Integer getIntegerRouteMatchResult(ParamKey<Integer> key) {
+        return this.routeMatchResult.getIntegerMatch(key);
+    }
+
+    /**
+     * @param key The key for the param, created with {@link ParamKey#integerKey(String)}
+     * @return The int value associated with the key, without boxing
+     * @throws IllegalArgumentException When there is no integer value for the key.
+     */
+    public int getIntRouteMatchResult(ParamKey<Integer> key) {
+        return this.routeMatchResult.getIntMatch(key);
+    }
+
+    /**
+     * @param key The key for the param, created with {@link ParamKey#longKey(String)}
+     * @return The long (or int) value associated with the key, without boxing
+     * @throws IllegalArgumentException When there is no long or integer value for the key.
+     */
+    public long getLongRouteMatchResult(ParamKey<Long> key) {
+        return this.routeMatchResult.getLongMatch(key);
+    }
+
+    /**
+     * @param key The key for the param, created with {@link ParamKey#stringKey(String)}
+     * @return The string value associated with the key
+     */
+    public String getStringRouteMatchResult(ParamKey<String> key) {
+        return this.routeMatchResult.getStringMatch(key);
+    }
+
+    /**
+     * @param key The key for the param, created with {@link ParamKey#uuidKey(String)}
+     * @return The UUID value associated with the key
+     */
+    public UUID getUuidRouteMatchResult(ParamKey<UUID> key) {
+        return this.routeMatchResult.getUuidMatch(key);
+    }
+
     public RouteMatchResult getRouteMatchResult() {
         return this.routeMatchResult;
     }
@@ -1,60 +1,506 @@
 package com.augustl.pathtravelagent;
 
 import com.augustl.pathtravelagent.segment.IParametricSegment;
+import com.augustl.pathtravelagent.segment.IRangeParametricSegment;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * <p>Internal representation of the data obtained from matching a route.</p>
+ *
+ * <p>Values for parametric segments are stored in slots, in flat arrays. Each parametric segment in a route gets its
+ * own slot, numbered from 0 at the parametric segment closest to the root. CompiledRouteTree assigns the slots when the
+ * tree is compiled. Values are stored as primitives where possible, and values read from a raw path are only turned
+ * into Strings when they are read.</p>
+ *
+ * <p>An instance can be reused for many matches, see {@link MatchContext}.</p>
  */
 public class RouteMatchResult {
-    private final HashMap<String, Integer> integerMatches = new HashMap<String, Integer>();
-    private final HashMap<String, String> stringMatches = new HashMap<String, String>();
+    private static final int DEFAULT_SLOT_COUNT = 4;
+    private static final byte NO_VALUE = 0;
+    private static final byte INTEGER = 1;
+    private static final byte STRING = 2;
+    private static final byte STRING_RANGE = 3;
+    private static final byte LONG = 4;
+    private static final byte UUID_BITS = 5;
+    private static final byte EPOCH_DAY = 6;
+
+    private String[] paramNames;
+    private byte[] types;
+    private long[] primitiveValues;
+    private long[] secondaryPrimitiveValues;
+    private Object[] values;
+    private int[] valueStarts;
+    private int[] valueEnds;
+    private int size = 0;
+    private int nextSlot = -1;
+
     private final ArrayList<String> wildcardMatches = new ArrayList<String>();
+    private CharSequence wildcardSource;
+    private int wildcardStart;
+    private int wildcardEnd;
+    private int missDepth;
+
+    public RouteMatchResult() {
+        this(DEFAULT_SLOT_COUNT);
+    }
+
+    /**
+     * @param slotCount The number of slots to make room for up front. Grows when needed.
+     * @see CompiledRouteTree#getSlotCount()
+     */
+    public RouteMatchResult(int slotCount) {
+        allocateSlots(Math.max(slotCount, 1));
+    }
+
+    /**
+     * Makes the instance ready for another match. Keeps the slot arrays, so that a reused instance does not allocate.
+     */
+    public void reset() {
+        for (int i = 0; i < this.size; i++) {
+            this.paramNames[i] = null;
+            this.types[i] = NO_VALUE;
+            this.values[i] = null;
+        }
+        this.size = 0;
+        this.nextSlot = -1;
+        this.wildcardMatches.clear();
+        this.wildcardSource = null;
+    }
+
+    /**
+     * Set by InstrumentedRouteMatcher when the walk fails, so that the depth of a miss is known without walking the
+     * tree again.
+     *
+     * @param missDepth The number of path segments that matched before the walk failed.
+     */
+    void setMissDepth(int missDepth) {
+        this.missDepth = missDepth;
+    }
+
+    /**
+     * @return The number of path segments that matched before the last walk failed. Only valid after a walk failed.
+     */
+    int getMissDepth() {
+        return this.missDepth;
+    }
+
+    /**
+     * Removes the values in the slots from size and up, and all wildcard matches. Used to go back to the values of a
+     * shorter path when matching many paths with a shared prefix.
+     */
+    void truncate(int size) {
+        for (int i = size; i < this.size; i++) {
+            this.paramNames[i] = null;
+            this.types[i] = NO_VALUE;
+            this.values[i] = null;
+        }
+        this.size = Math.min(this.size, size);
+        this.nextSlot = -1;
+        this.wildcardMatches.clear();
+        this.wildcardSource = null;
+    }
+
+    /**
+     * Turns all values that are read lazily into Strings, so that reading the instance no longer changes it, and it
+     * no longer refers to the path it was matched from.
+     */
+    void materialize() {
+        for (int i = 0; i < this.size; i++) {
+            getStringMatch(i);
+        }
+        getWildcardMatches();
+    }
+
+    /**
+     * Replaces the contents of this instance with a copy of the values in other. Values that are read lazily stay
+     * lazy, and refer to the same source as in other. Only reads other, unless it has wildcard matches that are split
+     * lazily.
+     */
+    void copyFrom(RouteMatchResult other) {
+        reset();
+        if (other.size > this.paramNames.length) {
+            allocateSlots(other.size);
+        }
+        System.arraycopy(other.paramNames, 0, this.paramNames, 0, other.size);
+        System.arraycopy(other.types, 0, this.types, 0, other.size);
+        System.arraycopy(other.primitiveValues, 0, this.primitiveValues, 0, other.size);
+        System.arraycopy(other.secondaryPrimitiveValues, 0, this.secondaryPrimitiveValues, 0, other.size);
+        System.arraycopy(other.values, 0, this.values, 0, other.size);
+        System.arraycopy(other.valueStarts, 0, this.valueStarts, 0, other.size);
+        System.arraycopy(other.valueEnds, 0, this.valueEnds, 0, other.size);
+        this.size = other.size;
+        this.wildcardMatches.addAll(other.getWildcardMatches());
+    }
 
     public boolean addParametricSegment(IParametricSegment parametricSegment, String rawValue) {
+        return addParametricSegment(parametricSegment, this.size, rawValue);
+    }
+
+    /**
+     * @param parametricSegment The segment to get the value from
+     * @param slot The slot to store the value in
+     * @param rawValue The path segment
+     * @return true if the segment accepted the value.
+     */
+    public boolean addParametricSegment(IParametricSegment parametricSegment, int slot, String rawValue) {
+        if (parametricSegment instanceof IRangeParametricSegment) {
+            return addParametricSegment(parametricSegment, slot, rawValue, 0, rawValue.length());
+        }
+
+        this.nextSlot = slot;
         IResult value = parametricSegment.getValue(rawValue);
         if (value == null) {
+            this.nextSlot = -1;
             return false;
         }
 
         value.addToMatchResult(parametricSegment.getParamName(), this);
+        this.nextSlot = -1;
         return value.isSuccess();
     }
 
+    /**
+     * Like {@link #addParametricSegment(IParametricSegment, int, String)}, for a path segment in a range of a raw path.
+     * Only creates a String for the path segment if the segment does not implement IRangeParametricSegment.
+     */
+    public boolean addParametricSegment(IParametricSegment parametricSegment, int slot, CharSequence source, int start, int end) {
+        if (!(parametricSegment instanceof IRangeParametricSegment)) {
+            return addParametricSegment(parametricSegment, slot, source.subSequence(start, end).toString());
+        }
+
+        this.nextSlot = slot;
+        boolean res = ((IRangeParametricSegment) parametricSegment).addValue(this, source, start, end);
+        this.nextSlot = -1;
+        return res;
+    }
+
     public void addToIntegerMatches(String pathSegment, Integer val) {
-        this.integerMatches.put(pathSegment, val);
+        int slot = claimSlot(pathSegment);
+        if (val != null) {
+            this.types[slot] = INTEGER;
+            this.primitiveValues[slot] = val;
+        }
+    }
+
+    public void addToIntegerMatches(String pathSegment, int val) {
+        int slot = claimSlot(pathSegment);
+        this.types[slot] = INTEGER;
+        this.primitiveValues[slot] = val;
     }
 
     public Integer getIntegerMatch(String pathSegment) {
-        return this.integerMatches.get(pathSegment);
+        int slot = findSlot(pathSegment);
+        return slot == -1 ? null : getIntegerMatch(slot);
+    }
+
+    /**
+     * @throws IllegalArgumentException When there is no integer value for the param.
+     */
+    public int getIntMatch(String pathSegment) {
+        return getIntMatch(findSlot(pathSegment), pathSegment);
+    }
+
+    public void addToLongMatches(String pathSegment, long val) {
+        int slot = claimSlot(pathSegment);
+        this.types[slot] = LONG;
+        this.primitiveValues[slot] = val;
+    }
+
+    /**
+     * Reads both long and integer values.
+     *
+     * @throws IllegalArgumentException When there is no long or integer value for the param.
+     */
+    public long getLongMatch(String pathSegment) {
+        return getLongMatch(findSlot(pathSegment), pathSegment);
+    }
+
+    /**
+     * Adds a UUID, as its two halves, without creating a UUID until it is read.
+     */
+    public void addToUuidMatches(String pathSegment, long mostSignificantBits, long leastSignificantBits) {
+        int slot = claimSlot(pathSegment);
+        this.types[slot] = UUID_BITS;
+        this.primitiveValues[slot] = mostSignificantBits;
+        this.secondaryPrimitiveValues[slot] = leastSignificantBits;
+    }
+
+    public UUID getUuidMatch(String pathSegment) {
+        int slot = findSlot(pathSegment);
+        return slot == -1 ? null : getUuidMatch(slot);
+    }
+
+    /**
+     * @param epochDay The number of days since 1970-01-01
+     */
+    public void addToEpochDayMatches(String pathSegment, int epochDay) {
+        int slot = claimSlot(pathSegment);
+        this.types[slot] = EPOCH_DAY;
+        this.primitiveValues[slot] = epochDay;
+    }
+
+    /**
+     * @return The number of days since 1970-01-01
+     * @throws IllegalArgumentException When there is no date value for the param.
+     */
+    public int getEpochDayMatch(String pathSegment) {
+        int slot = findSlot(pathSegment);
+        if (slot == -1 || this.types[slot] != EPOCH_DAY) {
+            throw new IllegalArgumentException("No date value for param " + pathSegment);
+        }
+        return (int) this.primitiveValues[slot];
     }
 
     public void addToStringMatches(String pathSegment, String val) {
-        this.stringMatches.put(pathSegment, val);
+        int slot = claimSlot(pathSegment);
+        if (val != null) {
+            this.types[slot] = STRING;
+            this.values[slot] = val;
+        }
+    }
+
+    /**
+     * Adds a string value that is only turned into a String when it is read. The source must not change until the
+     * match is completed.
+     */
+    public void addToStringMatches(String pathSegment, CharSequence source, int start, int end) {
+        int slot = claimSlot(pathSegment);
+        this.types[slot] = STRING_RANGE;
+        this.values[slot] = source;
+        this.valueStarts[slot] = start;
+        this.valueEnds[slot] = end;
     }
 
     public String getStringMatch(String pathSegment) {
-        return this.stringMatches.get(pathSegment);
+        int slot = findSlot(pathSegment);
+        return slot == -1 ? null : getStringMatch(slot);
+    }
+
+    /**
+     * @param key The key for the param, resolving to its slot
+     * @return The integer value for the key, or null.
+     */
+    public Integer getIntegerMatch(ParamKey<Integer> key) {
+        int slot = findSlot(key);
+        return slot == -1 ? null : getIntegerMatch(slot);
+    }
+
+    /**
+     * @param key The key for the param, resolving to its slot
+     * @return The string value for the key, or null.
+     */
+    public String getStringMatch(ParamKey<String> key) {
+        int slot = findSlot(key);
+        return slot == -1 ? null : getStringMatch(slot);
+    }
+
+    /**
+     * @param key The key for the param, resolving to its slot
+     * @return The UUID value for the key, or null.
+     */
+    public UUID getUuidMatch(ParamKey<UUID> key) {
+        int slot = findSlot(key);
+        return slot == -1 ? null : getUuidMatch(slot);
+    }
+
+    /**
+     * @throws IllegalArgumentException When there is no integer value for the key.
+     */
+    public int getIntMatch(ParamKey<Integer> key) {
+        return getIntMatch(findSlot(key), key.getParamName());
+    }
+
+    /**
+     * Reads both long and integer values.
+     *
+     * @throws IllegalArgumentException When there is no long or integer value for the key.
+     */
+    public long getLongMatch(ParamKey<Long> key) {
+        return getLongMatch(findSlot(key), key.getParamName());
+    }
+
+    private int getIntMatch(int slot, String paramName) {
+        if (slot == -1 || this.types[slot] != INTEGER) {
+            throw new IllegalArgumentException("No integer value for param " + paramName);
+        }
+        return (int) this.primitiveValues[slot];
+    }
+
+    private long getLongMatch(int slot, String paramName) {
+        if (slot == -1 || (this.types[slot] != LONG && this.types[slot] != INTEGER)) {
+            throw new IllegalArgumentException("No long value for param " + paramName);
+        }
+        return this.primitiveValues[slot];
+    }
+
+    private Integer getIntegerMatch(int slot) {
+        if (this.types[slot] != INTEGER) {
+            return null;
+        }
+        return (int) this.primitiveValues[slot];
+    }
+
+    private UUID getUuidMatch(int slot) {
+        if (this.types[slot] != UUID_BITS) {
+            return null;
+        }
+        return new UUID(this.primitiveValues[slot], this.secondaryPrimitiveValues[slot]);
+    }
+
+    private String getStringMatch(int slot) {
+        if (this.types[slot] == STRING_RANGE) {
+            this.values[slot] = ((CharSequence) this.values[slot]).subSequence(this.valueStarts[slot], this.valueEnds[slot]).toString();
+            this.types[slot] = STRING;
+        }
+        if (this.types[slot] != STRING) {
+            return null;
+        }
+        return (String) this.values[slot];
     }
 
     public void addToWildcardMatches(String pathSegment) {
         this.wildcardMatches.add(pathSegment);
     }
 
+    /**
+     * Adds the path segments in a range of a raw path as wildcard matches, without splitting them up until they are
+     * read.
+     */
+    void addToWildcardMatches(CharSequence source, int start, int end) {
+        this.wildcardSource = source;
+        this.wildcardStart = start;
+        this.wildcardEnd = end;
+    }
+
     public List<String> getWildcardMatches() {
+        if (this.wildcardSource != null) {
+            int segmentStart = this.wildcardStart;
+            while (segmentStart <= this.wildcardEnd) {
+                int segmentEnd = DefaultPathToPathSegments.findSegmentEnd(this.wildcardSource, segmentStart, this.wildcardEnd);
+                this.wildcardMatches.add(this.wildcardSource.subSequence(segmentStart, segmentEnd).toString());
+                segmentStart = segmentEnd + 1;
+            }
+            this.wildcardSource = null;
+        }
         return this.wildcardMatches;
     }
 
     public Map<String,Integer> getIntegerMatches() {
-        return new HashMap<String, Integer>(this.integerMatches);
+        HashMap<String, Integer> res = new HashMap<String, Integer>();
+        for (int i = 0; i < this.size; i++) {
+            Integer val = getIntegerMatch(i);
+            if (val != null) {
+                res.put(this.paramNames[i], val);
+            }
+        }
+        return res;
+    }
+
+    public Map<String, Long> getLongMatches() {
+        HashMap<String, Long> res = new HashMap<String, Long>();
+        for (int i = 0; i < this.size; i++) {
+            if (this.types[i] == LONG) {
+                res.put(this.paramNames[i], this.primitiveValues[i]);
+            }
+        }
+        return res;
     }
 
     public Map<String, String> getStringMatches() {
-        return new HashMap<String, String>(this.stringMatches);
+        HashMap<String, String> res = new HashMap<String, String>();
+        for (int i = 0; i < this.size; i++) {
+            String val = getStringMatch(i);
+            if (val != null) {
+                res.put(this.paramNames[i], val);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * The slot for a value is the one set by the matcher for the segment currently being added. When a value is added
+     * outside of matching, it replaces any value with the same name, or gets a new slot.
+     */
+    private int claimSlot(String paramName) {
+        int slot = this.nextSlot;
+        this.nextSlot = -1;
+        if (slot == -1) {
+            slot = findSlot(paramName);
+            if (slot == -1) {
+                slot = this.size;
+            }
+        }
+
+        if (slot >= this.paramNames.length) {
+            allocateSlots(Math.max(slot + 1, this.paramNames.length * 2));
+        }
+        for (int i = this.size; i < slot; i++) {
+            this.paramNames[i] = null;
+            this.types[i] = NO_VALUE;
+        }
+        if (slot >= this.size) {
+            this.size = slot + 1;
+        }
+
+        this.paramNames[slot] = paramName;
+        this.types[slot] = NO_VALUE;
+        this.values[slot] = null;
+        return slot;
+    }
+
+    private int findSlot(String paramName) {
+        for (int i = this.size - 1; i >= 0; i--) {
+            if (paramName.equals(this.paramNames[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int findSlot(ParamKey<?> key) {
+        int slot = key.getSlotHint();
+        if (slot < this.size && key.getParamName().equals(this.paramNames[slot])) {
+            return slot;
+        }
+
+        slot = findSlot(key.getParamName());
+        if (slot != -1) {
+            key.setSlotHint(slot);
+        }
+        return slot;
+    }
+
+    private void allocateSlots(int slotCount) {
+        String[] paramNames = new String[slotCount];
+        byte[] types = new byte[slotCount];
+        long[] primitiveValues = new long[slotCount];
+        long[] secondaryPrimitiveValues = new long[slotCount];
+        Object[] values = new Object[slotCount];
+        int[] valueStarts = new int[slotCount];
+        int[] valueEnds = new int[slotCount];
+
+        if (this.paramNames != null) {
+            System.arraycopy(this.paramNames, 0, paramNames, 0, this.size);
+            System.arraycopy(this.types, 0, types, 0, this.size);
+            System.arraycopy(this.primitiveValues, 0, primitiveValues, 0, this.size);
+            System.arraycopy(this.secondaryPrimitiveValues, 0, secondaryPrimitiveValues, 0, this.size);
+            System.arraycopy(this.values, 0, values, 0, this.size);
+            System.arraycopy(this.valueStarts, 0, valueStarts, 0, this.size);
+            System.arraycopy(this.valueEnds, 0, valueEnds, 0, this.size);
+        }
+
+        this.paramNames = paramNames;
+        this.types = types;
+        this.primitiveValues = primitiveValues;
+        this.secondaryPrimitiveValues = secondaryPrimitiveValues;
+        this.values = values;
+        this.valueStarts = valueStarts;
+        this.valueEnds = valueEnds;
     }
 
     /**
@@ -87,6 +533,75 @@ public class RouteMatchResult {
         }
     }
 
+    /**
+     * <p>Internal class for associating a parametric segment with a long value</p>
+     *
+     * @see com.augustl.pathtravelagent.segment.LongSegment
+     */
+    public static class LongResult implements IResult {
+        private final long val;
+        public LongResult(long val) {
+            this.val = val;
+        }
+
+        @Override
+        public boolean isSuccess() {
+            return true;
+        }
+
+        @Override
+        public void addToMatchResult(String paramName, RouteMatchResult res) {
+            res.addToLongMatches(paramName, this.val);
+        }
+    }
+
+    /**
+     * <p>Internal class for associating a parametric segment with a UUID value</p>
+     *
+     * @see com.augustl.pathtravelagent.segment.UuidSegment
+     */
+    public static class UuidResult implements IResult {
+        private final long mostSignificantBits;
+        private final long leastSignificantBits;
+        public UuidResult(long mostSignificantBits, long leastSignificantBits) {
+            this.mostSignificantBits = mostSignificantBits;
+            this.leastSignificantBits = leastSignificantBits;
+        }
+
+        @Override
+        public boolean isSuccess() {
+            return true;
+        }
+
+        @Override
+        public void addToMatchResult(String paramName, RouteMatchResult res) {
+            res.addToUuidMatches(paramName, this.mostSignificantBits, this.leastSignificantBits);
+        }
+    }
+
+    /**
+     * <p>Internal class for associating a parametric segment with a date value, as a number of days since
+     * 1970-01-01</p>
+     *
+     * @see com.augustl.pathtravelagent.segment.DateSegment
+     */
+    public static class EpochDayResult implements IResult {
+        private final int epochDay;
+        public EpochDayResult(int epochDay) {
+            this.epochDay = epochDay;
+        }
+
+        @Override
+        public boolean isSuccess() {
+            return true;
+        }
+
+        @Override
+        public void addToMatchResult(String paramName, RouteMatchResult res) {
+            res.addToEpochDayMatches(paramName, this.epochDay);
+        }
+    }
+
     /**
      * <p>Internal class for associating a parametric segment with a string value</p>
      *
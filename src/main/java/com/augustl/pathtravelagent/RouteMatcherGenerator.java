@@ -0,0 +1,583 @@
+package com.augustl.pathtravelagent;
+
+import com.augustl.pathtravelagent.segment.IParametricSegment;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.security.CodeSource;
+import java.util.*;
+
+/**
+ * <p>Writes the Java source for a GeneratedRouteMatcher, and compiles it in memory.</p>
+ *
+ * <p>Nodes with large subtrees get a static method each, that takes the path segments and the index of the path
+ * segment to match next. Nodes with small subtrees are inlined into their parents, so that most routes are matched
+ * without calling a method per path segment. The methods are spread over nested classes, so that no class gets more
+ * constants than a class file can hold, and nodes with many static children are split over several methods, so that
+ * no method gets too large for the JIT to compile.</p>
+ */
+class RouteMatcherGenerator<T_REQ extends IRequest, T_RES> {
+    static final String PACKAGE_NAME = "com.augustl.pathtravelagent.generated";
+    static final String CLASS_NAME = "GeneratedRoutes";
+
+    /**
+     * HotSpot does not compile methods larger than 8000 bytes of bytecode. A child takes about 30 bytes.
+     */
+    private static final int MAX_WEIGHT_PER_METHOD = 128;
+    private static final int MAX_WEIGHT_PER_CLASS = 2048;
+    private static final int MAX_INLINE_WEIGHT = 8;
+    private static final int MAX_IF_CHAIN = 4;
+
+    private final CompiledRouteTree.NodeIds<T_REQ, T_RES> nodeIds = new CompiledRouteTree.NodeIds<T_REQ, T_RES>();
+    private final CompiledRouteTree.Ids<IRouteHandler<T_REQ, T_RES>> handlers = new CompiledRouteTree.Ids<IRouteHandler<T_REQ, T_RES>>();
+    private final CompiledRouteTree.Ids<IParametricSegment> parametricSegments = new CompiledRouteTree.Ids<IParametricSegment>();
+    private final IdentityHashMap<RouteTreeNode<T_REQ, T_RES>, Integer> weights = new IdentityHashMap<RouteTreeNode<T_REQ, T_RES>, Integer>();
+    private final List<Part> parts = new ArrayList<Part>();
+    private final Map<String, Integer> methodParts = new HashMap<String, Integer>();
+    private final String source;
+
+    RouteMatcherGenerator(RouteTreeNode<T_REQ, T_RES> rootNode) {
+        // Decides which nodes get a method, and which class each method goes in, up front, since the methods call
+        // each other.
+        this.nodeIds.getNodeId(rootNode, 0);
+        for (int i = 0; i < this.nodeIds.size(); i++) {
+            RouteTreeNode<T_REQ, T_RES> node = this.nodeIds.getNode(i);
+            int depth = this.nodeIds.getParametricDepth(i);
+            addMethodNodes(node, depth);
+
+            if (getCodeWeight(node) <= MAX_WEIGHT_PER_METHOD) {
+                addMethod(nodeMethod(i), getCodeWeight(node));
+            } else {
+                List<List<String>> groups = getGroups(node);
+                addMethod(nodeMethod(i), groups.size());
+                for (int g = 0; g < groups.size(); g++) {
+                    addMethod(groupMethod(i, g), getCodeWeight(node, groups.get(g)));
+                }
+                addMethod(fallbackMethod(i), 1);
+            }
+        }
+
+        this.source = writeSource();
+    }
+
+    GeneratedRouteMatcher<T_REQ, T_RES> generate() {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new UnsupportedOperationException("Generating a matcher needs a JDK, there is no Java compiler in " + System.getProperty("java.home"));
+        }
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        InMemoryFileManager fileManager = new InMemoryFileManager(compiler.getStandardFileManager(diagnostics, null, null));
+        try {
+            List<String> options = Arrays.asList("-classpath", getClassPath(), "-proc:none", "-g:source,lines");
+            List<JavaFileObject> sources = Collections.<JavaFileObject>singletonList(new SourceFile(PACKAGE_NAME + "." + CLASS_NAME, this.source));
+            if (!compiler.getTask(null, fileManager, diagnostics, options, null, sources).call()) {
+                throw new IllegalStateException("Could not compile the generated matcher: " + diagnostics.getDiagnostics());
+            }
+        } finally {
+            try {
+                fileManager.close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        GeneratedClassLoader classLoader = new GeneratedClassLoader(fileManager.getClasses(), this.handlers.getValues(), this.parametricSegments.getValues());
+        try {
+            @SuppressWarnings("unchecked")
+            GeneratedRouteMatcher<T_REQ, T_RES> res = (GeneratedRouteMatcher<T_REQ, T_RES>) classLoader
+                .loadClass(PACKAGE_NAME + "." + CLASS_NAME)
+                .getDeclaredConstructor()
+                .newInstance();
+            return res;
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        } catch (InstantiationException e) {
+            throw new IllegalStateException(e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    String getSource() {
+        return this.source;
+    }
+
+    private String writeSource() {
+        for (int i = 0; i < this.nodeIds.size(); i++) {
+            RouteTreeNode<T_REQ, T_RES> node = this.nodeIds.getNode(i);
+            int depth = this.nodeIds.getParametricDepth(i);
+            if (getCodeWeight(node) <= MAX_WEIGHT_PER_METHOD) {
+                writeNodeMethod(i, node, depth);
+            } else {
+                writeSplitNodeMethods(i, node, depth);
+            }
+        }
+
+        StringBuilder res = new StringBuilder();
+        res.append("package ").append(PACKAGE_NAME).append(";\n\n");
+        res.append("import com.augustl.pathtravelagent.*;\n");
+        res.append("import com.augustl.pathtravelagent.segment.IParametricSegment;\n");
+        res.append("import java.util.List;\n\n");
+        res.append("@SuppressWarnings(\"unchecked\")\n");
+        res.append("public final class ").append(CLASS_NAME).append("<T_REQ extends IRequest, T_RES> extends GeneratedRouteMatcher<T_REQ, T_RES> {\n");
+        res.append("    @Override\n");
+        res.append("    protected T_RES match(List<String> p, RouteMatchResult r, RouteMatch<T_REQ> m) {\n");
+        res.append("        return (T_RES) ").append(call(nodeMethod(CompiledRouteTree.ROOT_NODE))).append("(p, 0, r, m);\n");
+        res.append("    }\n");
+        for (int i = 0; i < this.parts.size(); i++) {
+            Part part = this.parts.get(i);
+            res.append("\n    static final class Part").append(i).append(" {\n");
+            for (Integer handlerId : part.handlerIds) {
+                res.append("        private static final IRouteHandler h").append(handlerId)
+                    .append(" = getHandler(Part").append(i).append(".class, ").append(handlerId).append(");\n");
+            }
+            for (Integer parametricSegmentId : part.parametricSegmentIds) {
+                res.append("        private static final IParametricSegment ps").append(parametricSegmentId)
+                    .append(" = getParametricSegment(Part").append(i).append(".class, ").append(parametricSegmentId).append(");\n");
+            }
+            res.append(part.methods);
+            res.append("    }\n");
+        }
+        res.append("}\n");
+        return res.toString();
+    }
+
+    private void writeNodeMethod(int nodeId, RouteTreeNode<T_REQ, T_RES> node, int depth) {
+        String name = nodeMethod(nodeId);
+        Part part = getPart(name);
+        StringBuilder out = part.methods;
+        out.append("\n        static Object ").append(name).append("(List<String> p, int i, RouteMatchResult r, RouteMatch m) {\n");
+        writeNode(out, part, node, depth, 0, "            ");
+        out.append("        }\n");
+    }
+
+    private void writeSplitNodeMethods(int nodeId, RouteTreeNode<T_REQ, T_RES> node, int depth) {
+        List<List<String>> groups = getGroups(node);
+
+        String name = nodeMethod(nodeId);
+        Part part = getPart(name);
+        StringBuilder out = part.methods;
+        out.append("\n        static Object ").append(name).append("(List<String> p, int i, RouteMatchResult r, RouteMatch m) {\n");
+        writeEnd(out, part, node, 0, "            ");
+        out.append("            String s0 = p.get(i);\n");
+        out.append("            int hash = s0.hashCode();\n");
+        writeGroupSearch(out, nodeId, groups, 0, groups.size(), "            ");
+        out.append("        }\n");
+
+        for (int g = 0; g < groups.size(); g++) {
+            String groupName = groupMethod(nodeId, g);
+            Part groupPart = getPart(groupName);
+            StringBuilder groupOut = groupPart.methods;
+            groupOut.append("\n        static Object ").append(groupName).append("(String s0, int hash, List<String> p, int i, RouteMatchResult r, RouteMatch m) {\n");
+            writeSwitch(groupOut, groupPart, node, depth, 0, groups.get(g), "hash", "            ");
+            groupOut.append("            return ").append(call(fallbackMethod(nodeId))).append("(s0, p, i, r, m);\n");
+            groupOut.append("        }\n");
+        }
+
+        String fallbackName = fallbackMethod(nodeId);
+        Part fallbackPart = getPart(fallbackName);
+        StringBuilder fallbackOut = fallbackPart.methods;
+        fallbackOut.append("\n        static Object ").append(fallbackName).append("(String s0, List<String> p, int i, RouteMatchResult r, RouteMatch m) {\n");
+        writeFallback(fallbackOut, fallbackPart, node, depth, 0, "            ");
+        fallbackOut.append("        }\n");
+    }
+
+    /**
+     * Picks the group for the hash code with a binary search over the first hash code of each group.
+     */
+    private void writeGroupSearch(StringBuilder out, int nodeId, List<List<String>> groups, int from, int to, String indent) {
+        if (to - from == 1) {
+            out.append(indent).append("return ").append(call(groupMethod(nodeId, from))).append("(s0, hash, p, i, r, m);\n");
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        out.append(indent).append("if (hash < ").append(groups.get(mid).get(0).hashCode()).append(") {\n");
+        writeGroupSearch(out, nodeId, groups, from, mid, indent + "    ");
+        out.append(indent).append("}\n");
+        writeGroupSearch(out, nodeId, groups, mid, to, indent);
+    }
+
+    /**
+     * Writes statements that match the rest of the path at the node, and always return. The node matches the path
+     * segment at index i + offset, in the local variable s + offset.
+     */
+    private void writeNode(StringBuilder out, Part part, RouteTreeNode<T_REQ, T_RES> node, int depth, int offset, String indent) {
+        writeEnd(out, part, node, offset, indent);
+        out.append(indent).append("String s").append(offset).append(" = p.get(").append(index(offset)).append(");\n");
+
+        List<String> pathSegments = new ArrayList<String>(node.getPathSegmentChildNodes().keySet());
+        Collections.sort(pathSegments, CompiledRouteTree.HASH_CODE_ORDER);
+        if (pathSegments.size() <= MAX_IF_CHAIN) {
+            for (String pathSegment : pathSegments) {
+                writeStaticChild(out, part, node, depth, offset, pathSegment, indent);
+            }
+        } else {
+            writeSwitch(out, part, node, depth, offset, pathSegments, "s" + offset + ".hashCode()", indent);
+        }
+
+        writeFallback(out, part, node, depth, offset, indent);
+    }
+
+    /**
+     * When the path ends at the node, the node is the target.
+     */
+    private void writeEnd(StringBuilder out, Part part, RouteTreeNode<T_REQ, T_RES> node, int offset, String indent) {
+        out.append(indent).append("if (").append(index(offset)).append(" == p.size()) {\n");
+        out.append(indent).append("    return ").append(handlerCall(part, node)).append(";\n");
+        out.append(indent).append("}\n");
+    }
+
+    private void writeSwitch(StringBuilder out, Part part, RouteTreeNode<T_REQ, T_RES> node, int depth, int offset, List<String> pathSegments, String hashCode, String indent) {
+        out.append(indent).append("switch (").append(hashCode).append(") {\n");
+        for (int i = 0; i < pathSegments.size(); i++) {
+            String pathSegment = pathSegments.get(i);
+            if (i == 0 || pathSegments.get(i - 1).hashCode() != pathSegment.hashCode()) {
+                out.append(indent).append("    case ").append(pathSegment.hashCode()).append(":\n");
+            }
+            writeStaticChild(out, part, node, depth, offset, pathSegment, indent + "        ");
+            if (i == pathSegments.size() - 1 || pathSegments.get(i + 1).hashCode() != pathSegment.hashCode()) {
+                out.append(indent).append("        break;\n");
+            }
+        }
+        out.append(indent).append("}\n");
+    }
+
+    private void writeStaticChild(StringBuilder out, Part part, RouteTreeNode<T_REQ, T_RES> node, int depth, int offset, String pathSegment, String indent) {
+        out.append(indent).append("if (s").append(offset).append(".equals(").append(toJavaString(pathSegment)).append(")) {\n");
+        writeChild(out, part, node.getPathSegmentChildNode(pathSegment), depth, offset + 1, indent + "    ");
+        out.append(indent).append("}\n");
+    }
+
+    /**
+     * Static children take precedence, so the parametric child, or else the wildcard child, is only tried when no
+     * static child matched.
+     */
+    private void writeFallback(StringBuilder out, Part part, RouteTreeNode<T_REQ, T_RES> node, int depth, int offset, String indent) {
+        if (node.hasParametricChild()) {
+            int parametricSegmentId = this.parametricSegments.getId(node.getParametricChildSegment());
+            part.parametricSegmentIds.add(parametricSegmentId);
+            out.append(indent).append("if (!r.addParametricSegment(ps").append(parametricSegmentId).append(", ").append(depth).append(", s").append(offset).append(")) {\n");
+            out.append(indent).append("    return null;\n");
+            out.append(indent).append("}\n");
+            writeChild(out, part, node.getParametricChildNode(), depth + 1, offset + 1, indent);
+        } else if (node.hasWildcardChild()) {
+            out.append(indent).append("for (int j = ").append(index(offset)).append("; j < p.size(); j++) {\n");
+            out.append(indent).append("    r.addToWildcardMatches(p.get(j));\n");
+            out.append(indent).append("}\n");
+            out.append(indent).append("return ").append(handlerCall(part, node.getWildcardChildNode())).append(";\n");
+        } else {
+            out.append(indent).append("return null;\n");
+        }
+    }
+
+    /**
+     * Writes statements that match the rest of the path at a child, starting at the path segment at i + offset.
+     */
+    private void writeChild(StringBuilder out, Part part, RouteTreeNode<T_REQ, T_RES> child, int depth, int offset, String indent) {
+        if (isLeaf(child)) {
+            if (child.getHandler() == null) {
+                out.append(indent).append("return null;\n");
+            } else {
+                out.append(indent).append("return ").append(index(offset)).append(" == p.size() ? ").append(handlerCall(part, child)).append(" : null;\n");
+            }
+        } else if (isInlined(child)) {
+            writeNode(out, part, child, depth, offset, indent);
+        } else {
+            out.append(indent).append("return ").append(call(nodeMethod(this.nodeIds.getNodeId(child, depth)))).append("(p, ").append(index(offset)).append(", r, m);\n");
+        }
+    }
+
+    private String handlerCall(Part part, RouteTreeNode<T_REQ, T_RES> node) {
+        if (node.getHandler() == null) {
+            return "null";
+        }
+        int handlerId = this.handlers.getId(node.getHandler());
+        part.handlerIds.add(handlerId);
+        return "h" + handlerId + ".call(m)";
+    }
+
+    private String call(String method) {
+        return "Part" + this.methodParts.get(method) + "." + method;
+    }
+
+    private Part getPart(String method) {
+        return this.parts.get(this.methodParts.get(method));
+    }
+
+    private void addMethod(String method, int weight) {
+        if (this.parts.isEmpty() || this.parts.get(this.parts.size() - 1).weight + weight > MAX_WEIGHT_PER_CLASS) {
+            this.parts.add(new Part());
+        }
+        Part part = this.parts.get(this.parts.size() - 1);
+        part.weight += weight;
+        this.methodParts.put(method, this.parts.size() - 1);
+    }
+
+    /**
+     * Gives a method to the children of the node that are neither leaves nor inlined, and to theirs again for the
+     * children that are inlined, just like writeNode does.
+     */
+    private void addMethodNodes(RouteTreeNode<T_REQ, T_RES> node, int depth) {
+        for (RouteTreeNode<T_REQ, T_RES> child : node.getPathSegmentChildNodes().values()) {
+            addMethodNode(child, depth);
+        }
+        if (node.hasParametricChild()) {
+            addMethodNode(node.getParametricChildNode(), depth + 1);
+        }
+    }
+
+    private void addMethodNode(RouteTreeNode<T_REQ, T_RES> child, int depth) {
+        if (isLeaf(child)) {
+            return;
+        }
+        if (isInlined(child)) {
+            addMethodNodes(child, depth);
+        } else {
+            this.nodeIds.getNodeId(child, depth);
+        }
+    }
+
+    private boolean isInlined(RouteTreeNode<T_REQ, T_RES> node) {
+        return getWeight(node) <= MAX_INLINE_WEIGHT;
+    }
+
+    /**
+     * @return The number of children in the subtree, which is about how much code it takes to match it inline.
+     */
+    private int getWeight(RouteTreeNode<T_REQ, T_RES> node) {
+        Integer res = this.weights.get(node);
+        if (res == null) {
+            int weight = 1;
+            for (RouteTreeNode<T_REQ, T_RES> child : node.getPathSegmentChildNodes().values()) {
+                weight += getWeight(child);
+            }
+            if (node.hasParametricChild()) {
+                weight += getWeight(node.getParametricChildNode());
+            }
+            if (node.hasWildcardChild()) {
+                weight++;
+            }
+            res = weight;
+            this.weights.put(node, res);
+        }
+        return res;
+    }
+
+    /**
+     * @return About how much code it takes to match the node in a method of its own.
+     */
+    private int getCodeWeight(RouteTreeNode<T_REQ, T_RES> node) {
+        int res = getCodeWeight(node, node.getPathSegmentChildNodes().keySet());
+        if (node.hasParametricChild()) {
+            res += getChildCodeWeight(node.getParametricChildNode());
+        }
+        return res;
+    }
+
+    private int getCodeWeight(RouteTreeNode<T_REQ, T_RES> node, Collection<String> pathSegments) {
+        int res = 1;
+        for (String pathSegment : pathSegments) {
+            res += getChildCodeWeight(node.getPathSegmentChildNode(pathSegment));
+        }
+        return res;
+    }
+
+    private int getChildCodeWeight(RouteTreeNode<T_REQ, T_RES> child) {
+        return isInlined(child) ? getWeight(child) : 1;
+    }
+
+    /**
+     * Splits the static children into groups of about MAX_WEIGHT_PER_METHOD, ordered by hash code. Path segments
+     * with the same hash code are kept in the same group.
+     */
+    private List<List<String>> getGroups(RouteTreeNode<T_REQ, T_RES> node) {
+        List<String> pathSegments = new ArrayList<String>(node.getPathSegmentChildNodes().keySet());
+        Collections.sort(pathSegments, CompiledRouteTree.HASH_CODE_ORDER);
+
+        List<List<String>> res = new ArrayList<List<String>>();
+        List<String> group = new ArrayList<String>();
+        int groupWeight = 0;
+        for (int i = 0; i < pathSegments.size(); i++) {
+            String pathSegment = pathSegments.get(i);
+            int weight = getChildCodeWeight(node.getPathSegmentChildNode(pathSegment));
+            boolean sameHashCode = i > 0 && pathSegments.get(i - 1).hashCode() == pathSegment.hashCode();
+            if (!group.isEmpty() && groupWeight + weight > MAX_WEIGHT_PER_METHOD && !sameHashCode) {
+                res.add(group);
+                group = new ArrayList<String>();
+                groupWeight = 0;
+            }
+            group.add(pathSegment);
+            groupWeight += weight;
+        }
+        res.add(group);
+        return res;
+    }
+
+    private static String index(int offset) {
+        return offset == 0 ? "i" : "i + " + offset;
+    }
+
+    private static boolean isLeaf(RouteTreeNode<?, ?> node) {
+        return node.getPathSegmentChildNodes().isEmpty() && !node.hasParametricChild() && !node.hasWildcardChild();
+    }
+
+    private static String nodeMethod(int nodeId) {
+        return "n" + nodeId;
+    }
+
+    private static String groupMethod(int nodeId, int group) {
+        return "n" + nodeId + "g" + group;
+    }
+
+    private static String fallbackMethod(int nodeId) {
+        return "n" + nodeId + "f";
+    }
+
+    /**
+     * Escapes everything that is not printable ASCII, so that the source does not depend on the encoding, and no line
+     * terminators end up in a string literal.
+     */
+    static String toJavaString(String value) {
+        StringBuilder res = new StringBuilder(value.length() + 2);
+        res.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                res.append('\\').append(c);
+            } else if (c < 0x20 || c == 0x7f) {
+                res.append(String.format("\\%03o", (int) c));
+            } else if (c > 0x7f) {
+                res.append(String.format("\\u%04x", (int) c));
+            } else {
+                res.append(c);
+            }
+        }
+        res.append('"');
+        return res.toString();
+    }
+
+    /**
+     * The compiler reads the class path from the java.class.path system property, which does not always include
+     * PathTravelAgent, for example in application servers, so the jar or directory it was loaded from is added.
+     */
+    private static String getClassPath() {
+        String res = System.getProperty("java.class.path", "");
+        try {
+            CodeSource codeSource = GeneratedRouteMatcher.class.getProtectionDomain().getCodeSource();
+            if (codeSource != null && codeSource.getLocation() != null && "file".equals(codeSource.getLocation().getProtocol())) {
+                res = new File(codeSource.getLocation().toURI()).getPath() + File.pathSeparator + res;
+            }
+        } catch (Exception e) {
+            // Only the class path of the JVM, then
+        }
+        return res;
+    }
+
+    /**
+     * The methods of one of the nested classes, and the handlers and parametric segments they use.
+     */
+    private static class Part {
+        private final StringBuilder methods = new StringBuilder();
+        private final TreeSet<Integer> handlerIds = new TreeSet<Integer>();
+        private final TreeSet<Integer> parametricSegmentIds = new TreeSet<Integer>();
+        private int weight = 0;
+    }
+
+    private static class SourceFile extends SimpleJavaFileObject {
+        private final String source;
+
+        public SourceFile(String className, String source) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return this.source;
+        }
+    }
+
+    private static class ClassFile extends SimpleJavaFileObject {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        public ClassFile(String className) {
+            super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return this.bytes;
+        }
+    }
+
+    /**
+     * Keeps the compiled classes in memory, instead of writing them to files.
+     */
+    private static class InMemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, ClassFile> classFiles = new HashMap<String, ClassFile>();
+
+        public InMemoryFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            ClassFile res = new ClassFile(className);
+            this.classFiles.put(className, res);
+            return res;
+        }
+
+        public Map<String, byte[]> getClasses() {
+            Map<String, byte[]> res = new HashMap<String, byte[]>();
+            for (Map.Entry<String, ClassFile> entry : this.classFiles.entrySet()) {
+                res.put(entry.getKey(), entry.getValue().bytes.toByteArray());
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Defines the generated classes, and holds the handlers and parametric segments for them. Each generated matcher
+     * has a class loader of its own, so that its classes can be unloaded when it is no longer used.
+     */
+    static class GeneratedClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+        private final List<? extends IRouteHandler<?, ?>> handlers;
+        private final List<IParametricSegment> parametricSegments;
+
+        public GeneratedClassLoader(Map<String, byte[]> classes, List<? extends IRouteHandler<?, ?>> handlers, List<IParametricSegment> parametricSegments) {
+            super(GeneratedRouteMatcher.class.getClassLoader());
+            this.classes = classes;
+            this.handlers = new ArrayList<IRouteHandler<?, ?>>(handlers);
+            this.parametricSegments = new ArrayList<IParametricSegment>(parametricSegments);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = this.classes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+
+        public IRouteHandler<?, ?> getHandler(int handlerId) {
+            return this.handlers.get(handlerId);
+        }
+
+        public IParametricSegment getParametricSegment(int parametricSegmentId) {
+            return this.parametricSegments.get(parametricSegmentId);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.augustl.pathtravelagent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Holds the current route tree, for adding and removing routes while requests are being matched.</p>
+ *
+ * <p>Changes are staged with {@link #add(RouteTreeNode)} and {@link #remove(RouteTreeNode)}, from any number of
+ * threads, and become visible all at once when one of them calls {@link #publish()}. Publishing builds a new tree from
+ * the current one, copying only the nodes on the paths that changed, and swaps it in atomically. Neither staging nor
+ * publishing takes a lock, and readers always get a complete tree, before or after a publish, from
+ * {@link #getRootNode()}.</p>
+ *
+ * <pre>
+ * {@code
+ *  registry.add(new SingleRouteBuilder<MyReq, MyRes>().path("tenants").path("acme").build(acmeHandler));
+ *  registry.remove(new SingleRouteBuilder<MyReq, MyRes>().path("tenants").path("initech").build(null));
+ *  registry.publish();
+ *
+ *  MyRes res = new DefaultRouteMatcher<MyReq, MyRes>().match(registry.getRootNode(), req);
+ * }
+ * </pre>
+ *
+ * @param <T_REQ> A request object, implementing IRequest.
+ * @param <T_RES> The return value for the handler. Can be any type you want, not used for anything by PathTravelAgent.
+ * @see com.augustl.pathtravelagent.RouteTreeNode#merge(RouteTreeNode)
+ */
+public class RouteRegistry<T_REQ extends IRequest, T_RES> {
+    private final AtomicReference<State<T_REQ, T_RES>> state;
+
+    public RouteRegistry() {
+        this(new RouteTreeNode<T_REQ, T_RES>());
+    }
+
+    /**
+     * @param rootNode The initial route tree
+     */
+    public RouteRegistry(RouteTreeNode<T_REQ, T_RES> rootNode) {
+        if (rootNode == null) {
+            throw new IllegalArgumentException("The root node cannot be null");
+        }
+        this.state = new AtomicReference<State<T_REQ, T_RES>>(new State<T_REQ, T_RES>(rootNode, null));
+    }
+
+    /**
+     * @return The route tree as of the last publish. Changes staged since then are not included.
+     */
+    public RouteTreeNode<T_REQ, T_RES> getRootNode() {
+        return this.state.get().rootNode;
+    }
+
+    /**
+     * Stages the routes in <tt>route</tt> to be merged into the tree on the next publish.
+     *
+     * @param route The (immutable) routes to add, typically built with SingleRouteBuilder.
+     */
+    public void add(RouteTreeNode<T_REQ, T_RES> route) {
+        this.stage(route, false);
+    }
+
+    /**
+     * Stages the routes in <tt>route</tt> to be removed from the tree on the next publish. The handlers in
+     * <tt>route</tt> are not used for anything, and can be null.
+     *
+     * @param route The (immutable) routes to remove, typically built with SingleRouteBuilder.
+     */
+    public void remove(RouteTreeNode<T_REQ, T_RES> route) {
+        this.stage(route, true);
+    }
+
+    private void stage(RouteTreeNode<T_REQ, T_RES> route, boolean removal) {
+        if (route == null) {
+            throw new IllegalArgumentException("The route cannot be null");
+        }
+
+        while (true) {
+            State<T_REQ, T_RES> current = this.state.get();
+            State<T_REQ, T_RES> next = new State<T_REQ, T_RES>(current.rootNode, new Change<T_REQ, T_RES>(route, removal, current.pending));
+            if (this.state.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * <p>Applies all the staged changes, in the order they were staged, and makes the new tree visible to readers.</p>
+     *
+     * <p>The changes stay staged until the new tree is swapped in, so publishes happen one after the other, and each
+     * applies the changes in the order they were staged. When changes are staged while publishing, only those are
+     * applied on top of the tree built so far before trying again. When many threads publish at the same time, the
+     * changes of all of them can end up in a single publish, and the other publishes have nothing left to do.</p>
+     *
+     * <p>A change that cannot be applied, such as an add with a handler that throws when it is merged, is dropped,
+     * and the other changes are published without it.</p>
+     *
+     * @return The new route tree
+     * @throws IllegalStateException When one or more changes were dropped, after publishing the other changes. The
+     * cause is the exception from the first change that was dropped.
+     */
+    public RouteTreeNode<T_REQ, T_RES> publish() {
+        List<RuntimeException> failures = new ArrayList<RuntimeException>();
+        RouteTreeNode<T_REQ, T_RES> res = null;
+        Change<T_REQ, T_RES> applied = null;
+
+        while (true) {
+            State<T_REQ, T_RES> current = this.state.get();
+            if (current.pending == null) {
+                return current.rootNode;
+            }
+
+            List<Change<T_REQ, T_RES>> changes = getChangesSince(current.pending, applied);
+            if (changes == null) {
+                // Another publish swapped in a new tree, so the tree built so far is out of date.
+                failures.clear();
+                res = current.rootNode;
+                changes = getChangesSince(current.pending, null);
+            } else if (applied == null) {
+                res = current.rootNode;
+            }
+
+            res = apply(res, changes, failures);
+            applied = current.pending;
+            if (this.state.compareAndSet(current, new State<T_REQ, T_RES>(res, null))) {
+                if (!failures.isEmpty()) {
+                    throw new IllegalStateException("Dropped " + failures.size() + " staged changes that could not be applied", failures.get(0));
+                }
+                return res;
+            }
+        }
+    }
+
+    /**
+     * @return The number of changes staged since the last publish.
+     */
+    public int getPendingCount() {
+        int res = 0;
+        for (Change<T_REQ, T_RES> change = this.state.get().pending; change != null; change = change.previous) {
+            res++;
+        }
+        return res;
+    }
+
+    /**
+     * @param applied The last change that has already been applied, or null.
+     * @return The changes staged after <tt>applied</tt>, the last staged change first, or null if <tt>applied</tt> is
+     * no longer staged.
+     */
+    private static <T_REQ extends IRequest, T_RES> List<Change<T_REQ, T_RES>> getChangesSince(Change<T_REQ, T_RES> pending, Change<T_REQ, T_RES> applied) {
+        List<Change<T_REQ, T_RES>> res = new ArrayList<Change<T_REQ, T_RES>>();
+        for (Change<T_REQ, T_RES> change = pending; change != applied; change = change.previous) {
+            if (change == null) {
+                return null;
+            }
+            res.add(change);
+        }
+        return res;
+    }
+
+    private static <T_REQ extends IRequest, T_RES> RouteTreeNode<T_REQ, T_RES> apply(RouteTreeNode<T_REQ, T_RES> rootNode, List<Change<T_REQ, T_RES>> changes, List<RuntimeException> failures) {
+        // Adds in a row are merged all at once, which is a lot faster than one by one when there are many of them.
+        RouteTreeNode<T_REQ, T_RES> res = rootNode;
+        List<RouteTreeNode<T_REQ, T_RES>> added = new ArrayList<RouteTreeNode<T_REQ, T_RES>>();
+        for (int i = changes.size() - 1; i >= 0; i--) {
+            Change<T_REQ, T_RES> change = changes.get(i);
+            if (change.removal) {
+                res = mergeAdded(res, added, failures);
+                try {
+                    res = res.without(change.route);
+                } catch (RuntimeException e) {
+                    failures.add(e);
+                }
+            } else {
+                added.add(change.route);
+            }
+        }
+
+        return mergeAdded(res, added, failures);
+    }
+
+    private static <T_REQ extends IRequest, T_RES> RouteTreeNode<T_REQ, T_RES> mergeAdded(RouteTreeNode<T_REQ, T_RES> rootNode, List<RouteTreeNode<T_REQ, T_RES>> added, List<RuntimeException> failures) {
+        if (added.isEmpty()) {
+            return rootNode;
+        }
+
+        RouteTreeNode<T_REQ, T_RES> res;
+        added.add(0, rootNode);
+        try {
+            res = RouteTreeNode.mergeAll(added);
+        } catch (RuntimeException e) {
+            // Merges them one by one instead, to only drop the ones that fail.
+            res = rootNode;
+            for (int i = 1; i < added.size(); i++) {
+                try {
+                    res = res.merge(added.get(i));
+                } catch (RuntimeException mergeException) {
+                    failures.add(mergeException);
+                }
+            }
+        }
+        added.clear();
+        return res;
+    }
+
+    private static final class State<T_REQ extends IRequest, T_RES> {
+        private final RouteTreeNode<T_REQ, T_RES> rootNode;
+        private final Change<T_REQ, T_RES> pending;
+
+        State(RouteTreeNode<T_REQ, T_RES> rootNode, Change<T_REQ, T_RES> pending) {
+            this.rootNode = rootNode;
+            this.pending = pending;
+        }
+    }
+
+    /**
+     * A staged change, in a list with the last staged change first.
+     */
+    private static final class Change<T_REQ extends IRequest, T_RES> {
+        private final RouteTreeNode<T_REQ, T_RES> route;
+        private final boolean removal;
+        private final Change<T_REQ, T_RES> previous;
+
+        Change(RouteTreeNode<T_REQ, T_RES> route, boolean removal, Change<T_REQ, T_RES> previous) {
+            this.route = route;
+            this.removal = removal;
+            this.previous = previous;
+        }
+    }
+}
@@ -39,6 +39,16 @@ public class RouteTreeBuilder<T_REQ extends IRequest, T_RES> {
         return this;
     }
 
+    /**
+     * Sets the handler for requests with the given HTTP method, used instead of the handler for all methods.
+     *
+     * @see RouteTreeNode#getHandler(HttpMethod)
+     */
+    public RouteTreeBuilder<T_REQ, T_RES> handler(HttpMethod method, IRouteHandler<T_REQ, T_RES> handler) {
+        nodeBuilder.setMethodHandler(method, handler);
+        return this;
+    }
+
     public RouteTreeBuilder<T_REQ, T_RES> path(final String path, RouteTreeBuilder<T_REQ, T_RES> childBuilder) {
         String normalizedPath = path.startsWith(pathPrefix) ? path.substring(pathPrefix.length()) : path;
         nodeBuilder.addPathSegmentChild(normalizedPath, childBuilder.build(normalizedPath));
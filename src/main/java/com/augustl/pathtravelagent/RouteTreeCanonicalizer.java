@@ -0,0 +1,206 @@
+package com.augustl.pathtravelagent;
+
+import java.util.*;
+
+/**
+ * <p>Shares equal subtrees of route trees, so that a tree with many copies of the same routes, such as the same routes
+ * under a prefix for each locale or tenant, takes the memory of one copy. Since nodes are immutable, a node can be the
+ * child of many nodes, and the tree becomes a graph where each distinct subtree is stored once.</p>
+ *
+ * <pre>
+ * {@code
+ *  RouteTreeCanonicalizer.Result<MyReq, MyRes> res = new RouteTreeCanonicalizer<MyReq, MyRes>().canonicalize(routes);
+ *  log.info("Shared equal routes, " + res);
+ *  routes = res.getRoot();
+ * }
+ * </pre>
+ *
+ * <p>Two nodes are equal when they have the same handlers, by identity, equal path segment children, equal parametric
+ * children with equal parametric segments, and equal wildcard children. The built-in parametric segments are equal
+ * when they have the same param name and settings. Other parametric segments are only equal to themselves, unless
+ * they implement equals and hashCode.</p>
+ *
+ * <p>Matching a canonical tree gives the same results as matching the tree it was made from, with all the matchers.
+ * InstrumentedRouteMatcher counts the hits for a shared node under the template of the route that was matched.</p>
+ *
+ * <p>A canonicalizer remembers the canonical nodes of all the trees it has canonicalized, so that subtrees are also
+ * shared between the trees, such as between the old and new tree after adding a route. Use a new canonicalizer for
+ * each tree to not keep the nodes of old trees in memory. Not thread safe.</p>
+ *
+ * @param <T_REQ> A request object, implementing IRequest.
+ * @param <T_RES> The return value for the handler. Can be any type you want, not used for anything by PathTravelAgent.
+ * @see RouteTreeNode#canonicalize()
+ */
+public class RouteTreeCanonicalizer<T_REQ extends IRequest, T_RES> {
+    private final HashMap<NodeContents<T_REQ, T_RES>, RouteTreeNode<T_REQ, T_RES>> canonicalNodes = new HashMap<NodeContents<T_REQ, T_RES>, RouteTreeNode<T_REQ, T_RES>>();
+
+    /**
+     * @param rootNode The (immutable) tree to canonicalize. Not changed.
+     * @return The canonical tree, and how much memory it saves.
+     */
+    public Result<T_REQ, T_RES> canonicalize(RouteTreeNode<T_REQ, T_RES> rootNode) {
+        IdentityHashMap<RouteTreeNode<T_REQ, T_RES>, RouteTreeNode<T_REQ, T_RES>> canonicalized = new IdentityHashMap<RouteTreeNode<T_REQ, T_RES>, RouteTreeNode<T_REQ, T_RES>>();
+        RouteTreeNode<T_REQ, T_RES> root = canonicalize(rootNode, canonicalized);
+
+        long sizeBefore = 0;
+        for (RouteTreeNode<T_REQ, T_RES> node : canonicalized.keySet()) {
+            sizeBefore += node.getEstimatedSize();
+        }
+        IdentityHashMap<RouteTreeNode<T_REQ, T_RES>, Boolean> canonicalNodes = new IdentityHashMap<RouteTreeNode<T_REQ, T_RES>, Boolean>();
+        long sizeAfter = 0;
+        for (RouteTreeNode<T_REQ, T_RES> node : canonicalized.values()) {
+            if (canonicalNodes.put(node, Boolean.TRUE) == null) {
+                sizeAfter += node.getEstimatedSize();
+            }
+        }
+
+        return new Result<T_REQ, T_RES>(root, canonicalized.size(), canonicalNodes.size(), sizeBefore, sizeAfter);
+    }
+
+    /**
+     * Canonicalizes the children first, so that the children of equal nodes are the same instances, and nodes can be
+     * compared without comparing their subtrees.
+     */
+    private RouteTreeNode<T_REQ, T_RES> canonicalize(RouteTreeNode<T_REQ, T_RES> node, IdentityHashMap<RouteTreeNode<T_REQ, T_RES>, RouteTreeNode<T_REQ, T_RES>> canonicalized) {
+        RouteTreeNode<T_REQ, T_RES> res = canonicalized.get(node);
+        if (res != null) {
+            return res;
+        }
+
+        HashMap<String, RouteTreeNode<T_REQ, T_RES>> pathSegmentChildNodes = null;
+        for (Map.Entry<String, RouteTreeNode<T_REQ, T_RES>> child : node.getPathSegmentChildNodes().entrySet()) {
+            RouteTreeNode<T_REQ, T_RES> canonicalChild = canonicalize(child.getValue(), canonicalized);
+            if (canonicalChild != child.getValue()) {
+                if (pathSegmentChildNodes == null) {
+                    pathSegmentChildNodes = new HashMap<String, RouteTreeNode<T_REQ, T_RES>>(node.getPathSegmentChildNodes());
+                }
+                pathSegmentChildNodes.put(child.getKey(), canonicalChild);
+            }
+        }
+
+        ParametricChild<T_REQ, T_RES> parametricChild = node.getParametricChild();
+        if (parametricChild != null) {
+            RouteTreeNode<T_REQ, T_RES> canonicalChild = canonicalize(parametricChild.getChildNode(), canonicalized);
+            if (canonicalChild != parametricChild.getChildNode()) {
+                parametricChild = new ParametricChild<T_REQ, T_RES>(parametricChild.getParametricSegment(), canonicalChild);
+            }
+        }
+
+        RouteTreeNode<T_REQ, T_RES> wildcardChild = null;
+        if (node.hasWildcardChild()) {
+            wildcardChild = canonicalize(node.getWildcardChildNode(), canonicalized);
+        }
+
+        RouteTreeNode<T_REQ, T_RES> candidate = node;
+        if (pathSegmentChildNodes != null
+            || parametricChild != node.getParametricChild()
+            || (wildcardChild != null && wildcardChild != node.getWildcardChildNode())) {
+            candidate = node.withChildren(
+                PathSegmentChildNodes.copyOf(pathSegmentChildNodes == null ? node.getPathSegmentChildNodes() : pathSegmentChildNodes),
+                parametricChild,
+                wildcardChild);
+        }
+
+        NodeContents<T_REQ, T_RES> contents = new NodeContents<T_REQ, T_RES>(candidate);
+        res = this.canonicalNodes.get(contents);
+        if (res == null) {
+            res = candidate;
+            this.canonicalNodes.put(contents, candidate);
+        }
+        canonicalized.put(node, res);
+        return res;
+    }
+
+    /**
+     * A node as a key, compared by {@link RouteTreeNode#hasSameContents(RouteTreeNode)}.
+     */
+    private static final class NodeContents<T_REQ extends IRequest, T_RES> {
+        private final RouteTreeNode<T_REQ, T_RES> node;
+        private final int hashCode;
+
+        NodeContents(RouteTreeNode<T_REQ, T_RES> node) {
+            this.node = node;
+            this.hashCode = node.getContentHashCode();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean equals(Object obj) {
+            if (obj instanceof NodeContents) {
+                NodeContents<T_REQ, T_RES> other = (NodeContents<T_REQ, T_RES>) obj;
+                return other.hashCode == this.hashCode && other.node.hasSameContents(this.node);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+
+    /**
+     * <p>A canonical tree, and how much memory it saves compared to the tree it was made from. An immutable value.</p>
+     *
+     * <p>The sizes are estimates for a 64-bit JVM with compressed references, and count the nodes and the way they
+     * store their children. The handlers, path segments and parametric segments are shared by both trees, and not
+     * counted.</p>
+     */
+    public static final class Result<T_REQ extends IRequest, T_RES> {
+        private final RouteTreeNode<T_REQ, T_RES> root;
+        private final int nodeCountBefore;
+        private final int nodeCountAfter;
+        private final long estimatedSizeBefore;
+        private final long estimatedSizeAfter;
+
+        Result(RouteTreeNode<T_REQ, T_RES> root, int nodeCountBefore, int nodeCountAfter, long estimatedSizeBefore, long estimatedSizeAfter) {
+            this.root = root;
+            this.nodeCountBefore = nodeCountBefore;
+            this.nodeCountAfter = nodeCountAfter;
+            this.estimatedSizeBefore = estimatedSizeBefore;
+            this.estimatedSizeAfter = estimatedSizeAfter;
+        }
+
+        /**
+         * @return The root of the canonical tree.
+         */
+        public RouteTreeNode<T_REQ, T_RES> getRoot() {
+            return this.root;
+        }
+
+        /**
+         * @return The number of distinct nodes in the tree that was canonicalized.
+         */
+        public int getNodeCountBefore() {
+            return this.nodeCountBefore;
+        }
+
+        /**
+         * @return The number of distinct nodes in the canonical tree.
+         */
+        public int getNodeCountAfter() {
+            return this.nodeCountAfter;
+        }
+
+        public long getEstimatedSizeBefore() {
+            return this.estimatedSizeBefore;
+        }
+
+        public long getEstimatedSizeAfter() {
+            return this.estimatedSizeAfter;
+        }
+
+        /**
+         * @return The estimated number of bytes reclaimed once the tree that was canonicalized is no longer used.
+         */
+        public long getEstimatedReclaimedBytes() {
+            return this.estimatedSizeBefore - this.estimatedSizeAfter;
+        }
+
+        @Override
+        public String toString() {
+            return this.nodeCountBefore + " nodes to " + this.nodeCountAfter + ", about "
+                + this.estimatedSizeBefore + " bytes to " + this.estimatedSizeAfter + " bytes";
+        }
+    }
+}
@@ -18,18 +18,31 @@ import java.util.regex.Pattern;
  * @see com.augustl.pathtravelagent.SingleRouteBuilder
  */
 public class RouteTreeNode<T_REQ extends IRequest, T_RES> {
+    private static final int ALL_METHODS = (1 << HttpMethod.count()) - 1;
+    // Shared by all the nodes with a handler for all methods.
+    private static final Set<HttpMethod> ALL_METHOD_SET = createMethodSet(ALL_METHODS);
+    private static final String ALL_METHODS_ALLOW_HEADER = createAllowHeader(ALL_METHODS);
+
     private final String label;
     private final IRouteHandler<T_REQ, T_RES> handler;
-    private final Map<String, RouteTreeNode<T_REQ, T_RES>> pathSegmentChildNodes;
+    private final PathSegmentChildNodes<RouteTreeNode<T_REQ, T_RES>> pathSegmentChildNodes;
     private final ParametricChild<T_REQ, T_RES> parametricChild;
     private final RouteTreeNode<T_REQ, T_RES> wildcardChild;
+    private final IRouteHandler<T_REQ, T_RES>[] methodHandlers;
+    private final int allowedMethods;
+    private final Set<HttpMethod> allowedMethodSet;
+    private final String allowHeader;
 
     public RouteTreeNode() {
         this.label = "::ROOT::";
         this.handler = null;
-        this.pathSegmentChildNodes = Collections.unmodifiableMap(new HashMap<String, RouteTreeNode<T_REQ, T_RES>>());
+        this.pathSegmentChildNodes = PathSegmentChildNodes.empty();
         this.parametricChild = null;
         this.wildcardChild = null;
+        this.methodHandlers = null;
+        this.allowedMethods = 0;
+        this.allowedMethodSet = Collections.emptySet();
+        this.allowHeader = null;
     }
 
     public RouteTreeNode(
@@ -38,11 +51,129 @@ public class RouteTreeNode<T_REQ extends IRequest, T_RES> {
         HashMap<String, RouteTreeNode<T_REQ, T_RES>> pathSegmentChildNodes,
         ParametricChild<T_REQ, T_RES> parametricChild,
         RouteTreeNode<T_REQ, T_RES> wildcardChild) {
+        this(label, handler, PathSegmentChildNodes.copyOf(pathSegmentChildNodes), parametricChild, wildcardChild, (IRouteHandler<T_REQ, T_RES>[]) null);
+    }
+
+    /**
+     * @param methodHandlers The handlers for specific HTTP methods. Used instead of <tt>handler</tt> when matching a
+     *                       request for one of these methods.
+     * @see #getHandler(HttpMethod)
+     */
+    public RouteTreeNode(
+        String label,
+        IRouteHandler<T_REQ, T_RES> handler,
+        HashMap<String, RouteTreeNode<T_REQ, T_RES>> pathSegmentChildNodes,
+        ParametricChild<T_REQ, T_RES> parametricChild,
+        RouteTreeNode<T_REQ, T_RES> wildcardChild,
+        Map<HttpMethod, IRouteHandler<T_REQ, T_RES>> methodHandlers) {
+        this(label, handler, PathSegmentChildNodes.copyOf(pathSegmentChildNodes), parametricChild, wildcardChild, toMethodHandlerArray(methodHandlers));
+    }
+
+    private RouteTreeNode(
+        String label,
+        IRouteHandler<T_REQ, T_RES> handler,
+        PathSegmentChildNodes<RouteTreeNode<T_REQ, T_RES>> pathSegmentChildNodes,
+        ParametricChild<T_REQ, T_RES> parametricChild,
+        RouteTreeNode<T_REQ, T_RES> wildcardChild,
+        IRouteHandler<T_REQ, T_RES>[] methodHandlers) {
         this.label = label;
         this.handler = handler;
-        this.pathSegmentChildNodes = Collections.unmodifiableMap(pathSegmentChildNodes);
+        this.pathSegmentChildNodes = pathSegmentChildNodes;
         this.parametricChild = parametricChild;
         this.wildcardChild = wildcardChild;
+        this.methodHandlers = isEmpty(methodHandlers) ? null : methodHandlers;
+        this.allowedMethods = getAllowedMethods(handler, this.methodHandlers);
+        this.allowedMethodSet = toMethodSet(this.allowedMethods);
+        this.allowHeader = toAllowHeader(this.allowedMethods);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T_REQ extends IRequest, T_RES> IRouteHandler<T_REQ, T_RES>[] newMethodHandlerArray() {
+        return (IRouteHandler<T_REQ, T_RES>[]) new IRouteHandler[HttpMethod.count()];
+    }
+
+    private static <T_REQ extends IRequest, T_RES> IRouteHandler<T_REQ, T_RES>[] toMethodHandlerArray(Map<HttpMethod, IRouteHandler<T_REQ, T_RES>> methodHandlers) {
+        IRouteHandler<T_REQ, T_RES>[] res = newMethodHandlerArray();
+        for (Map.Entry<HttpMethod, IRouteHandler<T_REQ, T_RES>> methodHandler : methodHandlers.entrySet()) {
+            res[methodHandler.getKey().ordinal()] = methodHandler.getValue();
+        }
+        return res;
+    }
+
+    private static boolean isEmpty(IRouteHandler<?, ?>[] methodHandlers) {
+        if (methodHandlers == null) {
+            return true;
+        }
+        for (IRouteHandler<?, ?> methodHandler : methodHandlers) {
+            if (methodHandler != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return A bit for the ordinal of each allowed method.
+     */
+    private static int getAllowedMethods(IRouteHandler<?, ?> handler, IRouteHandler<?, ?>[] methodHandlers) {
+        if (handler != null) {
+            return ALL_METHODS;
+        }
+        if (methodHandlers == null) {
+            return 0;
+        }
+
+        int res = 0;
+        for (int i = 0; i < methodHandlers.length; i++) {
+            if (methodHandlers[i] != null) {
+                res |= 1 << i;
+            }
+        }
+        if (methodHandlers[HttpMethod.GET.ordinal()] != null) {
+            res |= 1 << HttpMethod.HEAD.ordinal();
+        }
+        return res | 1 << HttpMethod.OPTIONS.ordinal();
+    }
+
+    private static Set<HttpMethod> toMethodSet(int allowedMethods) {
+        if (allowedMethods == 0) {
+            return Collections.emptySet();
+        } else if (allowedMethods == ALL_METHODS) {
+            return ALL_METHOD_SET;
+        }
+        return createMethodSet(allowedMethods);
+    }
+
+    private static Set<HttpMethod> createMethodSet(int allowedMethods) {
+        EnumSet<HttpMethod> res = EnumSet.noneOf(HttpMethod.class);
+        for (int i = 0; i < HttpMethod.count(); i++) {
+            if ((allowedMethods & 1 << i) != 0) {
+                res.add(HttpMethod.get(i));
+            }
+        }
+        return Collections.unmodifiableSet(res);
+    }
+
+    private static String toAllowHeader(int allowedMethods) {
+        if (allowedMethods == 0) {
+            return null;
+        } else if (allowedMethods == ALL_METHODS) {
+            return ALL_METHODS_ALLOW_HEADER;
+        }
+        return createAllowHeader(allowedMethods);
+    }
+
+    private static String createAllowHeader(int allowedMethods) {
+        StringBuilder res = new StringBuilder();
+        for (int i = 0; i < HttpMethod.count(); i++) {
+            if ((allowedMethods & 1 << i) != 0) {
+                if (res.length() > 0) {
+                    res.append(", ");
+                }
+                res.append(HttpMethod.get(i).name());
+            }
+        }
+        return res.toString();
     }
 
     /**
@@ -51,11 +182,32 @@ public class RouteTreeNode<T_REQ extends IRequest, T_RES> {
      * a named handler for "myproj", it should take precedence over the parametric handler.
      */
     public boolean containsPathSegmentChildNodes(String pathSegment) {
-        return this.pathSegmentChildNodes.containsKey(pathSegment);
+        return this.pathSegmentChildNodes.find(pathSegment) != null;
     }
 
     public RouteTreeNode<T_REQ, T_RES> getPathSegmentChildNode(String pathSegment) {
-        return this.pathSegmentChildNodes.get(pathSegment);
+        return this.pathSegmentChildNodes.find(pathSegment);
+    }
+
+    /**
+     * Like calling {@link #containsPathSegmentChildNodes(String)} and then
+     * {@link #getPathSegmentChildNode(String)}, with a single lookup. The children are stored in the most compact way
+     * for their number, and a lookup takes one hash code, which String caches, and at most one comparison of path
+     * segments in most cases. Nodes with many children build a perfect hash table on the first call.
+     *
+     * @return The child node for the path segment, or null.
+     * @see com.augustl.pathtravelagent.PathSegmentChildNodes
+     */
+    public RouteTreeNode<T_REQ, T_RES> findPathSegmentChildNode(String pathSegment) {
+        return this.pathSegmentChildNodes.find(pathSegment);
+    }
+
+    Map<String, RouteTreeNode<T_REQ, T_RES>> getPathSegmentChildNodes() {
+        return this.pathSegmentChildNodes;
+    }
+
+    ParametricChild<T_REQ, T_RES> getParametricChild() {
+        return this.parametricChild;
     }
 
     /**
@@ -100,6 +252,180 @@ public class RouteTreeNode<T_REQ extends IRequest, T_RES> {
         return handler;
     }
 
+    /**
+     * <p>The handler for a request with the given HTTP method. A node can have a handler for each method, added with
+     * {@link RouteTreeBuilder#handler(HttpMethod, IRouteHandler)}. A HEAD request uses the GET handler if there is no
+     * HEAD handler, and any method without a handler of its own uses {@link #getHandler()}, the handler for all
+     * methods. A null method, such as from {@link HttpMethod#parse(String)} for a method that is not known, only uses
+     * the handler for all methods.</p>
+     *
+     * <p>Only DefaultRouteMatcher matches on HTTP methods. The other matchers only use {@link #getHandler()}.</p>
+     *
+     * @return The handler for the method, or null if the method is not allowed. An OPTIONS request without a handler
+     * can be answered with {@link #getAllowHeader()}.
+     */
+    public IRouteHandler<T_REQ, T_RES> getHandler(HttpMethod method) {
+        if (this.methodHandlers != null && method != null) {
+            IRouteHandler<T_REQ, T_RES> methodHandler = this.methodHandlers[method.ordinal()];
+            if (methodHandler != null) {
+                return methodHandler;
+            }
+            if (method == HttpMethod.HEAD) {
+                methodHandler = this.methodHandlers[HttpMethod.GET.ordinal()];
+                if (methodHandler != null) {
+                    return methodHandler;
+                }
+            }
+        }
+        return this.handler;
+    }
+
+    /**
+     * @return True if there is a handler for the method, or if the method is OPTIONS and the node has any handlers.
+     */
+    public boolean isMethodAllowed(HttpMethod method) {
+        return (this.allowedMethods & 1 << method.ordinal()) != 0;
+    }
+
+    /**
+     * @return The methods there are handlers for, with HEAD when there is a GET handler, and OPTIONS. All methods if
+     * the node has a handler for all methods, and none if the node has no handlers.
+     */
+    public Set<HttpMethod> getAllowedMethods() {
+        return this.allowedMethodSet;
+    }
+
+    /**
+     * @return The allowed methods, as the value of an HTTP Allow header, such as "GET, HEAD, OPTIONS". Null if the node
+     * has no handlers.
+     */
+    public String getAllowHeader() {
+        return this.allowHeader;
+    }
+
+    /**
+     * @return True if the node has a handler for all methods, or for any specific method.
+     */
+    public boolean hasHandlers() {
+        return this.allowedMethods != 0;
+    }
+
+    /**
+     * <p>Returns an equal tree where equal subtrees are shared, so that a tree with many copies of the same routes, such
+     * as the same routes under a prefix for each locale or tenant, takes the memory of one copy. Matching is the same
+     * as for this tree.</p>
+     *
+     * @return The new (immutable) tree, or this node if nothing is shared.
+     * @see com.augustl.pathtravelagent.RouteTreeCanonicalizer
+     */
+    public RouteTreeNode<T_REQ, T_RES> canonicalize() {
+        return new RouteTreeCanonicalizer<T_REQ, T_RES>().canonicalize(this).getRoot();
+    }
+
+    /**
+     * @return A node with the same handlers as this node, and the given children.
+     */
+    RouteTreeNode<T_REQ, T_RES> withChildren(
+        PathSegmentChildNodes<RouteTreeNode<T_REQ, T_RES>> pathSegmentChildNodes,
+        ParametricChild<T_REQ, T_RES> parametricChild,
+        RouteTreeNode<T_REQ, T_RES> wildcardChild) {
+        return new RouteTreeNode<T_REQ, T_RES>(this.label, this.handler, pathSegmentChildNodes, parametricChild, wildcardChild, this.methodHandlers);
+    }
+
+    /**
+     * <p>True if this node and the other node have the same handlers, by identity, the same path segment children,
+     * parametric child and wildcard child, by identity, and equal parametric segments. The labels are not compared,
+     * since they are not used when matching.</p>
+     *
+     * @see com.augustl.pathtravelagent.RouteTreeCanonicalizer
+     */
+    boolean hasSameContents(RouteTreeNode<T_REQ, T_RES> other) {
+        if (this.handler != other.handler
+            || this.wildcardChild != other.wildcardChild
+            || this.pathSegmentChildNodes.size() != other.pathSegmentChildNodes.size()) {
+            return false;
+        }
+
+        if (this.methodHandlers != other.methodHandlers) {
+            if (this.methodHandlers == null || other.methodHandlers == null) {
+                return false;
+            }
+            for (int i = 0; i < this.methodHandlers.length; i++) {
+                if (this.methodHandlers[i] != other.methodHandlers[i]) {
+                    return false;
+                }
+            }
+        }
+
+        if (this.parametricChild != other.parametricChild) {
+            if (this.parametricChild == null || other.parametricChild == null
+                || this.parametricChild.getChildNode() != other.parametricChild.getChildNode()
+                || !this.parametricChild.getParametricSegment().equals(other.parametricChild.getParametricSegment())) {
+                return false;
+            }
+        }
+
+        for (Map.Entry<String, RouteTreeNode<T_REQ, T_RES>> child : this.pathSegmentChildNodes.entrySet()) {
+            if (other.pathSegmentChildNodes.find(child.getKey()) != child.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return A hash code that is the same for nodes that {@link #hasSameContents(RouteTreeNode)}.
+     */
+    int getContentHashCode() {
+        int res = System.identityHashCode(this.handler);
+        if (this.methodHandlers != null) {
+            for (IRouteHandler<T_REQ, T_RES> methodHandler : this.methodHandlers) {
+                res = res * 31 + System.identityHashCode(methodHandler);
+            }
+        }
+        // Summed, since the order of the path segment children does not matter.
+        for (Map.Entry<String, RouteTreeNode<T_REQ, T_RES>> child : this.pathSegmentChildNodes.entrySet()) {
+            res += child.getKey().hashCode() ^ System.identityHashCode(child.getValue());
+        }
+        if (this.parametricChild != null) {
+            res = res * 31 + this.parametricChild.getParametricSegment().hashCode();
+            res = res * 31 + System.identityHashCode(this.parametricChild.getChildNode());
+        }
+        return res * 31 + System.identityHashCode(this.wildcardChild);
+    }
+
+    /**
+     * @return The estimated number of bytes used by this node, not counting the handlers, path segments, parametric
+     * segments and child nodes.
+     * @see PathSegmentChildNodes#estimateObjectSize(int)
+     */
+    long getEstimatedSize() {
+        long res = PathSegmentChildNodes.estimateObjectSize(36) + this.pathSegmentChildNodes.getEstimatedSize();
+        if (this.parametricChild != null) {
+            res += PathSegmentChildNodes.estimateObjectSize(8);
+        }
+        if (this.methodHandlers != null) {
+            res += PathSegmentChildNodes.estimateArraySize(this.methodHandlers.length, 4);
+        }
+        if (this.allowedMethods != 0 && this.allowedMethods != ALL_METHODS) {
+            // The EnumSet, its unmodifiable wrapper, and the Allow header with its chars.
+            res += PathSegmentChildNodes.estimateObjectSize(16) + PathSegmentChildNodes.estimateObjectSize(4)
+                + PathSegmentChildNodes.estimateObjectSize(12) + PathSegmentChildNodes.estimateArraySize(this.allowHeader.length(), 2);
+        }
+        return res;
+    }
+
+    /**
+     * <p>Flattens this node and all its children into a CompiledRouteTree, for faster matching with
+     * CompiledRouteMatcher. The tree is compiled as it is at the time of the call.</p>
+     *
+     * @return The compiled (immutable) tree
+     * @see com.augustl.pathtravelagent.CompiledRouteMatcher
+     */
+    public CompiledRouteTree<T_REQ, T_RES> compile() {
+        return new CompiledRouteTree<T_REQ, T_RES>(this);
+    }
+
     /**
      * <p>Deep left-to-right merges a node with another. Since this class is immutable, a new instance is returned, and
      * none of the two merged instances are changed.</p>
@@ -117,64 +443,311 @@ public class RouteTreeNode<T_REQ extends IRequest, T_RES> {
      * @see com.augustl.pathtravelagent.IRouteHandler#merge
      */
     public RouteTreeNode<T_REQ, T_RES> merge(RouteTreeNode<T_REQ, T_RES> other) {
-        return merge(other, new ArrayList<String>());
+        return new RouteTreeNode<T_REQ, T_RES>(
+            other.label,
+            this.getMergedHandler(other),
+            this.getMergedPathSegmentChildNodes(other),
+            this.getMergedParametricChild(other),
+            this.getMergedWildcardChild(other),
+            this.getMergedMethodHandlers(other));
     }
 
-    private RouteTreeNode<T_REQ, T_RES> merge(RouteTreeNode<T_REQ, T_RES> other, List<String> context) {
-        context = new ArrayList<String>(context);
-        context.add(other.label);
+    private IRouteHandler<T_REQ, T_RES>[] getMergedMethodHandlers(RouteTreeNode<T_REQ, T_RES> other) {
+        if (other.methodHandlers == null) {
+            return this.methodHandlers;
+        }
+        if (this.methodHandlers == null) {
+            return other.methodHandlers;
+        }
+
+        IRouteHandler<T_REQ, T_RES>[] res = newMethodHandlerArray();
+        for (int i = 0; i < res.length; i++) {
+            res[i] = mergeHandlers(this.methodHandlers[i], other.methodHandlers[i]);
+        }
+        return res;
+    }
 
-        return new RouteTreeNode<T_REQ, T_RES>(
-            other.label,
-            this.getMergedHandler(other, context),
-            this.getMergedPathSegmentChildNodes(other, context),
-            this.getMergedParametricChild(other, context),
-            this.getMergedWildcardChild(other, context));
+    private IRouteHandler<T_REQ, T_RES> getMergedHandler(RouteTreeNode<T_REQ, T_RES> other) {
+        return mergeHandlers(this.handler, other.handler);
     }
 
-    private IRouteHandler<T_REQ, T_RES> getMergedHandler(RouteTreeNode<T_REQ, T_RES> other, List<String> context) {
-        if (other.handler == null) {
-            return this.handler;
+    private static <T_REQ extends IRequest, T_RES> IRouteHandler<T_REQ, T_RES> mergeHandlers(IRouteHandler<T_REQ, T_RES> handler, IRouteHandler<T_REQ, T_RES> otherHandler) {
+        if (otherHandler == null) {
+            return handler;
         } else {
-            if (this.handler == null) {
-                return other.handler;
+            if (handler == null) {
+                return otherHandler;
             } else {
-                return this.handler.merge(other.handler);
+                return handler.merge(otherHandler);
             }
         }
     }
 
-    private HashMap<String, RouteTreeNode<T_REQ, T_RES>> getMergedPathSegmentChildNodes(RouteTreeNode<T_REQ, T_RES> other, List<String> context) {
+    private PathSegmentChildNodes<RouteTreeNode<T_REQ, T_RES>> getMergedPathSegmentChildNodes(RouteTreeNode<T_REQ, T_RES> other) {
+        if (other.pathSegmentChildNodes.isEmpty()) {
+            return this.pathSegmentChildNodes;
+        }
+        if (this.pathSegmentChildNodes.isEmpty()) {
+            return other.pathSegmentChildNodes;
+        }
+
         HashMap<String, RouteTreeNode<T_REQ, T_RES>> res = new HashMap<String, RouteTreeNode<T_REQ, T_RES>>(this.pathSegmentChildNodes);
 
         for (String pathSegment : other.pathSegmentChildNodes.keySet()) {
             if (this.pathSegmentChildNodes.containsKey(pathSegment)) {
-                res.put(pathSegment, this.pathSegmentChildNodes.get(pathSegment).merge(other.pathSegmentChildNodes.get(pathSegment), context));
+                res.put(pathSegment, this.pathSegmentChildNodes.get(pathSegment).merge(other.pathSegmentChildNodes.get(pathSegment)));
             } else {
                 res.put(pathSegment, other.pathSegmentChildNodes.get(pathSegment));
             }
         }
 
-        return res;
+        return PathSegmentChildNodes.copyOf(res);
     }
 
-    private ParametricChild<T_REQ, T_RES> getMergedParametricChild(RouteTreeNode<T_REQ, T_RES> other, List<String> context) {
+    private ParametricChild<T_REQ, T_RES> getMergedParametricChild(RouteTreeNode<T_REQ, T_RES> other) {
         if (this.parametricChild == null) {
             return other.parametricChild;
         } else {
             if (other.parametricChild == null) {
                 return this.parametricChild;
             } else {
-                return new ParametricChild<T_REQ, T_RES>(other.parametricChild.getParametricSegment(), this.parametricChild.getChildNode().merge(other.parametricChild.getChildNode(), context));
+                return new ParametricChild<T_REQ, T_RES>(other.parametricChild.getParametricSegment(), this.parametricChild.getChildNode().merge(other.parametricChild.getChildNode()));
             }
         }
     }
 
-    private RouteTreeNode<T_REQ, T_RES> getMergedWildcardChild(RouteTreeNode<T_REQ, T_RES> other, List<String> context) {
+    private RouteTreeNode<T_REQ, T_RES> getMergedWildcardChild(RouteTreeNode<T_REQ, T_RES> other) {
         if (this.wildcardChild == null) {
             return other.wildcardChild;
         } else {
-            return this.wildcardChild.merge(other.wildcardChild, context);
+            if (other.wildcardChild == null) {
+                return this.wildcardChild;
+            } else {
+                return this.wildcardChild.merge(other.wildcardChild);
+            }
+        }
+    }
+
+    /**
+     * <p>Merges all the nodes, in order. The result is the same as merging them one by one from left to right, i.e.
+     * <tt>a.merge(b).merge(c)</tt>, and handlers are merged in the same order.</p>
+     *
+     * <p>Merging one by one copies the path segment children of every node along the way, for every merge, which is
+     * slow when merging thousands of routes. This method merges all the nodes at each level of the tree at once, so
+     * each node is only visited once. A child that only one of the nodes has is used as is, and not copied.</p>
+     *
+     * @param nodes The (immutable) nodes to merge. Not changed.
+     * @return The new (immutable) node. An empty node if there are no nodes to merge, and the node itself if there is
+     * only one.
+     * @see #merge(RouteTreeNode)
+     */
+    public static <T_REQ extends IRequest, T_RES> RouteTreeNode<T_REQ, T_RES> mergeAll(Collection<RouteTreeNode<T_REQ, T_RES>> nodes) {
+        if (nodes.isEmpty()) {
+            return new RouteTreeNode<T_REQ, T_RES>();
+        }
+
+        return mergeAll(new ArrayList<RouteTreeNode<T_REQ, T_RES>>(nodes));
+    }
+
+    private static <T_REQ extends IRequest, T_RES> RouteTreeNode<T_REQ, T_RES> mergeAll(List<RouteTreeNode<T_REQ, T_RES>> nodes) {
+        if (nodes.size() == 1) {
+            return nodes.get(0);
+        }
+
+        IRouteHandler<T_REQ, T_RES> handler = null;
+        IRouteHandler<T_REQ, T_RES>[] methodHandlers = null;
+        HashMap<String, List<RouteTreeNode<T_REQ, T_RES>>> pathSegmentChildNodes = new HashMap<String, List<RouteTreeNode<T_REQ, T_RES>>>();
+        IParametricSegment parametricSegment = null;
+        List<RouteTreeNode<T_REQ, T_RES>> parametricChildNodes = new ArrayList<RouteTreeNode<T_REQ, T_RES>>();
+        List<RouteTreeNode<T_REQ, T_RES>> wildcardChildNodes = new ArrayList<RouteTreeNode<T_REQ, T_RES>>();
+
+        for (RouteTreeNode<T_REQ, T_RES> node : nodes) {
+            handler = mergeHandlers(handler, node.handler);
+
+            if (node.methodHandlers != null) {
+                if (methodHandlers == null) {
+                    methodHandlers = newMethodHandlerArray();
+                }
+                for (int i = 0; i < methodHandlers.length; i++) {
+                    methodHandlers[i] = mergeHandlers(methodHandlers[i], node.methodHandlers[i]);
+                }
+            }
+
+            for (Map.Entry<String, RouteTreeNode<T_REQ, T_RES>> child : node.pathSegmentChildNodes.entrySet()) {
+                List<RouteTreeNode<T_REQ, T_RES>> childNodes = pathSegmentChildNodes.get(child.getKey());
+                if (childNodes == null) {
+                    childNodes = new ArrayList<RouteTreeNode<T_REQ, T_RES>>(1);
+                    pathSegmentChildNodes.put(child.getKey(), childNodes);
+                }
+                childNodes.add(child.getValue());
+            }
+
+            if (node.parametricChild != null) {
+                parametricSegment = node.parametricChild.getParametricSegment();
+                parametricChildNodes.add(node.parametricChild.getChildNode());
+            }
+
+            if (node.wildcardChild != null) {
+                wildcardChildNodes.add(node.wildcardChild);
+            }
+        }
+
+        HashMap<String, RouteTreeNode<T_REQ, T_RES>> mergedPathSegmentChildNodes = new HashMap<String, RouteTreeNode<T_REQ, T_RES>>(pathSegmentChildNodes.size() * 4 / 3 + 1);
+        for (Map.Entry<String, List<RouteTreeNode<T_REQ, T_RES>>> childNodes : pathSegmentChildNodes.entrySet()) {
+            mergedPathSegmentChildNodes.put(childNodes.getKey(), mergeAll(childNodes.getValue()));
+        }
+
+        ParametricChild<T_REQ, T_RES> mergedParametricChild = null;
+        if (parametricChildNodes.size() == 1) {
+            mergedParametricChild = getLastParametricChild(nodes);
+        } else if (parametricChildNodes.size() > 1) {
+            mergedParametricChild = new ParametricChild<T_REQ, T_RES>(parametricSegment, mergeAll(parametricChildNodes));
+        }
+
+        return new RouteTreeNode<T_REQ, T_RES>(
+            nodes.get(nodes.size() - 1).label,
+            handler,
+            PathSegmentChildNodes.copyOf(mergedPathSegmentChildNodes),
+            mergedParametricChild,
+            wildcardChildNodes.isEmpty() ? null : mergeAll(wildcardChildNodes),
+            methodHandlers);
+    }
+
+    /**
+     * <p>Removes the routes in <tt>route</tt> from this node. Since this class is immutable, a new instance is returned,
+     * and this node is not changed.</p>
+     *
+     * <p>Every node in <tt>route</tt> that has a handler, or has no children and no handlers, removes the handler and
+     * the handlers for specific HTTP methods at the same place in this tree. A node in <tt>route</tt> with only
+     * handlers for specific methods only removes the handlers for those methods. The handlers in <tt>route</tt> are not
+     * used for anything, so a route built with a null handler can be used, but a null handler for a specific method is
+     * the same as no handler for that method. Parametric and wildcard children are matched by position, so the segment
+     * type and param name in <tt>route</tt> does not matter.</p>
+     *
+     * <p>Nodes left with no handler and no children are removed. Only the nodes on the paths to the removed handlers
+     * are copied, the rest of the tree is shared with this node.</p>
+     *
+     * @param route The (immutable) routes to remove, typically built with SingleRouteBuilder.
+     * @return The new (immutable) node, an empty node if nothing is left, or this node if nothing was removed.
+     * @see #withoutSubtree(RouteTreeNode)
+     */
+    public RouteTreeNode<T_REQ, T_RES> without(RouteTreeNode<T_REQ, T_RES> route) {
+        return orEmpty(this.remove(route, false));
+    }
+
+    /**
+     * <p>Like {@link #without(RouteTreeNode)}, but also removes all the routes below the routes in <tt>route</tt>. For
+     * example, removing the subtree for /tenants/acme also removes /tenants/acme/users and /tenants/acme/users/:id.</p>
+     *
+     * @param route The (immutable) routes to remove, with everything below them, typically built with
+     *              SingleRouteBuilder.
+     * @return The new (immutable) node, an empty node if nothing is left, or this node if nothing was removed.
+     */
+    public RouteTreeNode<T_REQ, T_RES> withoutSubtree(RouteTreeNode<T_REQ, T_RES> route) {
+        return orEmpty(this.remove(route, true));
+    }
+
+    private static <T_REQ extends IRequest, T_RES> RouteTreeNode<T_REQ, T_RES> orEmpty(RouteTreeNode<T_REQ, T_RES> node) {
+        if (node == null) {
+            return new RouteTreeNode<T_REQ, T_RES>();
+        }
+        return node;
+    }
+
+    /**
+     * @return The new node, this node if nothing was removed, or null if nothing is left.
+     */
+    private RouteTreeNode<T_REQ, T_RES> remove(RouteTreeNode<T_REQ, T_RES> route, boolean subtree) {
+        if (subtree && route.isLeaf()) {
+            return null;
+        }
+
+        IRouteHandler<T_REQ, T_RES> handler = this.handler;
+        IRouteHandler<T_REQ, T_RES>[] methodHandlers = this.methodHandlers;
+        if (route.handler != null || (route.isLeaf() && route.methodHandlers == null)) {
+            handler = null;
+            methodHandlers = null;
+        } else if (route.methodHandlers != null && this.methodHandlers != null) {
+            methodHandlers = this.methodHandlers.clone();
+            for (int i = 0; i < methodHandlers.length; i++) {
+                if (route.methodHandlers[i] != null) {
+                    methodHandlers[i] = null;
+                }
+            }
+            if (isEmpty(methodHandlers)) {
+                methodHandlers = null;
+            } else if (Arrays.equals(methodHandlers, this.methodHandlers)) {
+                methodHandlers = this.methodHandlers;
+            }
+        }
+
+        HashMap<String, RouteTreeNode<T_REQ, T_RES>> pathSegmentChildNodes = null;
+        for (Map.Entry<String, RouteTreeNode<T_REQ, T_RES>> routeChild : route.pathSegmentChildNodes.entrySet()) {
+            RouteTreeNode<T_REQ, T_RES> child = this.pathSegmentChildNodes.get(routeChild.getKey());
+            if (child == null) {
+                continue;
+            }
+
+            RouteTreeNode<T_REQ, T_RES> newChild = child.remove(routeChild.getValue(), subtree);
+            if (newChild == child) {
+                continue;
+            }
+
+            if (pathSegmentChildNodes == null) {
+                pathSegmentChildNodes = new HashMap<String, RouteTreeNode<T_REQ, T_RES>>(this.pathSegmentChildNodes);
+            }
+            if (newChild == null) {
+                pathSegmentChildNodes.remove(routeChild.getKey());
+            } else {
+                pathSegmentChildNodes.put(routeChild.getKey(), newChild);
+            }
+        }
+
+        ParametricChild<T_REQ, T_RES> parametricChild = this.parametricChild;
+        if (this.parametricChild != null && route.parametricChild != null) {
+            RouteTreeNode<T_REQ, T_RES> newChild = this.parametricChild.getChildNode().remove(route.parametricChild.getChildNode(), subtree);
+            if (newChild == null) {
+                parametricChild = null;
+            } else if (newChild != this.parametricChild.getChildNode()) {
+                parametricChild = new ParametricChild<T_REQ, T_RES>(this.parametricChild.getParametricSegment(), newChild);
+            }
+        }
+
+        RouteTreeNode<T_REQ, T_RES> wildcardChild = this.wildcardChild;
+        if (this.wildcardChild != null && route.wildcardChild != null) {
+            wildcardChild = this.wildcardChild.remove(route.wildcardChild, subtree);
+        }
+
+        if (handler == this.handler
+            && methodHandlers == this.methodHandlers
+            && pathSegmentChildNodes == null
+            && parametricChild == this.parametricChild
+            && wildcardChild == this.wildcardChild) {
+            return this;
+        }
+
+        PathSegmentChildNodes<RouteTreeNode<T_REQ, T_RES>> newPathSegmentChildNodes = this.pathSegmentChildNodes;
+        if (pathSegmentChildNodes != null) {
+            newPathSegmentChildNodes = PathSegmentChildNodes.copyOf(pathSegmentChildNodes);
+        }
+
+        if (handler == null && methodHandlers == null && newPathSegmentChildNodes.isEmpty() && parametricChild == null && wildcardChild == null) {
+            return null;
+        }
+
+        return new RouteTreeNode<T_REQ, T_RES>(this.label, handler, newPathSegmentChildNodes, parametricChild, wildcardChild, methodHandlers);
+    }
+
+    private boolean isLeaf() {
+        return this.pathSegmentChildNodes.isEmpty() && this.parametricChild == null && this.wildcardChild == null;
+    }
+
+    private static <T_REQ extends IRequest, T_RES> ParametricChild<T_REQ, T_RES> getLastParametricChild(List<RouteTreeNode<T_REQ, T_RES>> nodes) {
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            if (nodes.get(i).parametricChild != null) {
+                return nodes.get(i).parametricChild;
+            }
         }
+        return null;
     }
-}
\ No newline at end of file
+}
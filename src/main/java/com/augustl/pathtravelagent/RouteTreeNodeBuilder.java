@@ -2,6 +2,7 @@ package com.augustl.pathtravelagent;
 
 import com.augustl.pathtravelagent.segment.IParametricSegment;
 
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -13,11 +14,16 @@ class RouteTreeNodeBuilder<T_REQ extends IRequest, T_RES> {
     private HashMap<String, RouteTreeNode<T_REQ, T_RES>> pathSegmentChildNodes = new HashMap<String, RouteTreeNode<T_REQ, T_RES>>();
     private ParametricChild<T_REQ, T_RES> parametricChild;
     private RouteTreeNode<T_REQ, T_RES> wildcardChild;
+    private EnumMap<HttpMethod, IRouteHandler<T_REQ, T_RES>> methodHandlers = new EnumMap<HttpMethod, IRouteHandler<T_REQ, T_RES>>(HttpMethod.class);
 
     public void setHandler(IRouteHandler<T_REQ, T_RES> handler) {
         this.handler = handler;
     }
 
+    public void setMethodHandler(HttpMethod method, IRouteHandler<T_REQ, T_RES> handler) {
+        this.methodHandlers.put(method, handler);
+    }
+
     public void addPathSegmentChild(String pathSegment, RouteTreeNode<T_REQ, T_RES> childNode) {
         ensureContainsValidSegmentChars(pathSegment);
         this.pathSegmentChildNodes.put(pathSegment, childNode);
@@ -45,7 +51,8 @@ class RouteTreeNodeBuilder<T_REQ extends IRequest, T_RES> {
             this.handler,
             this.pathSegmentChildNodes,
             this.parametricChild,
-            this.wildcardChild);
+            this.wildcardChild,
+            this.methodHandlers);
     }
 
     private void ensureContainsValidSegmentChars(String str) {
@@ -18,26 +18,59 @@ import java.util.List;
  */
 public class SingleRouteBuilder<T_REQ extends IRequest, T_RES> {
     private final List<ISegment<T_REQ, T_RES>> segments = new ArrayList<ISegment<T_REQ, T_RES>>();
+    private boolean hasWildcard = false;
 
     public SingleRouteBuilder<T_REQ, T_RES> path(String path) {
-        segments.add(new PathSegment<T_REQ, T_RES>(path));
+        addSegment(new PathSegment<T_REQ, T_RES>(path));
         return this;
     }
 
     public SingleRouteBuilder<T_REQ, T_RES> param(String name) {
-        segments.add(new ParamSegment<T_REQ, T_RES>(new StringSegment(name)));
+        addSegment(new ParamSegment<T_REQ, T_RES>(new StringSegment(name)));
         return this;
     }
 
+    public SingleRouteBuilder<T_REQ, T_RES> param(IParametricSegment parametricSegment) {
+        addSegment(new ParamSegment<T_REQ, T_RES>(parametricSegment));
+        return this;
+    }
+
+    /**
+     * The rest of the path, from this point. Has to be the last segment of the route.
+     */
+    public SingleRouteBuilder<T_REQ, T_RES> wildcard() {
+        addSegment(new WildcardSegment<T_REQ, T_RES>());
+        this.hasWildcard = true;
+        return this;
+    }
+
+    private void addSegment(ISegment<T_REQ, T_RES> segment) {
+        if (this.hasWildcard) {
+            throw new IllegalStateException("Cannot add segments after a wildcard");
+        }
+        segments.add(segment);
+    }
+
     public RouteTreeNode<T_REQ, T_RES> build(IRouteHandler<T_REQ, T_RES> handler) {
         RouteTreeNodeBuilder<T_REQ, T_RES> bottomNodeBuilder = new RouteTreeNodeBuilder<T_REQ, T_RES>();
+        bottomNodeBuilder.setHandler(handler);
+        return build(bottomNodeBuilder);
+    }
 
+    /**
+     * Builds the route with a handler for a single HTTP method. Merge the routes for the other methods into it.
+     */
+    public RouteTreeNode<T_REQ, T_RES> build(HttpMethod method, IRouteHandler<T_REQ, T_RES> handler) {
+        RouteTreeNodeBuilder<T_REQ, T_RES> bottomNodeBuilder = new RouteTreeNodeBuilder<T_REQ, T_RES>();
+        bottomNodeBuilder.setMethodHandler(method, handler);
+        return build(bottomNodeBuilder);
+    }
+
+    private RouteTreeNode<T_REQ, T_RES> build(RouteTreeNodeBuilder<T_REQ, T_RES> bottomNodeBuilder) {
         if (segments.size() == 0) {
-            bottomNodeBuilder.setHandler(handler);
             return bottomNodeBuilder.createNode("::ROOT::");
         }
 
-        bottomNodeBuilder.setHandler(handler);
         RouteTreeNode<T_REQ, T_RES> res = bottomNodeBuilder.createNode("::BOTTOM::");
         for (int i = segments.size() - 1; i >= 0; i--) {
             res = segments.get(i).getNode(res);
@@ -77,4 +110,13 @@ public class SingleRouteBuilder<T_REQ extends IRequest, T_RES> {
             return builder.createNode("::PARAM:" + this.parametricSegment.getParamName() + "::");
         }
     }
+
+    private class WildcardSegment<TT_REQ extends IRequest, TT_RES> implements ISegment<TT_REQ, TT_RES> {
+        @Override
+        public RouteTreeNode<TT_REQ, TT_RES> getNode(RouteTreeNode<TT_REQ, TT_RES> childNode) {
+            RouteTreeNodeBuilder<TT_REQ, TT_RES> builder = new RouteTreeNodeBuilder<TT_REQ, TT_RES>();
+            builder.setWildcardChild(childNode);
+            return builder.createNode("::WILDCARD::");
+        }
+    }
 }
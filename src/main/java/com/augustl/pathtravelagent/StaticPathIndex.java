@@ -0,0 +1,175 @@
+package com.augustl.pathtravelagent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>An index of all the fully static routes in a tree, i.e. routes without parametric or wildcard segments, such as
+ * <tt>/health</tt> or <tt>/api/v2/status</tt>. Looking up a path in the index is a single hash probe, instead of
+ * one lookup per path segment.</p>
+ *
+ * <p>Build the index once, and match with {@link DefaultRouteMatcher#match(StaticPathIndex, IRequest)}. Requests that
+ * are not in the index fall back to walking the tree. The results are always the same as matching the tree directly,
+ * since static path segments take precedence over parametric and wildcard segments at every level of the tree.</p>
+ *
+ * <p>The index is immutable, and is built from the tree as it is when the index is created.</p>
+ *
+ * @param <T_REQ> A request object, implementing IRequest.
+ * @param <T_RES> The return value for the handler. Can be any type you want, not used for anything by PathTravelAgent.
+ */
+public class StaticPathIndex<T_REQ extends IRequest, T_RES> {
+    private final RouteTreeNode<T_REQ, T_RES> rootNode;
+    private final int[] hashes;
+    private final String[] paths;
+    private final IRouteHandler<T_REQ, T_RES>[] handlers;
+    private final int mask;
+    private final int size;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public StaticPathIndex(RouteTreeNode<T_REQ, T_RES> rootNode) {
+        List<String> paths = new ArrayList<String>();
+        List<IRouteHandler<T_REQ, T_RES>> handlers = new ArrayList<IRouteHandler<T_REQ, T_RES>>();
+        collectStaticPaths(rootNode, "", paths, handlers);
+
+        int capacity = 2;
+        while (capacity < paths.size() * 2) {
+            capacity *= 2;
+        }
+
+        this.rootNode = rootNode;
+        this.hashes = new int[capacity];
+        this.paths = new String[capacity];
+        this.handlers = (IRouteHandler<T_REQ, T_RES>[]) new IRouteHandler[capacity];
+        this.mask = capacity - 1;
+        this.size = paths.size();
+
+        for (int i = 0; i < paths.size(); i++) {
+            String path = paths.get(i);
+            int hash = path.hashCode();
+            int slot = spread(hash) & this.mask;
+            while (this.paths[slot] != null) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.hashes[slot] = hash;
+            this.paths[slot] = path;
+            this.handlers[slot] = handlers.get(i);
+        }
+    }
+
+    private static <T_REQ extends IRequest, T_RES> void collectStaticPaths(
+        RouteTreeNode<T_REQ, T_RES> node,
+        String path,
+        List<String> paths,
+        List<IRouteHandler<T_REQ, T_RES>> handlers) {
+        if (node.getHandler() != null) {
+            paths.add(path);
+            handlers.add(node.getHandler());
+        }
+
+        for (Map.Entry<String, RouteTreeNode<T_REQ, T_RES>> child : node.getPathSegmentChildNodes().entrySet()) {
+            // The key would be ambiguous with a slash in a path segment, so those routes are left to the tree walk.
+            if (child.getKey().indexOf('/') == -1) {
+                collectStaticPaths(child.getValue(), path + "/" + child.getKey(), paths, handlers);
+            }
+        }
+    }
+
+    /**
+     * @return The tree the index was built from, used when a path is not in the index.
+     */
+    public RouteTreeNode<T_REQ, T_RES> getRootNode() {
+        return this.rootNode;
+    }
+
+    /**
+     * @return The number of static routes in the index.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param pathSegments The path segments, as returned by {@link IRequest#getPathSegments()}
+     * @return The handler for the static route, or null if the path segments are not a static route in the tree, or a
+     * path segment contains a slash, such as an escaped slash from
+     * {@link DefaultPathToPathSegments#parseDecoded(String)}.
+     */
+    public IRouteHandler<T_REQ, T_RES> getHandler(List<String> pathSegments) {
+        int hash = 0;
+        for (int i = 0; i < pathSegments.size(); i++) {
+            String pathSegment = pathSegments.get(i);
+            hash = 31 * hash + '/';
+            for (int j = 0; j < pathSegment.length(); j++) {
+                char c = pathSegment.charAt(j);
+                if (c == '/') {
+                    return null;
+                }
+                hash = 31 * hash + c;
+            }
+        }
+
+        for (int slot = spread(hash) & this.mask; this.paths[slot] != null; slot = (slot + 1) & this.mask) {
+            if (this.hashes[slot] == hash && pathEquals(this.paths[slot], pathSegments)) {
+                return this.handlers[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param path The raw path, such as <tt>"/api/v2/status?verbose"</tt>, segmented like
+     *             {@link DefaultPathToPathSegments#parse(String)} does.
+     * @return The handler for the static route, or null if the path is not a static route in the tree.
+     */
+    public IRouteHandler<T_REQ, T_RES> getHandler(CharSequence path) {
+        int pathEnd = DefaultPathToPathSegments.findPathEnd(path, 0, path.length());
+        int segmentStart = DefaultPathToPathSegments.findFirstSegmentStart(path, 0, pathEnd);
+        // The key includes the slash before the first segment, and is empty for the root.
+        int start = segmentStart == pathEnd ? pathEnd : segmentStart - 1;
+
+        int hash = 0;
+        for (int i = start; i < pathEnd; i++) {
+            hash = 31 * hash + path.charAt(i);
+        }
+
+        for (int slot = spread(hash) & this.mask; this.paths[slot] != null; slot = (slot + 1) & this.mask) {
+            if (this.hashes[slot] == hash && regionEquals(this.paths[slot], path, start, pathEnd)) {
+                return this.handlers[slot];
+            }
+        }
+        return null;
+    }
+
+    private static boolean pathEquals(String path, List<String> pathSegments) {
+        int offset = 0;
+        for (int i = 0; i < pathSegments.size(); i++) {
+            String pathSegment = pathSegments.get(i);
+            if (offset >= path.length() || path.charAt(offset) != '/') {
+                return false;
+            }
+            offset++;
+            if (!path.regionMatches(offset, pathSegment, 0, pathSegment.length())) {
+                return false;
+            }
+            offset += pathSegment.length();
+        }
+        return offset == path.length();
+    }
+
+    private static boolean regionEquals(String path, CharSequence source, int start, int end) {
+        if (path.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
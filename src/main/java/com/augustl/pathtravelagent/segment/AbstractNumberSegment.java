@@ -0,0 +1,136 @@
+package com.augustl.pathtravelagent.segment;
+
+import com.augustl.pathtravelagent.RouteMatchResult;
+
+/**
+ * <p>Base class for the segments that take a decimal number, with an optional minimum and maximum value.</p>
+ *
+ * <p>The number is parsed in a single pass, checking for overflow as it goes, and invalid input is rejected without
+ * throwing any exceptions. An optional leading '-' or '+' is allowed, followed by one or more of the digits 0-9.</p>
+ */
+abstract class AbstractNumberSegment implements IRangeParametricSegment {
+    private static final long INVALID = 1;
+
+    private final String paramName;
+    private final long min;
+    private final long max;
+
+    protected AbstractNumberSegment(String paramName, long min, long max) {
+        if (min > max) {
+            throw new IllegalArgumentException("min (" + min + ") is larger than max (" + max + ")");
+        }
+
+        this.paramName = paramName;
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    public String getParamName() {
+        return this.paramName;
+    }
+
+    public long getMin() {
+        return this.min;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    @Override
+    public RouteMatchResult.IResult getValue(String rawValue) {
+        long negated = parse(rawValue, 0, rawValue.length());
+        if (negated == INVALID) {
+            return null;
+        }
+        return createResult(toValue(rawValue, 0, negated));
+    }
+
+    @Override
+    public boolean addValue(RouteMatchResult res, CharSequence source, int start, int end) {
+        long negated = parse(source, start, end);
+        if (negated == INVALID) {
+            return false;
+        }
+        addToMatchResult(res, toValue(source, start, negated));
+        return true;
+    }
+
+    protected abstract RouteMatchResult.IResult createResult(long val);
+
+    protected abstract void addToMatchResult(RouteMatchResult res, long val);
+
+    /**
+     * Parses the sign and the digits, and checks that the value is between min and max.
+     *
+     * @return The value if it is negative, and the value negated otherwise, so that it is always 0 or less. INVALID if
+     * the number is invalid or out of range. Use {@link #toValue(CharSequence, int, long)} to get the value.
+     */
+    private long parse(CharSequence source, int start, int end) {
+        if (start == end) {
+            return INVALID;
+        }
+
+        char first = source.charAt(start);
+        boolean negative = first == '-';
+        long negated = parseNegated(source, first == '-' || first == '+' ? start + 1 : start, end, negative);
+        if (negated == INVALID) {
+            return INVALID;
+        }
+
+        long val = negative ? negated : -negated;
+        if (val < this.min || val > this.max) {
+            return INVALID;
+        }
+        return negated;
+    }
+
+    private static long toValue(CharSequence source, int start, long negated) {
+        return source.charAt(start) == '-' ? negated : -negated;
+    }
+
+    /**
+     * Accumulates the digits as a negative number, since the negative range of a long is larger than the positive
+     * range.
+     *
+     * @return The negated value, which is always 0 or less, or INVALID.
+     */
+    private static long parseNegated(CharSequence source, int start, int end, boolean negative) {
+        if (start == end) {
+            return INVALID;
+        }
+
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyMin = limit / 10;
+        long res = 0;
+        for (int i = start; i < end; i++) {
+            int digit = source.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || res < multiplyMin) {
+                return INVALID;
+            }
+            res *= 10;
+            if (res < limit + digit) {
+                return INVALID;
+            }
+            res -= digit;
+        }
+        return res;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || obj.getClass() != getClass()) {
+            return false;
+        }
+        AbstractNumberSegment other = (AbstractNumberSegment) obj;
+        return other.paramName.equals(this.paramName) && other.min == this.min && other.max == this.max;
+    }
+
+    @Override
+    public int hashCode() {
+        int res = this.paramName.hashCode();
+        res = res * 31 + (int) (this.min ^ this.min >>> 32);
+        return res * 31 + (int) (this.max ^ this.max >>> 32);
+    }
+}
@@ -0,0 +1,115 @@
+package com.augustl.pathtravelagent.segment;
+
+import com.augustl.pathtravelagent.RouteMatchResult;
+
+/**
+ * <p>A segment that takes an ISO 8601 date, <tt>yyyy-mm-dd</tt>, such as <tt>2014-06-30</tt>. Read the value with
+ * {@link com.augustl.pathtravelagent.RouteMatch#getEpochDayRouteMatchResult(String)}, as the number of days since
+ * 1970-01-01.</p>
+ *
+ * <p>The date is parsed in a single pass, and invalid input, such as February 30th, is rejected without throwing any
+ * exceptions. Years from 0000 to 9999 are accepted, in the proleptic Gregorian calendar, like
+ * <tt>LocalDate</tt>.</p>
+ */
+public class DateSegment implements IRangeParametricSegment {
+    private static final int LENGTH = 10;
+    private static final int INVALID = Integer.MIN_VALUE;
+    private static final int DAYS_0000_TO_1970 = 719528;
+
+    private final String paramName;
+
+    public DateSegment(String paramName) {
+        this.paramName = paramName;
+    }
+
+    @Override
+    public String getParamName() {
+        return this.paramName;
+    }
+
+    @Override
+    public RouteMatchResult.IResult getValue(String rawValue) {
+        int epochDay = parseEpochDay(rawValue, 0, rawValue.length());
+        if (epochDay == INVALID) {
+            return null;
+        }
+        return new RouteMatchResult.EpochDayResult(epochDay);
+    }
+
+    @Override
+    public boolean addValue(RouteMatchResult res, CharSequence source, int start, int end) {
+        int epochDay = parseEpochDay(source, start, end);
+        if (epochDay == INVALID) {
+            return false;
+        }
+        res.addToEpochDayMatches(this.paramName, epochDay);
+        return true;
+    }
+
+    /**
+     * @return The number of days since 1970-01-01, or INVALID.
+     */
+    static int parseEpochDay(CharSequence source, int start, int end) {
+        if (end - start != LENGTH || source.charAt(start + 4) != '-' || source.charAt(start + 7) != '-') {
+            return INVALID;
+        }
+        int year = parseDigits(source, start, start + 4);
+        int month = parseDigits(source, start + 5, start + 7);
+        int day = parseDigits(source, start + 8, start + 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > getDaysInMonth(year, month)) {
+            return INVALID;
+        }
+
+        // Like LocalDate.toEpochDay, for years 0 and up.
+        int res = 365 * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        res += (367 * month - 362) / 12;
+        res += day - 1;
+        if (month > 2) {
+            res -= isLeapYear(year) ? 1 : 2;
+        }
+        return res - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * @return The value of the ASCII digits, or -1.
+     */
+    private static int parseDigits(CharSequence source, int start, int end) {
+        int res = 0;
+        for (int i = start; i < end; i++) {
+            int digit = source.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            res = res * 10 + digit;
+        }
+        return res;
+    }
+
+    private static int getDaysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj != null && obj.getClass() == getClass() && ((DateSegment) obj).paramName.equals(this.paramName);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.paramName.hashCode();
+    }
+}
@@ -0,0 +1,103 @@
+package com.augustl.pathtravelagent.segment;
+
+import com.augustl.pathtravelagent.RouteMatchResult;
+
+/**
+ * <p>A segment that takes a hexadecimal id of 1 to 16 digits, such as <tt>3f9a</tt>, in upper or lower case. Read the
+ * value with {@link com.augustl.pathtravelagent.RouteMatch#getLongRouteMatchResult(String)}. Ids of 16 digits can be
+ * larger than Long.MAX_VALUE, and are read as negative longs, like with <tt>Long.parseUnsignedLong(id, 16)</tt>.</p>
+ *
+ * <p>The id is parsed in a single pass, and invalid input is rejected without throwing any exceptions.</p>
+ */
+public class HexSegment implements IRangeParametricSegment {
+    private final String paramName;
+
+    public HexSegment(String paramName) {
+        this.paramName = paramName;
+    }
+
+    @Override
+    public String getParamName() {
+        return this.paramName;
+    }
+
+    @Override
+    public RouteMatchResult.IResult getValue(String rawValue) {
+        long high = parseHigh(rawValue, 0, rawValue.length());
+        long low = parseLow(rawValue, 0, rawValue.length());
+        if ((high | low) < 0) {
+            return null;
+        }
+        return new RouteMatchResult.LongResult(high << 32 | low);
+    }
+
+    @Override
+    public boolean addValue(RouteMatchResult res, CharSequence source, int start, int end) {
+        long high = parseHigh(source, start, end);
+        long low = parseLow(source, start, end);
+        if ((high | low) < 0) {
+            return false;
+        }
+        res.addToLongMatches(this.paramName, high << 32 | low);
+        return true;
+    }
+
+    /**
+     * The digits are parsed as two halves of at most 8 digits, so that -1 is never a valid value of a half.
+     *
+     * @return The value of the digits before the last 8, or -1 if the length or any of those digits are invalid.
+     */
+    private static long parseHigh(CharSequence source, int start, int end) {
+        if (end - start < 1 || end - start > 16) {
+            return -1;
+        }
+        return parseHex(source, start, Math.max(start, end - 8));
+    }
+
+    /**
+     * @return The value of the last 8 digits, or -1 if any of them are invalid.
+     */
+    private static long parseLow(CharSequence source, int start, int end) {
+        return parseHex(source, Math.max(start, end - 8), end);
+    }
+
+    /**
+     * @return The value of at most 8 hex digits, or -1 if any of them are invalid.
+     */
+    private static long parseHex(CharSequence source, int start, int end) {
+        long res = 0;
+        for (int i = start; i < end; i++) {
+            int digit = hexValue(source.charAt(i));
+            if (digit < 0) {
+                return -1;
+            }
+            res = res << 4 | digit;
+        }
+        return res;
+    }
+
+    /**
+     * @return The value of an ASCII hex digit, or -1.
+     */
+    static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        } else {
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj != null && obj.getClass() == getClass() && ((HexSegment) obj).paramName.equals(this.paramName);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.paramName.hashCode();
+    }
+}
@@ -0,0 +1,23 @@
+package com.augustl.pathtravelagent.segment;
+
+import com.augustl.pathtravelagent.RouteMatchResult;
+
+/**
+ * <p>A parametric segment that can read its value straight from a range of the raw path, without a String being
+ * created for the path segment first.</p>
+ *
+ * <p>Used by the matchers that scan a raw path in place. Segments that only implement IParametricSegment still work
+ * there, but get a String created for the path segment.</p>
+ *
+ * @see com.augustl.pathtravelagent.CompiledRouteMatcher#match(com.augustl.pathtravelagent.CompiledRouteTree, com.augustl.pathtravelagent.IRequest, CharSequence)
+ */
+public interface IRangeParametricSegment extends IParametricSegment {
+    /**
+     * @param res The match result to add the value to
+     * @param source The raw path
+     * @param start The index of the first char of the path segment in source
+     * @param end The index after the last char of the path segment in source
+     * @return true if the value was valid and added to res, false if the path segment does not match.
+     */
+    public boolean addValue(RouteMatchResult res, CharSequence source, int start, int end);
+}
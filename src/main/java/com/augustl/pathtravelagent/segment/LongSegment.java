@@ -0,0 +1,34 @@
+package com.augustl.pathtravelagent.segment;
+
+import com.augustl.pathtravelagent.RouteMatchResult;
+
+/**
+ * <p>A segment that takes a long. Read the value with
+ * {@link com.augustl.pathtravelagent.RouteMatch#getLongRouteMatchResult(String)}.</p>
+ *
+ * @see com.augustl.pathtravelagent.segment.NumberSegment
+ */
+public class LongSegment extends AbstractNumberSegment {
+    public LongSegment(String paramName) {
+        this(paramName, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param paramName The name of the param
+     * @param min The smallest value that matches, inclusive
+     * @param max The largest value that matches, inclusive
+     */
+    public LongSegment(String paramName, long min, long max) {
+        super(paramName, min, max);
+    }
+
+    @Override
+    protected RouteMatchResult.IResult createResult(long val) {
+        return new RouteMatchResult.LongResult(val);
+    }
+
+    @Override
+    protected void addToMatchResult(RouteMatchResult res, long val) {
+        res.addToLongMatches(getParamName(), val);
+    }
+}
@@ -2,25 +2,33 @@ package com.augustl.pathtravelagent.segment;
 
 import com.augustl.pathtravelagent.RouteMatchResult;
 
-public class NumberSegment implements IParametricSegment {
-    private final String paramName;
-
+/**
+ * <p>A segment that takes an int. Read the value with
+ * {@link com.augustl.pathtravelagent.RouteMatch#getIntRouteMatchResult(String)}.</p>
+ *
+ * @see com.augustl.pathtravelagent.segment.LongSegment
+ */
+public class NumberSegment extends AbstractNumberSegment {
     public NumberSegment(String paramName) {
-        this.paramName = paramName;
+        this(paramName, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param paramName The name of the param
+     * @param min The smallest value that matches, inclusive
+     * @param max The largest value that matches, inclusive
+     */
+    public NumberSegment(String paramName, int min, int max) {
+        super(paramName, min, max);
     }
 
     @Override
-    public String getParamName() {
-        return this.paramName;
+    protected RouteMatchResult.IResult createResult(long val) {
+        return new RouteMatchResult.IntegerResult((int) val);
     }
 
     @Override
-    public RouteMatchResult.IResult getValue(String rawValue) {
-        try {
-            Integer parsed = Integer.parseInt(rawValue, 10);
-            return new RouteMatchResult.IntegerResult(parsed);
-        } catch (NumberFormatException e) {
-            return null;
-        }
+    protected void addToMatchResult(RouteMatchResult res, long val) {
+        res.addToIntegerMatches(getParamName(), (int) val);
     }
 }
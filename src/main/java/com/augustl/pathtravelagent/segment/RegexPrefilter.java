@@ -0,0 +1,552 @@
+package com.augustl.pathtravelagent.segment;
+
+/**
+ * <p>Cheap checks that a value has to pass to match a regexp, derived from the regexp: the length bounds, the ASCII
+ * chars that can occur, and a literal prefix and suffix. A value that fails them can not match. A value that passes
+ * them still has to be matched with the regexp.</p>
+ *
+ * <p>The regexp is analyzed by a small parser for the common parts of the regexp syntax. Zero-width parts, such as
+ * anchors and lookarounds, are skipped, which only makes the checks less strict. For anything it does not know, such
+ * as back references, flags and Unicode classes, it gives up, and all values pass.</p>
+ */
+final class RegexPrefilter {
+    private static final int UNBOUNDED = Integer.MAX_VALUE;
+    private static final RegexPrefilter NONE = new RegexPrefilter(0, UNBOUNDED, -1L, -1L, true, "", "");
+
+    private final int minLength;
+    private final int maxLength;
+    private final long asciiLow;
+    private final long asciiHigh;
+    private final boolean allowsNonAscii;
+    private final String prefix;
+    private final String suffix;
+    private final boolean checksChars;
+
+    private RegexPrefilter(int minLength, int maxLength, long asciiLow, long asciiHigh, boolean allowsNonAscii, String prefix, String suffix) {
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.asciiLow = asciiLow;
+        this.asciiHigh = asciiHigh;
+        this.allowsNonAscii = allowsNonAscii;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.checksChars = asciiLow != -1L || asciiHigh != -1L || !allowsNonAscii;
+    }
+
+    /**
+     * @param flags The flags the regexp is compiled with. Only analyzed when there are none.
+     */
+    static RegexPrefilter create(String regex, int flags) {
+        if (flags != 0) {
+            return NONE;
+        }
+
+        Node node;
+        try {
+            Parser parser = new Parser(regex);
+            node = parser.parseAlternation();
+            if (!parser.isAtEnd()) {
+                return NONE;
+            }
+        } catch (UnsupportedRegexException e) {
+            return NONE;
+        }
+        return new RegexPrefilter(node.minLength, node.maxLength, node.asciiLow, node.asciiHigh, node.allowsNonAscii, node.prefix, node.suffix);
+    }
+
+    int getMinLength() {
+        return this.minLength;
+    }
+
+    int getMaxLength() {
+        return this.maxLength;
+    }
+
+    String getPrefix() {
+        return this.prefix;
+    }
+
+    String getSuffix() {
+        return this.suffix;
+    }
+
+    boolean allows(char c) {
+        if (c < 64) {
+            return (this.asciiLow & 1L << c) != 0;
+        } else if (c < 128) {
+            return (this.asciiHigh & 1L << (c - 64)) != 0;
+        } else {
+            return this.allowsNonAscii;
+        }
+    }
+
+    /**
+     * @return False if the chars from start to end can not match the regexp.
+     */
+    boolean mightMatch(CharSequence source, int start, int end) {
+        int length = end - start;
+        if (length < this.minLength || length > this.maxLength) {
+            return false;
+        }
+        // Every match is at least minLength long, and starts with the prefix and ends with the suffix, so neither of
+        // them is longer than that. They can overlap.
+        for (int i = 0; i < this.prefix.length(); i++) {
+            if (source.charAt(start + i) != this.prefix.charAt(i)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < this.suffix.length(); i++) {
+            if (source.charAt(end - this.suffix.length() + i) != this.suffix.charAt(i)) {
+                return false;
+            }
+        }
+        if (this.checksChars) {
+            for (int i = start; i < end; i++) {
+                if (!allows(source.charAt(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * What is known about the values a part of the regexp matches.
+     */
+    private static final class Node {
+        private int minLength;
+        private int maxLength;
+        private long asciiLow;
+        private long asciiHigh;
+        private boolean allowsNonAscii;
+        /** The only value the part matches, or null if it matches more than one. */
+        private String exact;
+        private String prefix;
+        private String suffix;
+
+        static Node empty() {
+            Node res = new Node();
+            res.exact = "";
+            res.prefix = "";
+            res.suffix = "";
+            return res;
+        }
+
+        static Node literal(char c) {
+            return literal(String.valueOf(c));
+        }
+
+        /**
+         * @param str A char, or the two chars of a supplementary code point.
+         */
+        static Node literal(String str) {
+            Node res = new Node();
+            res.minLength = str.length();
+            res.maxLength = str.length();
+            for (int i = 0; i < str.length(); i++) {
+                res.add(str.charAt(i));
+            }
+            res.exact = str;
+            res.prefix = str;
+            res.suffix = str;
+            return res;
+        }
+
+        /**
+         * A char class. Classes that can match non-ASCII chars can match supplementary code points, which take two
+         * chars.
+         */
+        static Node charClass(long asciiLow, long asciiHigh, boolean allowsNonAscii) {
+            Node res = new Node();
+            res.minLength = 1;
+            res.maxLength = allowsNonAscii ? 2 : 1;
+            res.asciiLow = asciiLow;
+            res.asciiHigh = asciiHigh;
+            res.allowsNonAscii = allowsNonAscii;
+            res.prefix = "";
+            res.suffix = "";
+            return res;
+        }
+
+        void add(char c) {
+            if (c < 64) {
+                this.asciiLow |= 1L << c;
+            } else if (c < 128) {
+                this.asciiHigh |= 1L << (c - 64);
+            } else {
+                this.allowsNonAscii = true;
+            }
+        }
+
+        Node then(Node next) {
+            Node res = new Node();
+            res.minLength = add(this.minLength, next.minLength);
+            res.maxLength = add(this.maxLength, next.maxLength);
+            res.asciiLow = this.asciiLow | next.asciiLow;
+            res.asciiHigh = this.asciiHigh | next.asciiHigh;
+            res.allowsNonAscii = this.allowsNonAscii || next.allowsNonAscii;
+            if (this.exact != null && next.exact != null) {
+                res.exact = this.exact + next.exact;
+            }
+            res.prefix = this.exact == null ? this.prefix : this.exact + next.prefix;
+            res.suffix = next.exact == null ? next.suffix : this.suffix + next.exact;
+            return res;
+        }
+
+        Node or(Node other) {
+            Node res = new Node();
+            res.minLength = Math.min(this.minLength, other.minLength);
+            res.maxLength = Math.max(this.maxLength, other.maxLength);
+            res.asciiLow = this.asciiLow | other.asciiLow;
+            res.asciiHigh = this.asciiHigh | other.asciiHigh;
+            res.allowsNonAscii = this.allowsNonAscii || other.allowsNonAscii;
+            if (this.exact != null && this.exact.equals(other.exact)) {
+                res.exact = this.exact;
+            }
+            res.prefix = commonPrefix(this.prefix, other.prefix);
+            res.suffix = commonSuffix(this.suffix, other.suffix);
+            return res;
+        }
+
+        Node repeat(int min, int max) {
+            if (max == 0) {
+                return empty();
+            }
+
+            Node res = new Node();
+            res.minLength = multiply(this.minLength, min);
+            res.maxLength = this.maxLength == 0 ? 0 : multiply(this.maxLength, max);
+            res.asciiLow = this.asciiLow;
+            res.asciiHigh = this.asciiHigh;
+            res.allowsNonAscii = this.allowsNonAscii;
+            if (min == max && this.exact != null && multiply(this.exact.length(), min) <= 64) {
+                StringBuilder exact = new StringBuilder();
+                for (int i = 0; i < min; i++) {
+                    exact.append(this.exact);
+                }
+                res.exact = exact.toString();
+            }
+            res.prefix = min == 0 ? "" : this.prefix;
+            res.suffix = min == 0 ? "" : this.suffix;
+            return res;
+        }
+
+        private static int add(int a, int b) {
+            long res = (long) a + b;
+            return res >= UNBOUNDED ? UNBOUNDED : (int) res;
+        }
+
+        private static int multiply(int a, int b) {
+            long res = (long) a * b;
+            return res >= UNBOUNDED ? UNBOUNDED : (int) res;
+        }
+
+        private static String commonPrefix(String a, String b) {
+            int i = 0;
+            while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) {
+                i++;
+            }
+            return a.substring(0, i);
+        }
+
+        private static String commonSuffix(String a, String b) {
+            int i = 0;
+            while (i < a.length() && i < b.length() && a.charAt(a.length() - 1 - i) == b.charAt(b.length() - 1 - i)) {
+                i++;
+            }
+            return a.substring(a.length() - i);
+        }
+    }
+
+    private static final class UnsupportedRegexException extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class Parser {
+        private static final long DIGITS = 0x03FF000000000000L;
+        private static final long WORD_LOW = DIGITS;
+        private static final long WORD_HIGH = 0x07FFFFFE87FFFFFEL;
+        private static final long SPACE_LOW = 1L << ' ' | 1L << '\t' | 1L << '\n' | 1L << 0x0B | 1L << '\f' | 1L << '\r';
+
+        private final String regex;
+        private int i = 0;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        boolean isAtEnd() {
+            return this.i == this.regex.length();
+        }
+
+        Node parseAlternation() throws UnsupportedRegexException {
+            Node res = parseSequence();
+            while (!isAtEnd() && this.regex.charAt(this.i) == '|') {
+                this.i++;
+                res = res.or(parseSequence());
+            }
+            return res;
+        }
+
+        private Node parseSequence() throws UnsupportedRegexException {
+            Node res = Node.empty();
+            while (!isAtEnd() && this.regex.charAt(this.i) != '|' && this.regex.charAt(this.i) != ')') {
+                Node atom = parseAtom();
+                if (atom == null) {
+                    // Zero-width, but a quantifier after it still has to be skipped.
+                    parseQuantifier(Node.empty());
+                    continue;
+                }
+                res = res.then(parseQuantifier(atom));
+            }
+            return res;
+        }
+
+        /**
+         * @return The atom, or null for zero-width atoms.
+         */
+        private Node parseAtom() throws UnsupportedRegexException {
+            char c = this.regex.charAt(this.i++);
+            switch (c) {
+                case '^':
+                case '$':
+                    return null;
+                case '.':
+                    return Node.charClass(-1L, -1L, true);
+                case '[':
+                    return parseCharClass();
+                case '(':
+                    return parseGroup();
+                case '\\':
+                    return parseEscape(false);
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw new UnsupportedRegexException();
+                default:
+                    // A quantifier after a supplementary code point applies to both its chars.
+                    if (Character.isHighSurrogate(c) && !isAtEnd() && Character.isLowSurrogate(this.regex.charAt(this.i))) {
+                        return Node.literal(this.regex.substring(this.i - 1, ++this.i));
+                    }
+                    return Node.literal(c);
+            }
+        }
+
+        private Node parseGroup() throws UnsupportedRegexException {
+            boolean zeroWidth = false;
+            if (this.regex.startsWith("?", this.i)) {
+                if (this.regex.startsWith("?:", this.i) || this.regex.startsWith("?>", this.i)) {
+                    this.i += 2;
+                } else if (this.regex.startsWith("?=", this.i) || this.regex.startsWith("?!", this.i)) {
+                    this.i += 2;
+                    zeroWidth = true;
+                } else if (this.regex.startsWith("?<=", this.i) || this.regex.startsWith("?<!", this.i)) {
+                    this.i += 3;
+                    zeroWidth = true;
+                } else if (this.regex.startsWith("?<", this.i)) {
+                    int nameEnd = this.regex.indexOf('>', this.i);
+                    if (nameEnd == -1) {
+                        throw new UnsupportedRegexException();
+                    }
+                    this.i = nameEnd + 1;
+                } else {
+                    // Inline flags
+                    throw new UnsupportedRegexException();
+                }
+            }
+
+            Node res = parseAlternation();
+            if (isAtEnd() || this.regex.charAt(this.i) != ')') {
+                throw new UnsupportedRegexException();
+            }
+            this.i++;
+            return zeroWidth ? null : res;
+        }
+
+        private Node parseQuantifier(Node atom) throws UnsupportedRegexException {
+            if (isAtEnd()) {
+                return atom;
+            }
+
+            int min;
+            int max;
+            char c = this.regex.charAt(this.i);
+            if (c == '?') {
+                min = 0;
+                max = 1;
+                this.i++;
+            } else if (c == '*') {
+                min = 0;
+                max = UNBOUNDED;
+                this.i++;
+            } else if (c == '+') {
+                min = 1;
+                max = UNBOUNDED;
+                this.i++;
+            } else if (c == '{') {
+                int end = this.regex.indexOf('}', this.i);
+                if (end == -1) {
+                    throw new UnsupportedRegexException();
+                }
+                String bounds = this.regex.substring(this.i + 1, end);
+                int comma = bounds.indexOf(',');
+                min = parseBound(comma == -1 ? bounds : bounds.substring(0, comma));
+                max = comma == -1 ? min : comma == bounds.length() - 1 ? UNBOUNDED : parseBound(bounds.substring(comma + 1));
+                this.i = end + 1;
+            } else {
+                return atom;
+            }
+
+            // Lazy and possessive quantifiers match a subset of what the greedy one does.
+            if (!isAtEnd() && (this.regex.charAt(this.i) == '?' || this.regex.charAt(this.i) == '+')) {
+                this.i++;
+            }
+            return atom.repeat(min, max);
+        }
+
+        private static int parseBound(String bound) throws UnsupportedRegexException {
+            if (bound.length() == 0 || bound.length() > 9) {
+                throw new UnsupportedRegexException();
+            }
+            int res = 0;
+            for (int i = 0; i < bound.length(); i++) {
+                int digit = bound.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new UnsupportedRegexException();
+                }
+                res = res * 10 + digit;
+            }
+            return res;
+        }
+
+        private Node parseCharClass() throws UnsupportedRegexException {
+            boolean negated = false;
+            if (!isAtEnd() && this.regex.charAt(this.i) == '^') {
+                negated = true;
+                this.i++;
+            }
+
+            Node res = Node.charClass(0, 0, false);
+            boolean first = true;
+            while (true) {
+                if (isAtEnd()) {
+                    throw new UnsupportedRegexException();
+                }
+                char c = this.regex.charAt(this.i++);
+                if (c == ']' && !first) {
+                    break;
+                }
+                first = false;
+                if (c == '[' || (c == '&' && this.regex.startsWith("&", this.i))) {
+                    throw new UnsupportedRegexException();
+                }
+
+                Node escaped = null;
+                if (c == '\\') {
+                    escaped = parseEscape(true);
+                    if (escaped.exact == null) {
+                        res = res.or(escaped);
+                        continue;
+                    }
+                    c = escaped.exact.charAt(0);
+                }
+
+                if (this.regex.startsWith("-", this.i) && this.i + 1 < this.regex.length() && this.regex.charAt(this.i + 1) != ']') {
+                    this.i++;
+                    char rangeEnd = this.regex.charAt(this.i++);
+                    if (rangeEnd == '\\') {
+                        Node escapedEnd = parseEscape(true);
+                        if (escapedEnd.exact == null) {
+                            throw new UnsupportedRegexException();
+                        }
+                        rangeEnd = escapedEnd.exact.charAt(0);
+                    } else if (rangeEnd == '[') {
+                        throw new UnsupportedRegexException();
+                    }
+                    for (int j = c; j <= rangeEnd && j < 128; j++) {
+                        res.add((char) j);
+                    }
+                    if (rangeEnd >= 128) {
+                        res.allowsNonAscii = true;
+                    }
+                } else {
+                    res.add(c);
+                }
+            }
+
+            if (negated) {
+                return Node.charClass(~res.asciiLow, ~res.asciiHigh, true);
+            }
+            return Node.charClass(res.asciiLow, res.asciiHigh, res.allowsNonAscii);
+        }
+
+        /**
+         * @return A literal, or a class, for the escape after a backslash. Null for zero-width escapes, outside of
+         * char classes.
+         */
+        private Node parseEscape(boolean inCharClass) throws UnsupportedRegexException {
+            if (isAtEnd()) {
+                throw new UnsupportedRegexException();
+            }
+            char c = this.regex.charAt(this.i++);
+            switch (c) {
+                case 'd':
+                    return Node.charClass(DIGITS, 0, false);
+                case 'D':
+                    return Node.charClass(~DIGITS, -1L, true);
+                case 'w':
+                    return Node.charClass(WORD_LOW, WORD_HIGH, false);
+                case 'W':
+                    return Node.charClass(~WORD_LOW, ~WORD_HIGH, true);
+                case 's':
+                    return Node.charClass(SPACE_LOW, 0, false);
+                case 'S':
+                    return Node.charClass(~SPACE_LOW, -1L, true);
+                case 't':
+                    return Node.literal('\t');
+                case 'n':
+                    return Node.literal('\n');
+                case 'r':
+                    return Node.literal('\r');
+                case 'f':
+                    return Node.literal('\f');
+                case 'x':
+                    return Node.literal((char) parseHex(2));
+                case 'u':
+                    return Node.literal((char) parseHex(4));
+                case 'b':
+                case 'B':
+                case 'A':
+                case 'G':
+                case 'z':
+                case 'Z':
+                    if (inCharClass) {
+                        throw new UnsupportedRegexException();
+                    }
+                    return null;
+                default:
+                    if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                        // Back references, Unicode classes, quoting and the like.
+                        throw new UnsupportedRegexException();
+                    }
+                    return Node.literal(c);
+            }
+        }
+
+        private int parseHex(int length) throws UnsupportedRegexException {
+            if (this.i + length > this.regex.length()) {
+                throw new UnsupportedRegexException();
+            }
+            int res = 0;
+            for (int j = 0; j < length; j++) {
+                int digit = Character.digit(this.regex.charAt(this.i++), 16);
+                if (digit < 0) {
+                    throw new UnsupportedRegexException();
+                }
+                res = res * 16 + digit;
+            }
+            return res;
+        }
+    }
+}
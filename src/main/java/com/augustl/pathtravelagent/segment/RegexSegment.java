@@ -0,0 +1,103 @@
+package com.augustl.pathtravelagent.segment;
+
+import com.augustl.pathtravelagent.RouteMatchResult;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A segment that takes a string matching a regexp, such as <tt>[a-z0-9-]{3,64}</tt> for a slug. The whole path
+ * segment has to match. Read the value with
+ * {@link com.augustl.pathtravelagent.RouteMatch#getStringRouteMatchResult(String)}.</p>
+ *
+ * <pre>
+ * {@code
+ *  new RouteTreeBuilder<MyReq, MyRes>()
+ *      .path("/articles", new RouteTreeBuilder<MyReq, MyRes>()
+ *          .param(new RegexSegment("slug", "[a-z0-9-]{3,64}"), new RouteTreeBuilder<MyReq, MyRes>()
+ *              .handler(new MyHandler())))
+ * }
+ * </pre>
+ *
+ * <p>The regexp is compiled once. Before running it, the path segment is checked against the length, the chars, and
+ * the literal prefix and suffix the regexp allows, so that most path segments that do not match are rejected without
+ * running the regexp. Each thread reuses its own Matcher.</p>
+ */
+public class RegexSegment implements IRangeParametricSegment {
+    private final String paramName;
+    private final Pattern pattern;
+    private final RegexPrefilter prefilter;
+    private final ThreadLocal<Matcher> matchers;
+
+    public RegexSegment(String paramName, String regex) {
+        this(paramName, Pattern.compile(regex));
+    }
+
+    /**
+     * @param pattern The regexp. Checking path segments before running it only works for patterns without flags.
+     */
+    public RegexSegment(String paramName, final Pattern pattern) {
+        this.paramName = paramName;
+        this.pattern = pattern;
+        this.prefilter = RegexPrefilter.create(pattern.pattern(), pattern.flags());
+        this.matchers = new ThreadLocal<Matcher>() {
+            @Override
+            protected Matcher initialValue() {
+                return pattern.matcher("");
+            }
+        };
+    }
+
+    @Override
+    public String getParamName() {
+        return this.paramName;
+    }
+
+    public Pattern getPattern() {
+        return this.pattern;
+    }
+
+    @Override
+    public RouteMatchResult.IResult getValue(String rawValue) {
+        if (!matches(rawValue, 0, rawValue.length())) {
+            return null;
+        }
+        return new RouteMatchResult.StringResult(rawValue);
+    }
+
+    @Override
+    public boolean addValue(RouteMatchResult res, CharSequence source, int start, int end) {
+        if (!matches(source, start, end)) {
+            return false;
+        }
+        res.addToStringMatches(this.paramName, source, start, end);
+        return true;
+    }
+
+    private boolean matches(CharSequence source, int start, int end) {
+        if (!this.prefilter.mightMatch(source, start, end)) {
+            return false;
+        }
+        // The matcher keeps a reference to the last source until the next match on the same thread.
+        return this.matchers.get().reset(source).region(start, end).matches();
+    }
+
+    /**
+     * Equal to another RegexSegment with the same param name and the same regexp and flags.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || obj.getClass() != getClass()) {
+            return false;
+        }
+        RegexSegment other = (RegexSegment) obj;
+        return other.paramName.equals(this.paramName)
+            && other.pattern.pattern().equals(this.pattern.pattern())
+            && other.pattern.flags() == this.pattern.flags();
+    }
+
+    @Override
+    public int hashCode() {
+        return (this.paramName.hashCode() * 31 + this.pattern.pattern().hashCode()) * 31 + this.pattern.flags();
+    }
+}
@@ -2,7 +2,7 @@ package com.augustl.pathtravelagent.segment;
 
 import com.augustl.pathtravelagent.RouteMatchResult;
 
-public class StringSegment implements IParametricSegment {
+public class StringSegment implements IRangeParametricSegment {
     private final String paramName;
 
     public StringSegment(String paramName) {
@@ -18,4 +18,20 @@ public class StringSegment implements IParametricSegment {
     public RouteMatchResult.IResult getValue(String rawValue) {
         return new RouteMatchResult.StringResult(rawValue);
     }
+
+    @Override
+    public boolean addValue(RouteMatchResult res, CharSequence source, int start, int end) {
+        res.addToStringMatches(this.paramName, source, start, end);
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj != null && obj.getClass() == getClass() && ((StringSegment) obj).paramName.equals(this.paramName);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.paramName.hashCode();
+    }
 }
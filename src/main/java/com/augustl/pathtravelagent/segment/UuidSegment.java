@@ -0,0 +1,100 @@
+package com.augustl.pathtravelagent.segment;
+
+import com.augustl.pathtravelagent.RouteMatchResult;
+
+/**
+ * <p>A segment that takes a UUID in the standard form, such as <tt>123e4567-e89b-12d3-a456-426614174000</tt>, in upper
+ * or lower case. Read the value with
+ * {@link com.augustl.pathtravelagent.RouteMatch#getUuidRouteMatchResult(String)}.</p>
+ *
+ * <p>The UUID is parsed in a single pass, and invalid input is rejected without throwing any exceptions. It is stored
+ * as two longs, and only turned into a UUID when it is read. Unlike <tt>UUID.fromString</tt>, only the standard form
+ * with 36 chars is accepted.</p>
+ */
+public class UuidSegment implements IRangeParametricSegment {
+    private static final int LENGTH = 36;
+
+    private final String paramName;
+
+    public UuidSegment(String paramName) {
+        this.paramName = paramName;
+    }
+
+    @Override
+    public String getParamName() {
+        return this.paramName;
+    }
+
+    @Override
+    public RouteMatchResult.IResult getValue(String rawValue) {
+        if (rawValue.length() != LENGTH) {
+            return null;
+        }
+        long high = parseHex(rawValue, 0, 0, 13);
+        long middle = parseHex(rawValue, 0, 13, 23);
+        long low = parseHex(rawValue, 0, 23, LENGTH);
+        if ((high | middle | low) < 0) {
+            return null;
+        }
+        return new RouteMatchResult.UuidResult(getMostSignificantBits(high, middle), getLeastSignificantBits(middle, low));
+    }
+
+    @Override
+    public boolean addValue(RouteMatchResult res, CharSequence source, int start, int end) {
+        if (end - start != LENGTH) {
+            return false;
+        }
+        long high = parseHex(source, start, 0, 13);
+        long middle = parseHex(source, start, 13, 23);
+        long low = parseHex(source, start, 23, LENGTH);
+        if ((high | middle | low) < 0) {
+            return false;
+        }
+        res.addToUuidMatches(this.paramName, getMostSignificantBits(high, middle), getLeastSignificantBits(middle, low));
+        return true;
+    }
+
+    /**
+     * The UUID is parsed as three parts of 12, 8 and 12 digits, so that -1 is never a valid value of a part.
+     *
+     * @param from The index in the UUID of the first char of the part.
+     * @param to The index in the UUID after the last char of the part.
+     * @return The value of the hex digits of the part, or -1 if any of the chars are invalid.
+     */
+    private static long parseHex(CharSequence source, int start, int from, int to) {
+        long res = 0;
+        for (int i = from; i < to; i++) {
+            char c = source.charAt(start + i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return -1;
+                }
+            } else {
+                int digit = HexSegment.hexValue(c);
+                if (digit < 0) {
+                    return -1;
+                }
+                res = res << 4 | digit;
+            }
+        }
+        return res;
+    }
+
+    private static long getMostSignificantBits(long high, long middle) {
+        return high << 16 | middle >>> 16;
+    }
+
+    private static long getLeastSignificantBits(long middle, long low) {
+        return (middle & 0xFFFF) << 48 | low;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj != null && obj.getClass() == getClass() && ((UuidSegment) obj).paramName.equals(this.paramName);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.paramName.hashCode();
+    }
+}
@@ -0,0 +1,139 @@
+package com.augustl.pathtravelagent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class CachingRouteMatcherTest {
+    private DefaultRouteMatcher<TestReq, TestRes> defaultRouteMatcher = new DefaultRouteMatcher<TestReq, TestRes>();
+    private RouteTreeBuilderFactory<TestReq, TestRes> rf = new RouteTreeBuilderFactory<TestReq, TestRes>();
+
+    @Test
+    public void matchesLikeDefaultRouteMatcher() {
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+        CachingRouteMatcher<TestReq, TestRes> cachingRouteMatcher = new CachingRouteMatcher<TestReq, TestRes>(100);
+        MatchContext<TestReq> ctx = new MatchContext<TestReq>();
+
+        for (int i = 0; i < 3; i++) {
+            for (String path : TestRoutes.PATHS) {
+                TestReq req = new TestReq(path);
+                assertEquals(path, defaultRouteMatcher.match(r, req), cachingRouteMatcher.match(r, req));
+                assertEquals(path, defaultRouteMatcher.match(r, req), cachingRouteMatcher.match(r, req, ctx));
+            }
+        }
+
+        // Paths such as "" and "/" have the same path segments
+        Set<List<String>> pathSegments = new HashSet<List<String>>();
+        for (String path : TestRoutes.PATHS) {
+            pathSegments.add(new TestReq(path).getPathSegments());
+        }
+        assertEquals(pathSegments.size(), cachingRouteMatcher.size());
+        assertEquals(pathSegments.size(), cachingRouteMatcher.getMissCount());
+        assertEquals(TestRoutes.PATHS.length * 6 - pathSegments.size(), cachingRouteMatcher.getHitCount());
+        assertEquals(0, cachingRouteMatcher.getEvictionCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+        CachingRouteMatcher<TestReq, TestRes> cachingRouteMatcher = new CachingRouteMatcher<TestReq, TestRes>(2, 1);
+
+        cachingRouteMatcher.match(r, new TestReq("/projects/1"));
+        cachingRouteMatcher.match(r, new TestReq("/projects/2"));
+        cachingRouteMatcher.match(r, new TestReq("/projects/1"));
+        cachingRouteMatcher.match(r, new TestReq("/projects/3"));
+        assertEquals(2, cachingRouteMatcher.size());
+        assertEquals(1, cachingRouteMatcher.getEvictionCount());
+
+        cachingRouteMatcher.match(r, new TestReq("/projects/1"));
+        assertEquals(2, cachingRouteMatcher.getHitCount());
+        cachingRouteMatcher.match(r, new TestReq("/projects/2"));
+        assertEquals(2, cachingRouteMatcher.getHitCount());
+        assertEquals(new TestRes("project {} {projectId=2} []"), cachingRouteMatcher.match(r, new TestReq("/projects/2")));
+    }
+
+    @Test
+    public void invalidatesWhenRootNodeChanges() {
+        RouteTreeNode<TestReq, TestRes> r1 = TestRoutes.createTree();
+        RouteTreeNode<TestReq, TestRes> r2 = r1.merge(rf.builder()
+            .path("/foo", rf.builder()
+                .handler(new EchoHandler("foo")))
+            .build());
+        CachingRouteMatcher<TestReq, TestRes> cachingRouteMatcher = new CachingRouteMatcher<TestReq, TestRes>(100, 1);
+
+        assertEquals(new TestRes("name {name=foo} {} []"), cachingRouteMatcher.match(r1, new TestReq("/foo")));
+        assertEquals(new TestRes("foo {} {} []"), cachingRouteMatcher.match(r2, new TestReq("/foo")));
+        assertEquals(1, cachingRouteMatcher.size());
+        assertEquals(new TestRes("name {name=foo} {} []"), cachingRouteMatcher.match(r1, new TestReq("/foo")));
+        assertEquals(0, cachingRouteMatcher.getHitCount());
+    }
+
+    @Test
+    public void cachedValuesAreNotSharedWithHandlers() {
+        RouteTreeNode<TestReq, TestRes> r = rf.builder()
+            .wildcard(rf.builder()
+                .handler(new IRouteHandler<TestReq, TestRes>() {
+                    @Override
+                    public IRouteHandler<TestReq, TestRes> merge(IRouteHandler<TestReq, TestRes> other) {
+                        return other;
+                    }
+
+                    @Override
+                    public TestRes call(RouteMatch<TestReq> match) {
+                        List<String> wildcardMatches = match.getRouteMatchResult().getWildcardMatches();
+                        TestRes res = new TestRes(wildcardMatches.toString());
+                        wildcardMatches.clear();
+                        return res;
+                    }
+                }))
+            .build();
+        CachingRouteMatcher<TestReq, TestRes> cachingRouteMatcher = new CachingRouteMatcher<TestReq, TestRes>(100);
+
+        assertEquals(new TestRes("[foo, bar]"), cachingRouteMatcher.match(r, new TestReq("/foo/bar")));
+        assertEquals(new TestRes("[foo, bar]"), cachingRouteMatcher.match(r, new TestReq("/foo/bar")));
+    }
+
+    @Test
+    public void matchesFromManyThreads() throws InterruptedException {
+        final RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+        final CachingRouteMatcher<TestReq, TestRes> cachingRouteMatcher = new CachingRouteMatcher<TestReq, TestRes>(8, 4);
+        final AtomicReference<String> failure = new AtomicReference<String>();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    MatchContext<TestReq> ctx = new MatchContext<TestReq>();
+                    for (int i = 0; i < 2000; i++) {
+                        String path = "/projects/" + ((i + offset) % 20);
+                        TestRes expected = new TestRes("project {} {projectId=" + ((i + offset) % 20) + "} []");
+                        if (!expected.equals(cachingRouteMatcher.match(r, new TestReq(path), ctx))) {
+                            failure.set(path);
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(8000, cachingRouteMatcher.getHitCount() + cachingRouteMatcher.getMissCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresPositiveMaxSize() {
+        new CachingRouteMatcher<TestReq, TestRes>(0);
+    }
+}
@@ -0,0 +1,399 @@
+package com.augustl.pathtravelagent;
+
+import com.augustl.pathtravelagent.segment.DateSegment;
+import com.augustl.pathtravelagent.segment.HexSegment;
+import com.augustl.pathtravelagent.segment.LongSegment;
+import com.augustl.pathtravelagent.segment.NumberSegment;
+import com.augustl.pathtravelagent.segment.UuidSegment;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompiledRouteTreeTest {
+    private DefaultRouteMatcher<TestReq, TestRes> defaultRouteMatcher = new DefaultRouteMatcher<TestReq, TestRes>();
+    private CompiledRouteMatcher<TestReq, TestRes> compiledRouteMatcher = new CompiledRouteMatcher<TestReq, TestRes>();
+    private RouteTreeBuilderFactory<TestReq, TestRes> rf = new RouteTreeBuilderFactory<TestReq, TestRes>();
+
+    @Test
+    public void matchesLikeDefaultRouteMatcher() {
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+        CompiledRouteTree<TestReq, TestRes> compiled = r.compile();
+
+        for (String path : TestRoutes.PATHS) {
+            TestReq req = new TestReq(path);
+            assertEquals(path, defaultRouteMatcher.match(r, req), compiledRouteMatcher.match(compiled, req));
+        }
+    }
+
+    @Test
+    public void matchesRandomizedInputLikeDefaultRouteMatcher() {
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+        CompiledRouteTree<TestReq, TestRes> compiled = r.compile();
+
+        for (String path : TestRoutes.createRandomPaths(10000, 20, TestRoutes.SYMBOLS)) {
+            TestReq req = new TestReq(path);
+            TestRes expected = defaultRouteMatcher.match(r, req);
+            assertEquals(path, expected, compiledRouteMatcher.match(compiled, req));
+            assertEquals(path, expected, compiledRouteMatcher.match(compiled, req, path));
+        }
+    }
+
+    @Test
+    public void matchesRawPathLikeDefaultRouteMatcher() {
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+        CompiledRouteTree<TestReq, TestRes> compiled = r.compile();
+
+        for (String path : TestRoutes.PATHS) {
+            TestReq req = new TestReq(path);
+            assertEquals(path, defaultRouteMatcher.match(r, req), compiledRouteMatcher.match(compiled, req, path));
+            assertEquals(path, defaultRouteMatcher.match(r, req), compiledRouteMatcher.match(compiled, req, new StringBuilder(path)));
+        }
+    }
+
+    @Test
+    public void matchesBytesLikeDefaultRouteMatcher() {
+        Charset utf8 = Charset.forName("UTF-8");
+        // The builders only allow ASCII in path segments.
+        HashMap<String, RouteTreeNode<TestReq, TestRes>> children = new HashMap<String, RouteTreeNode<TestReq, TestRes>>();
+        children.put("s\u00f8k", rf.builder()
+            .param("/:query", rf.builder()
+                .handler(new EchoHandler("search")))
+            .build());
+        children.put("\u00e6", staticNode("\u00f8", staticNode("\u00e5", rf.builder()
+            .handler(new EchoHandler("chain"))
+            .build())));
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree().merge(new RouteTreeNode<TestReq, TestRes>("::ROOT::", null, children, null, null));
+        CompiledRouteTree<TestReq, TestRes> compiled = r.compile();
+
+        String[] symbols = {"/", "/", "/", "?", "projects", "todos", "pictures", "users", "deep", "a", "b", "c", "d",
+            "123", "666", "s\u00f8k", "\u00f8", "\u00e6", "\u00e5", "\u20ac", "\ud83d\ude00"};
+        for (String path : TestRoutes.createRandomPaths(5000, 12, symbols)) {
+            TestReq req = new TestReq(path);
+            TestRes expected = defaultRouteMatcher.match(r, req);
+            byte[] bytes = ("GET " + path + " HTTP/1.1").getBytes(utf8);
+            int pathLength = path.getBytes(utf8).length;
+            assertEquals(path, expected, compiledRouteMatcher.match(compiled, req, bytes, 4, pathLength));
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes);
+            direct.position(4);
+            direct.limit(4 + pathLength);
+            assertEquals(path, expected, compiledRouteMatcher.match(compiled, req, direct));
+            assertEquals(4, direct.position());
+        }
+
+        assertEquals(
+            new TestRes("search {query=\u20acuro} {} []"),
+            compiledRouteMatcher.match(compiled, null, "/s\u00f8k/\u20acuro".getBytes(utf8), 0, "/s\u00f8k/\u20acuro".getBytes(utf8).length));
+        assertEquals(
+            new TestRes("chain {} {} []"),
+            compiledRouteMatcher.match(compiled, null, ByteBuffer.wrap("/\u00e6/\u00f8/\u00e5?x".getBytes(utf8))));
+    }
+
+    @Test
+    public void matchesRawPathInRange() {
+        CompiledRouteTree<TestReq, TestRes> compiled = TestRoutes.createTree().compile();
+        String requestLine = "GET /projects/123/todos/456 HTTP/1.1";
+
+        assertEquals(
+            new TestRes("todo {} {projectId=123, todoId=456} []"),
+            compiledRouteMatcher.match(compiled, null, requestLine, 4, requestLine.length() - 9));
+        assertEquals(
+            new TestRes("picture {} {} [foo, , bar]"),
+            compiledRouteMatcher.match(compiled, null, "xx/pictures/foo//bar//?q", 2, 24));
+    }
+
+    @Test
+    public void assignsSlotsToParametricSegments() {
+        CompiledRouteTree<TestReq, TestRes> compiled = TestRoutes.createTree().compile();
+        assertEquals(2, compiled.getSlotCount());
+
+        int projects = compiled.getEdgeTarget(compiled.getPathSegmentEdge(CompiledRouteTree.ROOT_NODE, "projects"));
+        int project = compiled.getParametricChild(projects);
+        int todos = compiled.getEdgeTarget(compiled.getPathSegmentEdge(project, "todos"));
+        assertEquals(0, compiled.getParametricChildSlot(CompiledRouteTree.ROOT_NODE));
+        assertEquals(0, compiled.getParametricChildSlot(projects));
+        assertEquals(1, compiled.getParametricChildSlot(todos));
+    }
+
+    @Test
+    public void collapsesStaticChains() {
+        CompiledRouteTree<TestReq, TestRes> compiled = TestRoutes.createTree().compile();
+        assertEquals(13, compiled.getNodeCount());
+
+        int deep = compiled.getPathSegmentEdge(CompiledRouteTree.ROOT_NODE, "deep");
+        assertEquals(5, compiled.getEdgePathSegmentCount(deep));
+        assertEquals("deep", compiled.getEdgePathSegment(deep, 0));
+        assertEquals("d", compiled.getEdgePathSegment(deep, 4));
+        assertEquals(new TestRes("deep {} {} []"), compiledRouteMatcher.match(compiled, new TestReq("/deep/a/b/c/d")));
+        assertNull(compiledRouteMatcher.match(compiled, new TestReq("/deep/a/b")));
+        assertNull(compiledRouteMatcher.match(compiled, new TestReq("/deep/a/b/x/d")));
+        assertNull(compiledRouteMatcher.match(compiled, null, "/deep/a/b"));
+        assertNull(compiledRouteMatcher.match(compiled, null, "/deep/a//c/d"));
+
+        int users = compiled.getPathSegmentEdge(CompiledRouteTree.ROOT_NODE, "users");
+        assertEquals(1, compiled.getEdgePathSegmentCount(users));
+    }
+
+    @Test
+    public void matchesWithReusedContext() {
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+        CompiledRouteTree<TestReq, TestRes> compiled = r.compile();
+        MatchContext<TestReq> ctx = new MatchContext<TestReq>(compiled.getSlotCount());
+
+        for (int i = 0; i < 3; i++) {
+            for (String path : TestRoutes.PATHS) {
+                TestReq req = new TestReq(path);
+                assertEquals(path, defaultRouteMatcher.match(r, req), compiledRouteMatcher.match(compiled, req, ctx));
+                assertEquals(path, defaultRouteMatcher.match(r, req), compiledRouteMatcher.match(compiled, req, path, ctx));
+            }
+        }
+    }
+
+    @Test
+    public void emptyTree() {
+        CompiledRouteTree<TestReq, TestRes> compiled = rf.builder().build().compile();
+
+        assertEquals(1, compiled.getNodeCount());
+        assertNull(compiledRouteMatcher.match(compiled, new TestReq("/")));
+        assertNull(compiledRouteMatcher.match(compiled, new TestReq("/foo")));
+    }
+
+    @Test
+    public void compilesMergedTrees() {
+        RouteTreeNode<TestReq, TestRes> r = new SingleRouteBuilder<TestReq, TestRes>()
+            .path("foo")
+            .build(new TestHandler("foo"))
+            .merge(new SingleRouteBuilder<TestReq, TestRes>()
+                .path("foo")
+                .param("id")
+                .build(new EchoHandler("foo with id")));
+        CompiledRouteTree<TestReq, TestRes> compiled = r.compile();
+
+        assertEquals(new TestRes("foo"), compiledRouteMatcher.match(compiled, new TestReq("/foo")));
+        assertEquals(new TestRes("foo with id {id=123} {} []"), compiledRouteMatcher.match(compiled, new TestReq("/foo/123")));
+        assertNull(compiledRouteMatcher.match(compiled, new TestReq("/bar")));
+    }
+
+    @Test
+    public void writesAndLoadsTree() throws IOException {
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree(new LongSegment("userId", 600, 700))
+            .merge(staticNode("bl\u00e5b\u00e6r", staticNode("syltet\u00f8y", rf.builder()
+                .handler(new EchoHandler("jam"))
+                .build())));
+        CompiledRouteTree<TestReq, TestRes> compiled = r.compile();
+        CompiledRouteTree<TestReq, TestRes> loaded = CompiledRouteTree.load(ByteBuffer.wrap(write(compiled)), compiled.getHandlers());
+
+        assertEquals(compiled.getNodeCount(), loaded.getNodeCount());
+        assertEquals(compiled.getSlotCount(), loaded.getSlotCount());
+        List<String> paths = new ArrayList<String>();
+        Collections.addAll(paths, TestRoutes.PATHS);
+        Collections.addAll(paths, "/users/600", "/users/701", "/bl\u00e5b\u00e6r/syltet\u00f8y", "/bl\u00e5b\u00e6r");
+        for (String path : paths) {
+            TestReq req = new TestReq(path);
+            assertEquals(path, defaultRouteMatcher.match(r, req), compiledRouteMatcher.match(loaded, req));
+            assertEquals(path, defaultRouteMatcher.match(r, req), compiledRouteMatcher.match(loaded, req, path));
+            assertEquals(path, defaultRouteMatcher.match(r, req),
+                compiledRouteMatcher.match(loaded, req, ByteBuffer.wrap(path.getBytes(Charset.forName("UTF-8")))));
+        }
+    }
+
+    @Test
+    public void writesAndLoadsPrimitiveSegments() throws IOException {
+        CompiledRouteTree<TestReq, TestRes> compiled = new SingleRouteBuilder<TestReq, TestRes>()
+            .path("users")
+            .param(new UuidSegment("id"))
+            .build(new IRouteHandler<TestReq, TestRes>() {
+                @Override
+                public IRouteHandler<TestReq, TestRes> merge(IRouteHandler<TestReq, TestRes> other) {
+                    return other;
+                }
+
+                @Override
+                public TestRes call(RouteMatch<TestReq> match) {
+                    return new TestRes("user " + match.getUuidRouteMatchResult("id"));
+                }
+            })
+            .merge(new SingleRouteBuilder<TestReq, TestRes>()
+                .path("commits")
+                .param(new HexSegment("sha"))
+                .param(new DateSegment("date"))
+                .build(new IRouteHandler<TestReq, TestRes>() {
+                    @Override
+                    public IRouteHandler<TestReq, TestRes> merge(IRouteHandler<TestReq, TestRes> other) {
+                        return other;
+                    }
+
+                    @Override
+                    public TestRes call(RouteMatch<TestReq> match) {
+                        return new TestRes("commit " + match.getLongRouteMatchResult("sha")
+                            + " " + match.getEpochDayRouteMatchResult("date"));
+                    }
+                }))
+            .compile();
+        CompiledRouteTree<TestReq, TestRes> loaded = CompiledRouteTree.load(ByteBuffer.wrap(write(compiled)), compiled.getHandlers());
+
+        assertEquals(new TestRes("user 123e4567-e89b-12d3-a456-426614174000"),
+            compiledRouteMatcher.match(loaded, new TestReq("/users/123E4567-E89B-12D3-A456-426614174000")));
+        assertEquals(new TestRes("commit 255 1"), compiledRouteMatcher.match(loaded, new TestReq("/commits/ff/1970-01-02")));
+        assertNull(compiledRouteMatcher.match(loaded, new TestReq("/users/123")));
+        assertNull(compiledRouteMatcher.match(loaded, new TestReq("/commits/fg/1970-01-02")));
+        assertNull(compiledRouteMatcher.match(loaded, new TestReq("/commits/ff/1970-02-30")));
+    }
+
+    @Test
+    public void mapsWrittenTreeFromFile() throws IOException {
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree(new LongSegment("userId"));
+        CompiledRouteTree<TestReq, TestRes> compiled = r.compile();
+
+        File file = File.createTempFile("routes", ".bin");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(write(compiled));
+            } finally {
+                out.close();
+            }
+
+            CompiledRouteTree<TestReq, TestRes> mapped = CompiledRouteTree.map(file, compiled.getHandlers());
+            for (String path : TestRoutes.PATHS) {
+                TestReq req = new TestReq(path);
+                assertEquals(path, defaultRouteMatcher.match(r, req), compiledRouteMatcher.match(mapped, req));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void bindsHandlersById() throws IOException {
+        IRouteHandler<TestReq, TestRes> foo = new TestHandler("foo");
+        IRouteHandler<TestReq, TestRes> bar = new TestHandler("bar");
+        CompiledRouteTree<TestReq, TestRes> compiled = new SingleRouteBuilder<TestReq, TestRes>()
+            .path("foo")
+            .build(foo)
+            .merge(new SingleRouteBuilder<TestReq, TestRes>().path("bar").build(bar))
+            .compile();
+
+        Map<IRouteHandler<TestReq, TestRes>, Integer> handlerIds = new HashMap<IRouteHandler<TestReq, TestRes>, Integer>();
+        handlerIds.put(foo, 7);
+        handlerIds.put(bar, 3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compiled.writeTo(out, handlerIds);
+
+        List<IRouteHandler<TestReq, TestRes>> handlers = new ArrayList<IRouteHandler<TestReq, TestRes>>(Collections.<IRouteHandler<TestReq, TestRes>>nCopies(8, null));
+        handlers.set(7, new TestHandler("new foo"));
+        handlers.set(3, new TestHandler("new bar"));
+        CompiledRouteTree<TestReq, TestRes> loaded = CompiledRouteTree.load(ByteBuffer.wrap(out.toByteArray()), handlers);
+        assertEquals(new TestRes("new foo"), compiledRouteMatcher.match(loaded, new TestReq("/foo")));
+        assertEquals(new TestRes("new bar"), compiledRouteMatcher.match(loaded, new TestReq("/bar")));
+
+        handlers.set(3, null);
+        try {
+            CompiledRouteTree.load(ByteBuffer.wrap(out.toByteArray()), handlers);
+            fail("Expected a missing handler to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No handler for the handler id 3", e.getMessage());
+        }
+
+        handlerIds.remove(bar);
+        try {
+            compiled.writeTo(new ByteArrayOutputStream(), handlerIds);
+            fail("Expected a missing handler id to be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void rejectsWhatCannotBeWrittenOrLoaded() throws IOException {
+        try {
+            write(TestRoutes.createTree().compile());
+            fail("Expected a custom parametric segment to be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        List<IRouteHandler<TestReq, TestRes>> noHandlers = Collections.emptyList();
+        try {
+            CompiledRouteTree.load(ByteBuffer.wrap(new byte[64]), noHandlers);
+            fail("Expected garbage to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Not a compiled route tree", e.getMessage());
+        }
+
+        byte[] written = write(TestRoutes.createTree(new NumberSegment("userId")).compile());
+        try {
+            CompiledRouteTree.load(ByteBuffer.wrap(written, 0, written.length - 1), noHandlers);
+            fail("Expected a truncated tree to be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void rejectsCorruptTrees() throws IOException {
+        CompiledRouteTree<TestReq, TestRes> compiled = TestRoutes.createTree(new NumberSegment("userId")).compile();
+        byte[] written = write(compiled);
+
+        byte[] hugeSlotCount = written.clone();
+        ByteBuffer.wrap(hugeSlotCount).putInt(28, Integer.MAX_VALUE);
+        try {
+            CompiledRouteTree.load(ByteBuffer.wrap(hugeSlotCount), compiled.getHandlers());
+            fail("Expected a slot count larger than the tree to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("The compiled route tree is corrupt, it has 2147483647 slots for " + compiled.getNodeCount() + " nodes", e.getMessage());
+        }
+
+        // Every corrupt tree either fails to load with an IllegalArgumentException, or can be matched against.
+        Random rand = new Random(1234);
+        for (int i = 0; i < 5000; i++) {
+            byte[] corrupt = written.clone();
+            for (int j = rand.nextInt(4); j >= 0; j--) {
+                corrupt[8 + rand.nextInt(corrupt.length - 8)] ^= 1 << rand.nextInt(8);
+            }
+
+            CompiledRouteTree<TestReq, TestRes> loaded;
+            try {
+                loaded = CompiledRouteTree.load(ByteBuffer.wrap(corrupt), compiled.getHandlers());
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            for (String path : TestRoutes.PATHS) {
+                TestReq req = new TestReq(path);
+                compiledRouteMatcher.match(loaded, req);
+                compiledRouteMatcher.match(loaded, req, path);
+                compiledRouteMatcher.match(loaded, req, ByteBuffer.wrap(path.getBytes(Charset.forName("UTF-8"))));
+            }
+        }
+    }
+
+    private static byte[] write(CompiledRouteTree<TestReq, TestRes> compiled) throws IOException {
+        Map<IRouteHandler<TestReq, TestRes>, Integer> handlerIds = new HashMap<IRouteHandler<TestReq, TestRes>, Integer>();
+        for (IRouteHandler<TestReq, TestRes> handler : compiled.getHandlers()) {
+            handlerIds.put(handler, handlerIds.size());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compiled.writeTo(out, handlerIds);
+        return out.toByteArray();
+    }
+
+    private static RouteTreeNode<TestReq, TestRes> staticNode(String pathSegment, RouteTreeNode<TestReq, TestRes> child) {
+        HashMap<String, RouteTreeNode<TestReq, TestRes>> children = new HashMap<String, RouteTreeNode<TestReq, TestRes>>();
+        children.put(pathSegment, child);
+        return new RouteTreeNode<TestReq, TestRes>(pathSegment, null, children, null, null);
+    }
+}
@@ -0,0 +1,29 @@
+package com.augustl.pathtravelagent;
+
+import java.util.TreeMap;
+
+/**
+ * Responds with its name and the values it was matched with, sorted by param name, so that tests can compare the
+ * results of different matchers.
+ */
+class EchoHandler implements IRouteHandler<TestReq, TestRes> {
+    private final String name;
+
+    public EchoHandler(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public IRouteHandler<TestReq, TestRes> merge(IRouteHandler<TestReq, TestRes> other) {
+        return other;
+    }
+
+    @Override
+    public TestRes call(RouteMatch<TestReq> match) {
+        RouteMatchResult res = match.getRouteMatchResult();
+        return new TestRes(this.name
+            + " " + new TreeMap<String, String>(res.getStringMatches())
+            + " " + new TreeMap<String, Integer>(res.getIntegerMatches())
+            + " " + res.getWildcardMatches());
+    }
+}
@@ -0,0 +1,104 @@
+package com.augustl.pathtravelagent;
+
+import com.augustl.pathtravelagent.segment.NumberSegment;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GeneratedRouteMatcherTest {
+    private DefaultRouteMatcher<TestReq, TestRes> defaultRouteMatcher = new DefaultRouteMatcher<TestReq, TestRes>();
+    private RouteTreeBuilderFactory<TestReq, TestRes> rf = new RouteTreeBuilderFactory<TestReq, TestRes>();
+
+    @Test
+    public void matchesLikeDefaultRouteMatcher() {
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+        GeneratedRouteMatcher<TestReq, TestRes> generated = GeneratedRouteMatcher.generate(r);
+        MatchContext<TestReq> ctx = new MatchContext<TestReq>();
+
+        for (String path : TestRoutes.createPaths(10000)) {
+            TestReq req = new TestReq(path);
+            assertEquals(path, defaultRouteMatcher.match(r, req), generated.match(req));
+            assertEquals(path, defaultRouteMatcher.match(r, req), generated.match(req, ctx));
+        }
+    }
+
+    @Test
+    public void passesParametricValuesToHandlers() {
+        final List<RouteMatch<TestReq>> matches = new ArrayList<RouteMatch<TestReq>>();
+        IRouteHandler<TestReq, TestRes> handler = new TestHandler("todo") {
+            @Override
+            public TestRes call(RouteMatch<TestReq> match) {
+                matches.add(match);
+                return super.call(match);
+            }
+        };
+        RouteTreeNode<TestReq, TestRes> r = rf.builder()
+            .path("/projects", rf.builder()
+                .param(new NumberSegment("projectId"), rf.builder()
+                    .param("/:todoId", rf.builder()
+                        .handler(handler)
+                        .wildcard(rf.builder()
+                            .handler(handler)))))
+            .build();
+        GeneratedRouteMatcher<TestReq, TestRes> generated = GeneratedRouteMatcher.generate(r);
+
+        assertEquals(new TestRes("todo"), generated.match(new TestReq("/projects/123/abc")));
+        assertEquals(Integer.valueOf(123), matches.get(0).getIntegerRouteMatchResult("projectId"));
+        assertEquals("abc", matches.get(0).getStringRouteMatchResult("todoId"));
+
+        assertEquals(new TestRes("todo"), generated.match(new TestReq("/projects/1/abc/x/y")));
+        assertEquals(Integer.valueOf(1), matches.get(1).getIntegerRouteMatchResult("projectId"));
+        assertEquals("[x, y]", matches.get(1).getWildcardRouteMatchResult().toString());
+
+        assertNull(generated.match(new TestReq("/projects/abc/abc")));
+    }
+
+    @Test
+    public void splitsLargeTrees() {
+        RouteTreeBuilder<TestReq, TestRes> builder = rf.builder();
+        for (int i = 0; i < 5000; i++) {
+            builder.path("/p" + i, rf.builder()
+                .handler(new TestHandler("p" + i))
+                .path("/x", rf.builder()
+                    .handler(new TestHandler("x" + i))));
+        }
+        // "Aa" and "BB" have the same hash code
+        builder.path("/Aa", rf.builder().handler(new TestHandler("Aa")));
+        builder.path("/BB", rf.builder().handler(new TestHandler("BB")));
+        builder.param("/:name", rf.builder().handler(new TestHandler("name")));
+        RouteTreeNode<TestReq, TestRes> r = builder.build();
+        GeneratedRouteMatcher<TestReq, TestRes> generated = GeneratedRouteMatcher.generate(r);
+
+        for (String path : new String[]{"/p0", "/p4999/x", "/p2500/x", "/p2500/y", "/Aa", "/BB", "/CC", "/p5000", "/"}) {
+            TestReq req = new TestReq(path);
+            assertEquals(path, defaultRouteMatcher.match(r, req), generated.match(req));
+        }
+    }
+
+    @Test
+    public void escapesPathSegments() {
+        // The builders only allow some chars in path segments.
+        HashMap<String, RouteTreeNode<TestReq, TestRes>> children = new HashMap<String, RouteTreeNode<TestReq, TestRes>>();
+        for (String pathSegment : new String[]{"\"", "\\", "\n", "\u00f8", "\u2028", " ", "\\u000a"}) {
+            children.put(pathSegment, rf.builder().handler(new TestHandler(pathSegment)).build());
+        }
+        RouteTreeNode<TestReq, TestRes> r = new RouteTreeNode<TestReq, TestRes>("::ROOT::", null, children, null, null);
+        GeneratedRouteMatcher<TestReq, TestRes> generated = GeneratedRouteMatcher.generate(r);
+
+        for (final String pathSegment : children.keySet()) {
+            TestReq req = new TestReq(null) {
+                @Override
+                public List<String> getPathSegments() {
+                    return Collections.singletonList(pathSegment);
+                }
+            };
+            assertEquals(pathSegment, new TestRes(pathSegment), generated.match(req));
+        }
+        assertEquals("\"\\\"\\\\\\012\\u00f8\"", RouteMatcherGenerator.toJavaString("\"\\\n\u00f8"));
+    }
+}
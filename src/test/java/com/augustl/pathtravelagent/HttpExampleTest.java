@@ -58,6 +58,136 @@ public class HttpExampleTest {
 
     }
 
+    @Test
+    public void testMethodHandlers() {
+        RouteTreeNode<HttpReq, HttpRes> r = rf.builder()
+            .path("/projects", rf.builder()
+                .handler(HttpMethod.GET, new BodyHandler("Hello, project list"))
+                .handler(HttpMethod.POST, new BodyHandler("Created project"))
+                .param("/:projectId", rf.builder()
+                    .handler(HttpMethod.GET, new BodyHandler("Hello, project"))
+                    .handler(HttpMethod.HEAD, new BodyHandler("Project headers"))
+                    .handler(HttpMethod.PUT, new BodyHandler("Updated project"))))
+            .path("/ping", rf.builder()
+                .handler(new BodyHandler("Pong"))
+                .handler(HttpMethod.DELETE, new BodyHandler("Not pinging")))
+            .build();
+
+        assertEquals(new HttpRes("Hello, project list"), matchMethod(r, "GET", "/projects"));
+        assertEquals(new HttpRes("Hello, project list"), matchMethod(r, "HEAD", "/projects"));
+        assertEquals(new HttpRes("Created project"), matchMethod(r, "POST", "/projects"));
+        assertNull(matchMethod(r, "PUT", "/projects"));
+        assertNull(matchMethod(r, "OPTIONS", "/projects"));
+        assertEquals(new HttpRes("Hello, project"), matchMethod(r, "GET", "/projects/123"));
+        assertEquals(new HttpRes("Project headers"), matchMethod(r, "HEAD", "/projects/123"));
+        assertEquals(new HttpRes("Updated project"), matchMethod(r, "PUT", "/projects/123"));
+        assertNull(matchMethod(r, "GET", "/projects/123/x"));
+        assertEquals(new HttpRes("Pong"), matchMethod(r, "GET", "/ping"));
+        assertEquals(new HttpRes("Pong"), matchMethod(r, "PATCH", "/ping"));
+        assertEquals(new HttpRes("Not pinging"), matchMethod(r, "DELETE", "/ping"));
+
+        // Matching without a method only uses the handler for all methods
+        assertNull(match(r, new HttpReq("GET", "/projects")));
+        assertEquals(new HttpRes("Pong"), match(r, new HttpReq("DELETE", "/ping")));
+    }
+
+    @Test
+    public void testAllowedMethods() {
+        RouteTreeNode<HttpReq, HttpRes> r = rf.builder()
+            .path("/projects", rf.builder()
+                .handler(HttpMethod.GET, new BodyHandler("Hello, project list"))
+                .handler(HttpMethod.POST, new BodyHandler("Created project"))
+                .path("/new", rf.builder()
+                    .handler(HttpMethod.OPTIONS, new BodyHandler("Options"))
+                    .handler(HttpMethod.PUT, new BodyHandler("Updated project")))
+                .path("/all", rf.builder()
+                    .handler(new BodyHandler("All"))))
+            .build();
+
+        ResolvedRoute<HttpReq, HttpRes> notAllowed = defaultRouteMatcher.resolve(r, new HttpReq("DELETE", "/projects"), HttpMethod.DELETE);
+        assertFalse(notAllowed.hasHandler());
+        assertEquals("GET, HEAD, POST, OPTIONS", notAllowed.getAllowHeader());
+        assertEquals(EnumSet.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.POST, HttpMethod.OPTIONS), notAllowed.getAllowedMethods());
+        try {
+            notAllowed.call();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+
+        ResolvedRoute<HttpReq, HttpRes> options = defaultRouteMatcher.resolve(r, new HttpReq("OPTIONS", "/projects"), HttpMethod.OPTIONS);
+        assertFalse(options.hasHandler());
+        assertEquals("GET, HEAD, POST, OPTIONS", options.getAllowHeader());
+
+        ResolvedRoute<HttpReq, HttpRes> head = defaultRouteMatcher.resolve(r, new HttpReq("HEAD", "/projects"), HttpMethod.HEAD);
+        assertEquals(new HttpRes("Hello, project list"), head.call());
+
+        ResolvedRoute<HttpReq, HttpRes> userOptions = defaultRouteMatcher.resolve(r, new HttpReq("OPTIONS", "/projects/new"), HttpMethod.OPTIONS);
+        assertEquals(new HttpRes("Options"), userOptions.call());
+        assertEquals("PUT, OPTIONS", userOptions.getAllowHeader());
+
+        ResolvedRoute<HttpReq, HttpRes> all = defaultRouteMatcher.resolve(r, new HttpReq("TRACE", "/projects/all"), HttpMethod.TRACE);
+        assertEquals(new HttpRes("All"), all.call());
+        assertEquals(EnumSet.allOf(HttpMethod.class), all.getAllowedMethods());
+
+        assertNull(defaultRouteMatcher.resolve(r, new HttpReq("GET", "/"), HttpMethod.GET));
+        assertNull(defaultRouteMatcher.resolve(r, new HttpReq("GET", "/nope"), HttpMethod.GET));
+
+        // Methods that are not known, or not upper case, only use the handler for all methods
+        for (String method : new String[]{"PROPFIND", "get"}) {
+            ResolvedRoute<HttpReq, HttpRes> unknown = defaultRouteMatcher.resolve(r, new HttpReq(method, "/projects"), HttpMethod.parse(method));
+            assertFalse(method, unknown.hasHandler());
+            assertEquals(method, "GET, HEAD, POST, OPTIONS", unknown.getAllowHeader());
+            assertNull(method, defaultRouteMatcher.match(r, new HttpReq(method, "/projects"), HttpMethod.parse(method)));
+            assertEquals(method, new HttpRes("All"), defaultRouteMatcher.resolve(r, new HttpReq(method, "/projects/all"), HttpMethod.parse(method)).call());
+        }
+    }
+
+    @Test
+    public void testMergingAndRemovingMethodHandlers() {
+        RouteTreeNode<HttpReq, HttpRes> r = RouteTreeNode.mergeAll(Arrays.asList(
+            new SingleRouteBuilder<HttpReq, HttpRes>().path("projects").build(HttpMethod.GET, new BodyHandler("List")),
+            new SingleRouteBuilder<HttpReq, HttpRes>().path("projects").build(HttpMethod.POST, new BodyHandler("Create")),
+            new SingleRouteBuilder<HttpReq, HttpRes>().path("projects").param("projectId").build(HttpMethod.DELETE, new BodyHandler("Delete"))));
+        RouteTreeNode<HttpReq, HttpRes> merged = new SingleRouteBuilder<HttpReq, HttpRes>().path("projects").build(HttpMethod.GET, new BodyHandler("List"))
+            .merge(new SingleRouteBuilder<HttpReq, HttpRes>().path("projects").build(HttpMethod.POST, new BodyHandler("Create")));
+
+        assertEquals(new HttpRes("List"), matchMethod(r, "GET", "/projects"));
+        assertEquals(new HttpRes("Create"), matchMethod(r, "POST", "/projects"));
+        assertEquals(new HttpRes("Delete"), matchMethod(r, "DELETE", "/projects/1"));
+        assertEquals(new HttpRes("List"), matchMethod(merged, "GET", "/projects"));
+        assertEquals(new HttpRes("Create"), matchMethod(merged, "POST", "/projects"));
+
+        RouteTreeNode<HttpReq, HttpRes> withoutPost = r.without(new SingleRouteBuilder<HttpReq, HttpRes>().path("projects").build(HttpMethod.POST, new BodyHandler("Create")));
+        assertEquals(new HttpRes("List"), matchMethod(withoutPost, "GET", "/projects"));
+        assertNull(matchMethod(withoutPost, "POST", "/projects"));
+        assertEquals("GET, HEAD, OPTIONS", defaultRouteMatcher.resolve(withoutPost, new HttpReq("POST", "/projects"), HttpMethod.POST).getAllowHeader());
+
+        RouteTreeNode<HttpReq, HttpRes> withoutProjects = r.without(new SingleRouteBuilder<HttpReq, HttpRes>().path("projects").build(null));
+        assertNull(defaultRouteMatcher.resolve(withoutProjects, new HttpReq("GET", "/projects"), HttpMethod.GET));
+        assertEquals(new HttpRes("Delete"), matchMethod(withoutProjects, "DELETE", "/projects/1"));
+    }
+
+    private HttpRes matchMethod(RouteTreeNode<HttpReq, HttpRes> r, String method, String path) {
+        return defaultRouteMatcher.match(r, new HttpReq(method, path), HttpMethod.parse(method));
+    }
+
+    private class BodyHandler implements IRouteHandler<HttpReq, HttpRes> {
+        private final String body;
+        public BodyHandler(String body) {
+            this.body = body;
+        }
+
+        @Override
+        public IRouteHandler<HttpReq, HttpRes> merge(IRouteHandler<HttpReq, HttpRes> other) {
+            return other;
+        }
+
+        @Override
+        public HttpRes call(RouteMatch<HttpReq> match) {
+            return new HttpRes(this.body);
+        }
+    }
+
     private class HttpReq implements IRequest {
         private final String httpMethod;
         private final List<String> pathSegments;
@@ -0,0 +1,115 @@
+package com.augustl.pathtravelagent;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class InstrumentedRouteMatcherTest {
+    private RouteTreeBuilderFactory<TestReq, TestRes> rf = new RouteTreeBuilderFactory<TestReq, TestRes>();
+
+    @Test
+    public void countsHitsByTemplate() {
+        InstrumentedRouteMatcher<TestReq, TestRes> matcher = new InstrumentedRouteMatcher<TestReq, TestRes>(1);
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+
+        assertEquals(new TestRes("project {} {projectId=1} []"), matcher.match(r, new TestReq("/projects/1")));
+        assertEquals(new TestRes("project {} {projectId=2} []"), matcher.match(r, new TestReq("/projects/2")));
+        assertEquals(new TestRes("todos {} {projectId=2} []"), matcher.match(r, new TestReq("/projects/2/todos")));
+        assertEquals(new TestRes("picture {} {} [a, b]"), matcher.match(r, new TestReq("/pictures/a/b")));
+        assertEquals(new TestRes("root {} {} []"), matcher.match(r, new TestReq("/")));
+        assertEquals(new TestRes("name {name=foo} {} []"), matcher.match(r, new TestReq("/foo")));
+
+        InstrumentedRouteMatcher.Snapshot snapshot = matcher.getSnapshot();
+        Map<String, Long> hitCounts = snapshot.getHitCounts();
+        assertEquals(12, hitCounts.size());
+        assertEquals(Long.valueOf(1), hitCounts.get("/"));
+        assertEquals(Long.valueOf(2), hitCounts.get("/projects/:projectId"));
+        assertEquals(Long.valueOf(1), hitCounts.get("/projects/:projectId/todos"));
+        assertEquals(Long.valueOf(1), hitCounts.get("/pictures/*"));
+        assertEquals(Long.valueOf(1), hitCounts.get("/:name"));
+        assertEquals(Long.valueOf(0), hitCounts.get("/projects/new"));
+        assertEquals(6, snapshot.getRequestCount());
+        assertEquals(0, snapshot.getMissCount());
+    }
+
+    @Test
+    public void countsMissesByDepth() {
+        InstrumentedRouteMatcher<TestReq, TestRes> matcher = new InstrumentedRouteMatcher<TestReq, TestRes>();
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+
+        assertNull(matcher.match(r, new TestReq("/nothing/here")));
+        assertNull(matcher.match(r, new TestReq("/projects/abc")));
+        assertNull(matcher.match(r, new TestReq("/users")));
+        assertNull(matcher.match(r, new TestReq("/projects/1/todos/nothing")));
+
+        InstrumentedRouteMatcher.Snapshot snapshot = matcher.getSnapshot();
+        assertEquals(4, snapshot.getMissCount());
+        assertEquals(0, snapshot.getMissCount(0));
+        // /nothing/here stops after /:name, /projects/abc at the parametric segment, /users has no handler
+        assertEquals(3, snapshot.getMissCount(1));
+        assertEquals(0, snapshot.getMissCount(2));
+        assertEquals(1, snapshot.getMissCount(3));
+        assertEquals(Long.valueOf(0), snapshot.getHitCounts().get("/projects/:projectId"));
+    }
+
+    @Test
+    public void timesSampledRequests() {
+        InstrumentedRouteMatcher<TestReq, TestRes> matcher = new InstrumentedRouteMatcher<TestReq, TestRes>(3);
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+
+        for (int i = 0; i < 64; i++) {
+            matcher.match(r, new TestReq("/projects/" + i));
+        }
+
+        InstrumentedRouteMatcher.Snapshot snapshot = matcher.getSnapshot();
+        assertEquals(4, snapshot.getMatchLatency().getSampleInterval());
+        assertTrue(snapshot.getMatchLatency().getCount() <= 64);
+        assertTrue(snapshot.getMatchLatency().getCount() >= 64 / 4 / 8);
+        assertEquals(snapshot.getMatchLatency().getCount(), snapshot.getHandlerLatency().getCount());
+        assertTrue(snapshot.getMatchLatency().getPercentile(50) <= snapshot.getMatchLatency().getPercentile(99));
+    }
+
+    @Test
+    public void keepsCountsWhenRootNodeChanges() {
+        InstrumentedRouteMatcher<TestReq, TestRes> matcher = new InstrumentedRouteMatcher<TestReq, TestRes>();
+        RouteTreeNode<TestReq, TestRes> r1 = TestRoutes.createTree();
+        RouteTreeNode<TestReq, TestRes> r2 = r1.merge(new SingleRouteBuilder<TestReq, TestRes>()
+            .path("foo")
+            .build(new TestHandler("foo")));
+
+        matcher.match(r1, new TestReq("/projects/1"));
+        matcher.match(r2, new TestReq("/projects/1"));
+        matcher.match(r2, new TestReq("/foo"));
+
+        Map<String, Long> hitCounts = matcher.getSnapshot().getHitCounts();
+        assertEquals(Long.valueOf(2), hitCounts.get("/projects/:projectId"));
+        assertEquals(Long.valueOf(1), hitCounts.get("/foo"));
+    }
+
+    @Test
+    public void countsNothingWhenDisabled() {
+        InstrumentedRouteMatcher<TestReq, TestRes> matcher = new InstrumentedRouteMatcher<TestReq, TestRes>();
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+
+        matcher.setEnabled(false);
+        assertEquals(new TestRes("project {} {projectId=1} []"), matcher.match(r, new TestReq("/projects/1")));
+        assertNull(matcher.match(r, new TestReq("/nothing/here")));
+
+        InstrumentedRouteMatcher.Snapshot snapshot = matcher.getSnapshot();
+        assertEquals(0, snapshot.getRequestCount());
+        assertEquals(0, snapshot.getMissCount());
+        assertTrue(snapshot.getHitCounts().isEmpty());
+    }
+
+    @Test
+    public void bucketsByPowersOfTwo() {
+        assertEquals(0, InstrumentedRouteMatcher.Histogram.getBucket(0));
+        assertEquals(1, InstrumentedRouteMatcher.Histogram.getBucket(1));
+        assertEquals(2, InstrumentedRouteMatcher.Histogram.getBucket(2));
+        assertEquals(2, InstrumentedRouteMatcher.Histogram.getBucket(3));
+        assertEquals(11, InstrumentedRouteMatcher.Histogram.getBucket(1500));
+        assertEquals(2047, InstrumentedRouteMatcher.Histogram.getBucketUpperBound(11));
+    }
+}
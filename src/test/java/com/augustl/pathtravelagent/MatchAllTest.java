@@ -0,0 +1,77 @@
+package com.augustl.pathtravelagent;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class MatchAllTest {
+    private DefaultRouteMatcher<TestReq, TestRes> defaultRouteMatcher = new DefaultRouteMatcher<TestReq, TestRes>();
+
+    private List<TestReq> createRequests(int count) {
+        List<TestReq> res = new ArrayList<TestReq>();
+        for (String path : TestRoutes.createPaths(count)) {
+            res.add(new TestReq(path));
+        }
+        return res;
+    }
+
+    private List<TestRes> matchEach(RouteTreeNode<TestReq, TestRes> r, List<TestReq> reqs) {
+        List<TestRes> res = new ArrayList<TestRes>();
+        for (TestReq req : reqs) {
+            res.add(defaultRouteMatcher.match(r, req));
+        }
+        return res;
+    }
+
+    @Test
+    public void matchesLikeMatchingEachRequest() {
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+        List<TestReq> reqs = createRequests(5000);
+
+        assertEquals(matchEach(r, reqs), defaultRouteMatcher.matchAll(r, reqs));
+    }
+
+    @Test
+    public void keepsInputOrder() {
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+        List<TestReq> reqs = Arrays.asList(
+            new TestReq("/projects/2/todos/3"),
+            new TestReq("/pictures/a/b"),
+            new TestReq("/projects/1"),
+            new TestReq("/projects/1/todos/3"),
+            new TestReq("/nothing/here/at/all"),
+            new TestReq("/projects/1"),
+            new TestReq("/"));
+
+        assertEquals(Arrays.asList(
+            new TestRes("todo {} {projectId=2, todoId=3} []"),
+            new TestRes("picture {} {} [a, b]"),
+            new TestRes("project {} {projectId=1} []"),
+            new TestRes("todo {} {projectId=1, todoId=3} []"),
+            null,
+            new TestRes("project {} {projectId=1} []"),
+            new TestRes("root {} {} []")), defaultRouteMatcher.matchAll(r, reqs));
+    }
+
+    @Test
+    public void matchesInParallel() {
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+        List<TestReq> reqs = createRequests(5000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertEquals(matchEach(r, reqs), defaultRouteMatcher.matchAll(r, reqs, executor, 300));
+            assertEquals(matchEach(r, reqs), defaultRouteMatcher.matchAll(r, reqs, executor, 10000));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void emptyBatch() {
+        assertEquals(new ArrayList<TestRes>(), defaultRouteMatcher.matchAll(TestRoutes.createTree(), new ArrayList<TestReq>()));
+    }
+}
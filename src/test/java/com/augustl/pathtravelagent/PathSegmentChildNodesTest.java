@@ -0,0 +1,91 @@
+package com.augustl.pathtravelagent;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PathSegmentChildNodesTest {
+    @Test
+    public void behavesLikeHashMapForAllSizes() {
+        for (int size = 0; size < 100; size++) {
+            Map<String, Integer> map = new HashMap<String, Integer>();
+            for (int i = 0; i < size; i++) {
+                map.put("segment" + i, i);
+            }
+            PathSegmentChildNodes<Integer> children = PathSegmentChildNodes.copyOf(map);
+
+            assertEquals(map, children);
+            assertEquals(children, map);
+            assertEquals(map.hashCode(), children.hashCode());
+            assertEquals(size, children.size());
+            assertEquals(map.keySet(), children.keySet());
+            for (int i = 0; i < size; i++) {
+                assertEquals(Integer.valueOf(i), children.find("segment" + i));
+                assertEquals(Integer.valueOf(i), children.get("segment" + i));
+                assertTrue(children.containsKey("segment" + i));
+            }
+            assertNull(children.find("segment" + size));
+            assertNull(children.find(""));
+            assertNull(children.get(1));
+            assertFalse(children.containsKey("other"));
+        }
+        assertSame(PathSegmentChildNodes.empty(), PathSegmentChildNodes.copyOf(new HashMap<String, Integer>()));
+    }
+
+    @Test
+    public void handlesPathSegmentsWithSameHashCode() {
+        // "Aa" and "BB" have the same hash code, and so do "AaAa", "AaBB", "BBAa" and "BBBB".
+        for (int extra = 0; extra < 30; extra += 5) {
+            Map<String, String> map = new HashMap<String, String>();
+            for (String pathSegment : new String[]{"Aa", "BB", "AaAa", "AaBB", "BBAa", "BBBB"}) {
+                map.put(pathSegment, pathSegment.toLowerCase());
+            }
+            for (int i = 0; i < extra; i++) {
+                map.put("x" + i, "y" + i);
+            }
+            PathSegmentChildNodes<String> children = PathSegmentChildNodes.copyOf(map);
+
+            assertEquals(map, children);
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                assertEquals(entry.getValue(), children.find(entry.getKey()));
+            }
+            assertNull(children.find("AaAaAa"));
+            assertNull(children.find("Ab"));
+        }
+    }
+
+    @Test
+    public void cannotBeChanged() {
+        for (int size : new int[]{0, 1, 5, 50}) {
+            Map<String, Integer> map = new HashMap<String, Integer>();
+            for (int i = 0; i < size; i++) {
+                map.put("segment" + i, i);
+            }
+            PathSegmentChildNodes<Integer> children = PathSegmentChildNodes.copyOf(map);
+            try {
+                children.put("other", 1);
+                fail("Expected put to fail");
+            } catch (UnsupportedOperationException e) {
+                // Expected
+            }
+            if (size > 0) {
+                try {
+                    children.entrySet().iterator().next().setValue(1);
+                    fail("Expected setValue to fail");
+                } catch (UnsupportedOperationException e) {
+                    // Expected
+                }
+                try {
+                    children.keySet().clear();
+                    fail("Expected clear to fail");
+                } catch (UnsupportedOperationException e) {
+                    // Expected
+                }
+            }
+            assertEquals(map, children);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.augustl.pathtravelagent;
 
+import com.augustl.pathtravelagent.segment.LongSegment;
 import com.augustl.pathtravelagent.segment.NumberSegment;
+import com.augustl.pathtravelagent.segment.RegexSegment;
 import org.junit.Test;
 
 import java.util.*;
@@ -106,6 +108,179 @@ public class PathTravelAgentTest {
 
     }
 
+    @Test
+    public void matchesWithRegexSegment() {
+        RouteTreeNode<TestReq, TestRes> r = rf.builder()
+            .path("/articles", rf.builder()
+                .param(new RegexSegment("slug", "[a-z0-9-]{3,64}"), rf.builder()
+                    .handler(new IRouteHandler<TestReq, TestRes>() {
+                        @Override
+                        public IRouteHandler<TestReq, TestRes> merge(IRouteHandler<TestReq, TestRes> other) {
+                            return other;
+                        }
+
+                        @Override
+                        public TestRes call(RouteMatch<TestReq> match) {
+                            return new TestRes("Article " + match.getStringRouteMatchResult("slug"));
+                        }
+                    })))
+            .build();
+
+        assertEquals(new TestRes("Article hello-world"), match(r, new TestReq("/articles/hello-world")));
+        assertEquals(new TestRes("Article 123"), match(r, new TestReq("/articles/123")));
+        assertNull(match(r, new TestReq("/articles/Hello-World")));
+        assertNull(match(r, new TestReq("/articles/ab")));
+        assertNull(match(r, new TestReq("/articles/hello-world/comments")));
+
+        CompiledRouteTree<TestReq, TestRes> compiled = r.compile();
+        CompiledRouteMatcher<TestReq, TestRes> compiledRouteMatcher = new CompiledRouteMatcher<TestReq, TestRes>();
+        assertEquals(new TestRes("Article hello-world"), compiledRouteMatcher.match(compiled, new TestReq(null), "/articles/hello-world?page=2"));
+        assertNull(compiledRouteMatcher.match(compiled, new TestReq(null), "/articles/hello_world"));
+    }
+
+    @Test
+    public void matchesWithNumericSegments() {
+        final ParamKey<Long> itemId = ParamKey.longKey("itemId");
+        RouteTreeNode<TestReq, TestRes> r = rf.builder()
+            .path("/pages", rf.builder()
+                .param(new NumberSegment("page", 1, 100), rf.builder()
+                    .handler(new IRouteHandler<TestReq, TestRes>() {
+                        @Override
+                        public IRouteHandler<TestReq, TestRes> merge(IRouteHandler<TestReq, TestRes> other) {
+                            return other;
+                        }
+
+                        @Override
+                        public TestRes call(RouteMatch<TestReq> match) {
+                            return new TestRes("Page " + (match.getIntRouteMatchResult("page") + 1));
+                        }
+                    })))
+            .path("/items", rf.builder()
+                .param(new LongSegment("itemId"), rf.builder()
+                    .handler(new IRouteHandler<TestReq, TestRes>() {
+                        @Override
+                        public IRouteHandler<TestReq, TestRes> merge(IRouteHandler<TestReq, TestRes> other) {
+                            return other;
+                        }
+
+                        @Override
+                        public TestRes call(RouteMatch<TestReq> match) {
+                            return new TestRes("Item " + match.getLongRouteMatchResult(itemId)
+                                + " " + match.getLongRouteMatchResult("itemId")
+                                + " " + match.getIntegerRouteMatchResult("itemId"));
+                        }
+                    })))
+            .path("/numbers", rf.builder()
+                .param(new NumberSegment("number"), rf.builder()
+                    .handler(new IRouteHandler<TestReq, TestRes>() {
+                        @Override
+                        public IRouteHandler<TestReq, TestRes> merge(IRouteHandler<TestReq, TestRes> other) {
+                            return other;
+                        }
+
+                        @Override
+                        public TestRes call(RouteMatch<TestReq> match) {
+                            return new TestRes("Number " + match.getIntRouteMatchResult("number") + " " + match.getLongRouteMatchResult("number"));
+                        }
+                    })))
+            .build();
+
+        assertEquals(new TestRes("Page 2"), match(r, new TestReq("/pages/1")));
+        assertEquals(new TestRes("Page 101"), match(r, new TestReq("/pages/100")));
+        assertNull(match(r, new TestReq("/pages/0")));
+        assertNull(match(r, new TestReq("/pages/101")));
+        assertNull(match(r, new TestReq("/pages/-1")));
+
+        assertEquals(new TestRes("Item 9223372036854775807 9223372036854775807 null"), match(r, new TestReq("/items/9223372036854775807")));
+        assertEquals(new TestRes("Item -9223372036854775808 -9223372036854775808 null"), match(r, new TestReq("/items/-9223372036854775808")));
+        assertEquals(new TestRes("Item 42 42 null"), match(r, new TestReq("/items/+42")));
+        assertNull(match(r, new TestReq("/items/9223372036854775808")));
+        assertNull(match(r, new TestReq("/items/-9223372036854775809")));
+        assertNull(match(r, new TestReq("/items/99999999999999999999999")));
+
+        assertEquals(new TestRes("Number 2147483647 2147483647"), match(r, new TestReq("/numbers/2147483647")));
+        assertEquals(new TestRes("Number -2147483648 -2147483648"), match(r, new TestReq("/numbers/-2147483648")));
+        assertEquals(new TestRes("Number 7 7"), match(r, new TestReq("/numbers/007")));
+        assertNull(match(r, new TestReq("/numbers/2147483648")));
+        assertNull(match(r, new TestReq("/numbers/-")));
+        assertNull(match(r, new TestReq("/numbers/+")));
+        assertNull(match(r, new TestReq("/numbers/1-2")));
+        assertNull(match(r, new TestReq("/numbers/ 1")));
+        assertNull(match(r, new TestReq("/numbers/<script>")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void primitiveGetterThrowsForMissingValue() {
+        RouteMatchResult res = new RouteMatchResult();
+        res.addToStringMatches("id", "abc");
+        new RouteMatch<TestReq>(null, res).getIntRouteMatchResult("id");
+    }
+
+    @Test
+    public void matchesWithParamKeys() {
+        final ParamKey<Integer> projectId = ParamKey.integerKey("projectId");
+        final ParamKey<String> todoId = ParamKey.stringKey("todoId");
+        RouteTreeNode<TestReq, TestRes> r = rf.builder()
+            .path("/projects", rf.builder()
+                .param(new NumberSegment("projectId"), rf.builder()
+                    .param("/:todoId", rf.builder()
+                        .handler(new IRouteHandler<TestReq, TestRes>() {
+                            @Override
+                            public IRouteHandler<TestReq, TestRes> merge(IRouteHandler<TestReq, TestRes> other) {
+                                return other;
+                            }
+
+                            @Override
+                            public TestRes call(RouteMatch<TestReq> match) {
+                                return new TestRes("Project " + match.getIntegerRouteMatchResult(projectId)
+                                    + " todo " + match.getStringRouteMatchResult(todoId)
+                                    + " " + match.getStringRouteMatchResult(ParamKey.stringKey("projectId")));
+                            }
+                        }))))
+            .build();
+
+        assertEquals(new TestRes("Project 1 todo abc null"), match(r, new TestReq("/projects/1/abc")));
+        assertEquals(new TestRes("Project 2 todo def null"), match(r, new TestReq("/projects/2/def")));
+    }
+
+    @Test
+    public void reusesMatchContext() {
+        RouteTreeNode<TestReq, TestRes> r = rf.builder()
+            .path("/foo", rf.builder()
+                .param("/:id", rf.builder()
+                    .handler(new IRouteHandler<TestReq, TestRes>() {
+                        @Override
+                        public IRouteHandler<TestReq, TestRes> merge(IRouteHandler<TestReq, TestRes> other) {
+                            return other;
+                        }
+
+                        @Override
+                        public TestRes call(RouteMatch<TestReq> match) {
+                            return new TestRes(match.getRequest().getExtras() + " " + match.getRouteMatchResult().getStringMatches());
+                        }
+                    })))
+            .wildcard(rf.builder()
+                .handler(new IRouteHandler<TestReq, TestRes>() {
+                    @Override
+                    public IRouteHandler<TestReq, TestRes> merge(IRouteHandler<TestReq, TestRes> other) {
+                        return other;
+                    }
+
+                    @Override
+                    public TestRes call(RouteMatch<TestReq> match) {
+                        return new TestRes(match.getRequest().getExtras() + " " + match.getRouteMatchResult().getStringMatches() + " " + match.getWildcardRouteMatchResult());
+                    }
+                }))
+            .build();
+
+        MatchContext<TestReq> ctx = new MatchContext<TestReq>();
+        assertEquals(new TestRes("a {id=1}"), defaultRouteMatcher.match(r, new TestReq("/foo/1", "a"), ctx));
+        assertEquals(new TestRes("b {} [bar, baz]"), defaultRouteMatcher.match(r, new TestReq("/bar/baz", "b"), ctx));
+        assertEquals(new TestRes("c {id=2}"), defaultRouteMatcher.match(r, new TestReq("/foo/2", "c"), ctx));
+        assertNull(defaultRouteMatcher.match(r, new TestReq("/foo/2/3", "d"), ctx));
+        assertEquals(new TestRes("e {} [x]"), defaultRouteMatcher.match(r, new TestReq("/x", "e"), ctx));
+    }
+
     @Test
     public void matchesWithStringConvenienceApi() {
         // TODO: Write me.
@@ -513,6 +688,210 @@ public class PathTravelAgentTest {
         assertEquals(new TestRes("Hello, foo with id abc123"), match(r, new TestReq("/foo/abc123")));
     }
 
+    @Test
+    public void mergeAllLikeMergingOneByOne() {
+        class ConcatHandler implements IRouteHandler<TestReq, TestRes> {
+            private final String ret;
+
+            public ConcatHandler(String ret) {
+                this.ret = ret;
+            }
+
+            @Override
+            public IRouteHandler<TestReq, TestRes> merge(IRouteHandler<TestReq, TestRes> other) {
+                return new ConcatHandler(this.ret + "," + ((ConcatHandler)other).ret);
+            }
+
+            @Override
+            public TestRes call(RouteMatch<TestReq> match) {
+                return new TestRes(this.ret + " " + match.getRouteMatchResult().getStringMatches() + " " + match.getRouteMatchResult().getWildcardMatches());
+            }
+        }
+
+        String[] segments = {"a", "b", "c", ":x", ":y", "*"};
+        Random rand = new Random();
+        List<RouteTreeNode<TestReq, TestRes>> routes = new ArrayList<RouteTreeNode<TestReq, TestRes>>();
+        for (int i = 0; i < 300; i++) {
+            StringBuilder path = new StringBuilder();
+            RouteTreeBuilder<TestReq, TestRes> builder = rf.builder().handler(new ConcatHandler("route" + i));
+            int length = rand.nextInt(4);
+            for (int j = 0; j < length; j++) {
+                path.insert(0, "/" + segments[rand.nextInt(segments.length)]);
+            }
+            String[] pathSegments = path.toString().split("/");
+            for (int j = pathSegments.length - 1; j > 0; j--) {
+                if (pathSegments[j].equals("*")) {
+                    builder = rf.builder().wildcard(builder);
+                } else if (pathSegments[j].startsWith(":")) {
+                    builder = rf.builder().param("/" + pathSegments[j], builder);
+                } else {
+                    builder = rf.builder().path("/" + pathSegments[j], builder);
+                }
+            }
+            routes.add(builder.build());
+        }
+
+        RouteTreeNode<TestReq, TestRes> folded = routes.get(0);
+        for (int i = 1; i < routes.size(); i++) {
+            folded = folded.merge(routes.get(i));
+        }
+        RouteTreeNode<TestReq, TestRes> merged = RouteTreeNode.mergeAll(routes);
+
+        String[] paths = {"/", "/a", "/b/c", "/a/b/c", "/x", "/x/y", "/a/x/c", "/c/c/c/c", "/a/b/c/d/e"};
+        for (String path : paths) {
+            assertEquals(path, match(folded, new TestReq(path)), match(merged, new TestReq(path)));
+        }
+    }
+
+    @Test
+    public void mergeAllSharesUntouchedSubtrees() {
+        RouteTreeNode<TestReq, TestRes> foo = new SingleRouteBuilder<TestReq, TestRes>()
+            .path("foo")
+            .path("bar")
+            .build(new TestHandler("Hello, foo/bar!"));
+        RouteTreeNode<TestReq, TestRes> baz = new SingleRouteBuilder<TestReq, TestRes>()
+            .path("baz")
+            .build(new TestHandler("Hello, baz!"));
+
+        RouteTreeNode<TestReq, TestRes> r = RouteTreeNode.mergeAll(Arrays.asList(foo, baz));
+
+        assertSame(foo.getPathSegmentChildNode("foo"), r.getPathSegmentChildNode("foo"));
+        assertSame(baz.getPathSegmentChildNode("baz"), r.getPathSegmentChildNode("baz"));
+        assertSame(foo, RouteTreeNode.mergeAll(Collections.singletonList(foo)));
+        assertNull(match(RouteTreeNode.mergeAll(new ArrayList<RouteTreeNode<TestReq, TestRes>>()), new TestReq("/")));
+    }
+
+    @Test
+    public void mergesWildcardWithNodeWithoutWildcard() {
+        RouteTreeNode<TestReq, TestRes> r1 = rf.builder()
+            .wildcard(rf.builder()
+                .handler(new TestHandler("Hello, wildcard!")))
+            .build();
+        RouteTreeNode<TestReq, TestRes> r2 = rf.builder()
+            .path("/foo", rf.builder()
+                .handler(new TestHandler("Hello, foo!")))
+            .build();
+
+        RouteTreeNode<TestReq, TestRes> r = r1.merge(r2);
+
+        assertEquals(new TestRes("Hello, foo!"), match(r, new TestReq("/foo")));
+        assertEquals(new TestRes("Hello, wildcard!"), match(r, new TestReq("/bar")));
+    }
+
+    @Test
+    public void removesSingleRoutes() {
+        RouteTreeNode<TestReq, TestRes> r = rf.builder()
+            .path("/foo", rf.builder()
+                .handler(new TestHandler("Hello, foo!"))
+                .param("/:id", rf.builder()
+                    .handler(new TestHandler("Hello, foo id!"))
+                    .path("/bar", rf.builder()
+                        .handler(new TestHandler("Hello, foo id bar!")))))
+            .path("/files", rf.builder()
+                .wildcard(rf.builder()
+                    .handler(new TestHandler("Hello, file!"))))
+            .path("/baz", rf.builder()
+                .handler(new TestHandler("Hello, baz!")))
+            .build();
+
+        RouteTreeNode<TestReq, TestRes> withoutParam = r.without(new SingleRouteBuilder<TestReq, TestRes>()
+            .path("foo")
+            .param("other-name")
+            .build(null));
+        assertEquals(new TestRes("Hello, foo!"), match(withoutParam, new TestReq("/foo")));
+        assertNull(match(withoutParam, new TestReq("/foo/123")));
+        assertEquals(new TestRes("Hello, foo id bar!"), match(withoutParam, new TestReq("/foo/123/bar")));
+
+        RouteTreeNode<TestReq, TestRes> withoutWildcard = r.without(new SingleRouteBuilder<TestReq, TestRes>()
+            .path("files")
+            .wildcard()
+            .build(null));
+        assertNull(match(withoutWildcard, new TestReq("/files/a/b")));
+        assertFalse(withoutWildcard.containsPathSegmentChildNodes("files"));
+        assertSame(r.getPathSegmentChildNode("foo"), withoutWildcard.getPathSegmentChildNode("foo"));
+        assertSame(r.getPathSegmentChildNode("baz"), withoutWildcard.getPathSegmentChildNode("baz"));
+
+        RouteTreeNode<TestReq, TestRes> withoutStatic = r.without(new SingleRouteBuilder<TestReq, TestRes>()
+            .path("foo")
+            .build(null));
+        assertNull(match(withoutStatic, new TestReq("/foo")));
+        assertEquals(new TestRes("Hello, foo id!"), match(withoutStatic, new TestReq("/foo/123")));
+        assertSame(r.getPathSegmentChildNode("foo").getParametricChildNode(), withoutStatic.getPathSegmentChildNode("foo").getParametricChildNode());
+
+        assertSame(r, r.without(new SingleRouteBuilder<TestReq, TestRes>().path("nothing").build(null)));
+        assertEquals(new TestRes("Hello, foo!"), match(r, new TestReq("/foo")));
+    }
+
+    @Test
+    public void removesSubtrees() {
+        RouteTreeNode<TestReq, TestRes> r = rf.builder()
+            .path("/foo", rf.builder()
+                .handler(new TestHandler("Hello, foo!"))
+                .param("/:id", rf.builder()
+                    .handler(new TestHandler("Hello, foo id!"))
+                    .path("/bar", rf.builder()
+                        .handler(new TestHandler("Hello, foo id bar!")))))
+            .path("/baz", rf.builder()
+                .handler(new TestHandler("Hello, baz!")))
+            .build();
+
+        RouteTreeNode<TestReq, TestRes> withoutParam = r.withoutSubtree(new SingleRouteBuilder<TestReq, TestRes>()
+            .path("foo")
+            .param("id")
+            .build(null));
+        assertEquals(new TestRes("Hello, foo!"), match(withoutParam, new TestReq("/foo")));
+        assertNull(match(withoutParam, new TestReq("/foo/123")));
+        assertNull(match(withoutParam, new TestReq("/foo/123/bar")));
+        assertFalse(withoutParam.getPathSegmentChildNode("foo").hasParametricChild());
+
+        RouteTreeNode<TestReq, TestRes> withoutFoo = r.withoutSubtree(new SingleRouteBuilder<TestReq, TestRes>()
+            .path("foo")
+            .build(null));
+        assertFalse(withoutFoo.containsPathSegmentChildNodes("foo"));
+        assertSame(r.getPathSegmentChildNode("baz"), withoutFoo.getPathSegmentChildNode("baz"));
+
+        RouteTreeNode<TestReq, TestRes> empty = withoutFoo.withoutSubtree(new SingleRouteBuilder<TestReq, TestRes>()
+            .path("baz")
+            .build(null));
+        assertNull(match(empty, new TestReq("/baz")));
+        assertFalse(empty.containsPathSegmentChildNodes("baz"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void singleRouteBuilderRejectsSegmentsAfterWildcard() {
+        new SingleRouteBuilder<TestReq, TestRes>().wildcard().path("foo");
+    }
+
+    @Test
+    public void resolvesWithoutCallingHandler() {
+        final List<String> calls = new ArrayList<String>();
+        RouteTreeNode<TestReq, TestRes> r = rf.builder()
+            .path("/foo", rf.builder()
+                .param("/:id", rf.builder()
+                    .handler(new IRouteHandler<TestReq, TestRes>() {
+                        @Override
+                        public IRouteHandler<TestReq, TestRes> merge(IRouteHandler<TestReq, TestRes> other) {
+                            return other;
+                        }
+
+                        @Override
+                        public TestRes call(RouteMatch<TestReq> match) {
+                            calls.add(match.getStringRouteMatchResult("id"));
+                            return new TestRes("Hello, foo " + match.getStringRouteMatchResult("id"));
+                        }
+                    })))
+            .build();
+
+        ResolvedRoute<TestReq, TestRes> resolved = defaultRouteMatcher.resolve(r, new TestReq("/foo/123"));
+        assertEquals("123", resolved.getRouteMatch().getStringRouteMatchResult("id"));
+        assertTrue(calls.isEmpty());
+        assertEquals(new TestRes("Hello, foo 123"), resolved.call());
+        assertEquals(Arrays.asList("123"), calls);
+
+        assertNull(defaultRouteMatcher.resolve(r, new TestReq("/foo")));
+        assertNull(defaultRouteMatcher.resolve(r, new TestReq("/bar")));
+    }
+
     @Test
     public void handlerMerging() {
         class MethodReq implements IRequest {
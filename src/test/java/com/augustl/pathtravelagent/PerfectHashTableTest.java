@@ -0,0 +1,59 @@
+package com.augustl.pathtravelagent;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PerfectHashTableTest {
+    @Test
+    public void findsAllKeys() {
+        for (int size = 0; size < 2000; size = size * 2 + 1) {
+            Map<String, Integer> map = new HashMap<String, Integer>();
+            for (int i = 0; i < size; i++) {
+                map.put("segment" + i, i);
+            }
+            PerfectHashTable<Integer> table = PerfectHashTable.build(map);
+
+            for (int i = 0; i < size; i++) {
+                assertEquals(Integer.valueOf(i), table.get("segment" + i));
+            }
+            assertNull(table.get("segment" + size));
+            assertNull(table.get(""));
+            assertNull(table.get("other"));
+        }
+    }
+
+    @Test
+    public void handlesKeysWithSameHashCode() {
+        // "Aa" and "BB" have the same hash code.
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("Aa", "first");
+        map.put("BB", "second");
+        map.put("foo", "third");
+        PerfectHashTable<String> table = PerfectHashTable.build(map);
+
+        assertEquals("first", table.get("Aa"));
+        assertEquals("second", table.get("BB"));
+        assertEquals("third", table.get("foo"));
+        assertNull(table.get("AaAa"));
+    }
+
+    @Test
+    public void routeTreeNodeFindsPathSegmentChildNodes() {
+        RouteTreeBuilderFactory<TestReq, TestRes> rf = new RouteTreeBuilderFactory<TestReq, TestRes>();
+        RouteTreeNode<TestReq, TestRes> r = rf.builder()
+            .path("/foo", rf.builder()
+                .handler(new TestHandler("Hello, foo!")))
+            .path("/bar", rf.builder()
+                .handler(new TestHandler("Hello, bar!")))
+            .build();
+
+        assertSame(r.getPathSegmentChildNode("foo"), r.findPathSegmentChildNode("foo"));
+        assertSame(r.getPathSegmentChildNode("bar"), r.findPathSegmentChildNode("bar"));
+        assertNull(r.findPathSegmentChildNode("baz"));
+        assertNull(r.getPathSegmentChildNode("foo").findPathSegmentChildNode("foo"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.augustl.pathtravelagent;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RequestTargetTest {
+    @Test
+    public void splitsPathLikeBefore() {
+        for (String path : new String[]{"", "/", "//", "?", "/?", "?a=b", "/projects", "/projects/", "/projects//",
+            "/projects/123?a=b", "/projects/123/?a=b?c", "projects/123", "projects", "/a//b", "//a", "/a/b/c/",
+            "/a?", "/a?/b"}) {
+            List<String> expected = splitWithRegexps(path);
+            assertEquals(path, expected, DefaultPathToPathSegments.parse(path));
+            assertEquals(path, expected, RequestTarget.parse(path).getPathSegments());
+            assertEquals(path, path.split("\\?", 2)[0], DefaultPathToPathSegments.extractPath(path));
+            assertEquals(path, path.split("\\?", 2)[0], RequestTarget.parse(path).getPath());
+        }
+    }
+
+    /**
+     * How DefaultPathToPathSegments used to split paths.
+     */
+    private static List<String> splitWithRegexps(String path) {
+        String[] pathSegmentsAry = path.split("\\?", 2)[0].split("/");
+        if (pathSegmentsAry.length == 0) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(pathSegmentsAry).subList(1, pathSegmentsAry.length);
+    }
+
+    @Test
+    public void decodesPathSegments() {
+        String path = "/files/a%20b%2Fc/%C3%B8l+%E2%82%AC/%F0%9F%98%80/plain/?q=%zz";
+        List<String> pathSegments = DefaultPathToPathSegments.parseDecoded(path);
+        assertEquals(Arrays.asList("files", "a b/c", "\u00f8l+\u20ac", "\ud83d\ude00", "plain"), pathSegments);
+        assertEquals(pathSegments, RequestTarget.parseDecoded(path).getPathSegments());
+        assertEquals("/files/a%20b%2Fc/%C3%B8l+%E2%82%AC/%F0%9F%98%80/plain/", RequestTarget.parseDecoded(path).getPath());
+
+        for (String plainPath : new String[]{"", "/", "//", "?a=%", "/projects", "/projects/", "/a//b", "projects/123", "/a?/b"}) {
+            assertEquals(plainPath, DefaultPathToPathSegments.parse(plainPath), DefaultPathToPathSegments.parseDecoded(plainPath));
+        }
+        assertEquals(Arrays.asList("//", "", "%", "A"), DefaultPathToPathSegments.parseDecoded("/%2F%2F//%25/%41"));
+    }
+
+    @Test
+    public void rejectsMalformedEscapesInPath() {
+        for (String path : new String[]{"/%", "/a/%2", "/a%2g/b", "/%C3", "/%C3/%A5", "/%C0%AF", "/ok/%ED%A0%80", "/%E2%82%2/"}) {
+            assertNull(path, DefaultPathToPathSegments.parseDecoded(path));
+            assertNull(path, RequestTarget.parseDecoded(path));
+        }
+        assertNotNull(RequestTarget.parseDecoded("/ok?%"));
+    }
+
+    @Test
+    public void readsQueryParameters() {
+        RequestTarget target = RequestTarget.parse("/projects/123?sort=name&tag=a&&empty=&flag&tag=b&x=1=2");
+        QueryParameters params = target.getQueryParameters();
+
+        assertEquals(Arrays.asList("projects", "123"), target.getPathSegments());
+        assertEquals("sort=name&tag=a&&empty=&flag&tag=b&x=1=2", target.getQuery());
+        assertEquals("sort=name&tag=a&&empty=&flag&tag=b&x=1=2", params.toString());
+        assertEquals("name", params.get("sort"));
+        assertEquals("a", params.get("tag"));
+        assertEquals(Arrays.asList("a", "b"), params.getAll("tag"));
+        assertEquals("", params.get("empty"));
+        assertEquals("", params.get("flag"));
+        assertEquals("1=2", params.get("x"));
+        assertTrue(params.contains("flag"));
+        assertFalse(params.contains("sor"));
+        assertFalse(params.contains(""));
+        assertNull(params.get("missing"));
+        assertEquals(Collections.emptyList(), params.getAll("missing"));
+        assertEquals(Arrays.asList("sort", "tag", "empty", "flag", "x"), Arrays.asList(params.getNames().toArray()));
+        assertFalse(params.isEmpty());
+    }
+
+    @Test
+    public void readsEmptyQueryParameters() {
+        for (String path : new String[]{"/projects", "/projects?", "?"}) {
+            QueryParameters params = RequestTarget.parse(path).getQueryParameters();
+            assertTrue(path, params.isEmpty());
+            assertNull(path, params.get("a"));
+            assertTrue(path, params.getNames().isEmpty());
+        }
+        assertNull(RequestTarget.parse("/projects").getQuery());
+        assertEquals("", RequestTarget.parse("/projects?").getQuery());
+    }
+
+    @Test
+    public void decodesQueryParameters() {
+        QueryParameters params = RequestTarget.parse("/?q=hello+world&n%C3%A5me=%C3%B8l&emoji=%F0%9F%98%80&bad=%E2%82&worse=%zz&%26=%3D").getQueryParameters();
+
+        assertEquals("hello world", params.get("q"));
+        assertEquals("\u00f8l", params.get("n\u00e5me"));
+        assertEquals("\ud83d\ude00", params.get("emoji"));
+        assertEquals("%E2%82", params.get("bad"));
+        assertEquals("%zz", params.get("worse"));
+        assertEquals("=", params.get("&"));
+        assertNull(params.get("n%C3%A5me"));
+    }
+
+    @Test
+    public void rejectsMalformedEscapes() {
+        assertEquals("abc", PercentDecoder.decode("abc", 0, 3, false));
+        assertEquals("a+b", PercentDecoder.decode("a+b", 0, 3, false));
+        assertEquals("a b", PercentDecoder.decode("a+b", 0, 3, true));
+        assertEquals("/", PercentDecoder.decode("x%2Fx", 1, 4, false));
+        assertEquals("\u20ac", PercentDecoder.decode("%e2%82%ac", 0, 9, false));
+        for (String str : new String[]{"%", "%2", "%2g", "%\uff11\uff11", "%80", "%C0%80", "%C3", "%C3%28", "%E0%80%80",
+            "%ED%A0%80", "%F4%90%80%80", "%F8%80%80%80%80", "%E2%82%2"}) {
+            assertNull(str, PercentDecoder.decode(str, 0, str.length(), false));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.augustl.pathtravelagent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class RouteRegistryTest {
+    private DefaultRouteMatcher<TestReq, TestRes> defaultRouteMatcher = new DefaultRouteMatcher<TestReq, TestRes>();
+
+    private TestRes match(RouteRegistry<TestReq, TestRes> registry, String path) {
+        return defaultRouteMatcher.match(registry.getRootNode(), new TestReq(path));
+    }
+
+    private RouteTreeNode<TestReq, TestRes> route(String tenant, String name) {
+        return new SingleRouteBuilder<TestReq, TestRes>()
+            .path("tenants")
+            .path(tenant)
+            .build(new TestHandler(name));
+    }
+
+    @Test
+    public void publishesStagedChangesAtOnce() {
+        RouteRegistry<TestReq, TestRes> registry = new RouteRegistry<TestReq, TestRes>();
+        RouteTreeNode<TestReq, TestRes> empty = registry.getRootNode();
+
+        registry.add(route("acme", "acme"));
+        registry.add(route("initech", "initech"));
+        assertEquals(2, registry.getPendingCount());
+        assertSame(empty, registry.getRootNode());
+        assertNull(match(registry, "/tenants/acme"));
+
+        RouteTreeNode<TestReq, TestRes> published = registry.publish();
+        assertSame(published, registry.getRootNode());
+        assertEquals(0, registry.getPendingCount());
+        assertEquals(new TestRes("acme"), match(registry, "/tenants/acme"));
+        assertEquals(new TestRes("initech"), match(registry, "/tenants/initech"));
+
+        assertSame(published, registry.publish());
+    }
+
+    @Test
+    public void appliesChangesInOrder() {
+        RouteRegistry<TestReq, TestRes> registry = new RouteRegistry<TestReq, TestRes>(route("acme", "old acme"));
+
+        registry.remove(route("acme", null));
+        registry.add(route("acme", "new acme"));
+        registry.add(route("initech", "initech"));
+        registry.remove(new SingleRouteBuilder<TestReq, TestRes>().path("tenants").path("initech").build(null));
+        registry.publish();
+
+        assertEquals(new TestRes("new acme"), match(registry, "/tenants/acme"));
+        assertNull(match(registry, "/tenants/initech"));
+    }
+
+    @Test
+    public void sharesUntouchedSubtreesWhenRemoving() {
+        RouteTreeNode<TestReq, TestRes> other = new SingleRouteBuilder<TestReq, TestRes>()
+            .path("other")
+            .param("id")
+            .build(new TestHandler("other"));
+        RouteRegistry<TestReq, TestRes> registry = new RouteRegistry<TestReq, TestRes>(
+            other.merge(route("acme", "acme")).merge(route("initech", "initech")));
+        RouteTreeNode<TestReq, TestRes> before = registry.getRootNode();
+
+        registry.remove(route("acme", null));
+        RouteTreeNode<TestReq, TestRes> after = registry.publish();
+
+        assertNull(match(registry, "/tenants/acme"));
+        assertEquals(new TestRes("initech"), match(registry, "/tenants/initech"));
+        assertEquals(new TestRes("other"), match(registry, "/other/123"));
+        assertNotSame(before.getPathSegmentChildNode("tenants"), after.getPathSegmentChildNode("tenants"));
+        assertSame(before.getPathSegmentChildNode("other"), after.getPathSegmentChildNode("other"));
+        assertSame(
+            before.getPathSegmentChildNode("tenants").getPathSegmentChildNode("initech"),
+            after.getPathSegmentChildNode("tenants").getPathSegmentChildNode("initech"));
+
+        // Nodes left without handlers are pruned, all the way up
+        registry.remove(route("initech", null));
+        after = registry.publish();
+        assertFalse(after.containsPathSegmentChildNodes("tenants"));
+        assertSame(before.getPathSegmentChildNode("other"), after.getPathSegmentChildNode("other"));
+
+        // Removing what is not there changes nothing
+        registry.remove(route("acme", null));
+        assertSame(after, registry.publish());
+    }
+
+    @Test
+    public void dropsChangesThatCannotBeApplied() {
+        RouteRegistry<TestReq, TestRes> registry = new RouteRegistry<TestReq, TestRes>(
+            new SingleRouteBuilder<TestReq, TestRes>()
+                .path("tenants")
+                .path("acme")
+                .build(new TestHandler("acme") {
+                    @Override
+                    public IRouteHandler<TestReq, TestRes> merge(IRouteHandler<TestReq, TestRes> other) {
+                        throw new IllegalStateException("Cannot merge acme");
+                    }
+                }));
+
+        registry.add(route("initech", "initech"));
+        registry.add(route("acme", "new acme"));
+        registry.add(route("globex", "globex"));
+        try {
+            registry.publish();
+            fail("Expected the change that cannot be applied to be reported");
+        } catch (IllegalStateException e) {
+            assertEquals("Cannot merge acme", e.getCause().getMessage());
+        }
+
+        assertEquals(0, registry.getPendingCount());
+        assertEquals(new TestRes("acme"), match(registry, "/tenants/acme"));
+        assertEquals(new TestRes("initech"), match(registry, "/tenants/initech"));
+        assertEquals(new TestRes("globex"), match(registry, "/tenants/globex"));
+
+        registry.add(route("hooli", "hooli"));
+        registry.publish();
+        assertEquals(new TestRes("hooli"), match(registry, "/tenants/hooli"));
+    }
+
+    @Test
+    public void publishesOneAfterTheOther() throws InterruptedException {
+        final CountDownLatch merging = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        final AtomicBoolean blocked = new AtomicBoolean();
+        final RouteRegistry<TestReq, TestRes> registry = new RouteRegistry<TestReq, TestRes>(
+            new SingleRouteBuilder<TestReq, TestRes>()
+                .path("tenants")
+                .path("acme")
+                .build(new TestHandler("acme") {
+                    @Override
+                    public IRouteHandler<TestReq, TestRes> merge(IRouteHandler<TestReq, TestRes> other) {
+                        // Only the first merge waits, so that the other publish can finish in the meantime.
+                        if (blocked.compareAndSet(false, true)) {
+                            merging.countDown();
+                            try {
+                                resume.await();
+                            } catch (InterruptedException e) {
+                                throw new IllegalStateException(e);
+                            }
+                        }
+                        return other;
+                    }
+                }));
+
+        Thread first = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                registry.add(route("acme", "new acme"));
+                registry.publish();
+            }
+        });
+        first.start();
+        merging.await();
+
+        registry.remove(route("acme", null));
+        registry.publish();
+        assertNull(match(registry, "/tenants/acme"));
+
+        resume.countDown();
+        first.join();
+        assertEquals(0, registry.getPendingCount());
+        assertNull(match(registry, "/tenants/acme"));
+    }
+
+    @Test
+    public void stagesFromManyThreads() throws InterruptedException {
+        final RouteRegistry<TestReq, TestRes> registry = new RouteRegistry<TestReq, TestRes>();
+        final int threadCount = 4;
+        final int routesPerThread = 200;
+        final CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < threadCount; t++) {
+            final int threadNumber = t;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    for (int i = 0; i < routesPerThread; i++) {
+                        String name = "t" + threadNumber + "-" + i;
+                        registry.add(route(name, name));
+                        if (i % 10 == 0) {
+                            registry.publish();
+                        }
+                    }
+                    registry.publish();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, registry.getPendingCount());
+        for (int t = 0; t < threadCount; t++) {
+            for (int i = 0; i < routesPerThread; i++) {
+                String name = "t" + t + "-" + i;
+                assertEquals(new TestRes(name), match(registry, "/tenants/" + name));
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.augustl.pathtravelagent;
+
+import com.augustl.pathtravelagent.segment.DateSegment;
+import com.augustl.pathtravelagent.segment.LongSegment;
+import com.augustl.pathtravelagent.segment.NumberSegment;
+import com.augustl.pathtravelagent.segment.RegexSegment;
+import com.augustl.pathtravelagent.segment.StringSegment;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class RouteTreeCanonicalizerTest {
+    private static final String[] LOCALES = {"en", "de", "fr", "no"};
+
+    private final RouteTreeBuilderFactory<TestReq, TestRes> rf = new RouteTreeBuilderFactory<TestReq, TestRes>();
+    private final IRouteHandler<TestReq, TestRes> users = new EchoHandler("users");
+    private final IRouteHandler<TestReq, TestRes> user = new EchoHandler("user");
+    private final IRouteHandler<TestReq, TestRes> files = new EchoHandler("files");
+
+    /**
+     * The same routes under a prefix for each locale, with new segments for each locale, like generated routes.
+     */
+    private RouteTreeNode<TestReq, TestRes> createTree() {
+        List<RouteTreeNode<TestReq, TestRes>> routes = new ArrayList<RouteTreeNode<TestReq, TestRes>>();
+        for (String locale : LOCALES) {
+            routes.add(rf.builder()
+                .path("/" + locale, rf.builder()
+                    .path("/users", rf.builder()
+                        .handler(this.users)
+                        .param(new NumberSegment("userId"), rf.builder()
+                            .handler(this.user)))
+                    .path("/files", rf.builder()
+                        .wildcard(rf.builder()
+                            .handler(this.files))))
+                .build());
+        }
+        routes.add(rf.builder()
+            .path("/special", rf.builder()
+                .path("/users", rf.builder()
+                    .handler(new EchoHandler("special users"))
+                    .param(new NumberSegment("userId"), rf.builder()
+                        .handler(this.user))))
+            .build());
+        return RouteTreeNode.mergeAll(routes);
+    }
+
+    @Test
+    public void sharesEqualSubtrees() {
+        RouteTreeNode<TestReq, TestRes> r = createTree();
+        RouteTreeCanonicalizer.Result<TestReq, TestRes> res = new RouteTreeCanonicalizer<TestReq, TestRes>().canonicalize(r);
+        RouteTreeNode<TestReq, TestRes> canonical = res.getRoot();
+
+        RouteTreeNode<TestReq, TestRes> en = canonical.getPathSegmentChildNode("en");
+        for (String locale : LOCALES) {
+            assertSame(locale, en, canonical.getPathSegmentChildNode(locale));
+        }
+        RouteTreeNode<TestReq, TestRes> special = canonical.getPathSegmentChildNode("special");
+        assertNotSame(en.getPathSegmentChildNode("users"), special.getPathSegmentChildNode("users"));
+        assertSame(en.getPathSegmentChildNode("users").getParametricChildNode(),
+            special.getPathSegmentChildNode("users").getParametricChildNode());
+
+        // The root, 5 nodes for each locale, and 3 special nodes, where the parametric child is shared with the locales.
+        assertEquals(24, res.getNodeCountBefore());
+        assertEquals(8, res.getNodeCountAfter());
+        assertTrue(res.getEstimatedReclaimedBytes() > 0);
+        assertEquals(res.getEstimatedSizeBefore() - res.getEstimatedSizeAfter(), res.getEstimatedReclaimedBytes());
+
+        RouteTreeCanonicalizer.Result<TestReq, TestRes> again = new RouteTreeCanonicalizer<TestReq, TestRes>().canonicalize(canonical);
+        assertSame(canonical, again.getRoot());
+        assertEquals(8, again.getNodeCountBefore());
+        assertEquals(0, again.getEstimatedReclaimedBytes());
+    }
+
+    @Test
+    public void matchesLikeTheOriginalTree() {
+        RouteTreeNode<TestReq, TestRes> r = createTree();
+        RouteTreeNode<TestReq, TestRes> canonical = r.canonicalize();
+        DefaultRouteMatcher<TestReq, TestRes> defaultRouteMatcher = new DefaultRouteMatcher<TestReq, TestRes>();
+        CompiledRouteMatcher<TestReq, TestRes> compiledRouteMatcher = new CompiledRouteMatcher<TestReq, TestRes>();
+        CompiledRouteTree<TestReq, TestRes> compiled = canonical.compile();
+        GeneratedRouteMatcher<TestReq, TestRes> generated = GeneratedRouteMatcher.generate(canonical);
+
+        List<String> paths = new ArrayList<String>();
+        for (String locale : new String[]{"en", "no", "special", "xx"}) {
+            for (String path : new String[]{"", "/users", "/users/123", "/users/abc", "/files", "/files/a/b", "/other"}) {
+                paths.add("/" + locale + path);
+            }
+        }
+        for (String path : paths) {
+            TestReq req = new TestReq(path);
+            TestRes expected = defaultRouteMatcher.match(r, req);
+            assertEquals(path, expected, defaultRouteMatcher.match(canonical, req));
+            assertEquals(path, expected, compiledRouteMatcher.match(compiled, req));
+            assertEquals(path, expected, generated.match(req));
+        }
+        assertEquals(new TestRes("user {} {userId=123} []"), defaultRouteMatcher.match(canonical, new TestReq("/no/users/123")));
+    }
+
+    @Test
+    public void countsHitsOfSharedNodesByTheMatchedTemplate() {
+        RouteTreeNode<TestReq, TestRes> canonical = createTree().canonicalize();
+        InstrumentedRouteMatcher<TestReq, TestRes> matcher = new InstrumentedRouteMatcher<TestReq, TestRes>();
+
+        for (int i = 0; i < 3; i++) {
+            matcher.match(canonical, new TestReq("/de/users/123"));
+        }
+        matcher.match(canonical, new TestReq("/en/users/123"));
+        matcher.match(canonical, new TestReq("/special/users/123"));
+        matcher.match(canonical, new TestReq("/no/files/a/b"));
+
+        Map<String, Long> hitCounts = matcher.getSnapshot().getHitCounts();
+        assertEquals(Long.valueOf(3), hitCounts.get("/de/users/:userId"));
+        assertEquals(Long.valueOf(1), hitCounts.get("/en/users/:userId"));
+        assertEquals(Long.valueOf(0), hitCounts.get("/fr/users/:userId"));
+        assertEquals(Long.valueOf(1), hitCounts.get("/special/users/:userId"));
+        assertEquals(Long.valueOf(1), hitCounts.get("/no/files/*"));
+    }
+
+    @Test
+    public void onlySharesNodesWithSameHandlersAndSegments() {
+        IRouteHandler<TestReq, TestRes> handler = new EchoHandler("handler");
+        RouteTreeNode<TestReq, TestRes> r = rf.builder()
+            .path("/same", rf.builder()
+                .param(new LongSegment("id", 1, 10), rf.builder().handler(handler)))
+            .path("/equal", rf.builder()
+                .param(new LongSegment("id", 1, 10), rf.builder().handler(handler)))
+            .path("/range", rf.builder()
+                .param(new LongSegment("id", 1, 11), rf.builder().handler(handler)))
+            .path("/name", rf.builder()
+                .param(new LongSegment("other", 1, 10), rf.builder().handler(handler)))
+            .path("/handler", rf.builder()
+                .param(new LongSegment("id", 1, 10), rf.builder().handler(new EchoHandler("handler"))))
+            .path("/custom", rf.builder()
+                .param(new TestSegment("id", "1"), rf.builder().handler(handler)))
+            .path("/custom2", rf.builder()
+                .param(new TestSegment("id", "1"), rf.builder().handler(handler)))
+            .build()
+            .canonicalize();
+
+        RouteTreeNode<TestReq, TestRes> same = r.getPathSegmentChildNode("same");
+        assertSame(same, r.getPathSegmentChildNode("equal"));
+        for (String pathSegment : new String[]{"range", "name", "handler", "custom"}) {
+            assertFalse(pathSegment, same == r.getPathSegmentChildNode(pathSegment));
+        }
+        assertNotSame(r.getPathSegmentChildNode("custom"), r.getPathSegmentChildNode("custom2"));
+        assertSame(same.getParametricChildNode(), r.getPathSegmentChildNode("name").getParametricChildNode());
+    }
+
+    @Test
+    public void comparesBuiltInSegments() {
+        assertEquals(new StringSegment("a"), new StringSegment("a"));
+        assertEquals(new StringSegment("a").hashCode(), new StringSegment("a").hashCode());
+        assertFalse(new StringSegment("a").equals(new StringSegment("b")));
+        assertEquals(new NumberSegment("a", 1, 2), new NumberSegment("a", 1, 2));
+        assertEquals(new NumberSegment("a", 1, 2).hashCode(), new NumberSegment("a", 1, 2).hashCode());
+        assertFalse(new NumberSegment("a", 1, 2).equals(new NumberSegment("a", 1, 3)));
+        assertFalse(new NumberSegment("a").equals(new LongSegment("a", Integer.MIN_VALUE, Integer.MAX_VALUE)));
+        assertFalse(new DateSegment("a").equals(new StringSegment("a")));
+        assertEquals(new RegexSegment("a", "[a-z]+"), new RegexSegment("a", Pattern.compile("[a-z]+")));
+        assertEquals(new RegexSegment("a", "[a-z]+").hashCode(), new RegexSegment("a", "[a-z]+").hashCode());
+        assertFalse(new RegexSegment("a", "[a-z]+").equals(new RegexSegment("a", Pattern.compile("[a-z]+", Pattern.CASE_INSENSITIVE))));
+        assertFalse(new RegexSegment("a", "[a-z]+").equals(new RegexSegment("a", "[a-z]*")));
+    }
+}
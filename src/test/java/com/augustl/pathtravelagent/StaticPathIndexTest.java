@@ -0,0 +1,112 @@
+package com.augustl.pathtravelagent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StaticPathIndexTest {
+    private DefaultRouteMatcher<TestReq, TestRes> defaultRouteMatcher = new DefaultRouteMatcher<TestReq, TestRes>();
+    private RouteTreeBuilderFactory<TestReq, TestRes> rf = new RouteTreeBuilderFactory<TestReq, TestRes>();
+
+    @Test
+    public void indexesOnlyStaticRoutesWithHandlers() {
+        StaticPathIndex<TestReq, TestRes> index = new StaticPathIndex<TestReq, TestRes>(TestRoutes.createTree());
+
+        assertEquals(5, index.size());
+        assertNotNull(index.getHandler(DefaultPathToPathSegments.parse("/")));
+        assertNotNull(index.getHandler(DefaultPathToPathSegments.parse("/projects/new")));
+        assertNotNull(index.getHandler(DefaultPathToPathSegments.parse("/deep/a/b/c/d")));
+        assertNull(index.getHandler(DefaultPathToPathSegments.parse("/deep/a/b")));
+        assertNull(index.getHandler(DefaultPathToPathSegments.parse("/projects/123")));
+        assertNull(index.getHandler(DefaultPathToPathSegments.parse("/pictures/foo")));
+    }
+
+    @Test
+    public void matchesLikeDefaultRouteMatcher() {
+        RouteTreeNode<TestReq, TestRes> r = TestRoutes.createTree();
+        StaticPathIndex<TestReq, TestRes> index = new StaticPathIndex<TestReq, TestRes>(r);
+        MatchContext<TestReq> ctx = new MatchContext<TestReq>();
+
+        for (String path : TestRoutes.PATHS) {
+            TestReq req = new TestReq(path);
+            TestRes expected = defaultRouteMatcher.match(r, req);
+            assertEquals(path, expected, defaultRouteMatcher.match(index, req));
+            assertEquals(path, expected, defaultRouteMatcher.match(index, req, ctx));
+        }
+    }
+
+    @Test
+    public void looksUpRawPathLikePathSegments() {
+        StaticPathIndex<TestReq, TestRes> index = new StaticPathIndex<TestReq, TestRes>(TestRoutes.createTree());
+
+        List<String> paths = new ArrayList<String>();
+        Collections.addAll(paths, TestRoutes.PATHS);
+        Collections.addAll(paths, "projects", "/projects//new", "/projects/new?x=/y", "/deep/a/b/c/d/");
+        for (String path : paths) {
+            assertSame(path, index.getHandler(DefaultPathToPathSegments.parse(path)), index.getHandler(path));
+            assertSame(path, index.getHandler(DefaultPathToPathSegments.parse(path)), index.getHandler(new StringBuilder(path)));
+        }
+    }
+
+    @Test
+    public void leavesPathSegmentsWithSlashesToTheTree() {
+        RouteTreeNode<TestReq, TestRes> r = rf.builder()
+            .path("/files", rf.builder()
+                .path("/a", rf.builder()
+                    .path("/b", rf.builder()
+                        .handler(new TestHandler("static"))))
+                .param("/:name", rf.builder()
+                    .handler(new TestHandler("name"))))
+            .build();
+        StaticPathIndex<TestReq, TestRes> index = new StaticPathIndex<TestReq, TestRes>(r);
+        TestReq req = new TestReq("/files/a%2Fb") {
+            @Override
+            public List<String> getPathSegments() {
+                return DefaultPathToPathSegments.parseDecoded("/files/a%2Fb");
+            }
+        };
+
+        assertNull(index.getHandler(req.getPathSegments()));
+        assertEquals(new TestRes("name"), defaultRouteMatcher.match(r, req));
+        assertEquals(new TestRes("name"), defaultRouteMatcher.match(index, req));
+        assertEquals(new TestRes("static"), defaultRouteMatcher.match(index, new TestReq("/files/a/b")));
+    }
+
+    @Test
+    public void handlesManyRoutes() {
+        HashMap<String, RouteTreeNode<TestReq, TestRes>> children = new HashMap<String, RouteTreeNode<TestReq, TestRes>>();
+        for (int i = 0; i < 1000; i++) {
+            children.put("route" + i, new RouteTreeNode<TestReq, TestRes>(
+                "route" + i,
+                new TestHandler("route" + i),
+                new HashMap<String, RouteTreeNode<TestReq, TestRes>>(),
+                null,
+                null));
+        }
+        RouteTreeNode<TestReq, TestRes> r = new RouteTreeNode<TestReq, TestRes>("/", null, children, null, null);
+        StaticPathIndex<TestReq, TestRes> index = new StaticPathIndex<TestReq, TestRes>(r);
+
+        assertEquals(1000, index.size());
+        Random rand = new Random(1000);
+        for (int i = 0; i < 1000; i++) {
+            String path = "/route" + rand.nextInt(1100);
+            TestReq req = new TestReq(path);
+            assertEquals(path, defaultRouteMatcher.match(r, req), defaultRouteMatcher.match(index, req));
+        }
+    }
+
+    @Test
+    public void emptyTree() {
+        StaticPathIndex<TestReq, TestRes> index = new StaticPathIndex<TestReq, TestRes>(rf.builder().build());
+
+        assertEquals(0, index.size());
+        assertNull(defaultRouteMatcher.match(index, new TestReq("/")));
+        assertNull(index.getHandler("/foo"));
+    }
+}
@@ -0,0 +1,102 @@
+package com.augustl.pathtravelagent;
+
+import com.augustl.pathtravelagent.segment.IParametricSegment;
+import com.augustl.pathtravelagent.segment.NumberSegment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The routes and paths that the tests of the matchers use, to check that the matchers give the same results as
+ * DefaultRouteMatcher.
+ */
+class TestRoutes {
+    static final String[] PATHS = {
+        "", "/", "//", "/?wat", "/projects", "/projects/", "/projects/123", "/projects/abc", "/projects/123/todos",
+        "/projects/123/todos/456", "/projects/123/todos/abc", "/projects/new", "/projects/new/todos",
+        "/pictures", "/pictures/foo", "/pictures/foo/bar/baz", "/users/666", "/users/666abc", "/users/1",
+        "/foo/bar/baz", "/foo", "/foo?bar=baz", "/deep/a/b/c/d", "/deep/a/b/c", "/deep/a/b/x/d", "/missing/thing"
+    };
+
+    /**
+     * The path segments of the routes, and a few that are not, to make random paths from.
+     */
+    static final String[] SYMBOLS = {
+        "/", "/", "/", "/", "?", "projects", "todos", "new", "pictures", "users", "deep", "a", "b", "c", "d",
+        "1", "23", "666", "x"
+    };
+
+    private static final RouteTreeBuilderFactory<TestReq, TestRes> rf = new RouteTreeBuilderFactory<TestReq, TestRes>();
+
+    private TestRoutes() {
+    }
+
+    static RouteTreeNode<TestReq, TestRes> createTree() {
+        return createTree(new TestSegment("userId", "666"));
+    }
+
+    /**
+     * @param userSegment The parametric segment of <tt>/users/:userId</tt>.
+     */
+    static RouteTreeNode<TestReq, TestRes> createTree(IParametricSegment userSegment) {
+        return rf.builder()
+            .handler(new EchoHandler("root"))
+            .path("/projects", rf.builder()
+                .handler(new EchoHandler("projects"))
+                .path("/new", rf.builder()
+                    .handler(new EchoHandler("new project")))
+                .param(new NumberSegment("projectId"), rf.builder()
+                    .handler(new EchoHandler("project"))
+                    .path("/todos", rf.builder()
+                        .handler(new EchoHandler("todos"))
+                        .param(new NumberSegment("todoId"), rf.builder()
+                            .handler(new EchoHandler("todo"))))))
+            .path("/pictures", rf.builder()
+                .handler(new EchoHandler("pictures"))
+                .wildcard(rf.builder()
+                    .handler(new EchoHandler("picture"))))
+            .path("/users", rf.builder()
+                .param(userSegment, rf.builder()
+                    .handler(new EchoHandler("user"))))
+            .path("/deep", rf.builder()
+                .path("/a", rf.builder()
+                    .path("/b", rf.builder()
+                        .path("/c", rf.builder()
+                            .path("/d", rf.builder()
+                                .handler(new EchoHandler("deep")))))))
+            .param("/:name", rf.builder()
+                .handler(new EchoHandler("name")))
+            .wildcard(rf.builder()
+                .handler(new EchoHandler("everything else")))
+            .build();
+    }
+
+    /**
+     * @return {@link #PATHS}, and random paths made from {@link #SYMBOLS}.
+     */
+    static List<String> createPaths(int randomCount) {
+        List<String> res = new ArrayList<String>();
+        Collections.addAll(res, PATHS);
+        res.addAll(createRandomPaths(randomCount, 20, SYMBOLS));
+        return res;
+    }
+
+    /**
+     * @return The same random paths every time, so that a failure can be repeated.
+     */
+    static List<String> createRandomPaths(int count, int maxLength, String[] symbols) {
+        Random rand = new Random(count);
+        List<String> res = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder path = new StringBuilder("/");
+            int length = rand.nextInt(maxLength);
+            for (int j = 0; j < length; j++) {
+                path.append(symbols[rand.nextInt(symbols.length)]);
+            }
+            res.add(path.toString());
+        }
+        return res;
+    }
+}
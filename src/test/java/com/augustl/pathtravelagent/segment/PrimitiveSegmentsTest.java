@@ -0,0 +1,98 @@
+package com.augustl.pathtravelagent.segment;
+
+import com.augustl.pathtravelagent.ParamKey;
+import com.augustl.pathtravelagent.RouteMatchResult;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class PrimitiveSegmentsTest {
+    @Test
+    public void parsesUuids() {
+        UuidSegment segment = new UuidSegment("id");
+        Random rand = new Random();
+        for (int i = 0; i < 1000; i++) {
+            UUID uuid = new UUID(rand.nextLong(), rand.nextLong());
+            String str = "/x/" + (i % 2 == 0 ? uuid.toString() : uuid.toString().toUpperCase()) + "/y";
+            RouteMatchResult res = new RouteMatchResult();
+            assertTrue(str, segment.addValue(res, str, 3, 39));
+            assertEquals(uuid, res.getUuidMatch("id"));
+            assertEquals(uuid, res.getUuidMatch(ParamKey.uuidKey("id")));
+        }
+
+        for (UUID uuid : new UUID[]{new UUID(0, 0), new UUID(-1, -1)}) {
+            RouteMatchResult res = new RouteMatchResult();
+            assertTrue(segment.addValue(res, uuid.toString(), 0, 36));
+            assertEquals(uuid, res.getUuidMatch("id"));
+        }
+        assertNotNull(segment.getValue("123e4567-e89b-12d3-a456-426614174000"));
+        for (String str : new String[]{"", "123e4567-e89b-12d3-a456-42661417400", "123e4567-e89b-12d3-a456-4266141740000",
+            "123e4567-e89b-12d3-a456_426614174000", "123e4567e-89b-12d3-a456-426614174000", "123e4567-e89b-12d3-a456-42661417400g",
+            "1-2-3-4-5", "123e4567-e89b-12d3-a456-42661417400\uff10"}) {
+            assertNull(str, segment.getValue(str));
+            assertFalse(str, segment.addValue(new RouteMatchResult(), str, 0, str.length()));
+        }
+    }
+
+    @Test
+    public void parsesHex() {
+        HexSegment segment = new HexSegment("id");
+        for (String str : new String[]{"0", "f", "3F9a", "7fffffffffffffff", "ffffffffffffffff", "0000000000000001"}) {
+            RouteMatchResult res = new RouteMatchResult();
+            assertTrue(str, segment.addValue(res, "/" + str, 1, str.length() + 1));
+            assertEquals(str, new BigInteger(str, 16).longValue(), res.getLongMatch("id"));
+        }
+
+        for (String str : new String[]{"", "x", "0x1f", "-1", "10000000000000000", "\uff11"}) {
+            assertNull(str, segment.getValue(str));
+            assertFalse(str, segment.addValue(new RouteMatchResult(), str, 0, str.length()));
+        }
+    }
+
+    @Test
+    public void parsesDates() {
+        DateSegment segment = new DateSegment("date");
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(1895, Calendar.JANUARY, 1);
+        while (calendar.get(Calendar.YEAR) < 2105) {
+            String str = String.format("%04d-%02d-%02d", calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+                calendar.get(Calendar.DAY_OF_MONTH));
+            RouteMatchResult res = new RouteMatchResult();
+            assertTrue(str, segment.addValue(res, str, 0, str.length()));
+            assertEquals(str, calendar.getTimeInMillis() / 86400000L, res.getEpochDayMatch("date"));
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        assertEquals(0, DateSegment.parseEpochDay("1970-01-01", 0, 10));
+        assertEquals(-719528, DateSegment.parseEpochDay("0000-01-01", 0, 10));
+        assertEquals(2932896, DateSegment.parseEpochDay("9999-12-31", 0, 10));
+        assertNotNull(segment.getValue("2000-02-29"));
+        for (String str : new String[]{"", "2001-02-29", "1900-02-29", "2014-00-10", "2014-13-01", "2014-04-31",
+            "2014-01-00", "2014-1-01", "2014/01/01", "20140101", "2014-01-01T00", "-014-01-01", "2014-01-0\uff11"}) {
+            assertNull(str, segment.getValue(str));
+            assertFalse(str, segment.addValue(new RouteMatchResult(), str, 0, str.length()));
+        }
+    }
+
+    @Test
+    public void rejectsReadingOtherTypes() {
+        RouteMatchResult res = new RouteMatchResult();
+        new HexSegment("hex").addValue(res, "ff", 0, 2);
+        new DateSegment("date").addValue(res, "2014-06-30", 0, 10);
+        assertNull(res.getUuidMatch("hex"));
+        assertNull(res.getUuidMatch("missing"));
+        try {
+            res.getEpochDayMatch("hex");
+            fail("Expected a hex value to not be read as a date");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No date value for param hex", e.getMessage());
+        }
+    }
+}
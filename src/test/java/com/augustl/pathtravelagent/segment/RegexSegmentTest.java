@@ -0,0 +1,87 @@
+package com.augustl.pathtravelagent.segment;
+
+import com.augustl.pathtravelagent.RouteMatchResult;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class RegexSegmentTest {
+    @Test
+    public void matchesWholePathSegment() {
+        RegexSegment segment = new RegexSegment("slug", "[a-z0-9-]{3,64}");
+        RouteMatchResult res = new RouteMatchResult();
+
+        assertTrue(segment.addValue(res, "/articles/hello-world/x", 10, 21));
+        assertEquals("hello-world", res.getStringMatch("slug"));
+        assertFalse(segment.addValue(new RouteMatchResult(), "/articles/hello-world/x", 9, 21));
+        assertNotNull(segment.getValue("abc"));
+        assertNull(segment.getValue("abc!"));
+        assertNull(segment.getValue("ab"));
+    }
+
+    @Test
+    public void derivesChecksFromRegexp() {
+        RegexPrefilter slug = RegexPrefilter.create("[a-z0-9-]{3,64}", 0);
+        assertEquals(3, slug.getMinLength());
+        assertEquals(64, slug.getMaxLength());
+        assertTrue(slug.allows('a'));
+        assertTrue(slug.allows('-'));
+        assertFalse(slug.allows('A'));
+        assertFalse(slug.allows('_'));
+        assertFalse(slug.allows('\u00e5'));
+
+        RegexPrefilter versioned = RegexPrefilter.create("v\\d+(\\.\\d+)?\\.json", 0);
+        assertEquals("v", versioned.getPrefix());
+        assertEquals(".json", versioned.getSuffix());
+        assertEquals(7, versioned.getMinLength());
+        assertEquals(Integer.MAX_VALUE, versioned.getMaxLength());
+        assertFalse(versioned.allows('x'));
+
+        RegexPrefilter alternatives = RegexPrefilter.create("^(?:foo|foobar)-[^/]{2}$", 0);
+        assertEquals("foo", alternatives.getPrefix());
+        assertEquals("", alternatives.getSuffix());
+        assertEquals(6, alternatives.getMinLength());
+        assertEquals(11, alternatives.getMaxLength());
+        assertTrue(alternatives.allows('\u00e5'));
+
+        for (String unsupported : new String[]{"(?i)abc", "(a)\\1", "\\p{L}+", "\\Qa\\E", "[a-z&&[^q]]"}) {
+            RegexPrefilter prefilter = RegexPrefilter.create(unsupported, 0);
+            assertEquals(unsupported, Integer.MAX_VALUE, prefilter.getMaxLength());
+            assertTrue(unsupported, prefilter.allows('!'));
+        }
+        assertEquals(Integer.MAX_VALUE, RegexPrefilter.create("abc", Pattern.CASE_INSENSITIVE).getMaxLength());
+    }
+
+    @Test
+    public void neverRejectsMatchingValues() {
+        String[] regexes = {"[a-z0-9-]{3,64}", "v\\d+(\\.\\d+)?\\.json", "(foo|foobar)-[^/]{2}", "a?b*c+", "(ab){2}|ba",
+            "\\w+@\\w+", "x(?=y).*", "[^a-c]+z", ".{2,3}", "(a|)b{0}c", "\\u00e5+\\x41", "[\\d\\-a]{1,2}", "\ud83d\ude00?a",
+            "\\bab\\b", "a.c", "(?<name>ab)+?"};
+        char[] chars = {'a', 'b', 'c', 'x', 'y', 'z', '0', '9', '-', '.', '@', 'A', '\u00e5', '\ud83d', '\ude00', 'f', 'o',
+            'v', 'j', 's', 'n', 'r'};
+        Random rand = new Random();
+        for (String regex : regexes) {
+            Pattern pattern = Pattern.compile(regex);
+            RegexPrefilter prefilter = RegexPrefilter.create(regex, 0);
+            for (int i = 0; i < 20000; i++) {
+                StringBuilder str = new StringBuilder();
+                int length = rand.nextInt(10);
+                for (int j = 0; j < length; j++) {
+                    str.append(chars[rand.nextInt(chars.length)]);
+                }
+                if (pattern.matcher(str).matches()) {
+                    assertTrue(regex + ": " + str, prefilter.mightMatch(str, 0, str.length()));
+                }
+            }
+            for (String match : new String[]{"hello-world", "v1.json", "v12.3.json", "foobar-xy", "c", "abab", "ba",
+                "a@b", "xyz", "dz", "ab", "ac", "bc", "b", "\u00e5\u00e5A", "-", "\ud83d\ude00a", "a", "abc", "abab"}) {
+                if (pattern.matcher(match).matches()) {
+                    assertTrue(regex + ": " + match, prefilter.mightMatch(match, 0, match.length()));
+                }
+            }
+        }
+    }
+}